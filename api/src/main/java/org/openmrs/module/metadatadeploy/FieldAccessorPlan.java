@@ -0,0 +1,243 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy;
+
+import com.thoughtworks.xstream.converters.reflection.ObjectAccessException;
+import org.openmrs.OpenmrsObject;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The fields of a class which are visited when copying or comparing objects of that class. These are the same fields
+ * that XStream considers serializable, i.e. all non-static, non-transient fields of the class and its superclasses,
+ * with superclass fields first. Plans are created once per class and cached, so the fields don't need to be discovered
+ * and made accessible on every operation.
+ */
+public class FieldAccessorPlan {
+
+	private static final Map<Class<?>, FieldAccessorPlan> plans = new ConcurrentHashMap<Class<?>, FieldAccessorPlan>();
+
+	private static final BitSet NO_EXCLUSIONS = new BitSet();
+
+	/**
+	 * The kind of value a field can hold
+	 */
+	public enum Kind {
+		/**
+		 * A collection
+		 */
+		COLLECTION,
+
+		/**
+		 * A non-collection value which may be an OpenmrsObject. This includes fields declared as interfaces or type
+		 * variables, e.g. the owner of an attribute, so the runtime value must still be checked.
+		 */
+		REFERENCE,
+
+		/**
+		 * A value which can't be an OpenmrsObject, i.e. a primitive, array or final class such as a string
+		 */
+		SIMPLE
+	}
+
+	/**
+	 * Accessor for a single field
+	 */
+	public static class FieldAccessor {
+
+		private final Field field;
+
+		private final int index;
+
+		private final Kind kind;
+
+		protected FieldAccessor(Field field, int index) {
+			this.field = field;
+			this.index = index;
+
+			Class<?> type = field.getType();
+			if (Collection.class.isAssignableFrom(type)) {
+				kind = Kind.COLLECTION;
+			}
+			else if (type.isPrimitive() || type.isArray() || (Modifier.isFinal(type.getModifiers()) && !OpenmrsObject.class.isAssignableFrom(type))) {
+				kind = Kind.SIMPLE;
+			}
+			else {
+				kind = Kind.REFERENCE;
+			}
+		}
+
+		public String getName() {
+			return field.getName();
+		}
+
+		public Class<?> getType() {
+			return field.getType();
+		}
+
+		public Class<?> getDefinedIn() {
+			return field.getDeclaringClass();
+		}
+
+		public int getIndex() {
+			return index;
+		}
+
+		public Kind getKind() {
+			return kind;
+		}
+
+		/**
+		 * Reads the value of this field from the given object
+		 * @param obj the object
+		 * @return the value
+		 */
+		public Object read(Object obj) {
+			try {
+				return field.get(obj);
+			}
+			catch (IllegalAccessException ex) {
+				throw new ObjectAccessException("Cannot access field " + obj.getClass().getName() + "." + field.getName(), ex);
+			}
+		}
+
+		/**
+		 * Writes the value of this field on the given object
+		 * @param obj the object
+		 * @param value the value
+		 */
+		public void write(Object obj, Object value) {
+			try {
+				field.set(obj, value);
+			}
+			catch (IllegalAccessException ex) {
+				throw new ObjectAccessException("Cannot access field " + obj.getClass().getName() + "." + field.getName(), ex);
+			}
+		}
+	}
+
+	private final List<FieldAccessor> fields;
+
+	private final Map<Set<String>, BitSet> exclusions = new ConcurrentHashMap<Set<String>, BitSet>();
+
+	/**
+	 * Gets the plan for the given class
+	 * @param clazz the class
+	 * @return the plan
+	 */
+	public static FieldAccessorPlan forClass(Class<?> clazz) {
+		FieldAccessorPlan plan = plans.get(clazz);
+		if (plan == null) {
+			plan = new FieldAccessorPlan(clazz);
+			plans.put(clazz, plan);
+		}
+		return plan;
+	}
+
+	/**
+	 * Clears all cached plans, e.g. when module classes are about to be reloaded
+	 */
+	public static void clearCache() {
+		plans.clear();
+	}
+
+	/**
+	 * Creates the plan for the given class
+	 * @param clazz the class
+	 */
+	protected FieldAccessorPlan(Class<?> clazz) {
+		// Collect classes so that superclass fields come first
+		LinkedList<Class<?>> hierarchy = new LinkedList<Class<?>>();
+		for (Class<?> c = clazz; c != null && c != Object.class; c = c.getSuperclass()) {
+			hierarchy.addFirst(c);
+		}
+
+		List<FieldAccessor> accessors = new ArrayList<FieldAccessor>();
+		for (Class<?> c : hierarchy) {
+			for (Field field : c.getDeclaredFields()) {
+				int modifiers = field.getModifiers();
+				if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers)) {
+					continue;
+				}
+
+				field.setAccessible(true);
+				accessors.add(new FieldAccessor(field, accessors.size()));
+			}
+		}
+
+		fields = Collections.unmodifiableList(accessors);
+	}
+
+	/**
+	 * Gets all fields in visiting order
+	 * @return the field accessors
+	 */
+	public List<FieldAccessor> getFields() {
+		return fields;
+	}
+
+	/**
+	 * Gets the field with the given name, which if hidden by a subclass field is the subclass field
+	 * @param name the field name
+	 * @param definedIn the class where the field is defined or null for any class
+	 * @return the field accessor or null if no such field exists
+	 */
+	public FieldAccessor getField(String name, Class<?> definedIn) {
+		for (int f = fields.size() - 1; f >= 0; --f) {
+			FieldAccessor accessor = fields.get(f);
+			if (accessor.getName().equals(name) && (definedIn == null || accessor.getDefinedIn().equals(definedIn))) {
+				return accessor;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Gets the bitmask of field indexes which are excluded by the given field names. The bitmask is shared and so
+	 * shouldn't be modified.
+	 * @param excludeFields the names of the excluded fields (may be null)
+	 * @return the bitmask
+	 */
+	public BitSet getExclusionMask(Set<String> excludeFields) {
+		if (excludeFields == null || excludeFields.isEmpty()) {
+			return NO_EXCLUSIONS;
+		}
+
+		BitSet mask = exclusions.get(excludeFields);
+		if (mask == null) {
+			mask = new BitSet(fields.size());
+			for (FieldAccessor accessor : fields) {
+				if (excludeFields.contains(accessor.getName())) {
+					mask.set(accessor.getIndex());
+				}
+			}
+
+			// Copy key as callers may modify their sets later
+			exclusions.put(new HashSet<String>(excludeFields), mask);
+		}
+		return mask;
+	}
+}
@@ -14,9 +14,18 @@
 
 package org.openmrs.module.metadatadeploy;
 
+import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log; 
 import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.AdministrationService;
+import org.openmrs.api.context.Context;
 import org.openmrs.module.ModuleActivator;
+import org.openmrs.module.metadatadeploy.api.impl.DeferredBundleInstaller;
+import org.openmrs.module.metadatadeploy.stats.DeployTimings;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
 
 /**
  * This class contains the logic that is run every time this module is either started or stopped.
@@ -30,12 +39,21 @@ public class MetadataDeployActivator implements ModuleActivator {
 	 */
 	public void willRefreshContext() {
 		log.info("Refreshing MetadataDeploy...");
+
+		// Deferred bundles can't keep installing while the session factory is replaced
+		DeferredBundleInstaller.getInstance().shutdown();
+
+		// Classes may be reloaded so cached field accessors would refer to stale classes
+		FieldAccessorPlan.clearCache();
+		MetadataUtils.getLookupCache().clear();
 	}
 	
 	/**
 	 * @see ModuleActivator#contextRefreshed()
 	 */
 	public void contextRefreshed() {
+		configureLookupCache();
+
 		log.info("MetadataDeploy refreshed");
 	}
 	
@@ -50,6 +68,9 @@ public class MetadataDeployActivator implements ModuleActivator {
 	 * @see ModuleActivator#started()
 	 */
 	public void started() {
+		configureLookupCache();
+		registerTimingsMBean();
+
 		log.info("MetadataDeploy started");
 	}
 	
@@ -58,12 +79,75 @@ public class MetadataDeployActivator implements ModuleActivator {
 	 */
 	public void willStop() {
 		log.info("Stopping MetadataDeploy...");
+
+		DeferredBundleInstaller.getInstance().shutdown();
 	}
 	
 	/**
 	 * @see ModuleActivator#stopped()
 	 */
 	public void stopped() {
+		FieldAccessorPlan.clearCache();
+		MetadataUtils.getLookupCache().clear();
+		unregisterTimingsMBean();
+
 		log.info("MetadataDeploy stopped");
 	}
+
+	/**
+	 * Configures the metadata lookup cache from global properties
+	 */
+	protected void configureLookupCache() {
+		AdministrationService adminService = Context.getAdministrationService();
+		int maxSize = (int) parseNumber(adminService.getGlobalProperty(MetadataLookupCache.GP_MAX_SIZE), 0);
+		long ttlSeconds = parseNumber(adminService.getGlobalProperty(MetadataLookupCache.GP_TTL_SECONDS), MetadataLookupCache.DEFAULT_TTL_SECONDS);
+
+		MetadataUtils.getLookupCache().configure(maxSize, ttlSeconds);
+
+		if (maxSize > 0) {
+			log.info("Metadata lookup cache enabled (max " + maxSize + " objects per class, expire after " + ttlSeconds + "s)");
+		}
+	}
+
+	/**
+	 * Registers the deploy timings with the platform MBean server
+	 */
+	protected void registerTimingsMBean() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(DeployTimings.OBJECT_NAME);
+			if (!server.isRegistered(name)) {
+				server.registerMBean(DeployTimings.getInstance(), name);
+			}
+		}
+		catch (Exception ex) {
+			log.warn("Unable to register deploy timings MBean", ex);
+		}
+	}
+
+	/**
+	 * Unregisters the deploy timings so the MBean server doesn't keep a reference to this module's classes
+	 */
+	protected void unregisterTimingsMBean() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(DeployTimings.OBJECT_NAME);
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+		}
+		catch (Exception ex) {
+			log.warn("Unable to unregister deploy timings MBean", ex);
+		}
+	}
+
+	private static long parseNumber(String value, long defaultValue) {
+		try {
+			return StringUtils.isNotBlank(value) ? Long.parseLong(value.trim()) : defaultValue;
+		}
+		catch (NumberFormatException ex) {
+			log.warn("Ignoring invalid number '" + value + "' for metadata lookup cache");
+			return defaultValue;
+		}
+	}
 }
\ No newline at end of file
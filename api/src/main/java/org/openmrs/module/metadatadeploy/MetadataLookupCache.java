@@ -0,0 +1,223 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy;
+
+import org.openmrs.OpenmrsObject;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of metadata objects fetched by {@link MetadataUtils#existing(Class, String)} and
+ * {@link MetadataUtils#possible(Class, String)}. Each class has its own least-recently-used region which holds up to a
+ * maximum number of objects, and objects expire after a fixed time. A region is invalidated whenever the deploy
+ * service saves, overwrites or uninstalls an object of that class.
+ *
+ * Cached objects are shared between sessions, so once the session that loaded an object has closed, its lazy
+ * properties can't be initialized. For that reason the cache is disabled (has a maximum size of zero) unless configured.
+ */
+public class MetadataLookupCache {
+
+	public static final String GP_MAX_SIZE = "metadatadeploy.lookupCache.maxSize";
+
+	public static final String GP_TTL_SECONDS = "metadatadeploy.lookupCache.ttlSeconds";
+
+	public static final long DEFAULT_TTL_SECONDS = 300;
+
+	private final Map<Class<?>, Region> regions = new ConcurrentHashMap<Class<?>, Region>();
+
+	private volatile int maxSize = 0;
+
+	private volatile long ttl = DEFAULT_TTL_SECONDS * 1000;
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Configures the cache. Existing entries are cleared.
+	 * @param maxSize the maximum number of objects per class, or zero to disable the cache
+	 * @param ttlSeconds the number of seconds after which objects expire
+	 */
+	public void configure(int maxSize, long ttlSeconds) {
+		this.maxSize = Math.max(maxSize, 0);
+		this.ttl = ttlSeconds * 1000;
+		clear();
+	}
+
+	/**
+	 * Gets whether the cache is enabled
+	 * @return true if enabled
+	 */
+	public boolean isEnabled() {
+		return maxSize > 0;
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public long getTtlSeconds() {
+		return ttl / 1000;
+	}
+
+	/**
+	 * Gets a cached object
+	 * @param clazz the object class
+	 * @param identifier the object identifier
+	 * @return the object or null if it isn't cached or has expired
+	 */
+	public <T extends OpenmrsObject> T get(Class<T> clazz, String identifier) {
+		if (!isEnabled()) {
+			return null;
+		}
+
+		Region region = regions.get(clazz);
+		Object obj = region != null ? region.get(identifier) : null;
+
+		if (obj != null) {
+			hits.incrementAndGet();
+		}
+		else {
+			misses.incrementAndGet();
+		}
+		return (T) obj;
+	}
+
+	/**
+	 * Caches an object
+	 * @param clazz the class which the object was fetched as
+	 * @param identifier the object identifier
+	 * @param obj the object
+	 */
+	public <T extends OpenmrsObject> void put(Class<T> clazz, String identifier, T obj) {
+		if (!isEnabled() || obj == null) {
+			return;
+		}
+
+		Region region = regions.get(clazz);
+		if (region == null) {
+			synchronized (regions) {
+				region = regions.get(clazz);
+				if (region == null) {
+					region = new Region();
+					regions.put(clazz, region);
+				}
+			}
+		}
+		region.put(identifier, obj, maxSize, System.currentTimeMillis() + ttl);
+	}
+
+	/**
+	 * Invalidates all objects which may have been fetched as, or as a subclass or superclass of, the given class
+	 * @param clazz the class
+	 */
+	public void invalidate(Class<?> clazz) {
+		for (Map.Entry<Class<?>, Region> entry : regions.entrySet()) {
+			Class<?> cached = entry.getKey();
+			if (cached.isAssignableFrom(clazz) || clazz.isAssignableFrom(cached)) {
+				entry.getValue().clear();
+			}
+		}
+	}
+
+	/**
+	 * Clears the entire cache
+	 */
+	public void clear() {
+		regions.clear();
+	}
+
+	/**
+	 * Gets the number of cached objects
+	 * @return the number of objects
+	 */
+	public int getSize() {
+		int size = 0;
+		for (Region region : regions.values()) {
+			size += region.size();
+		}
+		return size;
+	}
+
+	/**
+	 * Gets the number of lookups which found a cached object
+	 * @return the number of hits
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Gets the number of lookups which didn't find a cached object
+	 * @return the number of misses
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Least-recently-used cache of the objects of one class
+	 */
+	private static class Region {
+
+		private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+		public synchronized Object get(String identifier) {
+			Entry entry = entries.get(identifier);
+			if (entry == null) {
+				return null;
+			}
+			else if (entry.expires < System.currentTimeMillis()) {
+				entries.remove(identifier);
+				return null;
+			}
+			return entry.value;
+		}
+
+		public synchronized void put(String identifier, Object value, int maxSize, long expires) {
+			entries.put(identifier, new Entry(value, expires));
+
+			while (entries.size() > maxSize) {
+				entries.remove(entries.keySet().iterator().next());
+			}
+		}
+
+		public synchronized void clear() {
+			entries.clear();
+		}
+
+		public synchronized int size() {
+			return entries.size();
+		}
+	}
+
+	/**
+	 * A cached object and its expiry time
+	 */
+	private static class Entry {
+
+		private final Object value;
+
+		private final long expires;
+
+		public Entry(Object value, long expires) {
+			this.value = value;
+			this.expires = expires;
+		}
+	}
+}
@@ -33,6 +33,7 @@ import org.openmrs.VisitAttributeType;
 import org.openmrs.VisitType;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.metadatadeploy.api.MetadataDeployService;
+import org.openmrs.module.metadatadeploy.plan.InstallPlan;
 
 /**
  * Utility methods for fetching of metadata outside of a bundle.
@@ -43,6 +44,16 @@ import org.openmrs.module.metadatadeploy.api.MetadataDeployService;
  */
 public class MetadataUtils {
 
+	private static final MetadataLookupCache lookupCache = new MetadataLookupCache();
+
+	/**
+	 * Gets the cache used by existing(...) and possible(...)
+	 * @return the cache
+	 */
+	public static MetadataLookupCache getLookupCache() {
+		return lookupCache;
+	}
+
 	/**
 	 * Fetches an object which is assumed to exist
 	 * @param clazz the object class
@@ -51,7 +62,7 @@ public class MetadataUtils {
 	 * @throws org.openmrs.module.metadatadeploy.MissingMetadataException if object doesn't exist
 	 */
 	public static <T extends OpenmrsObject> T existing(Class<T> clazz, String identifier) {
-		T ret = Context.getService(MetadataDeployService.class).fetchObject(clazz, identifier);
+		T ret = possible(clazz, identifier);
 		if (ret == null) {
 			throw new MissingMetadataException(clazz, identifier);
 		}
@@ -65,7 +76,37 @@ public class MetadataUtils {
 	 * @return the object or null
 	 */
 	public static <T extends OpenmrsObject> T possible(Class<T> clazz, String identifier) {
-		return Context.getService(MetadataDeployService.class).fetchObject(clazz, identifier);
+		ResolutionContext context = ResolutionContext.current();
+		if (context == null) {
+			return lookup(clazz, identifier);
+		}
+
+		T ret = context.get(clazz, identifier);
+		if (ret == null) {
+			ret = lookup(clazz, identifier);
+			context.put(clazz, identifier, ret);
+		}
+		return ret;
+	}
+
+	/**
+	 * Fetches an object via the lookup cache if it's enabled
+	 * @param clazz the object class
+	 * @param identifier the object identifier
+	 * @return the object or null
+	 */
+	private static <T extends OpenmrsObject> T lookup(Class<T> clazz, String identifier) {
+		// Objects which would be created by a plan mustn't be shared
+		if (!lookupCache.isEnabled() || InstallPlan.current() != null) {
+			return Context.getService(MetadataDeployService.class).fetchObject(clazz, identifier);
+		}
+
+		T ret = lookupCache.get(clazz, identifier);
+		if (ret == null) {
+			ret = Context.getService(MetadataDeployService.class).fetchObject(clazz, identifier);
+			lookupCache.put(clazz, identifier, ret);
+		}
+		return ret;
 	}
 
 	/**
@@ -15,13 +15,19 @@
 package org.openmrs.module.metadatadeploy;
 
 import com.thoughtworks.xstream.converters.reflection.ObjectAccessException;
-import com.thoughtworks.xstream.converters.reflection.PureJavaReflectionProvider;
-import com.thoughtworks.xstream.converters.reflection.ReflectionProvider;
 import org.hibernate.Hibernate;
 import org.openmrs.OpenmrsObject;
+import org.openmrs.module.metadatadeploy.FieldAccessorPlan.FieldAccessor;
+import org.openmrs.module.metadatadeploy.plan.FieldChange;
 
-import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -29,7 +35,12 @@ import java.util.Set;
  */
 public class ObjectUtils {
 
-	final static PureJavaReflectionProvider reflector = new PureJavaReflectionProvider();
+	/**
+	 * Fields which are populated by the service layer on save, and so are ignored when comparing objects
+	 */
+	final static Set<String> AUDIT_FIELDS = new HashSet<String>(Arrays.asList(
+			"creator", "dateCreated", "changedBy", "dateChanged"
+	));
 
 	/**
 	 * Copies an object into another of the same class
@@ -42,51 +53,203 @@ public class ObjectUtils {
 
 		ensureInitialized(target); // TODO figure out if this is necessary
 
-		reflector.visitSerializableFields(source, new ReflectionProvider.Visitor() {
+		FieldAccessorPlan plan = FieldAccessorPlan.forClass(source.getClass());
+		BitSet excluded = plan.getExclusionMask(excludeFields);
 
-			/**
-			 * @see ReflectionProvider#visitSerializableFields(Object, com.thoughtworks.xstream.converters.reflection.ReflectionProvider.Visitor)
-			 */
-			@Override
-			public void visit(String fieldName, Class type, Class definedIn, Object value) {
+		for (FieldAccessor field : plan.getFields()) {
 
-				// Check if field should be excluded from operation
-				if (excludeFields != null && excludeFields.contains(fieldName)) {
-					return;
-				}
+			// Check if field should be excluded from operation
+			if (excluded.get(field.getIndex())) {
+				continue;
+			}
 
-				if (Collection.class.isAssignableFrom(type)) {
-					Collection sourceCollection = (Collection) value;
-					Collection targetCollection = (Collection) readField(target, fieldName, definedIn);
+			Object value = field.read(source);
 
-					if (sourceCollection != null) {
-						for (Object itemInSourceCollection : sourceCollection) {
-							if (itemInSourceCollection instanceof OpenmrsObject) {
-								updateBackReferences(itemInSourceCollection, source, target);
-							}
+			if (field.getKind() == FieldAccessorPlan.Kind.COLLECTION) {
+				Collection sourceCollection = (Collection) value;
+				Collection targetCollection = (Collection) field.read(target);
+
+				if (sourceCollection != null) {
+					for (Object itemInSourceCollection : sourceCollection) {
+						if (itemInSourceCollection instanceof OpenmrsObject) {
+							updateBackReferences(itemInSourceCollection, source, target);
 						}
 					}
+				}
 
-					// This collection might be Hibernate managed in which case we can't just replace it
-					if (targetCollection != null) {
-						targetCollection.clear();
+				// This collection might be Hibernate managed in which case we can't just replace it
+				if (targetCollection != null) {
+					targetCollection.clear();
 
-						if (sourceCollection != null) {
-							targetCollection.addAll(sourceCollection);
-						}
-					}
-					else {
-						reflector.writeField(target, fieldName, value, definedIn);
-					}
-				} else {
-					if (value instanceof OpenmrsObject) {
-						updateBackReferences(value, source, target);
+					if (sourceCollection != null) {
+						targetCollection.addAll(sourceCollection);
 					}
+				}
+				else {
+					field.write(target, value);
+				}
+			} else {
+				if (field.getKind() == FieldAccessorPlan.Kind.REFERENCE && value instanceof OpenmrsObject) {
+					updateBackReferences(value, source, target);
+				}
+
+				field.write(target, value);
+			}
+		}
+	}
 
-					reflector.writeField(target, fieldName, value, definedIn);
+	/**
+	 * Checks whether overwriting the target object with the source object would leave the target unchanged. This visits
+	 * the same fields as {@link #overwrite(OpenmrsObject, OpenmrsObject, Set)} and ignores audit fields which the
+	 * service layer would populate anyway. Other objects are compared by UUID, and collections by their content.
+	 * @param source the source object
+	 * @param target the target object
+	 * @param excludeFields the names of fields to be excluded
+	 * @param <T> the class of both objects
+	 * @return true if all non-excluded fields are equal
+	 */
+	public static <T extends OpenmrsObject> boolean fieldsEqual(final T source, final T target, final Set<String> excludeFields) {
+
+		ensureInitialized(target);
+
+		FieldAccessorPlan plan = FieldAccessorPlan.forClass(source.getClass());
+		BitSet excluded = plan.getExclusionMask(excludeFields);
+
+		for (FieldAccessor field : plan.getFields()) {
+
+			if (excluded.get(field.getIndex()) || AUDIT_FIELDS.contains(field.getName())) {
+				continue;
+			}
+
+			// Field can't be copied to a target of a different class
+			if (!field.getDefinedIn().isInstance(target)) {
+				return false;
+			}
+
+			Object value = field.read(source);
+			Object targetValue = field.read(target);
+
+			if (field.getKind() == FieldAccessorPlan.Kind.COLLECTION) {
+				if (!collectionsEqual((Collection) value, (Collection) targetValue)) {
+					return false;
 				}
 			}
-		});
+			else if (!valuesEqual(value, targetValue)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Gets the fields which overwriting the target object with the source object would change. This compares fields in
+	 * the same way as {@link #fieldsEqual(OpenmrsObject, OpenmrsObject, Set)}.
+	 * @param source the source object
+	 * @param target the target object
+	 * @param excludeFields the names of fields to be excluded
+	 * @param <T> the class of both objects
+	 * @return the changes, with values of the target as old values
+	 */
+	public static <T extends OpenmrsObject> List<FieldChange> changedFields(final T source, final T target, final Set<String> excludeFields) {
+
+		ensureInitialized(target);
+
+		FieldAccessorPlan plan = FieldAccessorPlan.forClass(source.getClass());
+		BitSet excluded = plan.getExclusionMask(excludeFields);
+		List<FieldChange> changes = new ArrayList<FieldChange>();
+
+		for (FieldAccessor field : plan.getFields()) {
+
+			if (excluded.get(field.getIndex()) || AUDIT_FIELDS.contains(field.getName())) {
+				continue;
+			}
+
+			Object value = field.read(source);
+			Object targetValue = field.getDefinedIn().isInstance(target) ? field.read(target) : null;
+
+			boolean equal;
+			if (field.getKind() == FieldAccessorPlan.Kind.COLLECTION) {
+				equal = collectionsEqual((Collection) value, (Collection) targetValue);
+			}
+			else {
+				equal = valuesEqual(value, targetValue);
+			}
+
+			if (!equal) {
+				changes.add(new FieldChange(field.getName(), targetValue, value));
+			}
+		}
+
+		return changes;
+	}
+
+	/**
+	 * Compares two collections by content. Lists are compared in order and other collections are compared as sets.
+	 * Null and empty collections are considered equal.
+	 * @param source the source collection
+	 * @param target the target collection
+	 * @return true if the collections are equal
+	 */
+	protected static boolean collectionsEqual(Collection source, Collection target) {
+		boolean sourceEmpty = source == null || source.isEmpty();
+		boolean targetEmpty = target == null || target.isEmpty();
+
+		if (sourceEmpty || targetEmpty) {
+			return sourceEmpty && targetEmpty;
+		}
+		if (source.size() != target.size()) {
+			return false;
+		}
+
+		if (source instanceof List && target instanceof List) {
+			Iterator targetIterator = target.iterator();
+			for (Object sourceItem : source) {
+				if (!valuesEqual(sourceItem, targetIterator.next())) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		for (Object sourceItem : source) {
+			boolean found = false;
+			for (Object targetItem : target) {
+				if (valuesEqual(sourceItem, targetItem)) {
+					found = true;
+					break;
+				}
+			}
+			if (!found) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Compares two field values. OpenMRS objects are compared by UUID because the target's references may be Hibernate
+	 * proxies of the source's references.
+	 * @param source the source value
+	 * @param target the target value
+	 * @return true if the values are equal
+	 */
+	protected static boolean valuesEqual(Object source, Object target) {
+		if (source == target) {
+			return true;
+		}
+		if (source == null || target == null) {
+			return false;
+		}
+		if (source instanceof OpenmrsObject && target instanceof OpenmrsObject) {
+			String sourceUuid = ((OpenmrsObject) source).getUuid();
+			return sourceUuid != null && sourceUuid.equals(((OpenmrsObject) target).getUuid());
+		}
+		if (source instanceof Date && target instanceof Date) {
+			// Dates loaded by Hibernate are timestamps which aren't equal to dates with the same time
+			return ((Date) source).getTime() == ((Date) target).getTime();
+		}
+		return source.equals(target);
 	}
 
 	/**
@@ -101,17 +264,12 @@ public class ObjectUtils {
 	protected static <T extends OpenmrsObject> void updateBackReferences(final Object obj, final T source, final T target) {
 		ensureInitialized(obj);
 
-		reflector.visitSerializableFields(obj, new ReflectionProvider.Visitor() {
-			/**
-			 * @see ReflectionProvider#visitSerializableFields(Object, com.thoughtworks.xstream.converters.reflection.ReflectionProvider.Visitor)
-			 */
-			@Override
-			public void visit(String fieldName, Class type, Class definedIn, Object value) {
-				if (value != null && value == source) {
-					reflector.writeField(obj, fieldName, target, definedIn);
-				}
+		// Only fields which can hold an OpenmrsObject can reference the source
+		for (FieldAccessor field : FieldAccessorPlan.forClass(obj.getClass()).getFields()) {
+			if (field.getKind() == FieldAccessorPlan.Kind.REFERENCE && field.read(obj) == source) {
+				field.write(obj, target);
 			}
-		});
+		}
 	}
 
 	/**
@@ -132,16 +290,11 @@ public class ObjectUtils {
 	 * @return the field value
 	 */
 	protected static Object readField(Object object, String fieldName, Class<?> definedIn) {
-		Field field = reflector.getField(definedIn, fieldName);
-		field.setAccessible(true);
-		Object result;
-		try {
-			result = field.get(object);
-		}
-		catch (IllegalAccessException e) {
-			throw new ObjectAccessException("Cannot access field " + object.getClass().getName() + "." + field.getName());
+		FieldAccessor field = FieldAccessorPlan.forClass(object.getClass()).getField(fieldName, definedIn);
+		if (field == null) {
+			throw new ObjectAccessException("No such field " + definedIn.getName() + "." + fieldName);
 		}
-		return result;
+		return field.read(object);
 	}
 
 	/**
@@ -0,0 +1,178 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.OpenmrsObject;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Memoizes objects fetched by {@link MetadataUtils#existing(Class, String)} and
+ * {@link MetadataUtils#possible(Class, String)} on the current thread while bundles are being installed, so that
+ * references which are repeated across many objects, e.g. a location tag, are only fetched once. Contexts can be
+ * nested, in which case objects are memoized until the outermost context ends. Objects which don't exist aren't
+ * memoized, as they may be installed later in the same context. The deploy service invalidates memoized objects of a
+ * class when it saves, overwrites or uninstalls objects of that class, and drops all of them when it clears the session.
+ */
+public class ResolutionContext {
+
+	protected static final Log log = LogFactory.getLog(ResolutionContext.class);
+
+	private static final ThreadLocal<ResolutionContext> current = new ThreadLocal<ResolutionContext>();
+
+	private int depth = 0;
+
+	private Map<Class<?>, Map<String, Object>> resolved = new HashMap<Class<?>, Map<String, Object>>();
+
+	private long hits = 0;
+
+	private long misses = 0;
+
+	/**
+	 * Begins a context on the current thread, or enters the existing context
+	 * @return the context
+	 */
+	public static ResolutionContext begin() {
+		ResolutionContext context = current.get();
+		if (context == null) {
+			context = new ResolutionContext();
+			current.set(context);
+		}
+		context.depth++;
+		return context;
+	}
+
+	/**
+	 * Ends the context on the current thread, or leaves it if it is nested
+	 */
+	public static void end() {
+		ResolutionContext context = current.get();
+		if (context != null && --context.depth == 0) {
+			current.remove();
+
+			if (log.isDebugEnabled()) {
+				log.debug("Resolved references with " + context.hits + " memoized hits and " + context.misses + " fetches");
+			}
+		}
+	}
+
+	/**
+	 * Gets the context on the current thread
+	 * @return the context or null if there isn't one
+	 */
+	public static ResolutionContext current() {
+		return current.get();
+	}
+
+	/**
+	 * Invalidates memoized objects related to the given class in the context on the current thread, if there is one
+	 * @param clazz the class
+	 */
+	public static void invalidateCurrent(Class<?> clazz) {
+		ResolutionContext context = current.get();
+		if (context != null) {
+			context.invalidate(clazz);
+		}
+	}
+
+	/**
+	 * Drops all memoized objects in the context on the current thread, if there is one, e.g. because the session has
+	 * been cleared and they are detached
+	 */
+	public static void clearCurrent() {
+		ResolutionContext context = current.get();
+		if (context != null) {
+			context.clear();
+		}
+	}
+
+	/**
+	 * Gets a memoized object
+	 * @param clazz the class which the object was fetched as
+	 * @param identifier the object identifier
+	 * @return the object or null
+	 */
+	public <T extends OpenmrsObject> T get(Class<T> clazz, String identifier) {
+		Map<String, Object> objects = resolved.get(clazz);
+		Object obj = objects != null ? objects.get(identifier) : null;
+
+		if (obj != null) {
+			++hits;
+		}
+		else {
+			++misses;
+		}
+		return (T) obj;
+	}
+
+	/**
+	 * Memoizes an object
+	 * @param clazz the class which the object was fetched as
+	 * @param identifier the object identifier
+	 * @param obj the object (may be null in which case nothing is memoized)
+	 */
+	public <T extends OpenmrsObject> void put(Class<T> clazz, String identifier, T obj) {
+		if (obj == null) {
+			return;
+		}
+
+		Map<String, Object> objects = resolved.get(clazz);
+		if (objects == null) {
+			objects = new HashMap<String, Object>();
+			resolved.put(clazz, objects);
+		}
+		objects.put(identifier, obj);
+	}
+
+	/**
+	 * Invalidates memoized objects which may have been fetched as, or as a subclass or superclass of, the given class
+	 * @param clazz the class
+	 */
+	public void invalidate(Class<?> clazz) {
+		for (Iterator<Class<?>> i = resolved.keySet().iterator(); i.hasNext(); ) {
+			Class<?> memoized = i.next();
+			if (memoized.isAssignableFrom(clazz) || clazz.isAssignableFrom(memoized)) {
+				i.remove();
+			}
+		}
+	}
+
+	/**
+	 * Drops all memoized objects
+	 */
+	public void clear() {
+		resolved.clear();
+	}
+
+	/**
+	 * Gets the number of lookups which found a memoized object
+	 * @return the number of hits
+	 */
+	public long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Gets the number of lookups which didn't find a memoized object
+	 * @return the number of misses
+	 */
+	public long getMisses() {
+		return misses;
+	}
+}
@@ -16,9 +16,12 @@ package org.openmrs.module.metadatadeploy.api;
 
 import org.openmrs.OpenmrsObject;
 import org.openmrs.api.APIException;
+import org.openmrs.module.metadatadeploy.bundle.BundleInstallProgress;
 import org.openmrs.module.metadatadeploy.bundle.MetadataBundle;
+import org.openmrs.module.metadatadeploy.plan.InstallPlan;
 import org.openmrs.module.metadatadeploy.source.ObjectSource;
 import org.openmrs.module.metadatasharing.ImportMode;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Collection;
@@ -37,6 +40,95 @@ public interface MetadataDeployService {
 	 */
 	void installBundles(Collection<MetadataBundle> bundles) throws APIException;
 
+	/**
+	 * Installs a collection of bundles, installing up to the given number of bundles concurrently once the bundles they
+	 * require have been installed. Each bundle is installed and committed in its own transaction.
+	 * @param bundles the bundles
+	 * @param maxThreads the maximum number of bundles to install concurrently
+	 * @throws APIException if an error occurs, or if the bundle requirements are missing or contain a cycle
+	 */
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	void installBundles(Collection<MetadataBundle> bundles, int maxThreads) throws APIException;
+
+	/**
+	 * Installs a collection of bundles into an empty or nearly empty database, e.g. on first startup. Incoming objects of
+	 * types whose tables have no rows are saved without first looking for existing objects, and the session is only
+	 * flushed after each batch of saved objects and after each bundle, rather than before queries. This allows inserts
+	 * and updates to be batched where Hibernate JDBC batching is configured. Otherwise bundles are installed as by
+	 * {@link #installBundles(java.util.Collection)}.
+	 * @param bundles the bundles
+	 * @param batchSize the number of saved objects to flush together
+	 * @throws APIException if an error occurs
+	 */
+	void seedBundles(Collection<MetadataBundle> bundles, int batchSize) throws APIException;
+
+	/**
+	 * Installs a collection of bundles as by {@link #installBundles(java.util.Collection)}, but loading the existing
+	 * objects of each type whose handler is a {@link org.openmrs.module.metadatadeploy.handler.PreloadableDeployHandler}
+	 * once, when first installed, rather than querying for each incoming object. Objects saved through this service
+	 * during the install are added to the loaded objects, but objects which bundles save in other ways won't be found.
+	 * @param bundles the bundles
+	 * @throws APIException if an error occurs
+	 */
+	void installBundlesWithPreload(Collection<MetadataBundle> bundles) throws APIException;
+
+	/**
+	 * Installs a collection of bundles in groups, each of which is installed and committed in its own transaction, with
+	 * the session cleared between groups. Groups are taken in an order where bundles come after the bundles they
+	 * require. Completed bundles are recorded, so that if a bundle fails, installing the same bundles again resumes from
+	 * the group which failed.
+	 * @param bundles the bundles
+	 * @param groupSize the number of bundles to install in each transaction
+	 * @throws APIException if an error occurs, or if the bundle requirements are missing or contain a cycle
+	 */
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	void installBundlesInGroups(Collection<MetadataBundle> bundles, int groupSize) throws APIException;
+
+	/**
+	 * Installs the critical bundles of a collection, and any bundles which they require, and then schedules the
+	 * remaining bundles, i.e. those annotated with {@link org.openmrs.module.metadatadeploy.bundle.Phase} DEFERRED, to
+	 * be installed in the background once the current transaction has committed. Each deferred bundle is installed and
+	 * committed in its own transaction.
+	 * @param bundles the bundles
+	 * @return the progress of all deferred bundles
+	 * @throws APIException if a critical bundle fails to install, or if the bundle requirements are missing or contain a
+	 * cycle
+	 */
+	BundleInstallProgress installCriticalBundles(Collection<MetadataBundle> bundles) throws APIException;
+
+	/**
+	 * Gets the progress of all deferred bundles scheduled since startup
+	 * @return the progress
+	 */
+	@Transactional(readOnly = true)
+	BundleInstallProgress getDeferredInstallProgress();
+
+	/**
+	 * Installs a collection of bundles once across all instances which share the database. If the same bundles have
+	 * already been deployed by any instance then nothing is installed. Otherwise this instance waits to acquire the
+	 * deploy lock, and then installs the bundles and records the deploy in a single transaction. A deploy can only be
+	 * recognised as the same if every bundle is a {@link org.openmrs.module.metadatadeploy.bundle.VersionedMetadataBundle},
+	 * so bundles which include any unversioned bundle are installed by every instance, one at a time.
+	 * @param bundles the bundles
+	 * @return true if bundles were installed by this instance, false if they had already been deployed
+	 * @throws APIException if an error occurs, or if another instance holds the deploy lock for too long
+	 */
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	boolean deployBundles(Collection<MetadataBundle> bundles) throws APIException;
+
+	/**
+	 * Plans the installation of the given bundles (and any bundles they require) without making any changes. Bundles are
+	 * run as normal, but objects which they install, save or uninstall through this service are compared with existing
+	 * objects instead of being saved, and nothing is flushed. Any changes already pending in the session are flushed
+	 * beforehand, and the session is cleared afterwards to discard changes that bundles made to loaded objects. Anything
+	 * written to the database by bundles in spite of this, e.g. by calling core services directly, is rolled back to a
+	 * savepoint set after that flush, so is never committed.
+	 * @param bundles the bundles
+	 * @return the plan of what would be created, updated, retired or left unchanged
+	 * @throws APIException if an error occurs
+	 */
+	InstallPlan planBundles(Collection<MetadataBundle> bundles) throws APIException;
+
     /**
      * Installs a bundle and all it's @Required dependencies
      * @param bundle the bundle to install
@@ -75,7 +167,8 @@ public interface MetadataDeployService {
 	<T extends OpenmrsObject> T installObject(T incoming);
 
 	/**
-	 * Installs all objects from the given source
+	 * Installs all objects from the given source. Each object is installed before the next is fetched, so the source
+	 * may look up objects installed from earlier in the same source.
 	 * @param source the object source
 	 * @param <T> the object type
 	 * @return the list of installed objects
@@ -83,6 +176,30 @@ public interface MetadataDeployService {
 	 */
 	<T extends OpenmrsObject> List<T> installFromSource(ObjectSource<T> source) throws APIException;
 
+	/**
+	 * Installs all objects from the given source, reading objects from the source on a separate thread so that they can
+	 * be parsed while previous objects are being saved. The source should not access the database.
+	 * @param source the object source
+	 * @param readAhead the maximum number of objects to read ahead, or zero to read on the calling thread
+	 * @param <T> the object type
+	 * @return the list of installed objects
+	 * @throws APIException if an error occurs, including if the source throws an exception
+	 */
+	<T extends OpenmrsObject> List<T> installFromSource(ObjectSource<T> source, int readAhead) throws APIException;
+
+	/**
+	 * Installs all objects from the given source, optionally in batches where the existing objects of each batch are
+	 * fetched and saved together by handlers which support it. As a batch is fetched from the source before any of it
+	 * is installed, a source which is installed in batches must not look up objects from earlier in the same source.
+	 * @param source the object source
+	 * @param readAhead the maximum number of objects to read ahead, or zero to read on the calling thread
+	 * @param batchSize the maximum number of objects to install together, or one to install each object as it's fetched
+	 * @param <T> the object type
+	 * @return the list of installed objects
+	 * @throws APIException if an error occurs, including if the source throws an exception
+	 */
+	<T extends OpenmrsObject> List<T> installFromSource(ObjectSource<T> source, int readAhead, int batchSize) throws APIException;
+
 	/**
 	 * Uninstalls the given object
 	 * @param outgoing the outgoing object
@@ -105,6 +222,20 @@ public interface MetadataDeployService {
 	 */
 	<T extends OpenmrsObject> T saveObject(T obj);
 
+	/**
+	 * Saves the given objects, in bulk where their handlers support it
+	 * @param objs the objects
+	 * @return the saved objects in the same order
+	 */
+	<T extends OpenmrsObject> List<T> saveObjects(List<T> objs);
+
+	/**
+	 * Flushes and clears the session. Objects which have been memoized or preloaded for lookups on the current thread are
+	 * dropped too, as they would be detached. Callers must not use objects which were loaded before the session was
+	 * cleared.
+	 */
+	void clearSession();
+
 	/**
 	 * Overwrites one object with another
 	 * @param source the source object
@@ -0,0 +1,124 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.api.impl;
+
+import org.apache.commons.lang.StringUtils;
+import org.openmrs.GlobalProperty;
+import org.openmrs.api.AdministrationService;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.metadatadeploy.bundle.MetadataBundle;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * The bundles which have been installed and committed by an install which hasn't yet completed. This is stored as a
+ * global property with the fingerprint of the whole collection of bundles being installed, so that if the install
+ * fails, a rerun of the same bundles can resume from the failing bundle. A rerun of different bundles starts over.
+ */
+class CompletedBundles {
+
+	public static final String GP_COMPLETED = "metadatadeploy.bundles.completed";
+
+	private static final char SEPARATOR = '|';
+
+	private final String fingerprint;
+
+	private final Set<String> classNames = new LinkedHashSet<String>();
+
+	/**
+	 * Creates empty completed bundles
+	 * @param fingerprint the fingerprint of the bundles being installed
+	 */
+	protected CompletedBundles(String fingerprint) {
+		this.fingerprint = fingerprint;
+	}
+
+	/**
+	 * Loads the bundles completed by a previous install of the same bundles
+	 * @param fingerprint the fingerprint of the bundles being installed
+	 * @return the completed bundles
+	 */
+	public static CompletedBundles load(String fingerprint) {
+		CompletedBundles completed = new CompletedBundles(fingerprint);
+
+		String value = Context.getAdministrationService().getGlobalProperty(GP_COMPLETED);
+		String prefix = fingerprint + SEPARATOR;
+		if (value != null && value.startsWith(prefix) && value.length() > prefix.length()) {
+			completed.classNames.addAll(Arrays.asList(StringUtils.split(value.substring(prefix.length()), ',')));
+		}
+		return completed;
+	}
+
+	/**
+	 * Gets whether the given bundle has been completed
+	 * @param bundle the bundle
+	 * @return true if completed
+	 */
+	public boolean contains(MetadataBundle bundle) {
+		return classNames.contains(bundle.getClass().getName());
+	}
+
+	/**
+	 * Gets the number of completed bundles
+	 * @return the number of bundles
+	 */
+	public int size() {
+		return classNames.size();
+	}
+
+	/**
+	 * Records that bundles have been completed. This should be called in the same transaction as the bundles are
+	 * installed.
+	 * @param bundles the bundles
+	 */
+	public void addAll(Collection<MetadataBundle> bundles) {
+		if (bundles.isEmpty()) {
+			return;
+		}
+
+		for (MetadataBundle bundle : bundles) {
+			classNames.add(bundle.getClass().getName());
+		}
+		save(fingerprint + SEPARATOR + StringUtils.join(classNames, ','));
+	}
+
+	/**
+	 * Clears the completed bundles, e.g. once all bundles have been installed
+	 */
+	public void clear() {
+		classNames.clear();
+		save("");
+	}
+
+	/**
+	 * Saves the global property value
+	 * @param value the value
+	 */
+	protected void save(String value) {
+		AdministrationService administrationService = Context.getAdministrationService();
+		GlobalProperty gp = administrationService.getGlobalPropertyObject(GP_COMPLETED);
+		if (gp == null) {
+			if (value.length() == 0) {
+				return;
+			}
+			gp = new GlobalProperty(GP_COMPLETED);
+		}
+		gp.setPropertyValue(value);
+		administrationService.saveGlobalProperty(gp);
+	}
+}
@@ -0,0 +1,200 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.api.impl;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.context.Context;
+import org.openmrs.api.context.UserContext;
+import org.openmrs.module.metadatadeploy.bundle.BundleGraph;
+import org.openmrs.module.metadatadeploy.bundle.BundleInstallProgress;
+import org.openmrs.module.metadatadeploy.bundle.BundleVersions;
+import org.openmrs.module.metadatadeploy.bundle.MetadataBundle;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Installs deferred bundles on a background thread, one bundle at a time so that the application can serve requests
+ * meanwhile. Bundles are scheduled once the transaction which installed the critical bundles has committed, and each
+ * deferred bundle is installed and committed in its own transaction. Progress of all scheduled bundles is reported by
+ * a single {@link BundleInstallProgress}.
+ */
+public class DeferredBundleInstaller {
+
+	protected static final Log log = LogFactory.getLog(DeferredBundleInstaller.class);
+
+	private static final long SHUTDOWN_TIMEOUT = 30;
+
+	private static final DeferredBundleInstaller instance = new DeferredBundleInstaller();
+
+	private final BundleInstallProgress progress = new BundleInstallProgress();
+
+	private ThreadPoolExecutor executor;
+
+	/**
+	 * Gets the singleton instance
+	 * @return the instance
+	 */
+	public static DeferredBundleInstaller getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Gets the progress of all bundles scheduled since startup
+	 * @return the progress
+	 */
+	public BundleInstallProgress getProgress() {
+		return progress;
+	}
+
+	/**
+	 * Schedules the bundles in the graph which haven't already been installed. If there is a current transaction, then
+	 * bundles are scheduled once it commits, and not at all if it rolls back.
+	 * @param graph the bundle graph
+	 * @param installed the bundles in the graph which have already been installed
+	 * @param transactionManager the transaction manager
+	 */
+	public void schedule(BundleGraph graph, Set<MetadataBundle> installed, PlatformTransactionManager transactionManager) {
+		final DeferredInstall install = new DeferredInstall(graph, installed, transactionManager, Context.getUserContext());
+
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCommit() {
+					submit(install);
+				}
+			});
+		}
+		else {
+			submit(install);
+		}
+	}
+
+	/**
+	 * Stops installing bundles. The bundle currently being installed is interrupted and any scheduled bundles are
+	 * abandoned. This waits a limited time for the current bundle to finish, and should be called before the
+	 * application context is refreshed or shut down.
+	 */
+	public synchronized void shutdown() {
+		if (executor == null) {
+			return;
+		}
+
+		for (Runnable pending : executor.shutdownNow()) {
+			progress.bundlesAbandoned(((DeferredInstall) pending).getBundleCount(), "Cancelled by shutdown");
+		}
+
+		try {
+			if (!executor.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.SECONDS)) {
+				log.warn("Deferred bundle install didn't stop within " + SHUTDOWN_TIMEOUT + " seconds of shutdown");
+			}
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			log.warn("Interrupted whilst waiting for deferred bundle install to stop");
+		}
+		executor = null;
+	}
+
+	/**
+	 * Submits an install to the background thread
+	 * @param install the install
+	 */
+	protected synchronized void submit(DeferredInstall install) {
+		if (executor == null) {
+			executor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "metadatadeploy-deferred");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			executor.allowCoreThreadTimeOut(true);
+		}
+
+		progress.bundlesScheduled(install.getBundleCount());
+		executor.execute(install);
+
+		log.info("Scheduled " + install.getBundleCount() + " deferred bundles (" + progress + ")");
+	}
+
+	/**
+	 * Installs the remaining bundles of a graph in a new session
+	 */
+	protected class DeferredInstall implements Runnable {
+
+		private BundleGraph graph;
+
+		private Set<MetadataBundle> installed;
+
+		private PlatformTransactionManager transactionManager;
+
+		private UserContext userContext;
+
+		public DeferredInstall(BundleGraph graph, Set<MetadataBundle> installed, PlatformTransactionManager transactionManager, UserContext userContext) {
+			this.graph = graph;
+			this.installed = installed;
+			this.transactionManager = transactionManager;
+			this.userContext = userContext;
+		}
+
+		/**
+		 * Gets the number of bundles to install
+		 * @return the number of bundles
+		 */
+		public int getBundleCount() {
+			return graph.getBundles().size() - installed.size();
+		}
+
+		/**
+		 * @see Runnable#run()
+		 */
+		@Override
+		public void run() {
+			int finishedBefore = progress.getInstalled() + progress.getFailed();
+
+			Context.openSession();
+			Context.setUserContext(userContext);
+			try {
+				ParallelBundleInstaller installer = new ParallelBundleInstaller(graph, transactionManager, 1);
+				installer.setInstalled(installed);
+				installer.setProgress(progress);
+				installer.setPackageChecks(PackageChecks.load());
+				installer.setBundleVersions(BundleVersions.load());
+				installer.run();
+			}
+			catch (Exception ex) {
+				log.error("Unable to install deferred bundles", ex);
+
+				// Bundles which weren't started because of the failure won't be installed
+				int finished = progress.getInstalled() + progress.getFailed() - finishedBefore;
+				progress.bundlesAbandoned(getBundleCount() - finished, "Not installed due to an earlier failure: " + ex.getMessage());
+			}
+			finally {
+				Context.closeSession();
+			}
+
+			log.info("Finished installing deferred bundles (" + progress + ")");
+		}
+	}
+}
@@ -14,32 +14,68 @@
 
 package org.openmrs.module.metadatadeploy.api.impl;
 
+import org.apache.commons.lang.math.NumberUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.hibernate.FlushMode;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.openmrs.GlobalProperty;
 import org.openmrs.OpenmrsObject;
 import org.openmrs.api.APIException;
+import org.openmrs.api.AdministrationService;
 import org.openmrs.api.context.Context;
 import org.openmrs.api.impl.BaseOpenmrsService;
+import org.openmrs.module.metadatadeploy.MetadataUtils;
+import org.openmrs.module.metadatadeploy.ObjectUtils;
+import org.openmrs.module.metadatadeploy.ResolutionContext;
 import org.openmrs.module.metadatadeploy.api.MetadataDeployService;
+import org.openmrs.module.metadatadeploy.bundle.BundleFingerprint;
+import org.openmrs.module.metadatadeploy.bundle.BundleGraph;
+import org.openmrs.module.metadatadeploy.bundle.BundleInstallProgress;
+import org.openmrs.module.metadatadeploy.bundle.BundlePhase;
+import org.openmrs.module.metadatadeploy.bundle.BundleVersions;
 import org.openmrs.module.metadatadeploy.bundle.MetadataBundle;
 import org.openmrs.module.metadatadeploy.bundle.Requires;
+import org.openmrs.module.metadatadeploy.cluster.DeployCoordinator;
+import org.openmrs.module.metadatadeploy.cluster.DeployEpoch;
+import org.openmrs.module.metadatadeploy.handler.BulkDeployHandler;
+import org.openmrs.module.metadatadeploy.handler.ComparingDeployHandler;
 import org.openmrs.module.metadatadeploy.handler.ObjectDeployHandler;
 import org.openmrs.module.metadatadeploy.handler.ObjectDeployHandlers;
+import org.openmrs.module.metadatadeploy.plan.FieldChange;
+import org.openmrs.module.metadatadeploy.plan.InstallPlan;
+import org.openmrs.module.metadatadeploy.plan.PlannedChange;
+import org.openmrs.module.metadatadeploy.snapshot.MetadataSnapshotWriter;
 import org.openmrs.module.metadatadeploy.source.ObjectSource;
+import org.openmrs.module.metadatadeploy.source.ReadAheadObjectSource;
+import org.openmrs.module.metadatadeploy.stats.DeployPhase;
+import org.openmrs.module.metadatadeploy.stats.DeployTimings;
 import org.openmrs.module.metadatasharing.ImportConfig;
 import org.openmrs.module.metadatasharing.ImportMode;
 import org.openmrs.module.metadatasharing.ImportedPackage;
 import org.openmrs.module.metadatasharing.MetadataSharing;
 import org.openmrs.module.metadatasharing.api.MetadataSharingService;
 import org.openmrs.module.metadatasharing.wrapper.PackageImporter;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.io.IOException;
+import java.sql.SQLException;
+import java.sql.Savepoint;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -50,8 +86,36 @@ public class MetadataDeployServiceImpl extends BaseOpenmrsService implements Met
 
 	protected static final Log log = LogFactory.getLog(MetadataDeployServiceImpl.class);
 
-    
-    
+	private static final Pattern PACKAGE_FILENAME_PATTERN = Pattern.compile("[\\w/-]+-(\\d+).zip");
+
+	private PlatformTransactionManager transactionManager;
+
+	private SessionFactory sessionFactory;
+
+	private ObjectDeployHandlers deployHandlers;
+
+	private AtomicLong objectsSaved = new AtomicLong();
+
+	private AtomicLong objectsUnchanged = new AtomicLong();
+
+	private DeployTimings timings = DeployTimings.getInstance();
+
+	/**
+	 * Sets the transaction manager used when bundles are installed in their own transactions
+	 * @param transactionManager the transaction manager
+	 */
+	public void setTransactionManager(PlatformTransactionManager transactionManager) {
+		this.transactionManager = transactionManager;
+	}
+
+	/**
+	 * Sets the session factory used to suspend flushing while planning
+	 * @param sessionFactory the session factory
+	 */
+	public void setSessionFactory(SessionFactory sessionFactory) {
+		this.sessionFactory = sessionFactory;
+	}
+
 	/**
 	 * @see MetadataDeployService#installBundles(java.util.Collection)
 	 */
@@ -63,10 +127,316 @@ public class MetadataDeployServiceImpl extends BaseOpenmrsService implements Met
 			all.put(bundle.getClass(), bundle);
 		}
 
+		long savedBefore = objectsSaved.get(), unchangedBefore = objectsUnchanged.get();
+		DeployTimings.Snapshot timingsBefore = timings.snapshot();
+
+		// Check the state of all packages at once rather than as each is installed
+		PackageChecks outerChecks = PackageChecks.current();
+		if (outerChecks == null) {
+			PackageChecks.setCurrent(PackageChecks.load());
+		}
+
+		// Likewise bundle versions, which are saved together once all bundles are installed. If a bundle fails then the
+		// whole transaction is rolled back, so no versions are saved.
+		BundleVersions outerVersions = BundleVersions.current();
+		BundleVersions versions = outerVersions != null ? outerVersions : BundleVersions.load();
+		BundleVersions.setCurrent(versions);
+
 		// Begin recursive processing
 		Set<MetadataBundle> installed = new HashSet<MetadataBundle>();
+		boolean success = false;
+		try {
+			for (MetadataBundle bundle : bundles) {
+				installBundle(bundle, all, installed);
+			}
+			success = true;
+		}
+		finally {
+			PackageChecks.setCurrent(outerChecks);
+			BundleVersions.setCurrent(outerVersions);
+
+			if (outerVersions == null && !success) {
+				versions.discard();
+			}
+		}
+
+		if (outerVersions == null) {
+			versions.save();
+		}
+
+		log.info("Installed " + installed.size() + " bundles (" + (objectsSaved.get() - savedBefore) + " objects saved, "
+				+ (objectsUnchanged.get() - unchangedBefore) + " objects unchanged)");
+		log.info("Deploy timings: " + timings.summarizeSince(timingsBefore));
+	}
+
+	/**
+	 * @see MetadataDeployService#installBundles(java.util.Collection, int)
+	 */
+	@Override
+	public void installBundles(Collection<MetadataBundle> bundles, int maxThreads) throws APIException {
+		DeployTimings.Snapshot timingsBefore = timings.snapshot();
+
+		ParallelBundleInstaller installer = new ParallelBundleInstaller(new BundleGraph(bundles), transactionManager, maxThreads);
+		installer.setPackageChecks(PackageChecks.load());
+		installer.setBundleVersions(BundleVersions.load());
+		installer.run();
+
+		log.info("Deploy timings: " + timings.summarizeSince(timingsBefore));
+	}
+
+	/**
+	 * @see MetadataDeployService#seedBundles(java.util.Collection, int)
+	 */
+	@Override
+	public void seedBundles(Collection<MetadataBundle> bundles, int batchSize) throws APIException {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("batchSize must be at least 1");
+		}
+
+		// Queries shouldn't flush saved objects one at a time
+		Session session = sessionFactory.getCurrentSession();
+		FlushMode flushMode = session.getFlushMode();
+		session.setFlushMode(FlushMode.MANUAL);
+
+		SeedContext seed = new SeedContext(sessionFactory, batchSize);
+		SeedContext.setCurrent(seed);
+		try {
+			installBundles(bundles);
+			seed.flush();
+		}
+		finally {
+			SeedContext.setCurrent(null);
+			session.setFlushMode(flushMode);
+		}
+	}
+
+	/**
+	 * @see MetadataDeployService#installBundlesWithPreload(java.util.Collection)
+	 */
+	@Override
+	public void installBundlesWithPreload(Collection<MetadataBundle> bundles) throws APIException {
+		PreloadedObjects outer = PreloadedObjects.current();
+		if (outer != null) {
+			installBundles(bundles);
+			return;
+		}
+
+		PreloadedObjects.setCurrent(new PreloadedObjects());
+		try {
+			installBundles(bundles);
+		}
+		finally {
+			PreloadedObjects.setCurrent(null);
+		}
+	}
+
+	/**
+	 * @see MetadataDeployService#installBundlesInGroups(java.util.Collection, int)
+	 */
+	@Override
+	public void installBundlesInGroups(Collection<MetadataBundle> bundles, int groupSize) throws APIException {
+		if (groupSize < 1) {
+			throw new IllegalArgumentException("groupSize must be at least 1");
+		}
+
+		List<MetadataBundle> order = new BundleGraph(bundles).getInstallOrder();
+
+		final Map<Class<? extends MetadataBundle>, MetadataBundle> all = new HashMap<Class<? extends MetadataBundle>, MetadataBundle>();
 		for (MetadataBundle bundle : bundles) {
-			installBundle(bundle, all, installed);
+			all.put(bundle.getClass(), bundle);
+		}
+
+		// Bundles completed by a previous run of the same bundles are treated as installed
+		final CompletedBundles completed = CompletedBundles.load(DeployEpoch.calculateFingerprint(bundles));
+		final Set<MetadataBundle> installed = new HashSet<MetadataBundle>();
+		for (MetadataBundle bundle : order) {
+			if (completed.contains(bundle)) {
+				installed.add(bundle);
+			}
+		}
+		if (!installed.isEmpty()) {
+			log.info("Resuming install of " + order.size() + " bundles after " + installed.size() + " completed bundles");
+		}
+
+		final PackageChecks checks = PackageChecks.load();
+		final BundleVersions versions = BundleVersions.load();
+
+		TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+		transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+		long savedBefore = objectsSaved.get(), unchangedBefore = objectsUnchanged.get();
+		DeployTimings.Snapshot timingsBefore = timings.snapshot();
+		int groups = 0;
+
+		for (int start = 0; start < order.size(); start += groupSize) {
+			final List<MetadataBundle> group = order.subList(start, Math.min(start + groupSize, order.size()));
+
+			transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+				@Override
+				protected void doInTransactionWithoutResult(TransactionStatus status) {
+					BundleVersions groupVersions = versions.share();
+					PackageChecks.setCurrent(checks);
+					BundleVersions.setCurrent(groupVersions);
+					try {
+						List<MetadataBundle> groupInstalled = new ArrayList<MetadataBundle>();
+						for (MetadataBundle bundle : group) {
+							if (!installed.contains(bundle)) {
+								installBundle(bundle, all, installed);
+								groupInstalled.add(bundle);
+							}
+						}
+
+						groupVersions.save();
+						completed.addAll(groupInstalled);
+					}
+					finally {
+						PackageChecks.setCurrent(null);
+						BundleVersions.setCurrent(null);
+					}
+				}
+			});
+
+			// Objects from previous groups aren't needed again, except as references which can be re-fetched
+			clearSession(false);
+			groups++;
+		}
+
+		completed.clear();
+
+		log.info("Installed " + order.size() + " bundles in " + groups + " transactions (" + (objectsSaved.get() - savedBefore)
+				+ " objects saved, " + (objectsUnchanged.get() - unchangedBefore) + " objects unchanged)");
+		log.info("Deploy timings: " + timings.summarizeSince(timingsBefore));
+	}
+
+	/**
+	 * @see MetadataDeployService#installCriticalBundles(java.util.Collection)
+	 */
+	@Override
+	public BundleInstallProgress installCriticalBundles(Collection<MetadataBundle> bundles) throws APIException {
+		BundleGraph graph = new BundleGraph(bundles);
+		List<MetadataBundle> order = graph.getInstallOrder();
+
+		// Bundles required by critical bundles are also critical. Dependents come later in the install order, so visit
+		// bundles in reverse to see whether any dependents are critical.
+		Set<MetadataBundle> critical = new HashSet<MetadataBundle>();
+		for (int b = order.size() - 1; b >= 0; --b) {
+			MetadataBundle bundle = order.get(b);
+			if (BundlePhase.of(bundle) == BundlePhase.CRITICAL || !Collections.disjoint(graph.getDependents(bundle), critical)) {
+				critical.add(bundle);
+			}
+		}
+
+		List<MetadataBundle> criticalInOrder = new ArrayList<MetadataBundle>();
+		for (MetadataBundle bundle : order) {
+			if (critical.contains(bundle)) {
+				criticalInOrder.add(bundle);
+			}
+		}
+
+		installBundles(criticalInOrder);
+
+		DeferredBundleInstaller deferredInstaller = DeferredBundleInstaller.getInstance();
+		if (critical.size() < order.size()) {
+			deferredInstaller.schedule(graph, critical, transactionManager);
+		}
+		return deferredInstaller.getProgress();
+	}
+
+	/**
+	 * @see MetadataDeployService#getDeferredInstallProgress()
+	 */
+	@Override
+	public BundleInstallProgress getDeferredInstallProgress() {
+		return DeferredBundleInstaller.getInstance().getProgress();
+	}
+
+	/**
+	 * @see MetadataDeployService#deployBundles(java.util.Collection)
+	 */
+	@Override
+	public boolean deployBundles(final Collection<MetadataBundle> bundles) throws APIException {
+		AdministrationService administrationService = Context.getAdministrationService();
+		long leaseSeconds = NumberUtils.toLong(administrationService.getGlobalProperty(DeployCoordinator.GP_LEASE_SECONDS), DeployCoordinator.DEFAULT_LEASE_SECONDS);
+		long waitSeconds = NumberUtils.toLong(administrationService.getGlobalProperty(DeployCoordinator.GP_WAIT_SECONDS), DeployCoordinator.DEFAULT_WAIT_SECONDS);
+
+		DeployCoordinator coordinator = new DeployCoordinator(sessionFactory, transactionManager, leaseSeconds * 1000, waitSeconds * 1000);
+		return coordinator.deploy(bundles, new Runnable() {
+			@Override
+			public void run() {
+				installBundles(bundles);
+			}
+		});
+	}
+
+	/**
+	 * @see MetadataDeployService#planBundles(java.util.Collection)
+	 */
+	@Override
+	public InstallPlan planBundles(Collection<MetadataBundle> bundles) throws APIException {
+		Map<Class<? extends MetadataBundle>, MetadataBundle> all = new HashMap<Class<? extends MetadataBundle>, MetadataBundle>();
+		for (MetadataBundle bundle : bundles) {
+			all.put(bundle.getClass(), bundle);
+		}
+
+		// Pending changes which aren't part of the plan shouldn't be discarded with those that are
+		Session session = sessionFactory.getCurrentSession();
+		session.flush();
+
+		// Writes which bypass the plan, e.g. by bundles calling core services directly, or saves of objects which are
+		// inserted immediately to generate their id, must still never be committed
+		Savepoint savepoint = setSavepoint(session);
+
+		FlushMode flushMode = session.getFlushMode();
+		session.setFlushMode(FlushMode.MANUAL);
+
+		InstallPlan plan = new InstallPlan();
+		InstallPlan.setCurrent(plan);
+		try {
+			Set<MetadataBundle> installed = new HashSet<MetadataBundle>();
+			for (MetadataBundle bundle : bundles) {
+				installBundle(bundle, all, installed);
+			}
+		}
+		finally {
+			InstallPlan.setCurrent(null);
+			plan.finish();
+
+			session.clear();
+			session.setFlushMode(flushMode);
+			rollbackToSavepoint(session, savepoint);
+		}
+
+		log.info("Planned install of " + bundles.size() + " bundles in " + plan.getDurationMillis() + "ms (" + plan + ")");
+		return plan;
+	}
+
+	/**
+	 * Sets a savepoint in the current transaction
+	 * @param session the current session
+	 * @return the savepoint
+	 * @throws APIException if savepoints aren't supported
+	 */
+	protected Savepoint setSavepoint(Session session) throws APIException {
+		try {
+			return session.connection().setSavepoint();
+		}
+		catch (SQLException ex) {
+			throw new APIException("Unable to set savepoint", ex);
+		}
+	}
+
+	/**
+	 * Rolls back all changes made in the current transaction since the given savepoint
+	 * @param session the current session
+	 * @param savepoint the savepoint
+	 * @throws APIException if the rollback fails
+	 */
+	protected void rollbackToSavepoint(Session session, Savepoint savepoint) throws APIException {
+		try {
+			session.connection().rollback(savepoint);
+		}
+		catch (SQLException ex) {
+			throw new APIException("Unable to roll back to savepoint", ex);
 		}
 	}
 
@@ -93,6 +463,8 @@ public class MetadataDeployServiceImpl extends BaseOpenmrsService implements Met
 			return;
 		}
 
+		// References fetched by the bundle and its required bundles are memoized until the outermost install ends
+		ResolutionContext.begin();
 		try {
 			// Install required bundles first
 			Requires requires = bundle.getClass().getAnnotation(Requires.class);
@@ -108,35 +480,88 @@ public class MetadataDeployServiceImpl extends BaseOpenmrsService implements Met
 				}
 			}
 
-			bundle.install();
+			InstallPlan plan = InstallPlan.current();
+			if (plan != null) {
+				plan.setCurrentBundle(bundle.getClass().getName());
+				bundle.install();
+				installed.add(bundle);
+				return;
+			}
+
+			SeedContext seed = SeedContext.current();
+			if (seed != null) {
+				seed.invalidate();
+			}
+
+			timings.beginBundle();
+			try {
+				bundle.install();
+			}
+			finally {
+				timings.endBundle(bundle);
+			}
 			installed.add(bundle);
 
+			long start = System.nanoTime();
 			Context.flushSession();
+			timings.record(null, DeployPhase.FLUSH, start, 0);
 		}
 		catch (Exception ex) {
 			throw new APIException("Unable to install bundle " + bundle.getClass().getSimpleName(), ex);
 		}
+		finally {
+			ResolutionContext.end();
+		}
 	}
 
 	/**
 	 * @see MetadataDeployService#installPackage(String, ClassLoader, String)
 	 */
 	public boolean installPackage(String filename, ClassLoader loader, String groupUuid, ImportMode importMode) throws APIException {
-		Matcher matcher = Pattern.compile("[\\w/-]+-(\\d+).zip").matcher(filename);
+		Matcher matcher = PACKAGE_FILENAME_PATTERN.matcher(filename);
 		if (!matcher.matches()) {
 			throw new APIException("Filename must match PackageNameWithNoSpaces-X.zip");
 		}
 
 		Integer version = Integer.valueOf(matcher.group(1));
 
-		ImportedPackage installed = Context.getService(MetadataSharingService.class).getImportedPackageByGroup(groupUuid);
-		if (installed != null && installed.getVersion() >= version && installed.getDateImported() != null) {
+		if (loader.getResource(filename) == null) {
+			throw new APIException("Cannot load " + filename + " for group " + groupUuid);
+		}
+
+		PackageChecks checks = PackageChecks.current();
+		ImportedPackage installed = checks != null ? checks.getImportedPackage(groupUuid)
+				: Context.getService(MetadataSharingService.class).getImportedPackageByGroup(groupUuid);
+		boolean imported = installed != null && installed.getDateImported() != null;
+
+		// Identical bytes to those last imported don't need to be read by the importer
+		String checksum = calculateChecksum(loader, filename);
+		if (imported && checksum.equals(getPackageChecksum(checks, groupUuid))) {
+			log.info("Metadata package " + filename + " is already installed with the same content");
+			return false;
+		}
+
+		InstallPlan plan = InstallPlan.current();
+
+		if (imported && installed.getVersion() >= version) {
 			log.info("Metadata package " + filename + " is already installed with version " + installed.getVersion());
+
+			if (plan == null) {
+				setPackageChecksum(checks, groupUuid, checksum);
+			}
 			return false;
 		}
 
-		if (loader.getResource(filename) == null) {
-			throw new APIException("Cannot load " + filename + " for group " + groupUuid);
+		if (plan != null) {
+			plan.addNote("Metadata package " + filename + " would be imported");
+			return true;
+		}
+
+		// The importer doesn't know about objects pending in a seed, and saves objects which weren't installed
+		SeedContext seed = SeedContext.current();
+		if (seed != null) {
+			seed.flush();
+			seed.invalidate();
 		}
 
 		try {
@@ -144,15 +569,83 @@ public class MetadataDeployServiceImpl extends BaseOpenmrsService implements Met
 			metadataImporter.setImportConfig(ImportConfig.valueOf(importMode));
 			metadataImporter.loadSerializedPackageStream(loader.getResourceAsStream(filename));
 			metadataImporter.importPackage();
-
-			log.debug("Loaded metadata package '" + filename + "'");
-			return true;
-
 		} catch (Exception ex) {
 			throw new APIException("Failed to install metadata package " + filename, ex);
 		}
+
+		if (seed != null) {
+			seed.flush();
+		}
+
+		PreloadedObjects preloaded = PreloadedObjects.current();
+		if (preloaded != null) {
+			preloaded.invalidateAll();
+		}
+
+		setPackageChecksum(checks, groupUuid, checksum);
+		if (checks != null) {
+			checks.setImportedPackage(groupUuid, Context.getService(MetadataSharingService.class).getImportedPackageByGroup(groupUuid));
+		}
+
+		log.debug("Loaded metadata package '" + filename + "'");
+		return true;
+	}
+
+	/**
+	 * Calculates the checksum of a package resource
+	 * @param loader the class loader
+	 * @param filename the package filename
+	 * @return the checksum
+	 * @throws APIException if the resource can't be read
+	 */
+	protected String calculateChecksum(ClassLoader loader, String filename) throws APIException {
+		BundleFingerprint checksum = new BundleFingerprint();
+		try {
+			checksum.add(loader.getResourceAsStream(filename));
+		}
+		catch (IOException ex) {
+			throw new APIException("Cannot read " + filename, ex);
+		}
+		return checksum.getValue();
 	}
 
+	/**
+	 * Gets the checksum of the last imported resource of a package
+	 * @param checks the current package checks (may be null)
+	 * @param groupUuid the package group UUID
+	 * @return the checksum or null
+	 */
+	protected String getPackageChecksum(PackageChecks checks, String groupUuid) {
+		if (checks != null) {
+			return checks.getChecksum(groupUuid);
+		}
+		return Context.getAdministrationService().getGlobalProperty(PackageChecks.CHECKSUM_GP_PREFIX + groupUuid);
+	}
+
+	/**
+	 * Records the checksum of the last imported resource of a package
+	 * @param checks the current package checks (may be null)
+	 * @param groupUuid the package group UUID
+	 * @param checksum the checksum
+	 */
+	protected void setPackageChecksum(PackageChecks checks, String groupUuid, String checksum) {
+		if (checksum.equals(getPackageChecksum(checks, groupUuid))) {
+			return;
+		}
+
+		AdministrationService administrationService = Context.getAdministrationService();
+		String property = PackageChecks.CHECKSUM_GP_PREFIX + groupUuid;
+		GlobalProperty gp = administrationService.getGlobalPropertyObject(property);
+		if (gp == null) {
+			gp = new GlobalProperty(property, null, "Checksum of the last imported resource of a metadata package");
+		}
+		gp.setPropertyValue(checksum);
+		administrationService.saveGlobalProperty(gp);
+
+		if (checks != null) {
+			checks.setChecksum(groupUuid, checksum);
+		}
+	}
 
     /**
      * @see MetadataDeployService#installPackage(String, ClassLoader, String)
@@ -169,28 +662,128 @@ public class MetadataDeployServiceImpl extends BaseOpenmrsService implements Met
 		ObjectDeployHandler<T> handler = getHandler(incoming);
 
 		// Get globally unique identifier
-		String identifier = handler.getIdentifier(incoming);
+		String identifier = getIdentifier(handler, incoming);
 
-		if (identifier == null) {
-			throw new APIException("Can't install object with no identifier");
+		InstallPlan plan = InstallPlan.current();
+		if (plan != null) {
+			return planInstall(plan, handler, identifier, incoming);
+		}
+
+		SeedContext seed = SeedContext.current();
+		PreloadedObjects preloaded = getPreloaded(handler);
+		T existing = null;
+		long start;
+
+		// When seeding, objects of types with no existing rows can't have an existing match
+		if (seed == null || !seed.isNew(handler, incoming.getClass(), identifier)) {
+			// Look for existing by primary identifier (i.e. exact match)
+			start = System.nanoTime();
+			existing = preloaded != null ? preloaded.fetch(handler, identifier) : handler.fetch(identifier);
+			timings.record(handler, DeployPhase.FETCH, start, 1);
+
+			// If no exact match, look for another existing item that should be replaced
+			if (existing == null) {
+				start = System.nanoTime();
+				existing = preloaded != null ? preloaded.findAlternateMatch(handler, incoming) : handler.findAlternateMatch(incoming);
+				timings.record(handler, DeployPhase.ALTERNATE_MATCH, start, 1);
+			}
 		}
 
-		// Look for existing by primary identifier (i.e. exact match)
-		T existing = handler.fetch(identifier);
+		start = System.nanoTime();
+		T toSave = prepareInstall(handler, incoming, existing);
+		timings.record(handler, DeployPhase.OVERWRITE, start, 1);
 
-		// If no exact match, look for another existing item that should be replaced
+		T installed;
+		if (toSave == null) {
+			installed = existing;
+		}
+		else {
+			start = System.nanoTime();
+			installed = handler.save(toSave);
+			timings.record(handler, DeployPhase.SAVE, start, 1);
+
+			if (preloaded != null) {
+				preloaded.saved(handler, Collections.singletonList(installed));
+			}
+		}
+
+		if (seed != null) {
+			seed.installed(handler, Collections.singleton(identifier), toSave != null ? 1 : 0);
+		}
+
+		captureInstalled(Collections.singletonList(installed));
+		return installed;
+	}
+
+	/**
+	 * Plans the installation of an object by comparing it with the existing object if there is one
+	 * @param plan the plan
+	 * @param handler the handler
+	 * @param identifier the object identifier
+	 * @param incoming the incoming object
+	 * @return the existing object if there is one, otherwise the incoming object
+	 */
+	protected <T extends OpenmrsObject> T planInstall(InstallPlan plan, ObjectDeployHandler<T> handler, String identifier, T incoming) {
+		T existing = plan.getCreated(handler, identifier);
+		if (existing == null) {
+			existing = handler.fetch(identifier);
+		}
 		if (existing == null) {
 			existing = handler.findAlternateMatch(incoming);
 		}
 
-		if (existing != null) {
-			handler.overwrite(incoming, existing);
-
-			return handler.save(existing);
+		if (existing == null) {
+			plan.addCreated(handler, identifier, incoming);
+			plan.record(PlannedChange.Action.CREATE, incoming.getClass(), identifier, null);
+			return incoming;
+		}
+		else if (!updateRequired(handler, incoming, existing)) {
+			plan.record(PlannedChange.Action.UNCHANGED, existing.getClass(), identifier, null);
 		}
 		else {
-			return handler.save(incoming);
+			plan.record(PlannedChange.Action.UPDATE, existing.getClass(), identifier, getChangedFields(incoming, existing));
 		}
+		return existing;
+	}
+
+	/**
+	 * Gets the fields which overwriting an existing object would change. Like the handlers, this ignores the incoming
+	 * object's id as the existing id is re-instated after an overwrite.
+	 * @param incoming the incoming object
+	 * @param existing the existing object
+	 * @return the changed fields
+	 */
+	protected <T extends OpenmrsObject> List<FieldChange> getChangedFields(T incoming, T existing) {
+		boolean usesId = ObjectUtils.usesId(incoming);
+		Integer incomingId = usesId ? incoming.getId() : null;
+
+		if (usesId) {
+			incoming.setId(existing.getId());
+		}
+		try {
+			return ObjectUtils.changedFields(incoming, existing, null);
+		}
+		finally {
+			if (usesId) {
+				incoming.setId(incomingId);
+			}
+		}
+	}
+
+	/**
+	 * Plans the saving of an object which has been modified or created by a bundle
+	 * @param plan the plan
+	 * @param handler the handler
+	 * @param obj the object
+	 */
+	protected <T extends OpenmrsObject> void planSave(InstallPlan plan, ObjectDeployHandler<T> handler, T obj) {
+		String identifier = handler.getIdentifier(obj);
+		boolean exists = identifier != null && (plan.getCreated(handler, identifier) != null || handler.fetch(identifier) != null);
+
+		if (!exists && identifier != null) {
+			plan.addCreated(handler, identifier, obj);
+		}
+		plan.record(exists ? PlannedChange.Action.UPDATE : PlannedChange.Action.CREATE, obj.getClass(), identifier, null);
 	}
 
 	/**
@@ -208,10 +801,374 @@ public class MetadataDeployServiceImpl extends BaseOpenmrsService implements Met
 			return installed;
 		}
 		catch (Exception ex) {
-			throw new APIException("Unable to install objects from " + source.getClass().getSimpleName());
+			throw new APIException("Unable to install objects from " + source.getClass().getSimpleName(), ex);
+		}
+	}
+
+	/**
+	 * @see MetadataDeployService#installFromSource(org.openmrs.module.metadatadeploy.source.ObjectSource, int)
+	 */
+	@Override
+	public <T extends OpenmrsObject> List<T> installFromSource(ObjectSource<T> source, int readAhead) throws APIException {
+		return installFromSource(source, readAhead, 1);
+	}
+
+	/**
+	 * @see MetadataDeployService#installFromSource(org.openmrs.module.metadatadeploy.source.ObjectSource, int, int)
+	 */
+	@Override
+	public <T extends OpenmrsObject> List<T> installFromSource(ObjectSource<T> source, int readAhead, int batchSize) throws APIException {
+		if (readAhead <= 0) {
+			return batchSize > 1 ? installFromSourceInBatches(source, batchSize) : installFromSource(source);
+		}
+
+		ReadAheadObjectSource<T> readAheadSource = new ReadAheadObjectSource<T>(source, readAhead);
+		try {
+			return batchSize > 1 ? installFromSourceInBatches(readAheadSource, batchSize) : installFromSource(readAheadSource);
+		}
+		finally {
+			readAheadSource.close();
+		}
+	}
+
+	/**
+	 * Installs all objects from the given source in batches
+	 * @param source the object source
+	 * @param batchSize the maximum number of objects in each batch
+	 * @return the list of installed objects
+	 * @throws APIException if an error occurs
+	 */
+	protected <T extends OpenmrsObject> List<T> installFromSourceInBatches(ObjectSource<T> source, int batchSize) throws APIException {
+		List<T> installed = new ArrayList<T>();
+		List<T> batch = new ArrayList<T>();
+		Set<String> batchIdentifiers = new HashSet<String>();
+		T incoming;
+
+		try {
+			while ((incoming = source.fetchNext()) != null) {
+				String identifier = getIdentifier(getHandler(incoming), incoming);
+
+				// An object can't be installed in the same batch as a previous object that it should replace
+				if (batch.size() >= batchSize || batchIdentifiers.contains(identifier)) {
+					installed.addAll(installBatch(batch));
+					batch.clear();
+					batchIdentifiers.clear();
+				}
+
+				batch.add(incoming);
+				batchIdentifiers.add(identifier);
+			}
+
+			installed.addAll(installBatch(batch));
+			return installed;
+		}
+		catch (Exception ex) {
+			throw new APIException("Unable to install objects from " + source.getClass().getSimpleName(), ex);
+		}
+	}
+
+	/**
+	 * Installs a batch of objects. Existing objects are fetched and objects are saved in bulk, for each handler. Objects
+	 * are installed as if one at a time, so objects which have no existing match are saved before the next alternate
+	 * match is looked for, as they may be the match.
+	 * @param batch the incoming objects
+	 * @return the installed objects in the same order
+	 */
+	protected <T extends OpenmrsObject> List<T> installBatch(List<T> batch) {
+		if (InstallPlan.current() != null) {
+			List<T> installed = new ArrayList<T>();
+			for (T incoming : batch) {
+				installed.add(installObject(incoming));
+			}
+			return installed;
+		}
+
+		// Group positions in the batch by handler so results can be returned in the original order
+		Map<ObjectDeployHandler<T>, List<Integer>> positionsByHandler = new LinkedHashMap<ObjectDeployHandler<T>, List<Integer>>();
+		for (int p = 0; p < batch.size(); ++p) {
+			ObjectDeployHandler<T> handler = getHandler(batch.get(p));
+			List<Integer> positions = positionsByHandler.get(handler);
+			if (positions == null) {
+				positions = new ArrayList<Integer>();
+				positionsByHandler.put(handler, positions);
+			}
+			positions.add(p);
+		}
+
+		List<T> installed = new ArrayList<T>(Collections.<T>nCopies(batch.size(), null));
+		SeedContext seed = SeedContext.current();
+
+		for (Map.Entry<ObjectDeployHandler<T>, List<Integer>> entry : positionsByHandler.entrySet()) {
+			ObjectDeployHandler<T> handler = entry.getKey();
+			List<Integer> positions = entry.getValue();
+			PreloadedObjects preloaded = getPreloaded(handler);
+
+			List<String> identifiers = new ArrayList<String>();
+			for (Integer p : positions) {
+				identifiers.add(handler.getIdentifier(batch.get(p)));
+			}
+
+			// When seeding, objects of types with no existing rows can't have existing matches
+			boolean allNew = seed != null;
+			for (int i = 0; allNew && i < positions.size(); ++i) {
+				allNew = seed.isNew(handler, batch.get(positions.get(i)).getClass(), identifiers.get(i));
+			}
+
+			long start;
+			Map<String, T> existingByIdentifier = Collections.emptyMap();
+			if (!allNew) {
+				start = System.nanoTime();
+				existingByIdentifier = preloaded != null ? preloaded.fetchAll(handler, identifiers) : fetchAll(handler, identifiers);
+				timings.record(handler, DeployPhase.FETCH, start, identifiers.size());
+			}
+
+			List<T> toSave = new ArrayList<T>();
+			List<Integer> toSavePositions = new ArrayList<Integer>();
+			int savedCount = 0;
+
+			for (int i = 0; i < positions.size(); ++i) {
+				T incoming = batch.get(positions.get(i));
+				T existing = existingByIdentifier.get(identifiers.get(i));
+
+				// An earlier object in the batch may have been merged into the fetched object, changing its identifier
+				if (existing != null && !identifiers.get(i).equals(handler.getIdentifier(existing))) {
+					existing = null;
+				}
+
+				if (existing == null && !allNew) {
+					// An earlier object in the batch may be the alternate match, so it has to be saved before looking
+					savedCount += saveBatchObjects(handler, toSave, toSavePositions, installed, preloaded);
+
+					start = System.nanoTime();
+					existing = preloaded != null ? preloaded.findAlternateMatch(handler, incoming) : handler.findAlternateMatch(incoming);
+					timings.record(handler, DeployPhase.ALTERNATE_MATCH, start, 1);
+				}
+
+				start = System.nanoTime();
+				T obj = prepareInstall(handler, incoming, existing);
+				timings.record(handler, DeployPhase.OVERWRITE, start, 1);
+				if (obj != null && !toSave.contains(obj)) {
+					toSave.add(obj);
+					toSavePositions.add(positions.get(i));
+				}
+				else {
+					installed.set(positions.get(i), existing);
+				}
+			}
+
+			savedCount += saveBatchObjects(handler, toSave, toSavePositions, installed, preloaded);
+
+			if (seed != null) {
+				seed.installed(handler, identifiers, savedCount);
+			}
+		}
+
+		captureInstalled(installed);
+		return installed;
+	}
+
+	/**
+	 * Saves the pending objects of a batch and clears them
+	 * @param handler the handler
+	 * @param toSave the objects to save
+	 * @param toSavePositions the positions of the objects to save in the batch
+	 * @param installed the installed objects of the batch, which are set to the saved objects
+	 * @param preloaded the preloaded objects (may be null)
+	 * @return the number of objects saved
+	 */
+	protected <T extends OpenmrsObject> int saveBatchObjects(ObjectDeployHandler<T> handler, List<T> toSave, List<Integer> toSavePositions, List<T> installed, PreloadedObjects preloaded) {
+		if (toSave.isEmpty()) {
+			return 0;
+		}
+
+		long start = System.nanoTime();
+		List<T> saved = saveAll(handler, toSave);
+		timings.record(handler, DeployPhase.SAVE, start, toSave.size());
+		for (int i = 0; i < saved.size(); ++i) {
+			installed.set(toSavePositions.get(i), saved.get(i));
+		}
+		if (preloaded != null) {
+			preloaded.saved(handler, saved);
+		}
+
+		int count = toSave.size();
+		toSave.clear();
+		toSavePositions.clear();
+		return count;
+	}
+
+	/**
+	 * Fetches objects by primary identifier, together if the handler supports it
+	 * @param handler the handler
+	 * @param identifiers the identifiers
+	 * @return the map of identifiers to objects, which doesn't contain identifiers with no object
+	 */
+	protected <T extends OpenmrsObject> Map<String, T> fetchAll(ObjectDeployHandler<T> handler, Collection<String> identifiers) {
+		if (handler instanceof BulkDeployHandler) {
+			return ((BulkDeployHandler<T>) handler).fetchAll(identifiers);
+		}
+
+		Map<String, T> fetched = new HashMap<String, T>();
+		for (String identifier : identifiers) {
+			T obj = handler.fetch(identifier);
+			if (obj != null) {
+				fetched.put(identifier, obj);
+			}
+		}
+		return fetched;
+	}
+
+	/**
+	 * Saves objects, together if the handler supports it
+	 * @param handler the handler
+	 * @param objs the objects to save
+	 * @return the saved objects in the same order
+	 */
+	protected <T extends OpenmrsObject> List<T> saveAll(ObjectDeployHandler<T> handler, List<T> objs) {
+		if (handler instanceof BulkDeployHandler) {
+			return ((BulkDeployHandler<T>) handler).saveAll(objs);
+		}
+
+		List<T> saved = new ArrayList<T>(objs.size());
+		for (T obj : objs) {
+			saved.add(handler.save(obj));
+		}
+		return saved;
+	}
+
+	/**
+	 * Writes installed objects to the snapshot being captured on the current thread, if there is one
+	 * @param installed the installed objects
+	 * @throws APIException if objects can't be written
+	 */
+	protected void captureInstalled(List<? extends OpenmrsObject> installed) throws APIException {
+		MetadataSnapshotWriter writer = MetadataSnapshotWriter.current();
+		if (writer == null) {
+			return;
+		}
+
+		try {
+			for (OpenmrsObject obj : installed) {
+				writer.write(obj);
+			}
+		}
+		catch (IOException ex) {
+			throw new APIException("Unable to write installed objects to snapshot", ex);
+		}
+	}
+
+	/**
+	 * Invalidates objects which have been cached or memoized for lookups, because objects of the given class are being
+	 * changed. Otherwise a lookup could return an object which no longer has the looked up identifier.
+	 * @param clazz the class
+	 */
+	protected void invalidateLookups(Class<?> clazz) {
+		MetadataUtils.getLookupCache().invalidate(clazz);
+		ResolutionContext.invalidateCurrent(clazz);
+	}
+
+	/**
+	 * @see MetadataDeployService#clearSession()
+	 */
+	@Override
+	public void clearSession() {
+		clearSession(true);
+	}
+
+	/**
+	 * Clears the session. Objects memoized on the current thread would be detached, so they are dropped too.
+	 * @param flush whether to flush the session first
+	 */
+	protected void clearSession(boolean flush) {
+		if (flush) {
+			Context.flushSession();
+		}
+		Context.clearSession();
+		ResolutionContext.clearCurrent();
+
+		PreloadedObjects preloaded = PreloadedObjects.current();
+		if (preloaded != null) {
+			preloaded.invalidateAll();
+		}
+	}
+
+	/**
+	 * Forgets which tables were empty if seeding on the current thread, because objects are being saved which may not
+	 * have been installed
+	 */
+	protected void invalidateSeed() {
+		SeedContext seed = SeedContext.current();
+		if (seed != null) {
+			seed.invalidate();
+		}
+	}
+
+	/**
+	 * Gets the existing objects preloaded on the current thread, if there are any for the given handler
+	 * @param handler the handler
+	 * @return the preloaded objects or null
+	 */
+	protected PreloadedObjects getPreloaded(ObjectDeployHandler<?> handler) {
+		PreloadedObjects preloaded = PreloadedObjects.current();
+		return preloaded != null && preloaded.supports(handler) ? preloaded : null;
+	}
+
+	/**
+	 * Prepares an incoming object for installation by overwriting the existing object if there is one
+	 * @param handler the handler
+	 * @param incoming the incoming object
+	 * @param existing the existing object (may be null)
+	 * @return the object to save or null if the existing object is unchanged
+	 */
+	protected <T extends OpenmrsObject> T prepareInstall(ObjectDeployHandler<T> handler, T incoming, T existing) {
+		if (existing != null) {
+			// Avoid saving existing objects which wouldn't be changed
+			if (!updateRequired(handler, incoming, existing)) {
+				objectsUnchanged.incrementAndGet();
+				return null;
+			}
+
+			handler.overwrite(incoming, existing);
+
+			objectsSaved.incrementAndGet();
+			invalidateLookups(existing.getClass());
+			return existing;
+		}
+		else {
+			objectsSaved.incrementAndGet();
+			invalidateLookups(incoming.getClass());
+			return incoming;
 		}
 	}
 
+	/**
+	 * Checks whether overwriting an existing object with an incoming object would change it. Handlers which can't
+	 * compare objects are assumed to always change them.
+	 * @param handler the handler
+	 * @param incoming the incoming object
+	 * @param existing the existing object
+	 * @return true if the existing object needs to be overwritten and saved
+	 */
+	protected <T extends OpenmrsObject> boolean updateRequired(ObjectDeployHandler<T> handler, T incoming, T existing) {
+		return !(handler instanceof ComparingDeployHandler) || ((ComparingDeployHandler<T>) handler).updateRequired(incoming, existing);
+	}
+
+	/**
+	 * Gets the identifier of an object to be installed
+	 * @param handler the handler
+	 * @param obj the object
+	 * @return the identifier
+	 * @throws APIException if object has no identifier
+	 */
+	protected <T extends OpenmrsObject> String getIdentifier(ObjectDeployHandler<T> handler, T obj) throws APIException {
+		String identifier = handler.getIdentifier(obj);
+
+		if (identifier == null) {
+			throw new APIException("Can't install object with no identifier");
+		}
+		return identifier;
+	}
+
 	/**
 	 * @see MetadataDeployService#uninstallObject(org.openmrs.OpenmrsObject, String)
 	 */
@@ -219,7 +1176,20 @@ public class MetadataDeployServiceImpl extends BaseOpenmrsService implements Met
 	public <T extends OpenmrsObject> void uninstallObject(T outgoing, String reason) {
 		ObjectDeployHandler<T> handler = getHandler(outgoing);
 
+		InstallPlan plan = InstallPlan.current();
+		if (plan != null) {
+			plan.record(PlannedChange.Action.RETIRE, outgoing.getClass(), handler.getIdentifier(outgoing), null);
+			return;
+		}
+
 		handler.uninstall(outgoing, reason);
+		invalidateLookups(outgoing.getClass());
+
+		// Handlers may retire or purge, so the preloaded objects are reloaded
+		PreloadedObjects preloaded = getPreloaded(handler);
+		if (preloaded != null) {
+			preloaded.invalidate(handler);
+		}
 	}
 
 	/**
@@ -228,6 +1198,19 @@ public class MetadataDeployServiceImpl extends BaseOpenmrsService implements Met
 	@Override
 	public <T extends OpenmrsObject> T fetchObject(Class<T> clazz, String identifier) {
 		ObjectDeployHandler<T> handler = getHandler(clazz);
+
+		InstallPlan plan = InstallPlan.current();
+		if (plan != null) {
+			T created = plan.getCreated(handler, identifier);
+			if (created != null) {
+				return created;
+			}
+		}
+
+		PreloadedObjects preloaded = getPreloaded(handler);
+		if (preloaded != null) {
+			return preloaded.fetch(handler, identifier);
+		}
 		return handler.fetch(identifier);
 	}
 
@@ -237,7 +1220,66 @@ public class MetadataDeployServiceImpl extends BaseOpenmrsService implements Met
 	@Override
 	public <T extends OpenmrsObject> T saveObject(T obj) {
 		ObjectDeployHandler<T> handler = getHandler(obj);
-		return handler.save(obj);
+
+		InstallPlan plan = InstallPlan.current();
+		if (plan != null) {
+			planSave(plan, handler, obj);
+			return obj;
+		}
+
+		invalidateLookups(obj.getClass());
+		invalidateSeed();
+
+		T saved = handler.save(obj);
+		PreloadedObjects preloaded = getPreloaded(handler);
+		if (preloaded != null) {
+			preloaded.saved(handler, Collections.singletonList(saved));
+		}
+		return saved;
+	}
+
+	/**
+	 * @see MetadataDeployService#saveObjects(java.util.List)
+	 */
+	@Override
+	public <T extends OpenmrsObject> List<T> saveObjects(List<T> objs) {
+		List<T> saved = new ArrayList<T>(objs);
+
+		InstallPlan plan = InstallPlan.current();
+		if (plan != null) {
+			for (T obj : objs) {
+				planSave(plan, getHandler(obj), obj);
+			}
+			return saved;
+		}
+
+		invalidateSeed();
+
+		// Save runs of objects with the same handler together, so that the order of saves is preserved
+		int from = 0;
+		while (from < objs.size()) {
+			ObjectDeployHandler<T> handler = getHandler(objs.get(from));
+			int to = from + 1;
+			while (to < objs.size() && getHandler(objs.get(to)) == handler) {
+				++to;
+			}
+
+			for (T obj : objs.subList(from, to)) {
+				invalidateLookups(obj.getClass());
+			}
+
+			List<T> savedRun = saveAll(handler, objs.subList(from, to));
+			for (int i = 0; i < savedRun.size(); ++i) {
+				saved.set(from + i, savedRun.get(i));
+			}
+
+			PreloadedObjects preloaded = getPreloaded(handler);
+			if (preloaded != null) {
+				preloaded.saved(handler, savedRun);
+			}
+			from = to;
+		}
+		return saved;
 	}
 
 	/**
@@ -247,8 +1289,36 @@ public class MetadataDeployServiceImpl extends BaseOpenmrsService implements Met
 	public <T extends OpenmrsObject> void overwriteObject(T source, T target) {
 		ObjectDeployHandler<T> handler = getHandler(source);
 
+		InstallPlan plan = InstallPlan.current();
+		if (plan != null) {
+			plan.record(PlannedChange.Action.UPDATE, target.getClass(), handler.getIdentifier(target), getChangedFields(source, target));
+			return;
+		}
+
 		handler.overwrite(source, target);
-		handler.save(target);
+		invalidateLookups(target.getClass());
+		T saved = handler.save(target);
+
+		PreloadedObjects preloaded = getPreloaded(handler);
+		if (preloaded != null) {
+			preloaded.saved(handler, Collections.singletonList(saved));
+		}
+	}
+
+	/**
+	 * Gets the number of objects which have been saved by installObject
+	 * @return the number of objects
+	 */
+	public long getObjectsSaved() {
+		return objectsSaved.get();
+	}
+
+	/**
+	 * Gets the number of objects which weren't saved by installObject because they matched an unchanged existing object
+	 * @return the number of objects
+	 */
+	public long getObjectsUnchanged() {
+		return objectsUnchanged.get();
 	}
 
 	/**
@@ -268,15 +1338,24 @@ public class MetadataDeployServiceImpl extends BaseOpenmrsService implements Met
 	 * @throws RuntimeException if no suitable handler exists
 	 */
 	protected <T extends OpenmrsObject> ObjectDeployHandler<T> getHandler(Class<T> clazz) throws RuntimeException {
-        // assumes there is only one ObjectDeployHandlers component
-		ObjectDeployHandler<T> handler = Context.getRegisteredComponents(ObjectDeployHandlers.class).get(0).getHandlers().get(clazz);
+		ObjectDeployHandler<T> handler = getDeployHandlers().getHandler(clazz);
 		if (handler != null) {
 			return handler;
 		}
-		if (clazz.getSimpleName().contains("_$$")) {
-			return getHandler((Class<T>) clazz.getSuperclass());
-		}
 
 		throw new RuntimeException("No handler class found for " + clazz.getName());
 	}
+
+	/**
+	 * Gets the component which stores all the object deploy handlers. This is looked up once and kept, as this service
+	 * is itself re-created whenever the context is refreshed.
+	 * @return the handlers component
+	 */
+	protected ObjectDeployHandlers getDeployHandlers() {
+		if (deployHandlers == null) {
+			// assumes there is only one ObjectDeployHandlers component
+			deployHandlers = Context.getRegisteredComponents(ObjectDeployHandlers.class).get(0);
+		}
+		return deployHandlers;
+	}
 }
@@ -0,0 +1,123 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.api.impl;
+
+import org.openmrs.GlobalProperty;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.metadatasharing.ImportedPackage;
+import org.openmrs.module.metadatasharing.api.MetadataSharingService;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The state of all metadata packages, i.e. the checksums of the last imported package resources and the packages
+ * known to the metadata sharing module, by group UUID. This is loaded with one query of each kind at the start of a
+ * bundle install, so that each package doesn't need its own queries. While bundles are being installed, the checks are
+ * current on each installing thread.
+ */
+class PackageChecks {
+
+	public static final String CHECKSUM_GP_PREFIX = "metadatadeploy.package.checksum.";
+
+	private static final ThreadLocal<PackageChecks> current = new ThreadLocal<PackageChecks>();
+
+	private final ConcurrentMap<String, String> checksums = new ConcurrentHashMap<String, String>();
+
+	private final ConcurrentMap<String, ImportedPackage> importedPackages = new ConcurrentHashMap<String, ImportedPackage>();
+
+	/**
+	 * Loads the checks for all packages
+	 * @return the checks
+	 */
+	public static PackageChecks load() {
+		PackageChecks checks = new PackageChecks();
+
+		for (GlobalProperty gp : Context.getAdministrationService().getGlobalPropertiesByPrefix(CHECKSUM_GP_PREFIX)) {
+			if (gp.getPropertyValue() != null) {
+				checks.checksums.put(gp.getProperty().substring(CHECKSUM_GP_PREFIX.length()), gp.getPropertyValue());
+			}
+		}
+
+		for (ImportedPackage pkg : Context.getService(MetadataSharingService.class).getAllImportedPackages()) {
+			if (pkg.getGroupUuid() != null) {
+				checks.importedPackages.put(pkg.getGroupUuid(), pkg);
+			}
+		}
+		return checks;
+	}
+
+	/**
+	 * Gets the checks in use on the current thread
+	 * @return the checks or null
+	 */
+	public static PackageChecks current() {
+		return current.get();
+	}
+
+	/**
+	 * Sets the checks in use on the current thread
+	 * @param checks the checks or null
+	 */
+	public static void setCurrent(PackageChecks checks) {
+		if (checks != null) {
+			current.set(checks);
+		}
+		else {
+			current.remove();
+		}
+	}
+
+	/**
+	 * Gets the checksum of the last imported resource of a package
+	 * @param groupUuid the package group UUID
+	 * @return the checksum or null
+	 */
+	public String getChecksum(String groupUuid) {
+		return checksums.get(groupUuid);
+	}
+
+	/**
+	 * Sets the checksum of the last imported resource of a package
+	 * @param groupUuid the package group UUID
+	 * @param checksum the checksum
+	 */
+	public void setChecksum(String groupUuid, String checksum) {
+		checksums.put(groupUuid, checksum);
+	}
+
+	/**
+	 * Gets the imported package with the given group
+	 * @param groupUuid the package group UUID
+	 * @return the imported package or null
+	 */
+	public ImportedPackage getImportedPackage(String groupUuid) {
+		return importedPackages.get(groupUuid);
+	}
+
+	/**
+	 * Sets the imported package with the given group, e.g. after it has been re-imported
+	 * @param groupUuid the package group UUID
+	 * @param pkg the imported package (may be null)
+	 */
+	public void setImportedPackage(String groupUuid, ImportedPackage pkg) {
+		if (pkg != null) {
+			importedPackages.put(groupUuid, pkg);
+		}
+		else {
+			importedPackages.remove(groupUuid);
+		}
+	}
+}
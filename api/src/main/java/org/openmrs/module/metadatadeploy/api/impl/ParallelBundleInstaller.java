@@ -0,0 +1,371 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.api.impl;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.APIException;
+import org.openmrs.api.context.Context;
+import org.openmrs.api.context.UserContext;
+import org.openmrs.module.metadatadeploy.ResolutionContext;
+import org.openmrs.module.metadatadeploy.bundle.BundleGraph;
+import org.openmrs.module.metadatadeploy.bundle.BundleInstallProgress;
+import org.openmrs.module.metadatadeploy.bundle.BundleVersions;
+import org.openmrs.module.metadatadeploy.bundle.MetadataBundle;
+import org.openmrs.module.metadatadeploy.stats.DeployPhase;
+import org.openmrs.module.metadatadeploy.stats.DeployTimings;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Installs a graph of bundles on a bounded pool of worker threads. A bundle is only started once all of the bundles it
+ * requires have been installed and committed, and each bundle is installed in its own session and transaction.
+ */
+public class ParallelBundleInstaller {
+
+	protected static final Log log = LogFactory.getLog(ParallelBundleInstaller.class);
+
+	private static final long TERMINATION_LOG_INTERVAL = 30;
+
+	private BundleGraph graph;
+
+	private PlatformTransactionManager transactionManager;
+
+	private int maxThreads;
+
+	private Map<MetadataBundle, Long> durations = new HashMap<MetadataBundle, Long>();
+
+	private PackageChecks packageChecks;
+
+	private BundleVersions bundleVersions;
+
+	private Set<MetadataBundle> installed = Collections.emptySet();
+
+	private BundleInstallProgress progress;
+
+	private volatile boolean aborted = false;
+
+	/**
+	 * Creates a new installer
+	 * @param graph the bundle graph
+	 * @param transactionManager the transaction manager
+	 * @param maxThreads the maximum number of bundles to install concurrently
+	 */
+	public ParallelBundleInstaller(BundleGraph graph, PlatformTransactionManager transactionManager, int maxThreads) {
+		if (maxThreads < 1) {
+			throw new IllegalArgumentException("maxThreads must be at least 1");
+		}
+
+		this.graph = graph;
+		this.transactionManager = transactionManager;
+		this.maxThreads = maxThreads;
+	}
+
+	/**
+	 * Sets the package checks shared by all worker threads
+	 * @param packageChecks the package checks (may be null)
+	 */
+	void setPackageChecks(PackageChecks packageChecks) {
+		this.packageChecks = packageChecks;
+	}
+
+	/**
+	 * Sets the bundle versions loaded for all worker threads. Each bundle saves its new version in its own transaction.
+	 * @param bundleVersions the bundle versions (may be null)
+	 */
+	void setBundleVersions(BundleVersions bundleVersions) {
+		this.bundleVersions = bundleVersions;
+	}
+
+	/**
+	 * Sets the bundles in the graph which have already been installed, and so are skipped
+	 * @param installed the installed bundles
+	 */
+	public void setInstalled(Set<MetadataBundle> installed) {
+		this.installed = installed;
+	}
+
+	/**
+	 * Sets the progress to update as bundles are installed
+	 * @param progress the progress (may be null)
+	 */
+	public void setProgress(BundleInstallProgress progress) {
+		this.progress = progress;
+	}
+
+	/**
+	 * Installs all bundles in the graph
+	 * @throws APIException if any bundle fails to install, in which case no further bundles are started. This is only
+	 * thrown once all running bundles have finished, and its message lists the bundles which were committed.
+	 */
+	public void run() throws APIException {
+		UserContext userContext = Context.getUserContext();
+		ExecutorService executor = Executors.newFixedThreadPool(maxThreads);
+		CompletionService<Long> completionService = new ExecutorCompletionService<Long>(executor);
+
+		Map<Future<Long>, MetadataBundle> running = new HashMap<Future<Long>, MetadataBundle>();
+		Map<MetadataBundle, Integer> unmetRequirements = new HashMap<MetadataBundle, Integer>();
+
+		long start = System.currentTimeMillis();
+
+		MetadataBundle failedBundle = null;
+		Throwable failure = null;
+
+		try {
+			// Start all bundles with no requirements
+			for (MetadataBundle bundle : graph.getInstallOrder()) {
+				if (installed.contains(bundle)) {
+					continue;
+				}
+
+				int requirementCount = 0;
+				for (MetadataBundle required : graph.getRequired(bundle)) {
+					if (!installed.contains(required)) {
+						requirementCount++;
+					}
+				}
+				unmetRequirements.put(bundle, requirementCount);
+
+				if (requirementCount == 0) {
+					running.put(completionService.submit(new BundleInstallTask(bundle, userContext)), bundle);
+				}
+			}
+
+			while (!running.isEmpty()) {
+				Future<Long> completed = completionService.take();
+				MetadataBundle bundle = running.remove(completed);
+
+				try {
+					durations.put(bundle, completed.get());
+				}
+				catch (ExecutionException ex) {
+					// Queued tasks will still run but return without installing their bundle
+					aborted = true;
+					failedBundle = bundle;
+					failure = ex.getCause();
+					break;
+				}
+
+				// Start any dependent bundles which now have all their requirements installed
+				for (MetadataBundle dependent : graph.getDependents(bundle)) {
+					int remaining = unmetRequirements.get(dependent) - 1;
+					unmetRequirements.put(dependent, remaining);
+
+					if (remaining == 0) {
+						running.put(completionService.submit(new BundleInstallTask(dependent, userContext)), dependent);
+					}
+				}
+			}
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			aborted = true;
+			failure = ex;
+		}
+		finally {
+			// Running bundles aren't interrupted as they may be part way through their transaction
+			executor.shutdown();
+		}
+
+		if (failure != null) {
+			awaitRunning(executor, running);
+
+			String committed = "committed bundles: " + getBundleNames(durations.keySet());
+			log.error("Aborted bundle installation, " + committed);
+
+			if (failedBundle != null) {
+				throw new APIException("Unable to install bundle " + failedBundle.getClass().getSimpleName() + " (" + committed + ")", failure);
+			}
+			throw new APIException("Interrupted whilst installing bundles (" + committed + ")", failure);
+		}
+
+		long total = System.currentTimeMillis() - start;
+
+		log.info("Installed " + durations.size() + " bundles on " + maxThreads + " threads in " + total + "ms (critical path "
+				+ graph.getCriticalPathDuration(durations) + "ms)");
+	}
+
+	/**
+	 * Waits for the bundles which were still running when installation was aborted to finish, so that none are still
+	 * writing when the failure is reported. Bundles which were queued are skipped rather than started. Any running
+	 * bundles which completed successfully have been committed and so are recorded with the other installed bundles.
+	 * @param executor the executor which has been shut down
+	 * @param running the futures of the queued and running bundles
+	 */
+	protected void awaitRunning(ExecutorService executor, Map<Future<Long>, MetadataBundle> running) {
+		boolean interrupted = Thread.interrupted();
+
+		while (!executor.isTerminated()) {
+			try {
+				if (!executor.awaitTermination(TERMINATION_LOG_INTERVAL, TimeUnit.SECONDS)) {
+					log.warn("Waiting for " + getBundleNames(running.values()) + " to finish before aborting installation");
+				}
+			}
+			catch (InterruptedException ex) {
+				interrupted = true;
+			}
+		}
+
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+
+		for (Map.Entry<Future<Long>, MetadataBundle> entry : running.entrySet()) {
+			Future<Long> future = entry.getKey();
+			if (!future.isDone()) {
+				continue;
+			}
+
+			try {
+				durations.put(entry.getValue(), future.get());
+			}
+			catch (Exception ex) {
+				// Bundle failed or was never started, so wasn't committed
+			}
+		}
+	}
+
+	/**
+	 * Gets a readable list of bundle names
+	 * @param bundles the bundles
+	 * @return the names
+	 */
+	protected static String getBundleNames(Collection<MetadataBundle> bundles) {
+		List<String> names = new ArrayList<String>();
+		for (MetadataBundle bundle : bundles) {
+			names.add(bundle.getClass().getSimpleName());
+		}
+		return names.toString();
+	}
+
+	/**
+	 * Gets the time taken to install each bundle
+	 * @return the map of bundles to durations in milliseconds
+	 */
+	public Map<MetadataBundle, Long> getDurations() {
+		return durations;
+	}
+
+	/**
+	 * Task which installs a single bundle in a new session and transaction, returning how long it took
+	 */
+	protected class BundleInstallTask implements Callable<Long> {
+
+		private MetadataBundle bundle;
+
+		private UserContext userContext;
+
+		public BundleInstallTask(MetadataBundle bundle, UserContext userContext) {
+			this.bundle = bundle;
+			this.userContext = userContext;
+		}
+
+		/**
+		 * @see java.util.concurrent.Callable#call()
+		 */
+		@Override
+		public Long call() throws Exception {
+			if (aborted) {
+				throw new CancellationException("Installation was aborted before " + bundle.getClass().getSimpleName() + " started");
+			}
+
+			long start = System.currentTimeMillis();
+
+			if (progress != null) {
+				progress.bundleStarted(bundle);
+			}
+
+			Context.openSession();
+			Context.setUserContext(userContext);
+			try {
+				TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+				transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+				transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+					@Override
+					protected void doInTransactionWithoutResult(TransactionStatus status) {
+						BundleVersions versions = bundleVersions != null ? bundleVersions.share() : null;
+
+						ResolutionContext.begin();
+						PackageChecks.setCurrent(packageChecks);
+						BundleVersions.setCurrent(versions);
+						DeployTimings.getInstance().beginBundle();
+						try {
+							bundle.install();
+
+							if (versions != null) {
+								versions.save();
+							}
+						}
+						catch (RuntimeException ex) {
+							throw ex;
+						}
+						catch (Exception ex) {
+							throw new APIException(ex);
+						}
+						finally {
+							DeployTimings.getInstance().endBundle(bundle);
+							PackageChecks.setCurrent(null);
+							BundleVersions.setCurrent(null);
+							ResolutionContext.end();
+						}
+
+						long flushStart = System.nanoTime();
+						Context.flushSession();
+						DeployTimings.getInstance().record(null, DeployPhase.FLUSH, flushStart, 0);
+					}
+				});
+			}
+			catch (Exception ex) {
+				if (progress != null) {
+					progress.bundleFailed(bundle, String.valueOf(ex.getMessage()));
+				}
+				throw ex;
+			}
+			finally {
+				Context.closeSession();
+			}
+
+			if (progress != null) {
+				progress.bundleInstalled(bundle);
+			}
+
+			long duration = System.currentTimeMillis() - start;
+
+			log.debug("Installed bundle " + bundle.getClass().getSimpleName() + " in " + duration + "ms");
+
+			return duration;
+		}
+	}
+}
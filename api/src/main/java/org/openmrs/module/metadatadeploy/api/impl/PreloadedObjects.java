@@ -0,0 +1,154 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+
+package org.openmrs.module.metadatadeploy.api.impl;
+
+import org.openmrs.OpenmrsObject;
+import org.openmrs.module.metadatadeploy.handler.ExistingObjectIndex;
+import org.openmrs.module.metadatadeploy.handler.ObjectDeployHandler;
+import org.openmrs.module.metadatadeploy.handler.PreloadableDeployHandler;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Existing objects which have been preloaded for an install on the current thread. The existing objects of each
+ * preloadable handler are loaded once, when first needed, and then fetches and alternate matches are answered from
+ * memory. Objects saved or removed through the deploy service update the indexes.
+ *
+ * Objects which bundles save other than through the deploy service won't be found, so the indexes are dropped when
+ * that is known to happen, e.g. when a package is imported.
+ */
+class PreloadedObjects {
+
+	private static final ThreadLocal<PreloadedObjects> current = new ThreadLocal<PreloadedObjects>();
+
+	private final Map<ObjectDeployHandler<?>, ExistingObjectIndex<?>> indexes = new HashMap<ObjectDeployHandler<?>, ExistingObjectIndex<?>>();
+
+	/**
+	 * Gets the preloaded objects of the current thread
+	 * @return the preloaded objects or null
+	 */
+	public static PreloadedObjects current() {
+		return current.get();
+	}
+
+	/**
+	 * Sets the preloaded objects of the current thread
+	 * @param preloaded the preloaded objects or null
+	 */
+	public static void setCurrent(PreloadedObjects preloaded) {
+		if (preloaded != null) {
+			current.set(preloaded);
+		}
+		else {
+			current.remove();
+		}
+	}
+
+	/**
+	 * Gets whether objects of a handler are preloaded
+	 * @param handler the handler
+	 * @return true if handler is preloadable
+	 */
+	public boolean supports(ObjectDeployHandler<?> handler) {
+		return handler instanceof PreloadableDeployHandler;
+	}
+
+	/**
+	 * Fetches an existing object by primary identifier
+	 * @param handler the handler, which must be preloadable
+	 * @param identifier the identifier
+	 * @return the object or null
+	 */
+	public <T extends OpenmrsObject> T fetch(ObjectDeployHandler<T> handler, String identifier) {
+		return getIndex(handler).getByIdentifier(identifier);
+	}
+
+	/**
+	 * Fetches existing objects by primary identifier
+	 * @param handler the handler, which must be preloadable
+	 * @param identifiers the identifiers
+	 * @return the map of identifiers to objects, which doesn't contain identifiers with no object
+	 */
+	public <T extends OpenmrsObject> Map<String, T> fetchAll(ObjectDeployHandler<T> handler, Collection<String> identifiers) {
+		ExistingObjectIndex<T> index = getIndex(handler);
+		Map<String, T> fetched = new HashMap<String, T>();
+		for (String identifier : identifiers) {
+			T obj = index.getByIdentifier(identifier);
+			if (obj != null) {
+				fetched.put(identifier, obj);
+			}
+		}
+		return fetched;
+	}
+
+	/**
+	 * Finds an alternative existing object which should be merged with the incoming object
+	 * @param handler the handler, which must be preloadable
+	 * @param incoming the incoming object
+	 * @return the existing object or null
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends OpenmrsObject> T findAlternateMatch(ObjectDeployHandler<T> handler, T incoming) {
+		return ((PreloadableDeployHandler<T>) handler).findAlternateMatch(incoming, getIndex(handler));
+	}
+
+	/**
+	 * Records objects which have been saved, if their handler is preloadable and its objects have been loaded
+	 * @param handler the handler
+	 * @param saved the saved objects
+	 */
+	public <T extends OpenmrsObject> void saved(ObjectDeployHandler<T> handler, Collection<T> saved) {
+		@SuppressWarnings("unchecked")
+		ExistingObjectIndex<T> index = (ExistingObjectIndex<T>) indexes.get(handler);
+		if (index != null) {
+			for (T obj : saved) {
+				index.put(obj);
+			}
+		}
+	}
+
+	/**
+	 * Drops the loaded objects of a handler, so they are reloaded when next needed
+	 * @param handler the handler
+	 */
+	public void invalidate(ObjectDeployHandler<?> handler) {
+		indexes.remove(handler);
+	}
+
+	/**
+	 * Drops the loaded objects of all handlers
+	 */
+	public void invalidateAll() {
+		indexes.clear();
+	}
+
+	/**
+	 * Gets the index of a handler's existing objects, loading them if necessary
+	 * @param handler the handler, which must be preloadable
+	 * @return the index
+	 */
+	@SuppressWarnings("unchecked")
+	protected <T extends OpenmrsObject> ExistingObjectIndex<T> getIndex(ObjectDeployHandler<T> handler) {
+		ExistingObjectIndex<T> index = (ExistingObjectIndex<T>) indexes.get(handler);
+		if (index == null) {
+			index = new ExistingObjectIndex<T>(handler, ((PreloadableDeployHandler<T>) handler).fetchAllExisting());
+			indexes.put(handler, index);
+		}
+		return index;
+	}
+}
@@ -0,0 +1,153 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.api.impl;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.SessionFactoryImplementor;
+import org.hibernate.metadata.ClassMetadata;
+import org.openmrs.module.metadatadeploy.handler.ObjectDeployHandler;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * State of a seed install on the current thread. Object types whose tables were empty when first installed are known
+ * not to have existing objects, other than those installed during the seed, so incoming objects of those types can be
+ * saved without first being fetched. Saved objects are flushed in batches rather than by each query.
+ *
+ * Whether a table is empty is re-checked for each bundle, but objects which bundles save other than through the deploy
+ * service, within the same bundle, won't be found.
+ */
+class SeedContext {
+
+	private static final ThreadLocal<SeedContext> current = new ThreadLocal<SeedContext>();
+
+	private final SessionFactory sessionFactory;
+
+	private final int batchSize;
+
+	// Whether each entity (by root entity name) had no rows when checked
+	private final Map<String, Boolean> emptyEntities = new HashMap<String, Boolean>();
+
+	// Identifiers of the objects installed by each handler
+	private final Map<ObjectDeployHandler<?>, Set<String>> installed = new HashMap<ObjectDeployHandler<?>, Set<String>>();
+
+	private int unflushed = 0;
+
+	/**
+	 * Creates a new seed context
+	 * @param sessionFactory the session factory
+	 * @param batchSize the number of saved objects to flush together
+	 */
+	SeedContext(SessionFactory sessionFactory, int batchSize) {
+		this.sessionFactory = sessionFactory;
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Gets the seed context of the current thread
+	 * @return the context or null
+	 */
+	public static SeedContext current() {
+		return current.get();
+	}
+
+	/**
+	 * Sets the seed context of the current thread
+	 * @param context the context or null
+	 */
+	public static void setCurrent(SeedContext context) {
+		if (context != null) {
+			current.set(context);
+		}
+		else {
+			current.remove();
+		}
+	}
+
+	/**
+	 * Gets whether an incoming object is known to be new, i.e. there's no need to look for an existing object
+	 * @param handler the object handler
+	 * @param clazz the object class
+	 * @param identifier the object identifier
+	 * @return true if object is new
+	 */
+	public boolean isNew(ObjectDeployHandler<?> handler, Class<?> clazz, String identifier) {
+		Set<String> identifiers = installed.get(handler);
+		if (identifiers != null && identifiers.contains(identifier)) {
+			return false;
+		}
+		return isEmpty(clazz);
+	}
+
+	/**
+	 * Records installed objects, flushing the session once a batch of saved objects is pending
+	 * @param handler the object handler
+	 * @param identifiers the object identifiers
+	 * @param saved the number of objects which were saved
+	 */
+	public void installed(ObjectDeployHandler<?> handler, Collection<String> identifiers, int saved) {
+		Set<String> handlerIdentifiers = installed.get(handler);
+		if (handlerIdentifiers == null) {
+			handlerIdentifiers = new HashSet<String>();
+			installed.put(handler, handlerIdentifiers);
+		}
+		handlerIdentifiers.addAll(identifiers);
+
+		unflushed += saved;
+		if (unflushed >= batchSize) {
+			flush();
+		}
+	}
+
+	/**
+	 * Forgets which tables were empty, e.g. because objects may have been saved other than through the deploy service
+	 */
+	public void invalidate() {
+		emptyEntities.clear();
+	}
+
+	/**
+	 * Flushes all pending saves
+	 */
+	public void flush() {
+		sessionFactory.getCurrentSession().flush();
+		unflushed = 0;
+	}
+
+	/**
+	 * Gets whether the table of an object class is empty. Subclasses share the table of their root entity.
+	 * @param clazz the object class
+	 * @return true if empty, false if not or if class isn't a mapped entity
+	 */
+	protected boolean isEmpty(Class<?> clazz) {
+		ClassMetadata metadata = sessionFactory.getClassMetadata(clazz);
+		if (metadata == null) {
+			return false;
+		}
+
+		String rootEntity = ((SessionFactoryImplementor) sessionFactory).getEntityPersister(metadata.getEntityName()).getRootEntityName();
+		Boolean empty = emptyEntities.get(rootEntity);
+		if (empty == null) {
+			Number count = (Number) sessionFactory.getCurrentSession().createQuery("select count(*) from " + rootEntity).uniqueResult();
+			empty = count.longValue() == 0;
+			emptyEntities.put(rootEntity, empty);
+		}
+		return empty;
+	}
+}
@@ -41,9 +41,11 @@ import org.openmrs.module.metadatadeploy.descriptor.ProgramDescriptor;
 import org.openmrs.module.metadatadeploy.descriptor.ProgramWorkflowDescriptor;
 import org.openmrs.module.metadatadeploy.descriptor.ProgramWorkflowStateDescriptor;
 import org.openmrs.module.metadatadeploy.descriptor.RoleDescriptor;
+import org.openmrs.module.metadatadeploy.plan.InstallPlan;
 import org.openmrs.module.metadatadeploy.source.ObjectSource;
 import org.openmrs.module.metadatadeploy.sync.MetadataSynchronizationRunner;
 import org.openmrs.module.metadatadeploy.sync.ObjectSynchronization;
+import org.openmrs.module.metadatadeploy.sync.SyncCounts;
 import org.openmrs.module.metadatadeploy.sync.SyncResult;
 import org.openmrs.module.metadatasharing.ImportMode;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -110,7 +112,30 @@ public abstract class AbstractMetadataBundle implements MetadataBundle {
 	 * @return the installed objects
 	 */
 	protected <T extends OpenmrsObject> List<T> install(ObjectSource<T> source) {
-		return deployService.installFromSource(source);
+		return install(source, 0);
+	}
+
+	/**
+	 * Installs all objects from the given source, reading ahead on a separate thread
+	 * @param source the object source, which should not access the database
+	 * @param readAhead the maximum number of objects to read ahead, or zero to read on the calling thread
+	 * @return the installed objects
+	 * @see MetadataDeployService#installFromSource(ObjectSource, int)
+	 */
+	protected <T extends OpenmrsObject> List<T> install(ObjectSource<T> source, int readAhead) {
+		return install(source, readAhead, 1);
+	}
+
+	/**
+	 * Installs all objects from the given source in batches, reading ahead on a separate thread
+	 * @param source the object source, which should not access the database
+	 * @param readAhead the maximum number of objects to read ahead, or zero to read on the calling thread
+	 * @param batchSize the maximum number of objects to install together
+	 * @return the installed objects
+	 * @see MetadataDeployService#installFromSource(ObjectSource, int, int)
+	 */
+	protected <T extends OpenmrsObject> List<T> install(ObjectSource<T> source, int readAhead, int batchSize) {
+		return deployService.installFromSource(source, readAhead, batchSize);
 	}
 
 	/**
@@ -132,8 +157,36 @@ public abstract class AbstractMetadataBundle implements MetadataBundle {
 	 * @return the synchronization result
 	 */
 	protected <T extends OpenmrsMetadata> SyncResult<T> sync(ObjectSource<T> source, ObjectSynchronization<T> sync) {
+		return sync(source, sync, 0);
+	}
+
+	/**
+	 * Performs the given synchronization operation, clearing the session after every chunk of objects
+	 * @param source the object source
+	 * @param sync the synchronization operation
+	 * @param chunkSize the number of objects per chunk, or zero to not clear the session
+	 * @return the synchronization result
+	 * @see MetadataSynchronizationRunner#setChunkSize(int)
+	 */
+	protected <T extends OpenmrsMetadata> SyncResult<T> sync(ObjectSource<T> source, ObjectSynchronization<T> sync, int chunkSize) {
+		return sync(source, sync, chunkSize, new SyncResult<T>());
+	}
+
+	/**
+	 * Performs the given synchronization operation, recording it in the given result. For large synchronizations use
+	 * a {@link SyncCounts} result so that the affected objects can be released once they are saved.
+	 * @param source the object source
+	 * @param sync the synchronization operation
+	 * @param chunkSize the number of objects per chunk, or zero to not clear the session
+	 * @param result the result to record the synchronization in
+	 * @return the result
+	 */
+	protected <T extends OpenmrsMetadata, R extends SyncResult<T>> R sync(ObjectSource<T> source, ObjectSynchronization<T> sync, int chunkSize, R result) {
 		MetadataSynchronizationRunner<T> runner = new MetadataSynchronizationRunner<T>(source, sync);
-		return runner.run();
+		runner.setChunkSize(chunkSize);
+		runner.setResult(result);
+		runner.run();
+		return result;
 	}
 
 	/**
@@ -186,6 +239,13 @@ public abstract class AbstractMetadataBundle implements MetadataBundle {
 	protected void setGlobalProperty(String propertyName, String propertyValue) {
 		AdministrationService administrationService = Context.getAdministrationService();
 		GlobalProperty gp = administrationService.getGlobalPropertyObject(propertyName);
+
+		InstallPlan plan = InstallPlan.current();
+		if (plan != null) {
+			plan.recordValue(GlobalProperty.class, propertyName, gp != null, "propertyValue", gp != null ? gp.getPropertyValue() : null, propertyValue);
+			return;
+		}
+
 		if (gp == null) {
 			gp = new GlobalProperty(propertyName);
 		}
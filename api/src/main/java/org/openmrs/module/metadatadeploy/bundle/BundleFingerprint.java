@@ -0,0 +1,204 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.bundle;
+
+import org.openmrs.OpenmrsObject;
+import org.openmrs.api.APIException;
+import org.openmrs.module.metadatadeploy.FieldAccessorPlan;
+import org.openmrs.module.metadatadeploy.FieldAccessorPlan.FieldAccessor;
+import org.openmrs.module.metadatadeploy.ObjectUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Calculates a fingerprint of the content that a bundle installs. Objects are normalized so that the fingerprint of an
+ * object doesn't depend on the state of the database, i.e. references to other objects are replaced by their UUIDs and
+ * unordered collections are sorted. Child objects which haven't been saved, e.g. the answers of a new concept, are
+ * normalized by their content alone, as they are usually given a random UUID each time they are constructed.
+ */
+public class BundleFingerprint {
+
+	// Audit fields may be set when objects are constructed, which would change the fingerprint on every startup
+	private static final Set<String> EXCLUDE_FIELDS = new HashSet<String>(Arrays.asList(
+			"creator", "dateCreated", "changedBy", "dateChanged"
+	));
+
+	private MessageDigest digest = newDigest();
+
+	/**
+	 * Adds a string value to the fingerprint
+	 * @param value the value
+	 */
+	public void add(String value) {
+		digest.update(toBytes(value));
+		digest.update((byte) 0);
+	}
+
+	/**
+	 * Adds an object to the fingerprint
+	 * @param obj the object
+	 */
+	public void add(OpenmrsObject obj) {
+		add(normalize(obj, false, new IdentityHashMap<Object, Object>()));
+	}
+
+	/**
+	 * Adds the content of a stream to the fingerprint. The stream is closed afterwards.
+	 * @param in the input stream
+	 * @throws IOException if an error occurs
+	 */
+	public void add(InputStream in) throws IOException {
+		try {
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				digest.update(buffer, 0, read);
+			}
+			digest.update((byte) 0);
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Gets the fingerprint value
+	 * @return the hex encoded fingerprint
+	 */
+	public String getValue() {
+		StringBuilder hex = new StringBuilder();
+		for (byte b : digest.digest()) {
+			hex.append(String.format("%02x", b));
+		}
+		return hex.toString();
+	}
+
+	/**
+	 * Normalizes an object to a string of its field values
+	 * @param obj the object
+	 * @param newChild whether the object is an unsaved child object, in which case its UUID is excluded
+	 * @param inProgress the objects currently being normalized
+	 * @return the normalized object
+	 */
+	protected String normalize(OpenmrsObject obj, boolean newChild, Map<Object, Object> inProgress) {
+		inProgress.put(obj, obj);
+
+		// Fields are sorted so that the result doesn't depend on the order in which they are visited
+		Map<String, String> fields = new TreeMap<String, String>();
+
+		for (FieldAccessor field : FieldAccessorPlan.forClass(obj.getClass()).getFields()) {
+			if (EXCLUDE_FIELDS.contains(field.getName()) || (newChild && "uuid".equals(field.getName()))) {
+				continue;
+			}
+			fields.put(field.getDefinedIn().getName() + "." + field.getName(), normalizeValue(field.read(obj), inProgress));
+		}
+
+		inProgress.remove(obj);
+
+		return obj.getClass().getName() + fields.toString();
+	}
+
+	/**
+	 * Normalizes a field value
+	 * @param value the value
+	 * @param inProgress the objects currently being normalized
+	 * @return the normalized value
+	 */
+	protected String normalizeValue(Object value, Map<Object, Object> inProgress) {
+		if (value == null) {
+			return "null";
+		}
+		else if (value instanceof OpenmrsObject) {
+			return reference((OpenmrsObject) value);
+		}
+		else if (value instanceof Collection) {
+			List<String> items = new ArrayList<String>();
+			for (Object item : (Collection) value) {
+				if (item instanceof OpenmrsObject && isNew((OpenmrsObject) item) && !inProgress.containsKey(item)) {
+					// Items which haven't been saved belong to the object being installed
+					BundleFingerprint itemFingerprint = new BundleFingerprint();
+					itemFingerprint.add(normalize((OpenmrsObject) item, true, inProgress));
+					items.add(itemFingerprint.getValue());
+				}
+				else {
+					items.add(normalizeValue(item, inProgress));
+				}
+			}
+			Collections.sort(items);
+			return items.toString();
+		}
+		else if (value instanceof Date) {
+			return String.valueOf(((Date) value).getTime());
+		}
+		else if (value instanceof Class) {
+			return ((Class) value).getName();
+		}
+		else if (value instanceof Object[]) {
+			return Arrays.deepToString((Object[]) value);
+		}
+		return value.toString();
+	}
+
+	/**
+	 * Normalizes a reference to another object
+	 * @param obj the object
+	 * @return the normalized reference
+	 */
+	protected String reference(OpenmrsObject obj) {
+		return "ref:" + obj.getUuid();
+	}
+
+	/**
+	 * Checks whether the given object has not yet been saved. Objects which don't use ids are treated as saved.
+	 * @param obj the object
+	 * @return true if object is new
+	 */
+	protected static boolean isNew(OpenmrsObject obj) {
+		return ObjectUtils.usesId(obj) && obj.getId() == null;
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-1");
+		}
+		catch (NoSuchAlgorithmException ex) {
+			throw new APIException("SHA-1 is not available", ex);
+		}
+	}
+
+	private static byte[] toBytes(String value) {
+		try {
+			return value.getBytes("UTF-8");
+		}
+		catch (UnsupportedEncodingException ex) {
+			throw new APIException("UTF-8 is not available", ex);
+		}
+	}
+}
@@ -0,0 +1,184 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.bundle;
+
+import org.openmrs.api.APIException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The dependency graph of a collection of bundles, as declared by their {@link Requires} annotations
+ */
+public class BundleGraph {
+
+	private Map<Class<? extends MetadataBundle>, MetadataBundle> bundles = new LinkedHashMap<Class<? extends MetadataBundle>, MetadataBundle>();
+
+	private Map<MetadataBundle, List<MetadataBundle>> required = new HashMap<MetadataBundle, List<MetadataBundle>>();
+
+	private Map<MetadataBundle, List<MetadataBundle>> dependents = new HashMap<MetadataBundle, List<MetadataBundle>>();
+
+	private List<MetadataBundle> order;
+
+	/**
+	 * Creates the graph of the given bundles
+	 * @param bundles the bundles
+	 * @throws APIException if a required bundle is missing or if the requirements contain a cycle
+	 */
+	public BundleGraph(Collection<MetadataBundle> bundles) throws APIException {
+		for (MetadataBundle bundle : bundles) {
+			this.bundles.put(bundle.getClass(), bundle);
+		}
+
+		for (MetadataBundle bundle : this.bundles.values()) {
+			required.put(bundle, new ArrayList<MetadataBundle>());
+			dependents.put(bundle, new ArrayList<MetadataBundle>());
+		}
+
+		for (MetadataBundle bundle : this.bundles.values()) {
+			Requires requires = bundle.getClass().getAnnotation(Requires.class);
+			if (requires != null) {
+				for (Class<? extends MetadataBundle> requiredClass : requires.value()) {
+					MetadataBundle requiredBundle = this.bundles.get(requiredClass);
+
+					if (requiredBundle == null) {
+						throw new APIException("Can't find required bundle class " + requiredClass + " for " + bundle.getClass());
+					}
+
+					required.get(bundle).add(requiredBundle);
+					dependents.get(requiredBundle).add(bundle);
+				}
+			}
+		}
+
+		order = sort();
+	}
+
+	/**
+	 * Gets all bundles in the graph
+	 * @return the bundles
+	 */
+	public Collection<MetadataBundle> getBundles() {
+		return Collections.unmodifiableCollection(bundles.values());
+	}
+
+	/**
+	 * Gets the bundles directly required by the given bundle
+	 * @param bundle the bundle
+	 * @return the required bundles
+	 */
+	public List<MetadataBundle> getRequired(MetadataBundle bundle) {
+		return Collections.unmodifiableList(required.get(bundle));
+	}
+
+	/**
+	 * Gets the bundles which directly require the given bundle
+	 * @param bundle the bundle
+	 * @return the dependent bundles
+	 */
+	public List<MetadataBundle> getDependents(MetadataBundle bundle) {
+		return Collections.unmodifiableList(dependents.get(bundle));
+	}
+
+	/**
+	 * Gets the bundles in an order where each bundle comes after all the bundles it requires. Independent bundles keep
+	 * the order in which they were given, so this is the same order as a depth-first install.
+	 * @return the ordered bundles
+	 */
+	public List<MetadataBundle> getInstallOrder() {
+		return Collections.unmodifiableList(order);
+	}
+
+	/**
+	 * Calculates the length of the critical path through the graph, i.e. the longest chain of dependent bundles, given
+	 * how long each bundle took to install. This is the shortest time in which all bundles could be installed regardless
+	 * of how many could be installed concurrently.
+	 * @param durations the install duration of each bundle
+	 * @return the critical path duration
+	 */
+	public long getCriticalPathDuration(Map<MetadataBundle, Long> durations) {
+		Map<MetadataBundle, Long> finishTimes = new HashMap<MetadataBundle, Long>();
+		long criticalPath = 0;
+
+		for (MetadataBundle bundle : order) {
+			long start = 0;
+			for (MetadataBundle requiredBundle : required.get(bundle)) {
+				start = Math.max(start, finishTimes.get(requiredBundle));
+			}
+
+			Long duration = durations.get(bundle);
+			long finish = start + (duration != null ? duration : 0);
+
+			finishTimes.put(bundle, finish);
+			criticalPath = Math.max(criticalPath, finish);
+		}
+		return criticalPath;
+	}
+
+	/**
+	 * Sorts the bundles by a depth-first traversal of their requirements
+	 * @return the sorted bundles
+	 * @throws APIException if the requirements contain a cycle
+	 */
+	protected List<MetadataBundle> sort() throws APIException {
+		List<MetadataBundle> sorted = new ArrayList<MetadataBundle>();
+		Set<MetadataBundle> visited = new HashSet<MetadataBundle>();
+		List<MetadataBundle> path = new ArrayList<MetadataBundle>();
+
+		for (MetadataBundle bundle : bundles.values()) {
+			visit(bundle, visited, path, sorted);
+		}
+		return sorted;
+	}
+
+	/**
+	 * Visits a bundle, first visiting the bundles that it requires
+	 * @param bundle the bundle
+	 * @param visited the bundles already visited
+	 * @param path the chain of bundles currently being visited
+	 * @param sorted the sorted bundles
+	 * @throws APIException if the bundle is already on the current path
+	 */
+	private void visit(MetadataBundle bundle, Set<MetadataBundle> visited, List<MetadataBundle> path, List<MetadataBundle> sorted) throws APIException {
+		if (path.contains(bundle)) {
+			StringBuilder cycle = new StringBuilder();
+			for (MetadataBundle b : path.subList(path.indexOf(bundle), path.size())) {
+				cycle.append(b.getClass().getSimpleName()).append(" -> ");
+			}
+			cycle.append(bundle.getClass().getSimpleName());
+
+			throw new APIException("Bundle requirements contain a cycle: " + cycle);
+		}
+		if (visited.contains(bundle)) {
+			return;
+		}
+
+		path.add(bundle);
+		for (MetadataBundle requiredBundle : required.get(bundle)) {
+			visit(requiredBundle, visited, path, sorted);
+		}
+		path.remove(path.size() - 1);
+
+		visited.add(bundle);
+		sorted.add(bundle);
+	}
+}
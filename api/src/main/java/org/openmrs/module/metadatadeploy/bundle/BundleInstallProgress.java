@@ -0,0 +1,149 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.bundle;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Progress of bundles being installed in the background. This is updated from the installing threads, so all methods
+ * are synchronized.
+ */
+public class BundleInstallProgress {
+
+	private int total = 0;
+
+	private int installed = 0;
+
+	private int failed = 0;
+
+	private final Set<String> installing = new LinkedHashSet<String>();
+
+	private String lastFailure;
+
+	/**
+	 * Records that bundles have been scheduled for install
+	 * @param count the number of bundles
+	 */
+	public synchronized void bundlesScheduled(int count) {
+		total += count;
+	}
+
+	/**
+	 * Records that a bundle has started installing
+	 * @param bundle the bundle
+	 */
+	public synchronized void bundleStarted(MetadataBundle bundle) {
+		installing.add(bundle.getClass().getName());
+	}
+
+	/**
+	 * Records that a bundle has been installed and committed
+	 * @param bundle the bundle
+	 */
+	public synchronized void bundleInstalled(MetadataBundle bundle) {
+		installing.remove(bundle.getClass().getName());
+		installed++;
+	}
+
+	/**
+	 * Records that a bundle failed to install
+	 * @param bundle the bundle
+	 * @param reason the reason
+	 */
+	public synchronized void bundleFailed(MetadataBundle bundle, String reason) {
+		installing.remove(bundle.getClass().getName());
+		failed++;
+		lastFailure = bundle.getClass().getName() + ": " + reason;
+	}
+
+	/**
+	 * Records that scheduled bundles won't be installed, e.g. because a bundle they require failed
+	 * @param count the number of bundles
+	 * @param reason the reason
+	 */
+	public synchronized void bundlesAbandoned(int count, String reason) {
+		if (count > 0) {
+			failed += count;
+			lastFailure = reason;
+		}
+	}
+
+	/**
+	 * Gets the number of bundles which have been scheduled
+	 * @return the number of bundles
+	 */
+	public synchronized int getTotal() {
+		return total;
+	}
+
+	/**
+	 * Gets the number of bundles which have been installed
+	 * @return the number of bundles
+	 */
+	public synchronized int getInstalled() {
+		return installed;
+	}
+
+	/**
+	 * Gets the number of bundles which failed or won't be installed
+	 * @return the number of bundles
+	 */
+	public synchronized int getFailed() {
+		return failed;
+	}
+
+	/**
+	 * Gets the number of bundles which are waiting or being installed
+	 * @return the number of bundles
+	 */
+	public synchronized int getPending() {
+		return total - installed - failed;
+	}
+
+	/**
+	 * Gets the class names of the bundles currently being installed
+	 * @return the bundle class names
+	 */
+	public synchronized List<String> getInstalling() {
+		return new ArrayList<String>(installing);
+	}
+
+	/**
+	 * Gets the reason for the last failure
+	 * @return the reason or null if no bundles have failed
+	 */
+	public synchronized String getLastFailure() {
+		return lastFailure;
+	}
+
+	/**
+	 * Gets whether all scheduled bundles have finished installing, successfully or not
+	 * @return true if no bundles are pending
+	 */
+	public synchronized boolean isReady() {
+		return getPending() == 0;
+	}
+
+	/**
+	 * @see Object#toString()
+	 */
+	@Override
+	public synchronized String toString() {
+		return installed + " of " + total + " bundles installed, " + failed + " failed, " + getPending() + " pending";
+	}
+}
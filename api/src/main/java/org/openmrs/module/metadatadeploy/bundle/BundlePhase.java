@@ -0,0 +1,41 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.bundle;
+
+/**
+ * The phases in which bundles can be installed
+ */
+public enum BundlePhase {
+
+	/**
+	 * Installed before startup completes
+	 */
+	CRITICAL,
+
+	/**
+	 * Installed in the background after startup, unless required by a critical bundle
+	 */
+	DEFERRED;
+
+	/**
+	 * Gets the phase of a bundle as specified by its {@link Phase} annotation
+	 * @param bundle the bundle
+	 * @return the phase
+	 */
+	public static BundlePhase of(MetadataBundle bundle) {
+		Phase phase = bundle.getClass().getAnnotation(Phase.class);
+		return phase != null ? phase.value() : CRITICAL;
+	}
+}
@@ -0,0 +1,162 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.bundle;
+
+import org.openmrs.GlobalProperty;
+import org.openmrs.api.context.Context;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The installed versions of all {@link VersionedMetadataBundle}s, which are stored as global properties. These are
+ * loaded with a single query at the start of a bundle install, and new versions are saved together once the bundles
+ * have been installed, rather than each bundle reading and saving its own property. While bundles are being installed,
+ * the versions are current on each installing thread.
+ */
+public class BundleVersions {
+
+	public static final String GP_PREFIX = "metadatadeploy.bundle.version.";
+
+	private static final ThreadLocal<BundleVersions> current = new ThreadLocal<BundleVersions>();
+
+	// Loaded properties by name, which may be shared with other instances
+	private final Map<String, GlobalProperty> properties;
+
+	// New versions which haven't been saved, by property name
+	private final Map<String, String> pending = new LinkedHashMap<String, String>();
+
+	/**
+	 * Creates versions from the given loaded properties
+	 * @param properties the properties by name
+	 */
+	protected BundleVersions(Map<String, GlobalProperty> properties) {
+		this.properties = properties;
+	}
+
+	/**
+	 * Loads the installed versions of all bundles
+	 * @return the versions
+	 */
+	public static BundleVersions load() {
+		Map<String, GlobalProperty> properties = new ConcurrentHashMap<String, GlobalProperty>();
+		for (GlobalProperty gp : Context.getAdministrationService().getGlobalPropertiesByPrefix(GP_PREFIX)) {
+			properties.put(gp.getProperty(), gp);
+		}
+		return new BundleVersions(properties);
+	}
+
+	/**
+	 * Gets the versions in use on the current thread
+	 * @return the versions or null
+	 */
+	public static BundleVersions current() {
+		return current.get();
+	}
+
+	/**
+	 * Sets the versions in use on the current thread
+	 * @param versions the versions or null
+	 */
+	public static void setCurrent(BundleVersions versions) {
+		if (versions != null) {
+			current.set(versions);
+		}
+		else {
+			current.remove();
+		}
+	}
+
+	/**
+	 * Creates versions which share the loaded properties of these versions, but which save their own new versions. This
+	 * is used when bundles are installed in separate transactions.
+	 * @return the versions
+	 */
+	public BundleVersions share() {
+		return new BundleVersions(properties);
+	}
+
+	/**
+	 * Gets the property name used to store the installed version of a bundle
+	 * @param bundleClass the bundle class
+	 * @return the property name
+	 */
+	public static String getPropertyName(Class<? extends MetadataBundle> bundleClass) {
+		return GP_PREFIX + bundleClass.getName();
+	}
+
+	/**
+	 * Gets the installed version of a bundle
+	 * @param bundleClass the bundle class
+	 * @return the version or null if bundle hasn't been installed or its version isn't valid
+	 */
+	public Integer getVersion(Class<? extends MetadataBundle> bundleClass) {
+		String name = getPropertyName(bundleClass);
+		String value = pending.get(name);
+		if (value == null) {
+			GlobalProperty gp = properties.get(name);
+			value = gp != null ? gp.getPropertyValue() : null;
+		}
+
+		try {
+			return value != null ? Integer.valueOf(value) : null;
+		}
+		catch (NumberFormatException ex) {
+			return null;
+		}
+	}
+
+	/**
+	 * Sets the installed version of a bundle, which will be saved by {@link #save()}
+	 * @param bundleClass the bundle class
+	 * @param version the version
+	 */
+	public void setVersion(Class<? extends MetadataBundle> bundleClass, int version) {
+		pending.put(getPropertyName(bundleClass), String.valueOf(version));
+	}
+
+	/**
+	 * Saves all new versions together
+	 */
+	public void save() {
+		if (pending.isEmpty()) {
+			return;
+		}
+
+		List<GlobalProperty> toSave = new ArrayList<GlobalProperty>();
+		for (Map.Entry<String, String> entry : pending.entrySet()) {
+			GlobalProperty gp = properties.get(entry.getKey());
+			if (gp == null) {
+				gp = new GlobalProperty(entry.getKey());
+				properties.put(entry.getKey(), gp);
+			}
+			gp.setPropertyValue(entry.getValue());
+			toSave.add(gp);
+		}
+
+		Context.getAdministrationService().saveGlobalProperties(toSave);
+		pending.clear();
+	}
+
+	/**
+	 * Discards any new versions which haven't been saved, e.g. because the bundles which set them failed to install
+	 */
+	public void discard() {
+		pending.clear();
+	}
+}
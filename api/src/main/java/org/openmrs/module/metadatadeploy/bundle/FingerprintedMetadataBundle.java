@@ -0,0 +1,198 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.bundle;
+
+import org.openmrs.OpenmrsMetadata;
+import org.openmrs.OpenmrsObject;
+import org.openmrs.module.metadatadeploy.source.ObjectSource;
+import org.openmrs.module.metadatadeploy.sync.ObjectSynchronization;
+import org.openmrs.module.metadatadeploy.sync.SyncResult;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Implements install() such that the bundle's content is only installed if it has changed since the last install (by
+ * comparing a fingerprint of the content against a global property). Unlike {@link VersionedMetadataBundle} this doesn't
+ * require a version to be incremented for every change. Note that changes made to the installed objects outside of the
+ * bundle won't be reverted until the bundle's content changes.
+ *
+ * The fingerprint is calculated by running #installIfChanged() in a mode where installs, uninstalls, syncs and
+ * packages are recorded rather than performed. This means that #installIfChanged() should only make changes via those
+ * methods, and shouldn't depend on the objects that they return. As it is run on every install, even when the content
+ * is unchanged, it must otherwise be free of side effects, i.e. it shouldn't call services which save objects or use
+ * builders which do, such as {@link org.openmrs.module.metadatadeploy.builder.ConceptMapBuilder#ensureTerm}. Bundles
+ * which need to do this should extend {@link VersionedMetadataBundle} instead.
+ */
+public abstract class FingerprintedMetadataBundle extends AbstractMetadataBundle {
+
+	private BundleFingerprint fingerprint;
+
+	private boolean installedChanges = false;
+
+	@Override
+	public void install() throws Exception {
+		String gp = "metadatadeploy.bundle.fingerprint." + getClass().getName();
+		String current = calculateFingerprint();
+
+		if (current != null && current.equals(administrationService.getGlobalProperty(gp))) {
+			log.info("Skipping install of " + getClass().getSimpleName() + " as its content is unchanged");
+			return;
+		}
+
+		installIfChanged();
+		installedChanges = true;
+
+		// If the fingerprint couldn't be calculated before, e.g. because the content references objects which it installs,
+		// then it should be possible now
+		if (current == null) {
+			current = calculateFingerprint();
+		}
+		if (current != null) {
+			setGlobalProperty(gp, current);
+		}
+	}
+
+	/**
+	 * Installs the content of this bundle. Called to calculate the fingerprint, and again if the content has changed.
+	 * @throws Exception if an error occurs
+	 */
+	protected abstract void installIfChanged() throws Exception;
+
+	public boolean isInstalledChanges() {
+		return installedChanges;
+	}
+
+	/**
+	 * Calculates the fingerprint of this bundle's content
+	 * @return the fingerprint or null if it couldn't be calculated
+	 */
+	protected String calculateFingerprint() {
+		fingerprint = new BundleFingerprint();
+		try {
+			installIfChanged();
+			return fingerprint.getValue();
+		}
+		catch (Exception ex) {
+			log.debug("Unable to calculate fingerprint of " + getClass().getSimpleName(), ex);
+			return null;
+		}
+		finally {
+			fingerprint = null;
+		}
+	}
+
+	/**
+	 * @see AbstractMetadataBundle#install(PackageDescriptor)
+	 */
+	@Override
+	protected void install(PackageDescriptor pkg) {
+		if (fingerprint == null) {
+			super.install(pkg);
+			return;
+		}
+
+		ClassLoader loader = pkg.getClassLoader() != null ? pkg.getClassLoader() : this.getClass().getClassLoader();
+		InputStream in = loader.getResourceAsStream(pkg.getFilename());
+		if (in == null) {
+			throw new IllegalStateException("Cannot load " + pkg.getFilename() + " for group " + pkg.getGroupUuid());
+		}
+
+		fingerprint.add("package:" + pkg.getFilename() + ":" + pkg.getGroupUuid() + ":" + pkg.getImportMode());
+		try {
+			fingerprint.add(in);
+		}
+		catch (Exception ex) {
+			throw new IllegalStateException("Cannot read " + pkg.getFilename(), ex);
+		}
+	}
+
+	/**
+	 * @see AbstractMetadataBundle#install(org.openmrs.OpenmrsObject)
+	 */
+	@Override
+	protected <T extends OpenmrsObject> T install(T incoming) {
+		if (fingerprint == null) {
+			return super.install(incoming);
+		}
+
+		fingerprint.add("install:");
+		fingerprint.add(incoming);
+		return incoming;
+	}
+
+	/**
+	 * @see AbstractMetadataBundle#install(org.openmrs.module.metadatadeploy.source.ObjectSource, int, int)
+	 */
+	@Override
+	protected <T extends OpenmrsObject> List<T> install(ObjectSource<T> source, int readAhead, int batchSize) {
+		if (fingerprint == null) {
+			return super.install(source, readAhead, batchSize);
+		}
+
+		fingerprint.add("source:" + source.getClass().getName());
+		return record(source);
+	}
+
+	/**
+	 * @see AbstractMetadataBundle#uninstall(org.openmrs.OpenmrsObject, String)
+	 */
+	@Override
+	protected <T extends OpenmrsObject> void uninstall(T outgoing, String reason) {
+		if (fingerprint == null) {
+			super.uninstall(outgoing, reason);
+			return;
+		}
+
+		if (outgoing != null) {
+			fingerprint.add("uninstall:" + outgoing.getClass().getName() + ":" + outgoing.getUuid() + ":" + reason);
+		}
+	}
+
+	/**
+	 * @see AbstractMetadataBundle#sync(org.openmrs.module.metadatadeploy.source.ObjectSource, org.openmrs.module.metadatadeploy.sync.ObjectSynchronization, int, org.openmrs.module.metadatadeploy.sync.SyncResult)
+	 */
+	@Override
+	protected <T extends OpenmrsMetadata, R extends SyncResult<T>> R sync(ObjectSource<T> source, ObjectSynchronization<T> sync, int chunkSize, R result) {
+		if (fingerprint == null) {
+			return super.sync(source, sync, chunkSize, result);
+		}
+
+		fingerprint.add("sync:" + source.getClass().getName() + ":" + sync.getClass().getName());
+		record(source);
+		return result;
+	}
+
+	/**
+	 * Records all objects from the given source in the fingerprint
+	 * @param source the object source
+	 * @return the objects
+	 */
+	private <T extends OpenmrsObject> List<T> record(ObjectSource<T> source) {
+		List<T> objects = new ArrayList<T>();
+		try {
+			T incoming;
+			while ((incoming = source.fetchNext()) != null) {
+				fingerprint.add(incoming);
+				objects.add(incoming);
+			}
+		}
+		catch (Exception ex) {
+			throw new IllegalStateException("Unable to read objects from " + source.getClass().getSimpleName(), ex);
+		}
+		return objects;
+	}
+}
@@ -1,5 +1,7 @@
 package org.openmrs.module.metadatadeploy.bundle;
 
+import org.openmrs.module.metadatadeploy.plan.InstallPlan;
+
 /**
  * Implements install() such that it calls one method on every install (e.g. module startup) but only calls another method
  * if a we're installing a new version (by checking a global property for the current installed version)
@@ -17,11 +19,13 @@ public abstract class VersionedMetadataBundle extends AbstractMetadataBundle {
 
     @Override
     public void install() throws Exception {
-        String gp = "metadatadeploy.bundle.version." + getClass().getName();
-        String val = administrationService.getGlobalProperty(gp);
+        // Use the versions loaded for the whole install if there are any, except when planning
+        BundleVersions versions = InstallPlan.current() == null ? BundleVersions.current() : null;
+        String gp = BundleVersions.getPropertyName(getClass());
         boolean installNewVersion = true;
         try {
-            if (getVersion() <= Integer.valueOf(val)) {
+            Integer installedVersion = versions != null ? versions.getVersion(getClass()) : Integer.valueOf(administrationService.getGlobalProperty(gp));
+            if (getVersion() <= installedVersion) {
                 installNewVersion = false;
             }
         } catch (Exception ex) {
@@ -31,7 +35,11 @@ public abstract class VersionedMetadataBundle extends AbstractMetadataBundle {
         if (installNewVersion) {
             installNewVersion();
             installedNewVersion = true;
-            setGlobalProperty(gp, "" + getVersion());
+            if (versions != null) {
+                versions.setVersion(getClass(), getVersion());
+            } else {
+                setGlobalProperty(gp, "" + getVersion());
+            }
         }
     }
 
@@ -0,0 +1,82 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.cluster;
+
+import org.hibernate.Query;
+import org.hibernate.Session;
+import org.openmrs.GlobalProperty;
+
+import java.util.List;
+
+/**
+ * A global property which is shared between all instances using the same database, and which is read and updated
+ * directly with queries, bypassing the session cache. Updates are conditional on the previous value, so that of two
+ * instances updating the property at the same time, only one succeeds.
+ */
+class ClusterProperty {
+
+	private final String name;
+
+	/**
+	 * Creates a new property
+	 * @param name the property name
+	 */
+	ClusterProperty(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Reads the current value of the property
+	 * @param session the session
+	 * @return the value, which is empty if property has no value, or null if property doesn't exist
+	 */
+	String read(Session session) {
+		List<?> values = session.createQuery("select gp.propertyValue from GlobalProperty gp where gp.property = :name")
+				.setString("name", name).list();
+
+		if (values.isEmpty()) {
+			return null;
+		}
+		return values.get(0) != null ? (String) values.get(0) : "";
+	}
+
+	/**
+	 * Updates the property if its current value is the expected value. If expected value is null then the property is
+	 * created, which fails with an exception if another instance has already created it.
+	 * @param session the session
+	 * @param expected the expected value as returned by {@link #read(Session)}
+	 * @param value the new value
+	 * @return true if property was updated
+	 */
+	boolean compareAndSet(Session session, String expected, String value) {
+		if (expected == null) {
+			session.save(new GlobalProperty(name, value));
+			session.flush();
+			return true;
+		}
+
+		Query query;
+		if (expected.length() == 0) {
+			// Some databases store empty strings as null
+			query = session.createQuery("update GlobalProperty set propertyValue = :value where property = :name and (propertyValue is null or propertyValue = '')");
+		}
+		else {
+			query = session.createQuery("update GlobalProperty set propertyValue = :value where property = :name and propertyValue = :expected");
+			query.setString("expected", expected);
+		}
+
+		return query.setString("value", value).setString("name", name).executeUpdate() == 1;
+	}
+}
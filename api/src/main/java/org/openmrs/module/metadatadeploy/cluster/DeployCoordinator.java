@@ -0,0 +1,196 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.cluster;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.hibernate.SessionFactory;
+import org.openmrs.api.APIException;
+import org.openmrs.module.metadatadeploy.bundle.MetadataBundle;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Collection;
+
+/**
+ * Coordinates the deploy of bundles between all instances using the same database, so that only one instance installs
+ * them. An instance first checks the {@link DeployEpoch}, and if the same bundles have already been deployed, it skips
+ * the install. Otherwise it takes the {@link DeployLock} and installs the bundles, recording the next epoch in the same
+ * transaction. Instances which can't take the lock wait until either the holder records the same bundles or the lock
+ * becomes available.
+ *
+ * The epoch is only updated if it hasn't changed since the install started, so if a lease expires and two instances
+ * install at the same time, one of them is rolled back.
+ *
+ * The epoch can only tell that versioned bundles are unchanged, so if any bundle is unversioned then the bundles are
+ * installed by every instance, one at a time, as they would be without coordination.
+ */
+public class DeployCoordinator {
+
+	protected static final Log log = LogFactory.getLog(DeployCoordinator.class);
+
+	public static final String GP_LEASE_SECONDS = "metadatadeploy.deploy.leaseSeconds";
+
+	public static final String GP_WAIT_SECONDS = "metadatadeploy.deploy.waitSeconds";
+
+	public static final long DEFAULT_LEASE_SECONDS = 60;
+
+	public static final long DEFAULT_WAIT_SECONDS = 900;
+
+	public static final long DEFAULT_POLL_MILLIS = 1000;
+
+	private final ClusterProperty epochProperty = new ClusterProperty(DeployEpoch.GP_EPOCH);
+
+	private final SessionFactory sessionFactory;
+
+	private final PlatformTransactionManager transactionManager;
+
+	private final DeployLock lock;
+
+	private final long waitMillis;
+
+	private long pollMillis = DEFAULT_POLL_MILLIS;
+
+	/**
+	 * Creates a new coordinator
+	 * @param sessionFactory the session factory
+	 * @param transactionManager the transaction manager
+	 * @param leaseMillis the deploy lock lease in milliseconds
+	 * @param waitMillis the maximum time to wait for another instance to deploy in milliseconds
+	 */
+	public DeployCoordinator(SessionFactory sessionFactory, PlatformTransactionManager transactionManager, long leaseMillis, long waitMillis) {
+		this.sessionFactory = sessionFactory;
+		this.transactionManager = transactionManager;
+		this.lock = new DeployLock(sessionFactory, transactionManager, leaseMillis);
+		this.waitMillis = waitMillis;
+	}
+
+	/**
+	 * Sets how often to check whether another instance has finished deploying
+	 * @param pollMillis the interval in milliseconds
+	 */
+	public void setPollMillis(long pollMillis) {
+		this.pollMillis = pollMillis;
+	}
+
+	/**
+	 * Deploys the given bundles unless they have already been deployed
+	 * @param bundles the bundles
+	 * @param installer installs the bundles within the current transaction
+	 * @return true if bundles were installed by this instance, false if they had already been deployed
+	 * @throws APIException if install fails, or if another instance holds the lock for longer than the wait time
+	 */
+	public boolean deploy(Collection<MetadataBundle> bundles, final Runnable installer) throws APIException {
+		final String fingerprint = DeployEpoch.calculateFingerprint(bundles);
+		final boolean skippable = DeployEpoch.coversContent(bundles);
+		long deadline = System.currentTimeMillis() + waitMillis;
+
+		while (true) {
+			DeployEpoch epoch = readEpoch();
+			if (skippable && epoch != null && epoch.getFingerprint().equals(fingerprint)) {
+				log.info("Skipping install of " + bundles.size() + " bundles which were deployed in " + epoch);
+				return false;
+			}
+
+			if (lock.tryAcquire()) {
+				try {
+					return install(bundles, fingerprint, skippable, installer);
+				}
+				finally {
+					lock.release();
+				}
+			}
+
+			if (System.currentTimeMillis() > deadline) {
+				throw new APIException("Timed out waiting for another instance to deploy bundles");
+			}
+
+			try {
+				Thread.sleep(pollMillis);
+			}
+			catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new APIException("Interrupted whilst waiting for another instance to deploy bundles", ex);
+			}
+		}
+	}
+
+	/**
+	 * Installs the bundles and records the next epoch in a new transaction, whilst holding the lock
+	 * @param bundles the bundles
+	 * @param fingerprint the bundles fingerprint
+	 * @param skippable whether the bundles can be skipped if another instance has deployed the same fingerprint
+	 * @param installer installs the bundles
+	 * @return true if bundles were installed, false if another instance deployed them before the lock was acquired
+	 */
+	protected boolean install(Collection<MetadataBundle> bundles, final String fingerprint, final boolean skippable, final Runnable installer) {
+		TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+		transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+		final DeployEpoch[] deployed = new DeployEpoch[1];
+		transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+			@Override
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				// Another instance may have finished deploying since the epoch was checked
+				String previousValue = epochProperty.read(sessionFactory.getCurrentSession());
+				DeployEpoch previous = DeployEpoch.parse(previousValue);
+				if (skippable && previous != null && previous.getFingerprint().equals(fingerprint)) {
+					return;
+				}
+
+				installer.run();
+
+				if (!lock.isHeld()) {
+					throw new APIException("Deploy lock lease expired whilst installing bundles");
+				}
+
+				DeployEpoch next = previous != null ? previous.next(fingerprint) : new DeployEpoch(1, fingerprint);
+				if (!epochProperty.compareAndSet(sessionFactory.getCurrentSession(), previousValue, next.format())) {
+					throw new APIException("Bundles were deployed concurrently by another instance");
+				}
+				deployed[0] = next;
+			}
+		});
+
+		if (deployed[0] == null) {
+			log.info("Skipping install of " + bundles.size() + " bundles which were deployed by another instance");
+			return false;
+		}
+
+		log.info("Installed " + bundles.size() + " bundles as " + deployed[0]);
+		return true;
+	}
+
+	/**
+	 * Reads the current epoch in a new transaction
+	 * @return the epoch or null if bundles have never been deployed
+	 */
+	protected DeployEpoch readEpoch() {
+		TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+		transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+		transactionTemplate.setReadOnly(true);
+
+		return transactionTemplate.execute(new TransactionCallback<DeployEpoch>() {
+			@Override
+			public DeployEpoch doInTransaction(TransactionStatus status) {
+				return DeployEpoch.parse(epochProperty.read(sessionFactory.getCurrentSession()));
+			}
+		});
+	}
+}
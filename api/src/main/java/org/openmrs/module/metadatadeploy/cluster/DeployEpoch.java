@@ -0,0 +1,149 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.cluster;
+
+import org.openmrs.module.Module;
+import org.openmrs.module.ModuleFactory;
+import org.openmrs.module.metadatadeploy.bundle.BundleFingerprint;
+import org.openmrs.module.metadatadeploy.bundle.MetadataBundle;
+import org.openmrs.module.metadatadeploy.bundle.VersionedMetadataBundle;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The last completed deploy of bundles, which is recorded in the same transaction as the bundles are installed. Each
+ * deploy increments the epoch number and records the fingerprint of the deployed bundles, so that other instances can
+ * tell whether they would deploy the same bundles. The fingerprint covers the bundle classes, the versions of
+ * versioned bundles, and the versions of all started modules, i.e. it changes when the code which provides the
+ * bundles changes. It doesn't cover the content of unversioned bundles, which can change without any version changing,
+ * e.g. in a snapshot build or when a resource is edited, so those are installed on every deploy.
+ */
+public class DeployEpoch {
+
+	public static final String GP_EPOCH = "metadatadeploy.deploy.epoch";
+
+	private static final char SEPARATOR = '|';
+
+	private final int number;
+
+	private final String fingerprint;
+
+	/**
+	 * Creates a new epoch
+	 * @param number the epoch number
+	 * @param fingerprint the fingerprint of the deployed bundles
+	 */
+	public DeployEpoch(int number, String fingerprint) {
+		this.number = number;
+		this.fingerprint = fingerprint;
+	}
+
+	/**
+	 * Parses an epoch from its global property value
+	 * @param value the value
+	 * @return the epoch, or null if value is empty or invalid
+	 */
+	public static DeployEpoch parse(String value) {
+		int separator = value != null ? value.indexOf(SEPARATOR) : -1;
+		if (separator < 0) {
+			return null;
+		}
+
+		try {
+			return new DeployEpoch(Integer.parseInt(value.substring(0, separator)), value.substring(separator + 1));
+		}
+		catch (NumberFormatException ex) {
+			return null;
+		}
+	}
+
+	/**
+	 * Calculates the fingerprint of a collection of bundles
+	 * @param bundles the bundles
+	 * @return the fingerprint
+	 */
+	public static String calculateFingerprint(Collection<MetadataBundle> bundles) {
+		// Sorted so that the fingerprint doesn't depend on the order of the bundles or modules
+		List<String> items = new ArrayList<String>();
+		for (MetadataBundle bundle : bundles) {
+			String item = "bundle:" + bundle.getClass().getName();
+			if (bundle instanceof VersionedMetadataBundle) {
+				item += ":" + ((VersionedMetadataBundle) bundle).getVersion();
+			}
+			items.add(item);
+		}
+		for (Module module : ModuleFactory.getStartedModules()) {
+			items.add("module:" + module.getModuleId() + ":" + module.getVersion());
+		}
+		Collections.sort(items);
+
+		BundleFingerprint fingerprint = new BundleFingerprint();
+		for (String item : items) {
+			fingerprint.add(item);
+		}
+		return fingerprint.getValue();
+	}
+
+	/**
+	 * Gets whether the fingerprint of a collection of bundles covers their content, i.e. whether every bundle is
+	 * versioned, so that the bundles can be skipped when the fingerprint matches an earlier deploy
+	 * @param bundles the bundles
+	 * @return true if all bundles are versioned
+	 */
+	public static boolean coversContent(Collection<MetadataBundle> bundles) {
+		for (MetadataBundle bundle : bundles) {
+			if (!(bundle instanceof VersionedMetadataBundle)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Creates the epoch which follows this one
+	 * @param fingerprint the fingerprint of the deployed bundles
+	 * @return the next epoch
+	 */
+	public DeployEpoch next(String fingerprint) {
+		return new DeployEpoch(number + 1, fingerprint);
+	}
+
+	public int getNumber() {
+		return number;
+	}
+
+	public String getFingerprint() {
+		return fingerprint;
+	}
+
+	/**
+	 * Formats this epoch as a global property value
+	 * @return the value
+	 */
+	public String format() {
+		return number + String.valueOf(SEPARATOR) + fingerprint;
+	}
+
+	/**
+	 * @see Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "epoch " + number + " (" + fingerprint + ")";
+	}
+}
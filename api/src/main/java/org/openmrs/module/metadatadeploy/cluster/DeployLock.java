@@ -0,0 +1,274 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.cluster;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.hibernate.SessionFactory;
+import org.openmrs.api.context.Context;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.management.ManagementFactory;
+import java.util.UUID;
+
+/**
+ * Lock which is shared between all instances using the same database, so that only one instance deploys metadata at
+ * a time. The lock is a global property holding the lease expiry time and the holder, which is updated in its own
+ * transaction. While the lock is held, a heartbeat thread renews the lease. If the holder dies then the lease expires
+ * and another instance can take the lock.
+ *
+ * Expiry times are based on each instance's own clock, so the lease should be much longer than any clock difference
+ * between instances.
+ */
+public class DeployLock {
+
+	protected static final Log log = LogFactory.getLog(DeployLock.class);
+
+	public static final String GP_LOCK = "metadatadeploy.deploy.lock";
+
+	private static final char SEPARATOR = '|';
+
+	private final ClusterProperty property = new ClusterProperty(GP_LOCK);
+
+	private final SessionFactory sessionFactory;
+
+	private final PlatformTransactionManager transactionManager;
+
+	private final long leaseMillis;
+
+	private final String holder;
+
+	// The lock value written by this instance, or null if lock isn't held
+	private volatile String heldValue;
+
+	private Thread heartbeat;
+
+	/**
+	 * Creates a new lock
+	 * @param sessionFactory the session factory
+	 * @param transactionManager the transaction manager
+	 * @param leaseMillis the lease duration in milliseconds
+	 */
+	public DeployLock(SessionFactory sessionFactory, PlatformTransactionManager transactionManager, long leaseMillis) {
+		if (leaseMillis < 1) {
+			throw new IllegalArgumentException("leaseMillis must be positive");
+		}
+
+		this.sessionFactory = sessionFactory;
+		this.transactionManager = transactionManager;
+		this.leaseMillis = leaseMillis;
+		this.holder = ManagementFactory.getRuntimeMXBean().getName() + "/" + UUID.randomUUID();
+	}
+
+	/**
+	 * Gets the name which identifies this instance as the lock holder
+	 * @return the holder name
+	 */
+	public String getHolder() {
+		return holder;
+	}
+
+	/**
+	 * Gets whether the lock is currently held by this instance
+	 * @return true if lock is held
+	 */
+	public boolean isHeld() {
+		String value = heldValue;
+		return value != null && !isExpired(value, System.currentTimeMillis());
+	}
+
+	/**
+	 * Tries to acquire the lock, which succeeds if no other instance holds an unexpired lease
+	 * @return true if lock was acquired
+	 */
+	public synchronized boolean tryAcquire() {
+		if (isHeld()) {
+			return true;
+		}
+
+		final String value = format(System.currentTimeMillis() + leaseMillis, holder);
+		boolean acquired;
+		try {
+			acquired = execute(new TransactionCallback<Boolean>() {
+				@Override
+				public Boolean doInTransaction(TransactionStatus status) {
+					String current = property.read(sessionFactory.getCurrentSession());
+					if (current != null && !isExpired(current, System.currentTimeMillis())) {
+						return false;
+					}
+					return property.compareAndSet(sessionFactory.getCurrentSession(), current, value);
+				}
+			});
+		}
+		catch (RuntimeException ex) {
+			// Most likely another instance created the lock at the same time
+			log.debug("Unable to acquire deploy lock", ex);
+			acquired = false;
+		}
+
+		if (acquired) {
+			heldValue = value;
+			startHeartbeat();
+
+			log.info("Acquired deploy lock as " + holder);
+		}
+		return acquired;
+	}
+
+	/**
+	 * Releases the lock if it is held by this instance
+	 */
+	public synchronized void release() {
+		stopHeartbeat();
+
+		final String value = heldValue;
+		heldValue = null;
+		if (value == null) {
+			return;
+		}
+
+		try {
+			execute(new TransactionCallback<Boolean>() {
+				@Override
+				public Boolean doInTransaction(TransactionStatus status) {
+					return property.compareAndSet(sessionFactory.getCurrentSession(), value, "");
+				}
+			});
+		}
+		catch (RuntimeException ex) {
+			// Other instances will be able to take the lock once the lease expires
+			log.warn("Unable to release deploy lock", ex);
+		}
+	}
+
+	/**
+	 * Renews the lease if the lock is held by this instance
+	 * @return true if lease was renewed
+	 */
+	protected synchronized boolean renew() {
+		final String value = heldValue;
+		if (value == null) {
+			return false;
+		}
+
+		final String renewed = format(System.currentTimeMillis() + leaseMillis, holder);
+		boolean success;
+		try {
+			success = execute(new TransactionCallback<Boolean>() {
+				@Override
+				public Boolean doInTransaction(TransactionStatus status) {
+					return property.compareAndSet(sessionFactory.getCurrentSession(), value, renewed);
+				}
+			});
+		}
+		catch (RuntimeException ex) {
+			log.warn("Unable to renew deploy lock lease", ex);
+			return false;
+		}
+
+		if (success) {
+			heldValue = renewed;
+		}
+		else {
+			log.error("Deploy lock held by " + holder + " has been taken by another instance");
+			heldValue = null;
+		}
+		return success;
+	}
+
+	/**
+	 * Starts the thread which renews the lease, three times per lease duration
+	 */
+	protected void startHeartbeat() {
+		heartbeat = new Thread("metadatadeploy-lock-heartbeat") {
+			@Override
+			public void run() {
+				Context.openSession();
+				try {
+					while (!isInterrupted()) {
+						Thread.sleep(leaseMillis / 3);
+
+						if (!renew() && heldValue == null) {
+							return;
+						}
+					}
+				}
+				catch (InterruptedException ex) {
+					// Lock has been released
+				}
+				finally {
+					Context.closeSession();
+				}
+			}
+		};
+		heartbeat.setDaemon(true);
+		heartbeat.start();
+	}
+
+	/**
+	 * Stops the heartbeat thread
+	 */
+	protected void stopHeartbeat() {
+		if (heartbeat != null) {
+			heartbeat.interrupt();
+			heartbeat = null;
+		}
+	}
+
+	/**
+	 * Executes the callback in a new transaction
+	 * @param callback the callback
+	 * @return the callback result
+	 */
+	protected Boolean execute(TransactionCallback<Boolean> callback) {
+		TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+		transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+		return transactionTemplate.execute(callback);
+	}
+
+	/**
+	 * Formats a lock value
+	 * @param expiry the lease expiry time
+	 * @param holder the holder name
+	 * @return the value
+	 */
+	protected static String format(long expiry, String holder) {
+		return expiry + String.valueOf(SEPARATOR) + holder;
+	}
+
+	/**
+	 * Gets whether a lock value has expired. Empty or invalid values are treated as expired.
+	 * @param value the value
+	 * @param now the current time
+	 * @return true if expired
+	 */
+	protected static boolean isExpired(String value, long now) {
+		int separator = value.indexOf(SEPARATOR);
+		if (separator < 0) {
+			return true;
+		}
+
+		try {
+			return Long.parseLong(value.substring(0, separator)) <= now;
+		}
+		catch (NumberFormatException ex) {
+			return true;
+		}
+	}
+}
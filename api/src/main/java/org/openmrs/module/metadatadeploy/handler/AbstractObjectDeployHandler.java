@@ -20,13 +20,26 @@ import org.openmrs.Voidable;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.metadatadeploy.ObjectUtils;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 
 /**
  * Abstract base class for object deploy handlers
  */
-public abstract class AbstractObjectDeployHandler<T extends OpenmrsObject> implements ObjectDeployHandler<T> {
+public abstract class AbstractObjectDeployHandler<T extends OpenmrsObject> implements ComparingDeployHandler<T>, BulkDeployHandler<T> {
+
+	/**
+	 * Handlers which fetch all objects of their type for a bulk fetch should only do so for at least this many identifiers
+	 */
+	protected static final int BULK_FETCH_MIN_SIZE = 10;
 
 	/**
 	 * Generally objects are identified by their UUID. Roles, Privileges and Global Properties are exceptions because
@@ -47,6 +60,37 @@ public abstract class AbstractObjectDeployHandler<T extends OpenmrsObject> imple
 		return null;
 	}
 
+	/**
+	 * Fetches each object individually. Handlers should override this if objects can be fetched more efficiently.
+	 *
+	 * @see BulkDeployHandler#fetchAll(java.util.Collection)
+	 */
+	@Override
+	public Map<String, T> fetchAll(Collection<String> identifiers) {
+		Map<String, T> fetched = new HashMap<String, T>();
+		for (String identifier : identifiers) {
+			T obj = fetch(identifier);
+			if (obj != null) {
+				fetched.put(identifier, obj);
+			}
+		}
+		return fetched;
+	}
+
+	/**
+	 * Saves each object individually. Handlers should override this if objects can be saved more efficiently.
+	 *
+	 * @see BulkDeployHandler#saveAll(java.util.List)
+	 */
+	@Override
+	public List<T> saveAll(List<T> objs) {
+		List<T> saved = new ArrayList<T>(objs.size());
+		for (T obj : objs) {
+			saved.add(save(obj));
+		}
+		return saved;
+	}
+
 	/**
 	 * @see ObjectDeployHandler#overwrite(org.openmrs.OpenmrsObject, org.openmrs.OpenmrsObject)
 	 */
@@ -64,6 +108,151 @@ public abstract class AbstractObjectDeployHandler<T extends OpenmrsObject> imple
 		}
 	}
 
+	/**
+	 * @see ComparingDeployHandler#updateRequired(org.openmrs.OpenmrsObject, org.openmrs.OpenmrsObject)
+	 */
+	@Override
+	public boolean updateRequired(T incoming, T existing) {
+		// If object uses id, compare as if incoming has the existing id as this is re-instated after copy
+		boolean usesId = ObjectUtils.usesId(incoming);
+		Integer incomingId = usesId ? incoming.getId() : null;
+
+		if (usesId) {
+			incoming.setId(existing.getId());
+		}
+
+		try {
+			return !ObjectUtils.fieldsEqual(incoming, existing, null);
+		}
+		finally {
+			if (usesId) {
+				incoming.setId(incomingId);
+			}
+		}
+	}
+
+	/**
+	 * Checks whether merging the incoming collection into the existing collection would change it. Existing items which
+	 * aren't in the incoming collection would be voided or retired, so they only count as changes if they aren't already.
+	 * @param existing the existing collection
+	 * @param incoming the incoming collection
+	 * @param fieldsToExclude the names of item fields to be excluded
+	 * @return true if the existing collection would change
+	 */
+	protected <E extends OpenmrsObject> boolean collectionUpdateRequired(Collection<E> existing, Collection<E> incoming, Set<String> fieldsToExclude) {
+		Map<String, E> existingByUuid = indexByUuid(existing);
+		Set<E> handled = new HashSet<E>();
+		for (E incomingItem : incoming) {
+			E existingItem = existingByUuid.get(incomingItem.getUuid());
+			if (existingItem == null || itemUpdateRequired(incomingItem, existingItem, fieldsToExclude)) {
+				return true;
+			}
+			handled.add(existingItem);
+		}
+
+		for (E existingItem : existing) {
+			if (!handled.contains(existingItem) && !isVoidedOrRetired(existingItem)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Checks whether overwriting an existing collection item with an incoming item would change it
+	 * @param incomingItem the incoming item
+	 * @param existingItem the existing item
+	 * @param fieldsToExclude the names of fields to be excluded
+	 * @return true if the existing item would change
+	 */
+	protected boolean itemUpdateRequired(OpenmrsObject incomingItem, OpenmrsObject existingItem, Set<String> fieldsToExclude) {
+		return !ObjectUtils.fieldsEqual(incomingItem, existingItem, fieldsToExclude);
+	}
+
+	/**
+	 * Merges an incoming collection of child objects into an existing collection. Incoming items are matched to existing
+	 * items by UUID. Matched items are merged with {@link #mergeItem(OpenmrsObject, OpenmrsObject, Set)}, existing items
+	 * which aren't matched are removed with {@link #removeItem(Iterator, OpenmrsObject)}, and incoming items which aren't
+	 * matched are added to the existing collection.
+	 * @param existing the existing collection
+	 * @param incoming the incoming collection
+	 * @param fieldsToExclude the names of item fields to be excluded
+	 */
+	protected <E extends OpenmrsObject> void mergeCollection(Collection<E> existing, Collection<E> incoming, Set<String> fieldsToExclude) {
+		Map<String, E> existingByUuid = indexByUuid(existing);
+		Set<E> handled = new HashSet<E>();
+		List<E> incomingToAdd = new ArrayList<E>();
+
+		for (E incomingItem : incoming) {
+			E existingItem = existingByUuid.get(incomingItem.getUuid());
+			if (existingItem == null) {
+				incomingToAdd.add(incomingItem);
+			} else {
+				mergeItem(incomingItem, existingItem, fieldsToExclude);
+				handled.add(existingItem);
+			}
+		}
+
+		for (Iterator<E> iter = existing.iterator(); iter.hasNext(); ) {
+			E existingItem = iter.next();
+			if (!handled.contains(existingItem)) {
+				removeItem(iter, existingItem);
+			}
+		}
+
+		existing.addAll(incomingToAdd);
+	}
+
+	/**
+	 * Merges an incoming collection item into the matching existing item. Handlers can override this to also merge the
+	 * item's own child collections.
+	 * @param incomingItem the incoming item
+	 * @param existingItem the existing item
+	 * @param fieldsToExclude the names of fields to be excluded
+	 */
+	protected void mergeItem(OpenmrsObject incomingItem, OpenmrsObject existingItem, Set<String> fieldsToExclude) {
+		ObjectUtils.overwrite(incomingItem, existingItem, fieldsToExclude);
+	}
+
+	/**
+	 * Removes an existing collection item which doesn't match any incoming item. Voidable and retireable items are voided
+	 * or retired, and other items are removed from the collection.
+	 * @param iterator the iterator of the existing collection, positioned at the item
+	 * @param existingItem the existing item
+	 */
+	protected void removeItem(Iterator<? extends OpenmrsObject> iterator, OpenmrsObject existingItem) {
+		if (existingItem instanceof Voidable || existingItem instanceof Retireable) {
+			voidOrRetire(existingItem);
+		}
+		else {
+			iterator.remove();
+		}
+	}
+
+	/**
+	 * Indexes the items of a collection by UUID. Items without a UUID aren't indexed, and if more than one item has the
+	 * same UUID then the first is indexed.
+	 * @param collection the collection
+	 * @return the map of UUIDs to items
+	 */
+	protected <E extends OpenmrsObject> Map<String, E> indexByUuid(Collection<E> collection) {
+		Map<String, E> index = new HashMap<String, E>(collection.size() * 2);
+		for (E item : collection) {
+			String uuid = item.getUuid();
+			if (uuid != null && !index.containsKey(uuid)) {
+				index.put(uuid, item);
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * Finds the item in a collection with the same UUID as the incoming item. For repeated lookups against the same
+	 * collection use {@link #indexByUuid(Collection)} instead.
+	 * @param collection the collection
+	 * @param incomingItem the incoming item
+	 * @return the matching item or null
+	 */
 	protected <T extends OpenmrsObject> T findExisting(Collection<T> collection, T incomingItem) {
 		for (T candidate : collection) {
 			if (candidate.getUuid().equals(incomingItem.getUuid())) {
@@ -73,6 +262,40 @@ public abstract class AbstractObjectDeployHandler<T extends OpenmrsObject> imple
 		return null;
 	}
 
+	/**
+	 * Filters a collection of fetched objects to those with the given identifiers
+	 * @param candidates the fetched objects
+	 * @param identifiers the identifiers
+	 * @param ignoreCase whether identifiers should be matched ignoring case, e.g. for names which the database compares
+	 *                   case-insensitively
+	 * @return the map of identifiers to objects, keyed by the given identifiers
+	 */
+	protected Map<String, T> filterByIdentifier(Collection<T> candidates, Collection<String> identifiers, boolean ignoreCase) {
+		Map<String, T> byIdentifier = ignoreCase ? new TreeMap<String, T>(String.CASE_INSENSITIVE_ORDER) : new HashMap<String, T>();
+		for (T candidate : candidates) {
+			byIdentifier.put(getIdentifier(candidate), candidate);
+		}
+
+		Map<String, T> fetched = new HashMap<String, T>();
+		for (String identifier : identifiers) {
+			T obj = byIdentifier.get(identifier);
+			if (obj != null) {
+				fetched.put(identifier, obj);
+			}
+		}
+		return fetched;
+	}
+
+	protected boolean isVoidedOrRetired(OpenmrsObject existing) {
+		if (existing instanceof Voidable) {
+			return ((Voidable) existing).isVoided();
+		}
+		else if (existing instanceof Retireable) {
+			return ((Retireable) existing).isRetired();
+		}
+		return false;
+	}
+
 	protected void voidOrRetire(OpenmrsObject existing) {
 		if (existing instanceof Voidable) {
 			Voidable voidable = (Voidable) existing;
@@ -0,0 +1,43 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+
+package org.openmrs.module.metadatadeploy.handler;
+
+import org.openmrs.OpenmrsObject;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Optional interface for handlers which can fetch and save many objects together. Objects of other handlers are
+ * fetched and saved one at a time.
+ */
+public interface BulkDeployHandler<T extends OpenmrsObject> extends ObjectDeployHandler<T> {
+
+	/**
+	 * Fetches objects by primary identifier
+	 * @param identifiers the identifiers
+	 * @return the map of identifiers to objects, which doesn't contain identifiers with no object
+	 */
+	Map<String, T> fetchAll(Collection<String> identifiers);
+
+	/**
+	 * Saves the given objects to the database
+	 * @param objs the objects to save
+	 * @return the saved objects in the same order
+	 */
+	List<T> saveAll(List<T> objs);
+}
@@ -0,0 +1,33 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+
+package org.openmrs.module.metadatadeploy.handler;
+
+import org.openmrs.OpenmrsObject;
+
+/**
+ * Optional interface for handlers which can check whether an incoming object would change an existing object, so that
+ * unchanged existing objects aren't saved. Existing objects of other handlers are always overwritten and saved.
+ */
+public interface ComparingDeployHandler<T extends OpenmrsObject> extends ObjectDeployHandler<T> {
+
+	/**
+	 * Checks whether overwriting the existing object with the incoming object would change it
+	 * @param incoming the incoming object
+	 * @param existing the existing object
+	 * @return true if the existing object needs to be overwritten and saved
+	 */
+	boolean updateRequired(T incoming, T existing);
+}
@@ -0,0 +1,180 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+
+package org.openmrs.module.metadatadeploy.handler;
+
+import org.openmrs.OpenmrsMetadata;
+import org.openmrs.OpenmrsObject;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * In-memory index of the existing objects of one handler, by primary identifier, UUID and name (for metadata). Names
+ * are matched case-insensitively like the name lookups of the database they replace. Where several objects share a
+ * name, the first indexed is found, but all of them can be fetched, e.g. by handlers which match names exactly.
+ */
+public class ExistingObjectIndex<T extends OpenmrsObject> {
+
+	private final ObjectDeployHandler<T> handler;
+
+	private final Map<String, T> byIdentifier = new HashMap<String, T>();
+
+	private final Map<String, T> byUuid = new HashMap<String, T>();
+
+	private final Map<String, List<T>> byName = new HashMap<String, List<T>>();
+
+	// The keys under which each object is indexed, so that they can be updated if the object changes
+	private final Map<T, String[]> keys = new IdentityHashMap<T, String[]>();
+
+	/**
+	 * Creates a new index
+	 * @param handler the handler of the indexed objects
+	 * @param objs the existing objects
+	 */
+	public ExistingObjectIndex(ObjectDeployHandler<T> handler, Collection<T> objs) {
+		this.handler = handler;
+
+		for (T obj : objs) {
+			put(obj);
+		}
+	}
+
+	/**
+	 * Gets an existing object by primary identifier
+	 * @param identifier the identifier
+	 * @return the object or null
+	 */
+	public T getByIdentifier(String identifier) {
+		return identifier != null ? byIdentifier.get(identifier) : null;
+	}
+
+	/**
+	 * Gets an existing object by UUID
+	 * @param uuid the UUID
+	 * @return the object or null
+	 */
+	public T getByUuid(String uuid) {
+		return uuid != null ? byUuid.get(uuid) : null;
+	}
+
+	/**
+	 * Gets an existing object by name
+	 * @param name the name
+	 * @return the object or null
+	 */
+	public T getByName(String name) {
+		List<T> objs = getAllByName(name);
+		return objs.isEmpty() ? null : objs.get(0);
+	}
+
+	/**
+	 * Gets all existing objects with a name, ignoring case, in the order they were indexed
+	 * @param name the name
+	 * @return the objects
+	 */
+	public List<T> getAllByName(String name) {
+		List<T> objs = name != null ? byName.get(nameKey(name)) : null;
+		return objs != null ? Collections.unmodifiableList(objs) : Collections.<T>emptyList();
+	}
+
+	/**
+	 * Adds an object which has been saved, or re-indexes an object which has been modified
+	 * @param obj the object
+	 */
+	public void put(T obj) {
+		remove(obj);
+
+		String[] objKeys = new String[] {
+				handler.getIdentifier(obj),
+				obj.getUuid(),
+				obj instanceof OpenmrsMetadata ? nameKey(((OpenmrsMetadata) obj).getName()) : null
+		};
+
+		putKey(byIdentifier, objKeys[0], obj);
+		putKey(byUuid, objKeys[1], obj);
+		if (objKeys[2] != null) {
+			List<T> objs = byName.get(objKeys[2]);
+			if (objs == null) {
+				objs = new ArrayList<T>();
+				byName.put(objKeys[2], objs);
+			}
+			objs.add(obj);
+		}
+		keys.put(obj, objKeys);
+	}
+
+	/**
+	 * Removes an object, e.g. because it has been deleted
+	 * @param obj the object
+	 */
+	public void remove(T obj) {
+		String[] objKeys = keys.remove(obj);
+		if (objKeys != null) {
+			removeKey(byIdentifier, objKeys[0], obj);
+			removeKey(byUuid, objKeys[1], obj);
+			removeName(objKeys[2], obj);
+		}
+	}
+
+	/**
+	 * Gets the number of indexed objects
+	 * @return the number of objects
+	 */
+	public int size() {
+		return keys.size();
+	}
+
+	private static String nameKey(String name) {
+		return name != null ? name.toLowerCase(Locale.ROOT) : null;
+	}
+
+	private void putKey(Map<String, T> map, String key, T obj) {
+		if (key != null && !map.containsKey(key)) {
+			map.put(key, obj);
+		}
+	}
+
+	private void removeKey(Map<String, T> map, String key, T obj) {
+		if (key != null && map.get(key) == obj) {
+			map.remove(key);
+		}
+	}
+
+	private void removeName(String key, T obj) {
+		List<T> objs = key != null ? byName.get(key) : null;
+		if (objs == null) {
+			return;
+		}
+
+		// By identity, as object equality is based on UUIDs
+		for (Iterator<T> i = objs.iterator(); i.hasNext(); ) {
+			if (i.next() == obj) {
+				i.remove();
+				break;
+			}
+		}
+		if (objs.isEmpty()) {
+			byName.remove(key);
+		}
+	}
+}
@@ -4,21 +4,32 @@ import org.openmrs.OpenmrsObject;
 import org.openmrs.annotation.Handler;
 import org.openmrs.api.APIException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
 import org.springframework.stereotype.Component;
 
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Master bean that stores all the object deploy handlers
  * We don't wire these directly into the MetadataDeployServiceImpl because of the slowdown that occurs when autowiring beans into a proxied bean (ie, a service)
  */
 @Component
-public class ObjectDeployHandlers {
+public class ObjectDeployHandlers implements ApplicationListener<ContextRefreshedEvent> {
 
     private Map<Class<? extends OpenmrsObject>, ObjectDeployHandler> handlers;
 
+    // Cache of concrete classes (e.g. Hibernate proxy classes) to their resolved handlers
+    private Map<Class<?>, ObjectDeployHandler> resolvedHandlers = new ConcurrentHashMap<Class<?>, ObjectDeployHandler>();
+
+    private AtomicLong cacheHits = new AtomicLong();
+
+    private AtomicLong cacheMisses = new AtomicLong();
+
     /**
      * Sets the object handlers, reorganising them into a map
      * @param handlers the handler components
@@ -43,9 +54,83 @@ public class ObjectDeployHandlers {
                 }
             }
         }
+
+        clearCache();
     }
 
     public Map<Class<? extends OpenmrsObject>, ObjectDeployHandler> getHandlers() {
         return handlers;
     }
+
+    /**
+     * Gets the handler for the given class. Hibernate proxy classes are resolved to the handler of the class they
+     * proxy, and the result of each resolution is cached by concrete class.
+     * @param clazz the object class
+     * @return the handler or null if no suitable handler exists
+     */
+    public <T extends OpenmrsObject> ObjectDeployHandler<T> getHandler(Class<T> clazz) {
+        ObjectDeployHandler<T> handler = resolvedHandlers.get(clazz);
+        if (handler != null) {
+            cacheHits.incrementAndGet();
+            return handler;
+        }
+
+        cacheMisses.incrementAndGet();
+
+        handler = resolveHandler(clazz);
+        if (handler != null) {
+            resolvedHandlers.put(clazz, handler);
+        }
+        return handler;
+    }
+
+    /**
+     * Resolves the handler for the given class without consulting the cache
+     * @param clazz the object class
+     * @return the handler or null if no suitable handler exists
+     */
+    protected <T extends OpenmrsObject> ObjectDeployHandler<T> resolveHandler(Class<T> clazz) {
+        ObjectDeployHandler<T> handler = handlers.get(clazz);
+        if (handler != null) {
+            return handler;
+        }
+        if (clazz.getSimpleName().contains("_$$")) {
+            return resolveHandler((Class<T>) clazz.getSuperclass());
+        }
+        return null;
+    }
+
+    /**
+     * Clears the cache of resolved handlers and resets its statistics
+     */
+    public void clearCache() {
+        resolvedHandlers.clear();
+        cacheHits.set(0);
+        cacheMisses.set(0);
+    }
+
+    /**
+     * Gets the number of handler lookups answered from the cache
+     * @return the number of cache hits
+     */
+    public long getCacheHits() {
+        return cacheHits.get();
+    }
+
+    /**
+     * Gets the number of handler lookups which required resolution
+     * @return the number of cache misses
+     */
+    public long getCacheMisses() {
+        return cacheMisses.get();
+    }
+
+    /**
+     * Handlers may have been replaced so resolved handlers are discarded when the context is refreshed
+     * @see ApplicationListener#onApplicationEvent(org.springframework.context.ApplicationEvent)
+     */
+    @Override
+    public void onApplicationEvent(ContextRefreshedEvent event) {
+        clearCache();
+    }
 }
@@ -0,0 +1,43 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+
+package org.openmrs.module.metadatadeploy.handler;
+
+import org.openmrs.OpenmrsObject;
+
+import java.util.List;
+
+/**
+ * Optional interface for handlers whose existing objects can be loaded together and indexed in memory, so that an
+ * install can find existing objects without querying for each incoming object. Handlers should only implement this for
+ * types which don't usually have many objects.
+ */
+public interface PreloadableDeployHandler<T extends OpenmrsObject> extends ObjectDeployHandler<T> {
+
+	/**
+	 * Fetches all existing objects, including retired ones
+	 * @return the objects
+	 */
+	List<T> fetchAllExisting();
+
+	/**
+	 * Finds an alternative existing object like {@link #findAlternateMatch(org.openmrs.OpenmrsObject)}, but using an
+	 * index of the existing objects
+	 * @param obj the incoming object
+	 * @param existing the index of existing objects
+	 * @return the existing object or null
+	 */
+	T findAlternateMatch(T obj, ExistingObjectIndex<T> existing);
+}
@@ -16,6 +16,9 @@ package org.openmrs.module.metadatadeploy.handler.impl;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.hibernate.Criteria;
+import org.hibernate.SessionFactory;
+import org.hibernate.criterion.Restrictions;
 import org.openmrs.Concept;
 import org.openmrs.ConceptDescription;
 import org.openmrs.ConceptMap;
@@ -34,11 +37,13 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 
 import java.lang.reflect.Field;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -50,10 +55,17 @@ public class ConceptDeployHandler extends AbstractObjectDeployHandler<Concept> {
 
     private final Log log = LogFactory.getLog(this.getClass());
 
+	// Limits the size of IN clauses in bulk fetches
+	private static final int FETCH_BATCH_SIZE = 500;
+
 	@Autowired
 	@Qualifier("conceptService")
 	private ConceptService conceptService;
 
+	@Autowired
+	@Qualifier("sessionFactory")
+	private SessionFactory sessionFactory;
+
     private Map<Class, Set<String>> excludeFields;
 
     public ConceptDeployHandler() {
@@ -78,9 +90,39 @@ public class ConceptDeployHandler extends AbstractObjectDeployHandler<Concept> {
 	 */
 	@Override
 	public Concept fetch(String identifier) {
-        Concept concept = conceptService.getConceptByUuid(identifier);
+        return asNumericIfRequired(conceptService.getConceptByUuid(identifier));
+	}
+
+    /**
+     * Fetches concepts with a single query per batch of UUIDs, as concept dictionaries are usually too large to load
+     * in their entirety
+     * @see org.openmrs.module.metadatadeploy.handler.BulkDeployHandler#fetchAll(java.util.Collection)
+     */
+    @Override
+    public Map<String, Concept> fetchAll(Collection<String> identifiers) {
+        Map<String, Concept> fetched = new HashMap<String, Concept>();
+        List<String> uuids = new ArrayList<String>(new HashSet<String>(identifiers));
+
+        for (int from = 0; from < uuids.size(); from += FETCH_BATCH_SIZE) {
+            List<String> batch = uuids.subList(from, Math.min(from + FETCH_BATCH_SIZE, uuids.size()));
 
-        // the core API doesn't always return ConceptNumeric for numeric concepts
+            Criteria criteria = sessionFactory.getCurrentSession().createCriteria(Concept.class);
+            criteria.add(Restrictions.in("uuid", batch));
+
+            for (Object result : criteria.list()) {
+                Concept concept = asNumericIfRequired((Concept) result);
+                fetched.put(concept.getUuid(), concept);
+            }
+        }
+        return fetched;
+    }
+
+    /**
+     * The core API doesn't always return ConceptNumeric for numeric concepts, so this converts them if necessary
+     * @param concept the concept (may be null)
+     * @return the concept or numeric concept
+     */
+    protected Concept asNumericIfRequired(Concept concept) {
         if (concept != null && concept.getDatatype().isNumeric() && !(concept instanceof ConceptNumeric)) {
             ConceptNumeric conceptNumeric = Context.getConceptService().getConceptNumeric(concept.getId());
             // If this was previously saved as a Concept, but is now being saved as a ConceptNumeric, allow for this
@@ -91,15 +133,7 @@ public class ConceptDeployHandler extends AbstractObjectDeployHandler<Concept> {
         }
 
         return concept;
-	}
-
-	/**
-	 * @see org.openmrs.module.metadatadeploy.handler.ObjectDeployHandler#findAlternateMatch(org.openmrs.OpenmrsObject)
-	 */
-	@Override
-	public Concept findAlternateMatch(Concept obj) {
-		return null;
-	}
+    }
 
     /**
 	 * @see org.openmrs.module.metadatadeploy.handler.ObjectDeployHandler#save(org.openmrs.OpenmrsObject)
@@ -117,60 +151,57 @@ public class ConceptDeployHandler extends AbstractObjectDeployHandler<Concept> {
         mergeCollection(existing.getConceptMappings(), incoming.getConceptMappings(), excludeFields.get(ConceptMap.class));
     }
 
-    private <T extends OpenmrsObject> void mergeCollection(Collection<T> existing, Collection<T> incoming, Set<String> fieldsToExclude) {
-        Set<T> handled = new HashSet<T>();
-        Set<T> incomingToAdd = new HashSet<T>();
-        for (T incomingItem : incoming) {
-            T existingItem = findExisting(existing, incomingItem);
-            if (existingItem == null) {
-                incomingToAdd.add(incomingItem);
-            } else {
-                ObjectUtils.overwrite(incomingItem, existingItem, fieldsToExclude);
-                handled.add(existingItem);
-            }
+    /**
+     * @see org.openmrs.module.metadatadeploy.handler.ComparingDeployHandler#updateRequired(org.openmrs.OpenmrsObject, org.openmrs.OpenmrsObject)
+     */
+    @Override
+    public boolean updateRequired(Concept incoming, Concept existing) {
+        // A numeric concept which was previously saved as a plain concept needs to be saved again (see #fetch)
+        if (existing instanceof ConceptNumeric && conceptService.getConceptNumeric(existing.getId()) == null) {
+            return true;
         }
 
-        for (Iterator<T> iter = existing.iterator(); iter.hasNext(); ) {
-            T existingItem = iter.next();
-            if (!handled.contains(existingItem)) {
-                if (existingItem instanceof Voidable || existingItem instanceof Retireable) {
-                    voidOrRetire(existingItem);
-                }
-                else {
-                    StringBuilder descr = new StringBuilder();
-                    Concept c;
-                    if (existingItem instanceof ConceptName) {
-                        ConceptName cn = (ConceptName) existingItem;
-                        c = cn.getConcept();
-                        descr.append("\"").append(cn.getName()).append("\" (name in ")
-                                .append(cn.getLocale())
-                                .append(" with type=").append(cn.getConceptNameType())
-                                .append(" and localePreferred=").append(cn.getLocalePreferred())
-                                .append(")");
-                    } else if (existingItem instanceof ConceptDescription) {
-                        ConceptDescription cd = (ConceptDescription) existingItem;
-                        c = cd.getConcept();
-                        descr.append("\"").append(cd.getDescription()).append("\" (description in ")
-                                .append(cd.getLocale()).append(")");
-                    } else {
-                        c = null;
-                        descr.append(existingItem)
-                                .append(" (")
-                                .append(existingItem.getClass().getSimpleName())
-                                .append(")");
-                    }
-                    if (c != null) {
-                        descr.append(" from concept ").append(c.getUuid());
-                    }
-                    log.info("Metadata Deploy is removing " + descr);
-                    iter.remove();
-                }
+        return !ObjectUtils.fieldsEqual(incoming, existing, excludeFields.get(Concept.class))
+                || collectionUpdateRequired(getConceptNamesCollection(existing), getConceptNamesCollection(incoming), excludeFields.get(ConceptName.class))
+                || collectionUpdateRequired(existing.getDescriptions(), incoming.getDescriptions(), excludeFields.get(ConceptDescription.class))
+                || collectionUpdateRequired(existing.getConceptMappings(), incoming.getConceptMappings(), excludeFields.get(ConceptMap.class));
+    }
+
+    /**
+     * @see org.openmrs.module.metadatadeploy.handler.AbstractObjectDeployHandler#removeItem(java.util.Iterator, org.openmrs.OpenmrsObject)
+     */
+    @Override
+    protected void removeItem(Iterator<? extends OpenmrsObject> iterator, OpenmrsObject existingItem) {
+        if (!(existingItem instanceof Voidable || existingItem instanceof Retireable)) {
+            StringBuilder descr = new StringBuilder();
+            Concept c;
+            if (existingItem instanceof ConceptName) {
+                ConceptName cn = (ConceptName) existingItem;
+                c = cn.getConcept();
+                descr.append("\"").append(cn.getName()).append("\" (name in ")
+                        .append(cn.getLocale())
+                        .append(" with type=").append(cn.getConceptNameType())
+                        .append(" and localePreferred=").append(cn.getLocalePreferred())
+                        .append(")");
+            } else if (existingItem instanceof ConceptDescription) {
+                ConceptDescription cd = (ConceptDescription) existingItem;
+                c = cd.getConcept();
+                descr.append("\"").append(cd.getDescription()).append("\" (description in ")
+                        .append(cd.getLocale()).append(")");
+            } else {
+                c = null;
+                descr.append(existingItem)
+                        .append(" (")
+                        .append(existingItem.getClass().getSimpleName())
+                        .append(")");
             }
+            if (c != null) {
+                descr.append(" from concept ").append(c.getUuid());
+            }
+            log.info("Metadata Deploy is removing " + descr);
         }
 
-        for (T incomingItem : incomingToAdd) {
-            existing.add(incomingItem);
-        }
+        super.removeItem(iterator, existingItem);
     }
 
     /**
@@ -18,14 +18,18 @@ import org.openmrs.EncounterType;
 import org.openmrs.annotation.Handler;
 import org.openmrs.api.EncounterService;
 import org.openmrs.module.metadatadeploy.handler.AbstractObjectDeployHandler;
+import org.openmrs.module.metadatadeploy.handler.ExistingObjectIndex;
+import org.openmrs.module.metadatadeploy.handler.PreloadableDeployHandler;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 
+import java.util.List;
+
 /**
  * Deployment handler for encounter types
  */
 @Handler(supports = { EncounterType.class })
-public class EncounterTypeDeployHandler extends AbstractObjectDeployHandler<EncounterType> {
+public class EncounterTypeDeployHandler extends AbstractObjectDeployHandler<EncounterType> implements PreloadableDeployHandler<EncounterType> {
 
 	@Autowired
 	@Qualifier("encounterService")
@@ -55,6 +59,22 @@ public class EncounterTypeDeployHandler extends AbstractObjectDeployHandler<Enco
 		return encounterService.getEncounterType(incoming.getName());
 	}
 
+	/**
+	 * @see org.openmrs.module.metadatadeploy.handler.PreloadableDeployHandler#fetchAllExisting()
+	 */
+	@Override
+	public List<EncounterType> fetchAllExisting() {
+		return encounterService.getAllEncounterTypes(true);
+	}
+
+	/**
+	 * @see org.openmrs.module.metadatadeploy.handler.PreloadableDeployHandler#findAlternateMatch(org.openmrs.OpenmrsObject, org.openmrs.module.metadatadeploy.handler.ExistingObjectIndex)
+	 */
+	@Override
+	public EncounterType findAlternateMatch(EncounterType incoming, ExistingObjectIndex<EncounterType> existing) {
+		return existing.getByName(incoming.getName());
+	}
+
 	/**
 	 * @see org.openmrs.module.metadatadeploy.handler.ObjectDeployHandler#uninstall(org.openmrs.OpenmrsObject, String)
 	 * @param obj the object to uninstall
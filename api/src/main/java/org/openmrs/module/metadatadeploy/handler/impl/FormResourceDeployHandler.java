@@ -18,6 +18,7 @@ import org.openmrs.FormResource;
 import org.openmrs.annotation.Handler;
 import org.openmrs.api.FormService;
 import org.openmrs.module.metadatadeploy.handler.AbstractObjectDeployHandler;
+import org.openmrs.util.OpenmrsUtil;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 
@@ -65,6 +66,15 @@ public class FormResourceDeployHandler extends AbstractObjectDeployHandler<FormR
 		existing.setValue(incoming.getValue());
 	}
 
+	/**
+	 * @see org.openmrs.module.metadatadeploy.handler.ComparingDeployHandler#updateRequired(org.openmrs.OpenmrsObject, org.openmrs.OpenmrsObject)
+	 */
+	@Override
+	public boolean updateRequired(FormResource incoming, FormResource existing) {
+		// The value isn't compared with the other fields as it is transient
+		return super.updateRequired(incoming, existing) || !OpenmrsUtil.nullSafeEquals(incoming.getValue(), existing.getValue());
+	}
+
 	/**
 	 * @see org.openmrs.module.metadatadeploy.handler.ObjectDeployHandler#uninstall(org.openmrs.OpenmrsObject, String)
 	 * @param obj the object to uninstall
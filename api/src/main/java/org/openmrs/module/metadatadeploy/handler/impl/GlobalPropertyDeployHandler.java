@@ -18,16 +18,25 @@ import org.apache.commons.lang3.StringUtils;
 import org.openmrs.GlobalProperty;
 import org.openmrs.annotation.Handler;
 import org.openmrs.api.AdministrationService;
+import org.openmrs.module.metadatadeploy.ObjectUtils;
 import org.openmrs.module.metadatadeploy.handler.AbstractObjectDeployHandler;
+import org.openmrs.module.metadatadeploy.handler.ExistingObjectIndex;
+import org.openmrs.module.metadatadeploy.handler.PreloadableDeployHandler;
 import org.openmrs.util.OpenmrsUtil;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 /**
  * Deployment handler for global properties
  */
 @Handler(supports = { GlobalProperty.class })
-public class GlobalPropertyDeployHandler extends AbstractObjectDeployHandler<GlobalProperty> {
+public class GlobalPropertyDeployHandler extends AbstractObjectDeployHandler<GlobalProperty> implements PreloadableDeployHandler<GlobalProperty> {
 
 	@Autowired
 	@Qualifier("adminService")
@@ -49,6 +58,17 @@ public class GlobalPropertyDeployHandler extends AbstractObjectDeployHandler<Glo
 		return adminService.getGlobalPropertyObject(identifier);
 	}
 
+	/**
+	 * @see org.openmrs.module.metadatadeploy.handler.BulkDeployHandler#fetchAll(java.util.Collection)
+	 */
+	@Override
+	public Map<String, GlobalProperty> fetchAll(Collection<String> identifiers) {
+		if (identifiers.size() < BULK_FETCH_MIN_SIZE) {
+			return super.fetchAll(identifiers);
+		}
+		return filterByIdentifier(adminService.getAllGlobalProperties(), identifiers, true);
+	}
+
 	/**
 	 * @see org.openmrs.module.metadatadeploy.handler.ObjectDeployHandler#save(org.openmrs.OpenmrsObject)
 	 */
@@ -57,6 +77,14 @@ public class GlobalPropertyDeployHandler extends AbstractObjectDeployHandler<Glo
 		return adminService.saveGlobalProperty(obj);
 	}
 
+	/**
+	 * @see org.openmrs.module.metadatadeploy.handler.BulkDeployHandler#saveAll(java.util.List)
+	 */
+	@Override
+	public List<GlobalProperty> saveAll(List<GlobalProperty> objs) {
+		return adminService.saveGlobalProperties(objs);
+	}
+
 	/**
 	 * @see org.openmrs.module.metadatadeploy.handler.ObjectDeployHandler#findAlternateMatch(org.openmrs.OpenmrsObject)
 	 */
@@ -65,6 +93,22 @@ public class GlobalPropertyDeployHandler extends AbstractObjectDeployHandler<Glo
 		return adminService.getGlobalPropertyByUuid(incoming.getUuid());
 	}
 
+	/**
+	 * @see org.openmrs.module.metadatadeploy.handler.PreloadableDeployHandler#fetchAllExisting()
+	 */
+	@Override
+	public List<GlobalProperty> fetchAllExisting() {
+		return adminService.getAllGlobalProperties();
+	}
+
+	/**
+	 * @see org.openmrs.module.metadatadeploy.handler.PreloadableDeployHandler#findAlternateMatch(org.openmrs.OpenmrsObject, org.openmrs.module.metadatadeploy.handler.ExistingObjectIndex)
+	 */
+	@Override
+	public GlobalProperty findAlternateMatch(GlobalProperty incoming, ExistingObjectIndex<GlobalProperty> existing) {
+		return existing.getByUuid(incoming.getUuid());
+	}
+
 	/**
 	 * @see org.openmrs.module.metadatadeploy.handler.ObjectDeployHandler#uninstall(org.openmrs.OpenmrsObject, String)
 	 * @param obj the object to uninstall
@@ -97,6 +141,26 @@ public class GlobalPropertyDeployHandler extends AbstractObjectDeployHandler<Glo
 		}
 	}
 
+	/**
+	 * @see org.openmrs.module.metadatadeploy.handler.ComparingDeployHandler#updateRequired(org.openmrs.OpenmrsObject, org.openmrs.OpenmrsObject)
+	 */
+	@Override
+	public boolean updateRequired(GlobalProperty incoming, GlobalProperty existing) {
+		boolean datatypeMatches = OpenmrsUtil.nullSafeEquals(incoming.getDatatypeClassname(), existing.getDatatypeClassname());
+
+		// The existing value is kept if the incoming property doesn't have a value, so it only needs comparing if it does
+		boolean preserveValue = !hasValue(incoming) && datatypeMatches;
+
+		Set<String> excludeFields = preserveValue ? Collections.singleton("propertyValue") : null;
+
+		if (!ObjectUtils.fieldsEqual(incoming, existing, excludeFields)) {
+			return true;
+		}
+
+		// The value field isn't compared with the other fields as it is transient
+		return !preserveValue && !OpenmrsUtil.nullSafeEquals(incoming.getValue(), existing.getValue());
+	}
+
 	/**
 	 * Global properties don't really distinguish between blank and null values since the UI doesn't let a user
 	 * distinguish between the two. This method determines if a global property has a value.
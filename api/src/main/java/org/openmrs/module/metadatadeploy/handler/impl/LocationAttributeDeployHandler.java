@@ -5,6 +5,7 @@ import org.openmrs.LocationAttribute;
 import org.openmrs.annotation.Handler;
 import org.openmrs.api.LocationService;
 import org.openmrs.module.metadatadeploy.handler.AbstractObjectDeployHandler;
+import org.openmrs.util.OpenmrsUtil;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 
@@ -31,6 +32,14 @@ public class LocationAttributeDeployHandler extends AbstractObjectDeployHandler<
         existing.setAttributeType(incoming.getAttributeType());
     }
 
+    @Override
+    public boolean updateRequired(LocationAttribute incoming, LocationAttribute existing) {
+        // Only the value and attribute type are overwritten, but a different location should still fail in overwrite
+        return existing.getLocation() != incoming.getLocation()
+                || !OpenmrsUtil.nullSafeEquals(incoming.getAttributeType(), existing.getAttributeType())
+                || !OpenmrsUtil.nullSafeEquals(incoming.getValue(), existing.getValue());
+    }
+
     @Override
     public LocationAttribute save(LocationAttribute obj) {
         Location location = obj.getLocation();
@@ -14,23 +14,42 @@
 
 package org.openmrs.module.metadatadeploy.handler.impl;
 
+import org.hibernate.Criteria;
+import org.hibernate.SessionFactory;
+import org.hibernate.criterion.Restrictions;
 import org.openmrs.Location;
 import org.openmrs.annotation.Handler;
 import org.openmrs.api.LocationService;
 import org.openmrs.module.metadatadeploy.handler.AbstractObjectDeployHandler;
+import org.openmrs.module.metadatadeploy.handler.ExistingObjectIndex;
+import org.openmrs.module.metadatadeploy.handler.PreloadableDeployHandler;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
 /**
  * Deployment handler for locations
  */
 @Handler(supports = { Location.class })
-public class LocationDeployHandler extends AbstractObjectDeployHandler<Location> {
+public class LocationDeployHandler extends AbstractObjectDeployHandler<Location> implements PreloadableDeployHandler<Location> {
+
+	// Limits the size of IN clauses in bulk fetches
+	private static final int FETCH_BATCH_SIZE = 500;
 
 	@Autowired
 	@Qualifier("locationService")
 	private LocationService locationService;
 
+	@Autowired
+	@Qualifier("sessionFactory")
+	private SessionFactory sessionFactory;
+
 	/**
 	 * @see org.openmrs.module.metadatadeploy.handler.ObjectDeployHandler#fetch(String)
 	 */
@@ -39,6 +58,30 @@ public class LocationDeployHandler extends AbstractObjectDeployHandler<Location>
 		return locationService.getLocationByUuid(uuid);
 	}
 
+	/**
+	 * Fetches locations with a single query per batch of UUIDs, as location hierarchies can be too large to load in
+	 * their entirety
+	 * @see org.openmrs.module.metadatadeploy.handler.BulkDeployHandler#fetchAll(java.util.Collection)
+	 */
+	@Override
+	public Map<String, Location> fetchAll(Collection<String> identifiers) {
+		Map<String, Location> fetched = new HashMap<String, Location>();
+		List<String> uuids = new ArrayList<String>(new HashSet<String>(identifiers));
+
+		for (int from = 0; from < uuids.size(); from += FETCH_BATCH_SIZE) {
+			List<String> batch = uuids.subList(from, Math.min(from + FETCH_BATCH_SIZE, uuids.size()));
+
+			Criteria criteria = sessionFactory.getCurrentSession().createCriteria(Location.class);
+			criteria.add(Restrictions.in("uuid", batch));
+
+			for (Object result : criteria.list()) {
+				Location location = (Location) result;
+				fetched.put(location.getUuid(), location);
+			}
+		}
+		return fetched;
+	}
+
 	/**
 	 * @see org.openmrs.module.metadatadeploy.handler.ObjectDeployHandler#save(org.openmrs.OpenmrsObject)
 	 */
@@ -47,6 +90,22 @@ public class LocationDeployHandler extends AbstractObjectDeployHandler<Location>
 		return locationService.saveLocation(obj);
 	}
 
+	/**
+	 * @see org.openmrs.module.metadatadeploy.handler.PreloadableDeployHandler#fetchAllExisting()
+	 */
+	@Override
+	public List<Location> fetchAllExisting() {
+		return locationService.getAllLocations(true);
+	}
+
+	/**
+	 * @see org.openmrs.module.metadatadeploy.handler.PreloadableDeployHandler#findAlternateMatch(org.openmrs.OpenmrsObject, org.openmrs.module.metadatadeploy.handler.ExistingObjectIndex)
+	 */
+	@Override
+	public Location findAlternateMatch(Location incoming, ExistingObjectIndex<Location> existing) {
+		return null;
+	}
+
 	/**
 	 * @see org.openmrs.module.metadatadeploy.handler.ObjectDeployHandler#uninstall(org.openmrs.OpenmrsObject, String)
 	 */
@@ -18,14 +18,18 @@ import org.openmrs.PatientIdentifierType;
 import org.openmrs.annotation.Handler;
 import org.openmrs.api.PatientService;
 import org.openmrs.module.metadatadeploy.handler.AbstractObjectDeployHandler;
+import org.openmrs.module.metadatadeploy.handler.ExistingObjectIndex;
+import org.openmrs.module.metadatadeploy.handler.PreloadableDeployHandler;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 
+import java.util.List;
+
 /**
  * Deployment handler for patient identifier types
  */
 @Handler(supports = { PatientIdentifierType.class })
-public class PatientIdentifierTypeDeployHandler extends AbstractObjectDeployHandler<PatientIdentifierType> {
+public class PatientIdentifierTypeDeployHandler extends AbstractObjectDeployHandler<PatientIdentifierType> implements PreloadableDeployHandler<PatientIdentifierType> {
 
 	@Autowired
 	@Qualifier("patientService")
@@ -55,6 +59,22 @@ public class PatientIdentifierTypeDeployHandler extends AbstractObjectDeployHand
 		return patientService.getPatientIdentifierTypeByName(incoming.getName());
 	}
 
+	/**
+	 * @see org.openmrs.module.metadatadeploy.handler.PreloadableDeployHandler#fetchAllExisting()
+	 */
+	@Override
+	public List<PatientIdentifierType> fetchAllExisting() {
+		return patientService.getAllPatientIdentifierTypes(true);
+	}
+
+	/**
+	 * @see org.openmrs.module.metadatadeploy.handler.PreloadableDeployHandler#findAlternateMatch(org.openmrs.OpenmrsObject, org.openmrs.module.metadatadeploy.handler.ExistingObjectIndex)
+	 */
+	@Override
+	public PatientIdentifierType findAlternateMatch(PatientIdentifierType incoming, ExistingObjectIndex<PatientIdentifierType> existing) {
+		return existing.getByName(incoming.getName());
+	}
+
 	/**
 	 * @see org.openmrs.module.metadatadeploy.handler.ObjectDeployHandler#uninstall(org.openmrs.OpenmrsObject, String)
 	 * @param obj the object to uninstall
@@ -21,14 +21,18 @@ import org.openmrs.PersonAttributeType;
 import org.openmrs.annotation.Handler;
 import org.openmrs.api.PersonService;
 import org.openmrs.module.metadatadeploy.handler.AbstractObjectDeployHandler;
+import org.openmrs.module.metadatadeploy.handler.ExistingObjectIndex;
+import org.openmrs.module.metadatadeploy.handler.PreloadableDeployHandler;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 
+import java.util.List;
+
 /**
  * Deployment handler for person attribute types
  */
 @Handler(supports = { PersonAttributeType.class })
-public class PersonAttributeTypeDeployHandler extends AbstractObjectDeployHandler<PersonAttributeType> {
+public class PersonAttributeTypeDeployHandler extends AbstractObjectDeployHandler<PersonAttributeType> implements PreloadableDeployHandler<PersonAttributeType> {
 
 	@Autowired
 	@Qualifier("personService")
@@ -66,6 +70,22 @@ public class PersonAttributeTypeDeployHandler extends AbstractObjectDeployHandle
 		return personService.getPersonAttributeTypeByName(incoming.getName());
 	}
 
+	/**
+	 * @see org.openmrs.module.metadatadeploy.handler.PreloadableDeployHandler#fetchAllExisting()
+	 */
+	@Override
+	public List<PersonAttributeType> fetchAllExisting() {
+		return personService.getAllPersonAttributeTypes(true);
+	}
+
+	/**
+	 * @see org.openmrs.module.metadatadeploy.handler.PreloadableDeployHandler#findAlternateMatch(org.openmrs.OpenmrsObject, org.openmrs.module.metadatadeploy.handler.ExistingObjectIndex)
+	 */
+	@Override
+	public PersonAttributeType findAlternateMatch(PersonAttributeType incoming, ExistingObjectIndex<PersonAttributeType> existing) {
+		return existing.getByName(incoming.getName());
+	}
+
 	/**
 	 * @see org.openmrs.module.metadatadeploy.handler.ObjectDeployHandler#uninstall(org.openmrs.OpenmrsObject, String)
 	 * @param obj the object to uninstall
@@ -19,16 +19,21 @@ import org.openmrs.annotation.Handler;
 import org.openmrs.api.UserService;
 import org.openmrs.module.metadatadeploy.ObjectUtils;
 import org.openmrs.module.metadatadeploy.handler.AbstractObjectDeployHandler;
+import org.openmrs.module.metadatadeploy.handler.ExistingObjectIndex;
+import org.openmrs.module.metadatadeploy.handler.PreloadableDeployHandler;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 
+import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Deployment handler for privileges
  */
 @Handler(supports = { Privilege.class })
-public class PrivilegeDeployHandler extends AbstractObjectDeployHandler<Privilege> {
+public class PrivilegeDeployHandler extends AbstractObjectDeployHandler<Privilege> implements PreloadableDeployHandler<Privilege> {
 
 	@Autowired
 	@Qualifier("userService")
@@ -50,6 +55,17 @@ public class PrivilegeDeployHandler extends AbstractObjectDeployHandler<Privileg
 		return userService.getPrivilege(identifier);
 	}
 
+	/**
+	 * @see org.openmrs.module.metadatadeploy.handler.BulkDeployHandler#fetchAll(java.util.Collection)
+	 */
+	@Override
+	public Map<String, Privilege> fetchAll(Collection<String> identifiers) {
+		if (identifiers.size() < BULK_FETCH_MIN_SIZE) {
+			return super.fetchAll(identifiers);
+		}
+		return filterByIdentifier(userService.getAllPrivileges(), identifiers, true);
+	}
+
 	/**
 	 * @see org.openmrs.module.metadatadeploy.handler.ObjectDeployHandler#save(org.openmrs.OpenmrsObject)
 	 */
@@ -66,6 +82,22 @@ public class PrivilegeDeployHandler extends AbstractObjectDeployHandler<Privileg
 		return userService.getPrivilegeByUuid(incoming.getUuid());
 	}
 
+	/**
+	 * @see org.openmrs.module.metadatadeploy.handler.PreloadableDeployHandler#fetchAllExisting()
+	 */
+	@Override
+	public List<Privilege> fetchAllExisting() {
+		return userService.getAllPrivileges();
+	}
+
+	/**
+	 * @see org.openmrs.module.metadatadeploy.handler.PreloadableDeployHandler#findAlternateMatch(org.openmrs.OpenmrsObject, org.openmrs.module.metadatadeploy.handler.ExistingObjectIndex)
+	 */
+	@Override
+	public Privilege findAlternateMatch(Privilege incoming, ExistingObjectIndex<Privilege> existing) {
+		return existing.getByUuid(incoming.getUuid());
+	}
+
 	/**
 	 * @see org.openmrs.module.metadatadeploy.handler.ObjectDeployHandler#uninstall(org.openmrs.OpenmrsObject, String)
 	 * @param obj the object to uninstall
@@ -83,4 +115,12 @@ public class PrivilegeDeployHandler extends AbstractObjectDeployHandler<Privileg
 		// Do per-field copy of incoming to existing, excluding UUID
 		ObjectUtils.overwrite(incoming, existing, Collections.singleton("uuid"));
 	}
+
+	/**
+	 * @see org.openmrs.module.metadatadeploy.handler.ComparingDeployHandler#updateRequired(org.openmrs.OpenmrsObject, org.openmrs.OpenmrsObject)
+	 */
+	@Override
+	public boolean updateRequired(Privilege incoming, Privilege existing) {
+		return !ObjectUtils.fieldsEqual(incoming, existing, Collections.singleton("uuid"));
+	}
 }
\ No newline at end of file
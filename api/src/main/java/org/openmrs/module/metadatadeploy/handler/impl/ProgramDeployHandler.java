@@ -23,15 +23,17 @@ import org.openmrs.api.ProgramWorkflowService;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.metadatadeploy.ObjectUtils;
 import org.openmrs.module.metadatadeploy.handler.AbstractObjectDeployHandler;
+import org.openmrs.module.metadatadeploy.handler.ExistingObjectIndex;
+import org.openmrs.module.metadatadeploy.handler.PreloadableDeployHandler;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 
 import java.util.Arrays;
-import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -39,7 +41,7 @@ import java.util.Set;
  * Deployment handler for programs
  */
 @Handler(supports = { Program.class })
-public class ProgramDeployHandler extends AbstractObjectDeployHandler<Program> {
+public class ProgramDeployHandler extends AbstractObjectDeployHandler<Program> implements PreloadableDeployHandler<Program> {
 
 	@Autowired
 	@Qualifier("programWorkflowService")
@@ -91,6 +93,28 @@ public class ProgramDeployHandler extends AbstractObjectDeployHandler<Program> {
 		return null;
 	}
 
+	/**
+	 * @see org.openmrs.module.metadatadeploy.handler.PreloadableDeployHandler#fetchAllExisting()
+	 */
+	@Override
+	public List<Program> fetchAllExisting() {
+		return programService.getAllPrograms(true);
+	}
+
+	/**
+	 * @see org.openmrs.module.metadatadeploy.handler.PreloadableDeployHandler#findAlternateMatch(org.openmrs.OpenmrsObject, org.openmrs.module.metadatadeploy.handler.ExistingObjectIndex)
+	 */
+	@Override
+	public Program findAlternateMatch(Program incoming, ExistingObjectIndex<Program> existing) {
+		// Index matches names case-insensitively but programs have always been matched exactly
+		for (Program p : existing.getAllByName(incoming.getName())) {
+			if (p.getName().equals(incoming.getName())) {
+				return p;
+			}
+		}
+		return null;
+	}
+
 	/**
 	 * @see org.openmrs.module.metadatadeploy.handler.ObjectDeployHandler#uninstall(org.openmrs.OpenmrsObject, String)
 	 * @param obj the object to uninstall
@@ -119,39 +143,52 @@ public class ProgramDeployHandler extends AbstractObjectDeployHandler<Program> {
 		mergeCollection(existing.getAllWorkflows(), incoming.getAllWorkflows(), excludeFields.get(ProgramWorkflow.class));
 	}
 
-	private <T extends OpenmrsObject> void mergeCollection(Collection<T> existing, Collection<T> incoming, Set<String> fieldsToExclude) {
-
-		Set<T> handled = new HashSet<T>();
-		Set<T> incomingToAdd = new HashSet<T>();
-		for (T incomingItem : incoming) {
-			T existingItem = findExisting(existing, incomingItem);
-			if (existingItem == null) {
-				incomingToAdd.add(incomingItem);
-			} else {
-				ObjectUtils.overwrite(incomingItem, existingItem, fieldsToExclude);
-				if (incomingItem instanceof ProgramWorkflow) {
-					mergeCollection(((ProgramWorkflow) existingItem).getStates(), ((ProgramWorkflow) incomingItem).getStates(), excludeFields.get(ProgramWorkflowState.class));
-				}
-
-				handled.add(existingItem);
-			}
+	/**
+	 * @see org.openmrs.module.metadatadeploy.handler.ComparingDeployHandler#updateRequired(org.openmrs.OpenmrsObject, org.openmrs.OpenmrsObject)
+	 */
+	@Override
+	public boolean updateRequired(Program incoming, Program existing) {
+		return !ObjectUtils.fieldsEqual(incoming, existing, excludeFields.get(Program.class))
+				|| collectionUpdateRequired(existing.getAllWorkflows(), incoming.getAllWorkflows(), excludeFields.get(ProgramWorkflow.class));
+	}
+
+	/**
+	 * @see org.openmrs.module.metadatadeploy.handler.AbstractObjectDeployHandler#itemUpdateRequired(org.openmrs.OpenmrsObject, org.openmrs.OpenmrsObject, java.util.Set)
+	 */
+	@Override
+	protected boolean itemUpdateRequired(OpenmrsObject incomingItem, OpenmrsObject existingItem, Set<String> fieldsToExclude) {
+		if (super.itemUpdateRequired(incomingItem, existingItem, fieldsToExclude)) {
+			return true;
+		}
+		if (incomingItem instanceof ProgramWorkflow) {
+			return collectionUpdateRequired(((ProgramWorkflow) existingItem).getStates(), ((ProgramWorkflow) incomingItem).getStates(), excludeFields.get(ProgramWorkflowState.class));
 		}
+		return false;
+	}
 
-		for (Iterator<T> iter = existing.iterator(); iter.hasNext(); ) {
-			T existingItem = iter.next();
-			if (!handled.contains(existingItem)) {
-				if (existingItem instanceof ProgramWorkflow) {
-					for (ProgramWorkflowState state : ((ProgramWorkflow) existingItem).getStates()) {
-						voidOrRetire(state);
-					}
-				}
-				voidOrRetire(existingItem);
-			}
+	/**
+	 * @see org.openmrs.module.metadatadeploy.handler.AbstractObjectDeployHandler#mergeItem(org.openmrs.OpenmrsObject, org.openmrs.OpenmrsObject, java.util.Set)
+	 */
+	@Override
+	protected void mergeItem(OpenmrsObject incomingItem, OpenmrsObject existingItem, Set<String> fieldsToExclude) {
+		super.mergeItem(incomingItem, existingItem, fieldsToExclude);
+
+		if (incomingItem instanceof ProgramWorkflow) {
+			mergeCollection(((ProgramWorkflow) existingItem).getStates(), ((ProgramWorkflow) incomingItem).getStates(), excludeFields.get(ProgramWorkflowState.class));
 		}
+	}
 
-		for (T incomingItem : incomingToAdd) {
-			existing.add(incomingItem);
+	/**
+	 * @see org.openmrs.module.metadatadeploy.handler.AbstractObjectDeployHandler#removeItem(java.util.Iterator, org.openmrs.OpenmrsObject)
+	 */
+	@Override
+	protected void removeItem(Iterator<? extends OpenmrsObject> iterator, OpenmrsObject existingItem) {
+		if (existingItem instanceof ProgramWorkflow) {
+			for (ProgramWorkflowState state : ((ProgramWorkflow) existingItem).getStates()) {
+				voidOrRetire(state);
+			}
 		}
+		voidOrRetire(existingItem);
 	}
 
 }
\ No newline at end of file
@@ -19,17 +19,20 @@ import org.openmrs.annotation.Handler;
 import org.openmrs.api.UserService;
 import org.openmrs.module.metadatadeploy.ObjectUtils;
 import org.openmrs.module.metadatadeploy.handler.AbstractObjectDeployHandler;
+import org.openmrs.module.metadatadeploy.handler.ExistingObjectIndex;
+import org.openmrs.module.metadatadeploy.handler.PreloadableDeployHandler;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 
 /**
  * Deployment handler for roles
  */
 @Handler(supports = { Role.class })
-public class RoleDeployHandler extends AbstractObjectDeployHandler<Role> {
+public class RoleDeployHandler extends AbstractObjectDeployHandler<Role> implements PreloadableDeployHandler<Role> {
 
 	@Autowired
 	@Qualifier("userService")
@@ -67,6 +70,22 @@ public class RoleDeployHandler extends AbstractObjectDeployHandler<Role> {
 		return userService.getRoleByUuid(incoming.getUuid());
 	}
 
+	/**
+	 * @see org.openmrs.module.metadatadeploy.handler.PreloadableDeployHandler#fetchAllExisting()
+	 */
+	@Override
+	public List<Role> fetchAllExisting() {
+		return userService.getAllRoles();
+	}
+
+	/**
+	 * @see org.openmrs.module.metadatadeploy.handler.PreloadableDeployHandler#findAlternateMatch(org.openmrs.OpenmrsObject, org.openmrs.module.metadatadeploy.handler.ExistingObjectIndex)
+	 */
+	@Override
+	public Role findAlternateMatch(Role incoming, ExistingObjectIndex<Role> existing) {
+		return existing.getByUuid(incoming.getUuid());
+	}
+
 	/**
 	 * @see org.openmrs.module.metadatadeploy.handler.ObjectDeployHandler#uninstall(org.openmrs.OpenmrsObject, String)
 	 * @param obj the object to uninstall
@@ -84,4 +103,12 @@ public class RoleDeployHandler extends AbstractObjectDeployHandler<Role> {
 		// Do per-field copy of incoming to existing, excluding UUID
 		ObjectUtils.overwrite(incoming, existing, new HashSet<String>(Arrays.asList("childRoles", "uuid")));
 	}
+
+	/**
+	 * @see org.openmrs.module.metadatadeploy.handler.ComparingDeployHandler#updateRequired(org.openmrs.OpenmrsObject, org.openmrs.OpenmrsObject)
+	 */
+	@Override
+	public boolean updateRequired(Role incoming, Role existing) {
+		return !ObjectUtils.fieldsEqual(incoming, existing, new HashSet<String>(Arrays.asList("childRoles", "uuid")));
+	}
 }
\ No newline at end of file
@@ -0,0 +1,79 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.plan;
+
+import org.openmrs.OpenmrsObject;
+
+import java.util.Collection;
+
+/**
+ * A change to the value of one field of an object. Values are kept as descriptions rather than the values themselves,
+ * so that they can be reported after the session which loaded them has been cleared.
+ */
+public class FieldChange {
+
+	private final String field;
+
+	private final String oldValue;
+
+	private final String newValue;
+
+	/**
+	 * Creates a field change
+	 * @param field the field name
+	 * @param oldValue the existing value
+	 * @param newValue the incoming value
+	 */
+	public FieldChange(String field, Object oldValue, Object newValue) {
+		this.field = field;
+		this.oldValue = describe(oldValue);
+		this.newValue = describe(newValue);
+	}
+
+	public String getField() {
+		return field;
+	}
+
+	public String getOldValue() {
+		return oldValue;
+	}
+
+	public String getNewValue() {
+		return newValue;
+	}
+
+	/**
+	 * @see Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return field + ": " + oldValue + " -> " + newValue;
+	}
+
+	/**
+	 * Describes a value without initializing any lazy references
+	 * @param value the value
+	 * @return the description
+	 */
+	protected static String describe(Object value) {
+		if (value instanceof OpenmrsObject) {
+			return value.getClass().getSimpleName() + "[" + ((OpenmrsObject) value).getUuid() + "]";
+		}
+		else if (value instanceof Collection) {
+			return "(" + ((Collection) value).size() + " items)";
+		}
+		return String.valueOf(value);
+	}
+}
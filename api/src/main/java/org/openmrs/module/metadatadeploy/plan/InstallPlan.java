@@ -0,0 +1,217 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.plan;
+
+import org.openmrs.OpenmrsObject;
+import org.openmrs.module.metadatadeploy.handler.ObjectDeployHandler;
+import org.openmrs.util.OpenmrsUtil;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Report of the changes which an install would make, produced by
+ * {@link org.openmrs.module.metadatadeploy.api.MetadataDeployService#planBundles(java.util.Collection)}. While a plan is
+ * being made, it is the current plan on that thread and the deploy service records changes in it instead of making them.
+ */
+public class InstallPlan {
+
+	private static final ThreadLocal<InstallPlan> current = new ThreadLocal<InstallPlan>();
+
+	private final List<PlannedChange> changes = new ArrayList<PlannedChange>();
+
+	private final Map<PlannedChange.Action, Integer> counts = new EnumMap<PlannedChange.Action, Integer>(PlannedChange.Action.class);
+
+	private final List<String> notes = new ArrayList<String>();
+
+	// Objects which would be created, by handler and identifier, so that they can be found by later lookups
+	private final Map<ObjectDeployHandler<?>, Map<String, OpenmrsObject>> created = new HashMap<ObjectDeployHandler<?>, Map<String, OpenmrsObject>>();
+
+	private final long started = System.currentTimeMillis();
+
+	private long durationMillis = 0;
+
+	private String currentBundle;
+
+	/**
+	 * Gets the plan being made on the current thread
+	 * @return the plan or null if not planning
+	 */
+	public static InstallPlan current() {
+		return current.get();
+	}
+
+	/**
+	 * Sets the plan being made on the current thread
+	 * @param plan the plan or null to stop planning
+	 */
+	public static void setCurrent(InstallPlan plan) {
+		if (plan != null) {
+			current.set(plan);
+		}
+		else {
+			current.remove();
+		}
+	}
+
+	/**
+	 * Records a change to an object
+	 * @param action the action
+	 * @param objectClass the object class
+	 * @param identifier the object identifier
+	 * @param fieldChanges the changed fields (may be null)
+	 */
+	public void record(PlannedChange.Action action, Class<?> objectClass, String identifier, List<FieldChange> fieldChanges) {
+		changes.add(new PlannedChange(action, objectClass, identifier, currentBundle, fieldChanges));
+
+		Integer count = counts.get(action);
+		counts.put(action, count != null ? count + 1 : 1);
+	}
+
+	/**
+	 * Records a change to the value of a single field, e.g. of a global property
+	 * @param objectClass the object class
+	 * @param identifier the object identifier
+	 * @param exists whether the object exists
+	 * @param field the field name
+	 * @param oldValue the existing value
+	 * @param newValue the incoming value
+	 */
+	public void recordValue(Class<?> objectClass, String identifier, boolean exists, String field, Object oldValue, Object newValue) {
+		if (!exists) {
+			record(PlannedChange.Action.CREATE, objectClass, identifier, null);
+		}
+		else if (OpenmrsUtil.nullSafeEquals(oldValue, newValue)) {
+			record(PlannedChange.Action.UNCHANGED, objectClass, identifier, null);
+		}
+		else {
+			record(PlannedChange.Action.UPDATE, objectClass, identifier, Collections.singletonList(new FieldChange(field, oldValue, newValue)));
+		}
+	}
+
+	/**
+	 * Adds a note about something which can't be planned in detail, e.g. a metadata package import
+	 * @param note the note
+	 */
+	public void addNote(String note) {
+		notes.add(currentBundle != null ? currentBundle + ": " + note : note);
+	}
+
+	/**
+	 * Keeps an object which would be created
+	 * @param handler the handler for the object
+	 * @param identifier the object identifier
+	 * @param obj the object
+	 */
+	public <T extends OpenmrsObject> void addCreated(ObjectDeployHandler<T> handler, String identifier, T obj) {
+		Map<String, OpenmrsObject> objects = created.get(handler);
+		if (objects == null) {
+			objects = new HashMap<String, OpenmrsObject>();
+			created.put(handler, objects);
+		}
+		objects.put(identifier, obj);
+	}
+
+	/**
+	 * Gets an object which would be created
+	 * @param handler the handler for the object
+	 * @param identifier the object identifier
+	 * @return the object or null
+	 */
+	public <T extends OpenmrsObject> T getCreated(ObjectDeployHandler<T> handler, String identifier) {
+		Map<String, OpenmrsObject> objects = created.get(handler);
+		return objects != null ? (T) objects.get(identifier) : null;
+	}
+
+	/**
+	 * Sets the bundle to which subsequent changes are attributed
+	 * @param bundle the bundle class name (may be null)
+	 */
+	public void setCurrentBundle(String bundle) {
+		this.currentBundle = bundle;
+	}
+
+	/**
+	 * Marks the plan as finished, after which created objects are no longer kept
+	 */
+	public void finish() {
+		durationMillis = System.currentTimeMillis() - started;
+		currentBundle = null;
+		created.clear();
+	}
+
+	/**
+	 * Gets all changes in the order they were made
+	 * @return the changes
+	 */
+	public List<PlannedChange> getChanges() {
+		return changes;
+	}
+
+	/**
+	 * Gets the changes with the given action
+	 * @param action the action
+	 * @return the changes
+	 */
+	public List<PlannedChange> getChanges(PlannedChange.Action action) {
+		List<PlannedChange> ret = new ArrayList<PlannedChange>();
+		for (PlannedChange change : changes) {
+			if (change.getAction() == action) {
+				ret.add(change);
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Gets the number of changes with the given action
+	 * @param action the action
+	 * @return the number of changes
+	 */
+	public int getCount(PlannedChange.Action action) {
+		Integer count = counts.get(action);
+		return count != null ? count : 0;
+	}
+
+	/**
+	 * Gets the notes about things which couldn't be planned in detail
+	 * @return the notes
+	 */
+	public List<String> getNotes() {
+		return notes;
+	}
+
+	/**
+	 * Gets how long it took to make the plan
+	 * @return the duration in milliseconds
+	 */
+	public long getDurationMillis() {
+		return durationMillis;
+	}
+
+	/**
+	 * @see Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return getCount(PlannedChange.Action.CREATE) + " created, " + getCount(PlannedChange.Action.UPDATE) + " updated, "
+				+ getCount(PlannedChange.Action.RETIRE) + " retired, " + getCount(PlannedChange.Action.UNCHANGED) + " unchanged, "
+				+ notes.size() + " notes";
+	}
+}
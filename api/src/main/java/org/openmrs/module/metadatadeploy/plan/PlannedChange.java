@@ -0,0 +1,83 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.plan;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A change to one object which would be made by an install
+ */
+public class PlannedChange {
+
+	public enum Action {
+		CREATE, UPDATE, RETIRE, UNCHANGED
+	}
+
+	private final Action action;
+
+	private final Class<?> objectClass;
+
+	private final String identifier;
+
+	private final String bundle;
+
+	private final List<FieldChange> fieldChanges;
+
+	/**
+	 * Creates a planned change
+	 * @param action the action
+	 * @param objectClass the object class
+	 * @param identifier the object identifier
+	 * @param bundle the class name of the bundle which made the change (may be null)
+	 * @param fieldChanges the changed fields of an updated object (may be null)
+	 */
+	public PlannedChange(Action action, Class<?> objectClass, String identifier, String bundle, List<FieldChange> fieldChanges) {
+		this.action = action;
+		this.objectClass = objectClass;
+		this.identifier = identifier;
+		this.bundle = bundle;
+		this.fieldChanges = fieldChanges != null ? fieldChanges : Collections.<FieldChange>emptyList();
+	}
+
+	public Action getAction() {
+		return action;
+	}
+
+	public Class<?> getObjectClass() {
+		return objectClass;
+	}
+
+	public String getIdentifier() {
+		return identifier;
+	}
+
+	public String getBundle() {
+		return bundle;
+	}
+
+	public List<FieldChange> getFieldChanges() {
+		return fieldChanges;
+	}
+
+	/**
+	 * @see Object#toString()
+	 */
+	@Override
+	public String toString() {
+		String str = action + " " + objectClass.getSimpleName() + " " + identifier;
+		return fieldChanges.isEmpty() ? str : str + " " + fieldChanges;
+	}
+}
@@ -0,0 +1,387 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.snapshot;
+
+import org.hibernate.proxy.HibernateProxy;
+import org.openmrs.OpenmrsMetadata;
+import org.openmrs.OpenmrsObject;
+import org.openmrs.api.APIException;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.metadatadeploy.FieldAccessorPlan;
+import org.openmrs.module.metadatadeploy.FieldAccessorPlan.FieldAccessor;
+import org.openmrs.module.metadatadeploy.api.MetadataDeployService;
+import org.openmrs.module.metadatadeploy.bundle.MetadataBundle;
+import org.openmrs.module.metadatadeploy.handler.ObjectDeployHandler;
+import org.openmrs.module.metadatadeploy.handler.ObjectDeployHandlers;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Writes installed objects to a snapshot file which can be read by {@link SnapshotObjectSource}. Objects are written
+ * with all the fields that {@link FieldAccessorPlan} visits, except audit fields which are populated on save. Fields
+ * which reference other installable objects are written as references, which are resolved when the snapshot is read.
+ * Objects which belong to the written object, i.e. which reference it and aren't themselves installable metadata, are
+ * written in full with the object, e.g. concept names or location attributes.
+ *
+ * A writer can capture what bundles install, in which case each object installed through
+ * {@link MetadataDeployService#installObject(OpenmrsObject)} or
+ * {@link MetadataDeployService#installFromSource(org.openmrs.module.metadatadeploy.source.ObjectSource)} is written.
+ * Metadata sharing packages and synchronizations aren't captured.
+ */
+public class MetadataSnapshotWriter {
+
+	private static final ThreadLocal<MetadataSnapshotWriter> current = new ThreadLocal<MetadataSnapshotWriter>();
+
+	/**
+	 * Fields which are populated by the service layer on save
+	 */
+	private static final Set<String> EXCLUDE_FIELDS = new HashSet<String>(Arrays.asList(
+			"creator", "dateCreated", "changedBy", "dateChanged", "retiredBy", "voidedBy"
+	));
+
+	private final DataOutputStream out;
+
+	private final ByteArrayOutputStream record = new ByteArrayOutputStream(4096);
+
+	private final DataOutputStream recordOut = new DataOutputStream(record);
+
+	private final Map<String, Integer> stringIndexes = new HashMap<String, Integer>();
+
+	private final List<String> strings = new ArrayList<String>();
+
+	// Objects being written, with the current object last
+	private final List<OpenmrsObject> stack = new ArrayList<OpenmrsObject>();
+
+	private ObjectDeployHandlers deployHandlers;
+
+	private int objectCount = 0;
+
+	/**
+	 * Creates a new writer
+	 * @param file the snapshot file
+	 * @throws IOException if an error occurs
+	 */
+	public MetadataSnapshotWriter(File file) throws IOException {
+		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024));
+		out.writeInt(SnapshotFormat.MAGIC);
+		out.writeInt(SnapshotFormat.VERSION);
+	}
+
+	/**
+	 * Gets the writer which is capturing installed objects on the current thread
+	 * @return the writer or null
+	 */
+	public static MetadataSnapshotWriter current() {
+		return current.get();
+	}
+
+	/**
+	 * Installs the given bundles, writing each installed object
+	 * @param bundles the bundles
+	 * @throws APIException if an error occurs
+	 */
+	public void captureBundles(Collection<MetadataBundle> bundles) throws APIException {
+		current.set(this);
+		try {
+			Context.getService(MetadataDeployService.class).installBundles(bundles);
+		}
+		finally {
+			current.remove();
+		}
+	}
+
+	/**
+	 * Writes an object
+	 * @param obj the object
+	 * @throws IOException if an error occurs
+	 */
+	public void write(OpenmrsObject obj) throws IOException {
+		record.reset();
+		writeObject(unproxy(obj));
+
+		out.writeInt(record.size());
+		record.writeTo(out);
+		objectCount++;
+	}
+
+	/**
+	 * Gets the number of objects written
+	 * @return the number of objects
+	 */
+	public int getObjectCount() {
+		return objectCount;
+	}
+
+	/**
+	 * Writes the string table and closes the file
+	 * @throws IOException if an error occurs
+	 */
+	public void close() throws IOException {
+		try {
+			long stringTableOffset = out.size();
+
+			SnapshotFormat.writeVarInt(out, strings.size());
+			for (String str : strings) {
+				byte[] bytes = str.getBytes("UTF-8");
+				SnapshotFormat.writeVarInt(out, bytes.length);
+				out.write(bytes);
+			}
+
+			out.writeLong(stringTableOffset);
+			out.writeInt(objectCount);
+			out.writeInt(SnapshotFormat.MAGIC);
+		}
+		finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Writes an object's class and fields to the current record
+	 * @param obj the object
+	 */
+	protected void writeObject(OpenmrsObject obj) throws IOException {
+		stack.add(obj);
+		try {
+			List<FieldAccessor> fields = new ArrayList<FieldAccessor>();
+			List<Object> values = new ArrayList<Object>();
+
+			for (FieldAccessor field : FieldAccessorPlan.forClass(obj.getClass()).getFields()) {
+				if (EXCLUDE_FIELDS.contains(field.getName())) {
+					continue;
+				}
+
+				Object value = field.read(obj);
+				if (value == null) {
+					continue;
+				}
+
+				// Empty collections are left as the class initializes them
+				if (value instanceof Collection && (((Collection) value).isEmpty() || containsInverse((Collection) value))) {
+					continue;
+				}
+
+				fields.add(field);
+				values.add(value);
+			}
+
+			writeString(obj.getClass().getName());
+			SnapshotFormat.writeVarInt(recordOut, fields.size());
+
+			for (int f = 0; f < fields.size(); ++f) {
+				writeString(fields.get(f).getName());
+				writeValue(values.get(f));
+			}
+		}
+		finally {
+			stack.remove(stack.size() - 1);
+		}
+	}
+
+	/**
+	 * Writes a field value or collection item to the current record
+	 * @param value the value
+	 */
+	protected void writeValue(Object value) throws IOException {
+		if (value == null) {
+			recordOut.writeByte(SnapshotFormat.NULL);
+		}
+		else if (value instanceof String) {
+			recordOut.writeByte(SnapshotFormat.STRING);
+			writeString((String) value);
+		}
+		else if (value instanceof Integer) {
+			recordOut.writeByte(SnapshotFormat.INTEGER);
+			SnapshotFormat.writeVarLong(recordOut, (Integer) value);
+		}
+		else if (value instanceof Long) {
+			recordOut.writeByte(SnapshotFormat.LONG);
+			SnapshotFormat.writeVarLong(recordOut, (Long) value);
+		}
+		else if (value instanceof Double) {
+			recordOut.writeByte(SnapshotFormat.DOUBLE);
+			recordOut.writeDouble((Double) value);
+		}
+		else if (value instanceof Float) {
+			recordOut.writeByte(SnapshotFormat.FLOAT);
+			recordOut.writeFloat((Float) value);
+		}
+		else if (value instanceof Boolean) {
+			recordOut.writeByte((Boolean) value ? SnapshotFormat.TRUE : SnapshotFormat.FALSE);
+		}
+		else if (value instanceof Date) {
+			recordOut.writeByte(SnapshotFormat.DATE);
+			SnapshotFormat.writeVarLong(recordOut, ((Date) value).getTime());
+		}
+		else if (value instanceof Locale) {
+			recordOut.writeByte(SnapshotFormat.LOCALE);
+			writeString(value.toString());
+		}
+		else if (value instanceof Enum) {
+			recordOut.writeByte(SnapshotFormat.ENUM);
+			writeString(((Enum) value).getDeclaringClass().getName());
+			writeString(((Enum) value).name());
+		}
+		else if (value instanceof OpenmrsObject) {
+			writeObjectValue(unproxy((OpenmrsObject) value));
+		}
+		else if (value instanceof Collection) {
+			recordOut.writeByte(value instanceof List ? SnapshotFormat.LIST : SnapshotFormat.SET);
+			SnapshotFormat.writeVarInt(recordOut, ((Collection) value).size());
+			for (Object item : (Collection) value) {
+				writeValue(item);
+			}
+		}
+		else {
+			throw new APIException("Can't write value of type " + value.getClass().getName() + " to snapshot");
+		}
+	}
+
+	/**
+	 * Writes an object value as a reference to an object being written, in full, or as a reference to another object
+	 * @param obj the object
+	 */
+	protected void writeObjectValue(OpenmrsObject obj) throws IOException {
+		int distance = stackDistance(obj);
+		if (distance >= 0) {
+			recordOut.writeByte(SnapshotFormat.PARENT);
+			SnapshotFormat.writeVarInt(recordOut, distance);
+		}
+		else if (referencesStack(obj) && !isInstallable(obj)) {
+			recordOut.writeByte(SnapshotFormat.OBJECT);
+			writeObject(obj);
+		}
+		else {
+			ObjectDeployHandler<OpenmrsObject> handler = getDeployHandlers().getHandler((Class<OpenmrsObject>) obj.getClass());
+
+			recordOut.writeByte(SnapshotFormat.REFERENCE);
+			writeString(obj.getClass().getName());
+			writeString(handler != null ? handler.getIdentifier(obj) : obj.getUuid());
+		}
+	}
+
+	/**
+	 * Checks whether a collection contains installable objects which reference an object being written, e.g. the child
+	 * locations of a location. These are the inverse side of a reference which is restored when those objects are
+	 * installed, so the collection isn't written.
+	 * @param collection the collection
+	 * @return true if collection contains such objects
+	 */
+	protected boolean containsInverse(Collection<?> collection) {
+		for (Object item : collection) {
+			if (item instanceof OpenmrsObject) {
+				OpenmrsObject obj = unproxy((OpenmrsObject) item);
+				if (stackDistance(obj) < 0 && isInstallable(obj) && referencesStack(obj)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Checks whether an object is installable metadata, rather than something that belongs to another object
+	 * @param obj the object
+	 * @return true if object is installable
+	 */
+	protected boolean isInstallable(OpenmrsObject obj) {
+		return obj instanceof OpenmrsMetadata && getDeployHandlers().getHandler(obj.getClass()) != null;
+	}
+
+	/**
+	 * Checks whether any of an object's reference fields reference an object being written
+	 * @param obj the object
+	 * @return true if object references the stack
+	 */
+	protected boolean referencesStack(OpenmrsObject obj) {
+		for (FieldAccessor field : FieldAccessorPlan.forClass(obj.getClass()).getFields()) {
+			if (field.getKind() == FieldAccessorPlan.Kind.REFERENCE) {
+				Object value = field.read(obj);
+				if (value instanceof OpenmrsObject && stackDistance((OpenmrsObject) value) >= 0) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Gets the distance of an object up the stack of objects being written. Objects are compared by UUID as well as
+	 * identity, as a reference may be a different instance of the same object.
+	 * @param obj the object
+	 * @return the distance where 0 is the current object, or -1 if object isn't being written
+	 */
+	protected int stackDistance(OpenmrsObject obj) {
+		for (int s = stack.size() - 1; s >= 0; --s) {
+			OpenmrsObject stacked = stack.get(s);
+			if (stacked == obj || (obj.getUuid() != null && obj.getUuid().equals(stacked.getUuid()) && stacked.getClass().isInstance(obj))) {
+				return stack.size() - 1 - s;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Writes the string table index of a string to the current record, adding it to the table if necessary
+	 * @param str the string
+	 */
+	protected void writeString(String str) throws IOException {
+		Integer index = stringIndexes.get(str);
+		if (index == null) {
+			index = strings.size();
+			strings.add(str);
+			stringIndexes.put(str, index);
+		}
+		SnapshotFormat.writeVarInt(recordOut, index);
+	}
+
+	/**
+	 * Gets the actual object if the given object is a Hibernate proxy
+	 * @param obj the object
+	 * @return the actual object
+	 */
+	protected static OpenmrsObject unproxy(OpenmrsObject obj) {
+		if (obj instanceof HibernateProxy) {
+			return (OpenmrsObject) ((HibernateProxy) obj).getHibernateLazyInitializer().getImplementation();
+		}
+		return obj;
+	}
+
+	/**
+	 * Gets the component which stores all the object deploy handlers
+	 * @return the handlers component
+	 */
+	protected ObjectDeployHandlers getDeployHandlers() {
+		if (deployHandlers == null) {
+			deployHandlers = Context.getRegisteredComponents(ObjectDeployHandlers.class).get(0);
+		}
+		return deployHandlers;
+	}
+}
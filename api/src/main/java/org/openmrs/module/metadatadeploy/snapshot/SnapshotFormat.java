@@ -0,0 +1,137 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.snapshot;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Constants and encoding helpers for the metadata snapshot format. A snapshot file consists of:
+ * <ol>
+ *     <li>a header of the magic number and format version (4 bytes each)</li>
+ *     <li>the object records, each of which is a 4 byte length followed by an encoded object</li>
+ *     <li>the string table, which is a count followed by each string as a length and UTF-8 bytes</li>
+ *     <li>a footer of the string table offset (8 bytes), the record count and the magic number (4 bytes each)</li>
+ * </ol>
+ * An encoded object is the string index of its class name, a field count, and then each field as the string index of
+ * its name followed by an encoded value. Each value starts with one of the tag bytes defined here. Counts, lengths and
+ * string indexes are unsigned variable length integers, and integer values are zig-zag encoded variable length
+ * integers.
+ */
+final class SnapshotFormat {
+
+	static final int MAGIC = 0x4D445350;
+
+	static final int VERSION = 1;
+
+	static final int HEADER_SIZE = 8;
+
+	static final int FOOTER_SIZE = 16;
+
+	static final byte NULL = 0;
+	static final byte STRING = 1;
+	static final byte INTEGER = 2;
+	static final byte LONG = 3;
+	static final byte DOUBLE = 4;
+	static final byte FLOAT = 5;
+	static final byte TRUE = 6;
+	static final byte FALSE = 7;
+	static final byte DATE = 8;
+	static final byte LOCALE = 9;
+	static final byte ENUM = 10;
+
+	/**
+	 * Another installable object, as its class name and identifier
+	 */
+	static final byte REFERENCE = 11;
+
+	/**
+	 * An object which belongs to the object being encoded, e.g. a concept name, encoded in full
+	 */
+	static final byte OBJECT = 12;
+
+	/**
+	 * An object which is being encoded, as its distance up the stack of objects being encoded
+	 */
+	static final byte PARENT = 13;
+
+	static final byte LIST = 14;
+	static final byte SET = 15;
+
+	private SnapshotFormat() {
+	}
+
+	/**
+	 * Writes an unsigned variable length integer
+	 * @param out the output
+	 * @param value the value
+	 * @throws IOException if an error occurs
+	 */
+	static void writeVarInt(OutputStream out, int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+
+	/**
+	 * Writes a zig-zag encoded variable length integer
+	 * @param out the output
+	 * @param value the value
+	 * @throws IOException if an error occurs
+	 */
+	static void writeVarLong(OutputStream out, long value) throws IOException {
+		value = (value << 1) ^ (value >> 63);
+		while ((value & ~0x7FL) != 0) {
+			out.write((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.write((int) value);
+	}
+
+	/**
+	 * Reads an unsigned variable length integer
+	 * @param buffer the buffer
+	 * @return the value
+	 */
+	static int readVarInt(ByteBuffer buffer) {
+		int value = 0;
+		for (int shift = 0; ; shift += 7) {
+			byte b = buffer.get();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+	}
+
+	/**
+	 * Reads a zig-zag encoded variable length integer
+	 * @param buffer the buffer
+	 * @return the value
+	 */
+	static long readVarLong(ByteBuffer buffer) {
+		long value = 0;
+		for (int shift = 0; ; shift += 7) {
+			byte b = buffer.get();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return (value >>> 1) ^ -(value & 1);
+			}
+		}
+	}
+}
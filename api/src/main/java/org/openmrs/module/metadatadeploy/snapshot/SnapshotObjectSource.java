@@ -0,0 +1,339 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.snapshot;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.criterion.Restrictions;
+import org.openmrs.OpenmrsObject;
+import org.openmrs.api.APIException;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.metadatadeploy.FieldAccessorPlan;
+import org.openmrs.module.metadatadeploy.FieldAccessorPlan.FieldAccessor;
+import org.openmrs.module.metadatadeploy.MetadataUtils;
+import org.openmrs.module.metadatadeploy.MissingMetadataException;
+import org.openmrs.module.metadatadeploy.ObjectUtils;
+import org.openmrs.module.metadatadeploy.handler.ObjectDeployHandler;
+import org.openmrs.module.metadatadeploy.handler.ObjectDeployHandlers;
+import org.openmrs.module.metadatadeploy.source.ObjectSource;
+import org.openmrs.util.LocaleUtility;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Object source which reads the objects in a snapshot file written by {@link MetadataSnapshotWriter}. The file is
+ * memory mapped, and objects are decoded one at a time as they are fetched. Strings are only decoded from the string
+ * table when first used.
+ *
+ * References to other objects are resolved as objects are fetched, from the database or else from objects previously
+ * fetched from the snapshot. Hence this source accesses the database and shouldn't be read ahead on another thread.
+ * Database identifiers aren't restored, so objects are installed by their identifier like any other incoming objects.
+ */
+public class SnapshotObjectSource<T extends OpenmrsObject> implements ObjectSource<T> {
+
+	private final ByteBuffer buffer;
+
+	private final int[] stringOffsets;
+
+	private final String[] strings;
+
+	private final int objectCount;
+
+	private final int recordsEnd;
+
+	private int nextRecord;
+
+	// Objects being read, with the current object last
+	private final List<OpenmrsObject> stack = new ArrayList<OpenmrsObject>();
+
+	// Objects fetched from this snapshot, by class and identifier
+	private final Map<Class<?>, Map<String, OpenmrsObject>> fetched = new HashMap<Class<?>, Map<String, OpenmrsObject>>();
+
+	private final Map<Class<?>, Map<String, FieldAccessor>> fieldsByClass = new HashMap<Class<?>, Map<String, FieldAccessor>>();
+
+	private ObjectDeployHandlers deployHandlers;
+
+	/**
+	 * Creates a new source
+	 * @param file the snapshot file
+	 * @throws IOException if file can't be read or isn't a snapshot
+	 */
+	public SnapshotObjectSource(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			// The mapping remains valid after the channel is closed
+			buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+		}
+		finally {
+			raf.close();
+		}
+
+		if (buffer.capacity() < SnapshotFormat.HEADER_SIZE + SnapshotFormat.FOOTER_SIZE
+				|| buffer.getInt(0) != SnapshotFormat.MAGIC || buffer.getInt(buffer.capacity() - 4) != SnapshotFormat.MAGIC) {
+			throw new IOException(file.getName() + " is not a metadata snapshot");
+		}
+		if (buffer.getInt(4) != SnapshotFormat.VERSION) {
+			throw new IOException(file.getName() + " has unsupported snapshot version " + buffer.getInt(4));
+		}
+
+		int footer = buffer.capacity() - SnapshotFormat.FOOTER_SIZE;
+		recordsEnd = (int) buffer.getLong(footer);
+		objectCount = buffer.getInt(footer + 8);
+
+		// Index the string table without decoding it
+		buffer.position(recordsEnd);
+		stringOffsets = new int[SnapshotFormat.readVarInt(buffer)];
+		strings = new String[stringOffsets.length];
+		for (int s = 0; s < stringOffsets.length; ++s) {
+			stringOffsets[s] = buffer.position();
+			int length = SnapshotFormat.readVarInt(buffer);
+			buffer.position(buffer.position() + length);
+		}
+
+		nextRecord = SnapshotFormat.HEADER_SIZE;
+	}
+
+	/**
+	 * Gets the number of objects in the snapshot
+	 * @return the number of objects
+	 */
+	public int getObjectCount() {
+		return objectCount;
+	}
+
+	/**
+	 * @see ObjectSource#fetchNext()
+	 */
+	@Override
+	public T fetchNext() throws Exception {
+		if (nextRecord >= recordsEnd) {
+			return null;
+		}
+
+		buffer.position(nextRecord);
+		int length = buffer.getInt();
+		nextRecord = buffer.position() + length;
+
+		T obj = (T) readObject();
+
+		ObjectDeployHandler<T> handler = getDeployHandlers().getHandler((Class<T>) obj.getClass());
+		if (handler != null) {
+			Map<String, OpenmrsObject> objects = fetched.get(obj.getClass());
+			if (objects == null) {
+				objects = new HashMap<String, OpenmrsObject>();
+				fetched.put(obj.getClass(), objects);
+			}
+			objects.put(handler.getIdentifier(obj), obj);
+		}
+		return obj;
+	}
+
+	/**
+	 * Reads an object's class and fields from the current position
+	 * @return the object
+	 */
+	protected OpenmrsObject readObject() throws Exception {
+		Class<?> clazz = Context.loadClass(readString());
+		OpenmrsObject obj = (OpenmrsObject) clazz.newInstance();
+		Map<String, FieldAccessor> fields = getFields(clazz);
+
+		stack.add(obj);
+		try {
+			int fieldCount = SnapshotFormat.readVarInt(buffer);
+			for (int f = 0; f < fieldCount; ++f) {
+				String name = readString();
+				FieldAccessor field = fields.get(name);
+				if (field == null) {
+					throw new APIException("No such field " + clazz.getName() + "." + name);
+				}
+
+				Object value = readValue();
+
+				if (value instanceof Collection && field.read(obj) != null) {
+					// Keep the collection type chosen by the class
+					Collection existing = (Collection) field.read(obj);
+					existing.clear();
+					existing.addAll((Collection) value);
+				}
+				else if (value instanceof Collection && SortedSet.class.isAssignableFrom(field.getType())) {
+					field.write(obj, new TreeSet((Collection) value));
+				}
+				else {
+					field.write(obj, value);
+				}
+			}
+		}
+		finally {
+			stack.remove(stack.size() - 1);
+		}
+
+		if (ObjectUtils.usesId(obj)) {
+			obj.setId(null);
+		}
+		return obj;
+	}
+
+	/**
+	 * Reads a field value or collection item from the current position
+	 * @return the value
+	 */
+	protected Object readValue() throws Exception {
+		byte tag = buffer.get();
+		switch (tag) {
+			case SnapshotFormat.NULL:
+				return null;
+			case SnapshotFormat.STRING:
+				return readString();
+			case SnapshotFormat.INTEGER:
+				return (int) SnapshotFormat.readVarLong(buffer);
+			case SnapshotFormat.LONG:
+				return SnapshotFormat.readVarLong(buffer);
+			case SnapshotFormat.DOUBLE:
+				return buffer.getDouble();
+			case SnapshotFormat.FLOAT:
+				return buffer.getFloat();
+			case SnapshotFormat.TRUE:
+				return Boolean.TRUE;
+			case SnapshotFormat.FALSE:
+				return Boolean.FALSE;
+			case SnapshotFormat.DATE:
+				return new Date(SnapshotFormat.readVarLong(buffer));
+			case SnapshotFormat.LOCALE:
+				return LocaleUtility.fromSpecification(readString());
+			case SnapshotFormat.ENUM:
+				return readEnum();
+			case SnapshotFormat.REFERENCE:
+				return resolve(Context.loadClass(readString()), readString());
+			case SnapshotFormat.OBJECT:
+				return readObject();
+			case SnapshotFormat.PARENT:
+				return stack.get(stack.size() - 1 - SnapshotFormat.readVarInt(buffer));
+			case SnapshotFormat.LIST:
+			case SnapshotFormat.SET:
+				int size = SnapshotFormat.readVarInt(buffer);
+				Collection<Object> collection = tag == SnapshotFormat.LIST ? new ArrayList<Object>(size) : new LinkedHashSet<Object>(size * 2);
+				for (int i = 0; i < size; ++i) {
+					collection.add(readValue());
+				}
+				return collection;
+			default:
+				throw new APIException("Invalid snapshot value tag " + tag + " at " + (buffer.position() - 1));
+		}
+	}
+
+	/**
+	 * Reads an enum constant from the current position
+	 * @return the constant
+	 */
+	protected Object readEnum() throws Exception {
+		Class<?> enumClass = Context.loadClass(readString());
+		String name = readString();
+		for (Object constant : enumClass.getEnumConstants()) {
+			if (((Enum) constant).name().equals(name)) {
+				return constant;
+			}
+		}
+		throw new APIException("No such enum constant " + enumClass.getName() + "." + name);
+	}
+
+	/**
+	 * Resolves a reference to another object
+	 * @param clazz the object class
+	 * @param identifier the object identifier
+	 * @return the object
+	 * @throws MissingMetadataException if object doesn't exist
+	 */
+	protected OpenmrsObject resolve(Class<?> clazz, String identifier) {
+		Class<OpenmrsObject> objectClass = (Class<OpenmrsObject>) clazz;
+		OpenmrsObject obj;
+
+		if (getDeployHandlers().getHandler(objectClass) != null) {
+			obj = MetadataUtils.possible(objectClass, identifier);
+		}
+		else {
+			SessionFactory sessionFactory = Context.getRegisteredComponents(SessionFactory.class).get(0);
+			obj = (OpenmrsObject) sessionFactory.getCurrentSession().createCriteria(objectClass)
+					.add(Restrictions.eq("uuid", identifier)).uniqueResult();
+		}
+
+		if (obj == null) {
+			Map<String, OpenmrsObject> objects = fetched.get(clazz);
+			obj = objects != null ? objects.get(identifier) : null;
+		}
+		if (obj == null) {
+			throw new MissingMetadataException(objectClass, identifier);
+		}
+		return obj;
+	}
+
+	/**
+	 * Reads a string table index from the current position, and gets that string
+	 * @return the string
+	 */
+	protected String readString() throws IOException {
+		int index = SnapshotFormat.readVarInt(buffer);
+		String str = strings[index];
+		if (str == null) {
+			ByteBuffer entry = buffer.duplicate();
+			entry.position(stringOffsets[index]);
+			byte[] bytes = new byte[SnapshotFormat.readVarInt(entry)];
+			entry.get(bytes);
+			str = new String(bytes, "UTF-8");
+			strings[index] = str;
+		}
+		return str;
+	}
+
+	/**
+	 * Gets the fields of a class by name. If a field name is used in more than one class of the hierarchy, the field
+	 * of the most specific class is used.
+	 * @param clazz the class
+	 * @return the fields by name
+	 */
+	protected Map<String, FieldAccessor> getFields(Class<?> clazz) {
+		Map<String, FieldAccessor> fields = fieldsByClass.get(clazz);
+		if (fields == null) {
+			fields = new HashMap<String, FieldAccessor>();
+			for (FieldAccessor field : FieldAccessorPlan.forClass(clazz).getFields()) {
+				fields.put(field.getName(), field);
+			}
+			fieldsByClass.put(clazz, fields);
+		}
+		return fields;
+	}
+
+	/**
+	 * Gets the component which stores all the object deploy handlers
+	 * @return the handlers component
+	 */
+	protected ObjectDeployHandlers getDeployHandlers() {
+		if (deployHandlers == null) {
+			deployHandlers = Context.getRegisteredComponents(ObjectDeployHandlers.class).get(0);
+		}
+		return deployHandlers;
+	}
+}
@@ -15,52 +15,201 @@
 package org.openmrs.module.metadatadeploy.source;
 
 import au.com.bytecode.opencsv.CSVReader;
-import org.apache.commons.lang3.StringUtils;
 import org.openmrs.OpenmrsObject;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
 
 /**
- * Abstract base class for object sources from CSV resources.
+ * Abstract base class for object sources from CSV resources or files. Input is read as UTF-8 through a large buffer,
+ * and is decompressed if the resource or file name ends with .gz
+ *
+ * By default lines are parsed one at a time as objects are fetched. If parallelism is set, the input is instead split
+ * into chunks of whole records which are parsed on a pool of threads. In that case {@link #parseLine(String[])} must be
+ * thread-safe and should not access the database. Objects are returned in their original order unless that is turned
+ * off, in which case each chunk's objects are returned as soon as the chunk has been parsed.
  */
 public abstract class AbstractCsvResourceSource<T extends OpenmrsObject> implements ObjectSource<T> {
 
+	public static final String CHARSET = "UTF-8";
+
+	// Large enough that big files are read in few system calls
+	protected static final int BUFFER_SIZE = 64 * 1024;
+
+	private static final char BYTE_ORDER_MARK = '\uFEFF';
+
+	// Default number of records in each chunk parsed in parallel
+	protected static final int DEFAULT_CHUNK_SIZE = 500;
+
+	private Reader input;
+
+	private boolean hasHeader;
+
 	private CSVReader reader;
 
+	private ParallelParser parallelParser;
+
+	private int parallelism = 1;
+
+	private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+	private boolean preserveOrder = true;
+
 	/**
-	 * Constructs a new source
+	 * Constructs a new source from a classpath resource
 	 * @param csvFile the resource file path
 	 * @param hasHeader true if file has a header row
 	 * @throws IOException if an error occurs
 	 */
 	public AbstractCsvResourceSource(String csvFile, boolean hasHeader) throws IOException {
 		InputStream in = getClass().getClassLoader().getResourceAsStream(csvFile);
-		reader = new CSVReader(new InputStreamReader(in));
+		if (in == null) {
+			throw new FileNotFoundException("No such resource " + csvFile);
+		}
+
+		open(in, csvFile, hasHeader);
+	}
+
+	/**
+	 * Constructs a new source from a file
+	 * @param csvFile the file
+	 * @param hasHeader true if file has a header row
+	 * @throws IOException if an error occurs
+	 */
+	public AbstractCsvResourceSource(File csvFile, boolean hasHeader) throws IOException {
+		open(new FileInputStream(csvFile), csvFile.getName(), hasHeader);
+	}
 
-		// Throw away first line if it's a header
-		if (hasHeader) {
-			reader.readNext();
+	/**
+	 * Opens the input. Nothing is parsed until the first object is fetched.
+	 * @param in the input stream
+	 * @param name the resource or file name
+	 * @param hasHeader true if file has a header row
+	 * @throws IOException if an error occurs
+	 */
+	private void open(InputStream in, String name, boolean hasHeader) throws IOException {
+		try {
+			this.input = createReader(in, name);
+			this.hasHeader = hasHeader;
+		}
+		catch (IOException ex) {
+			in.close();
+			throw ex;
 		}
 	}
 
+	/**
+	 * Sets the number of threads used to parse lines. Must be set before the first object is fetched.
+	 * @param parallelism the number of threads, or 1 to parse lines as objects are fetched
+	 */
+	public void setParallelism(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be at least 1");
+		}
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Sets the number of records in each chunk parsed in parallel
+	 * @param chunkSize the number of records
+	 */
+	public void setChunkSize(int chunkSize) {
+		if (chunkSize < 1) {
+			throw new IllegalArgumentException("Chunk size must be at least 1");
+		}
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Sets whether objects parsed in parallel are returned in their original order
+	 * @param preserveOrder true to preserve the original order
+	 */
+	public void setPreserveOrder(boolean preserveOrder) {
+		this.preserveOrder = preserveOrder;
+	}
+
+	/**
+	 * Creates a buffered UTF-8 reader for the given input, skipping any byte order mark
+	 * @param in the input stream
+	 * @param name the resource or file name
+	 * @return the reader
+	 * @throws IOException if an error occurs
+	 */
+	protected static Reader createReader(InputStream in, String name) throws IOException {
+		if (name.endsWith(".gz")) {
+			in = new GZIPInputStream(new BufferedInputStream(in, BUFFER_SIZE), BUFFER_SIZE);
+		}
+
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in, CHARSET), BUFFER_SIZE);
+
+		reader.mark(1);
+		if (reader.read() != BYTE_ORDER_MARK) {
+			reader.reset();
+		}
+		return reader;
+	}
+
 	/**
 	 * @see ObjectSource#fetchNext()
 	 */
 	@Override
 	public T fetchNext() throws Exception {
+		if (parallelism > 1) {
+			if (parallelParser == null) {
+				parallelParser = new ParallelParser();
+			}
+			return parallelParser.fetchNext();
+		}
+
+		if (reader == null) {
+			reader = new CSVReader(input);
+
+			// Throw away first line if it's a header
+			if (hasHeader) {
+				reader.readNext();
+			}
+		}
+
 		String[] line = reader.readNext();
 		if (line == null) {
 			close();
 			return null;
 		}
 
-		// Trim values and replace blank or empty values with nulls
-		for (int c = 0; c < line.length; ++c) {
-			String val = line[c].trim();
+		return parseTrimmedLine(line);
+	}
 
-			line[c] = StringUtils.isNotEmpty(val) ? val : null;
+	/**
+	 * Trims the values of a line and parses it
+	 * @param line the line
+	 * @return the object
+	 */
+	private T parseTrimmedLine(String[] line) throws Exception {
+		// Trim values and replace blank or empty values with nulls, in place
+		for (int c = 0; c < line.length; ++c) {
+			line[c] = trimToNull(line[c]);
 		}
 
 		return parseLine(line);
@@ -78,6 +227,162 @@ public abstract class AbstractCsvResourceSource<T extends OpenmrsObject> impleme
 	 * @throws IOException if an error occurs
 	 */
 	protected void close() throws IOException {
-		reader.close();
+		if (parallelParser != null) {
+			parallelParser.shutdown();
+		}
+		input.close();
+	}
+
+	/**
+	 * Trims a value, only creating a new string if it has leading or trailing whitespace
+	 * @param value the value
+	 * @return the trimmed value or null if it's blank or empty
+	 */
+	protected static String trimToNull(String value) {
+		int start = 0, end = value.length();
+		while (start < end && value.charAt(start) <= ' ') {
+			++start;
+		}
+		while (end > start && value.charAt(end - 1) <= ' ') {
+			--end;
+		}
+
+		if (start == end) {
+			return null;
+		}
+		return (start > 0 || end < value.length()) ? value.substring(start, end) : value;
+	}
+
+	/**
+	 * Parses chunks of records on a pool of threads. Up to two chunks per thread are read ahead of the objects being
+	 * fetched.
+	 */
+	private class ParallelParser {
+
+		private final CsvChunkReader chunkReader = new CsvChunkReader(input, BUFFER_SIZE);
+
+		private final ThreadPoolExecutor executor;
+
+		private final CompletionService<List<T>> completionService;
+
+		// Parsed chunks in their original order, used if order is preserved
+		private final LinkedList<Future<List<T>>> pending = new LinkedList<Future<List<T>>>();
+
+		private final int maxPending;
+
+		private int submitted = 0;
+
+		private boolean endOfInput = false;
+
+		private List<T> current = Collections.emptyList();
+
+		private int next = 0;
+
+		public ParallelParser() throws IOException {
+			// Throw away first record if it's a header
+			if (hasHeader) {
+				chunkReader.read(1);
+			}
+
+			final String threadName = "metadatadeploy-csv-" + AbstractCsvResourceSource.this.getClass().getSimpleName();
+
+			executor = new ThreadPoolExecutor(parallelism, parallelism, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, threadName);
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			executor.allowCoreThreadTimeOut(true);
+
+			completionService = new ExecutorCompletionService<List<T>>(executor);
+			maxPending = parallelism * 2;
+		}
+
+		/**
+		 * Fetches the next parsed object
+		 * @return the object or null if there are no more objects
+		 */
+		public T fetchNext() throws Exception {
+			while (next >= current.size()) {
+				submitChunks();
+
+				if (submitted == 0) {
+					close();
+					return null;
+				}
+
+				Future<List<T>> chunk = preserveOrder ? pending.removeFirst() : completionService.take();
+				submitted--;
+
+				try {
+					current = chunk.get();
+					next = 0;
+				}
+				catch (ExecutionException ex) {
+					shutdown();
+					if (ex.getCause() instanceof Exception) {
+						throw (Exception) ex.getCause();
+					}
+					throw ex;
+				}
+			}
+
+			return current.get(next++);
+		}
+
+		/**
+		 * Reads and submits chunks until enough are pending or the input ends
+		 */
+		private void submitChunks() throws IOException {
+			while (!endOfInput && submitted < maxPending) {
+				final String chunk = chunkReader.read(chunkSize);
+				if (chunk == null) {
+					endOfInput = true;
+					break;
+				}
+
+				Callable<List<T>> task = new Callable<List<T>>() {
+					@Override
+					public List<T> call() throws Exception {
+						return parseChunk(chunk);
+					}
+				};
+
+				if (preserveOrder) {
+					pending.add(executor.submit(task));
+				}
+				else {
+					completionService.submit(task);
+				}
+				submitted++;
+			}
+		}
+
+		/**
+		 * Parses a chunk of records. Runs on a pool thread.
+		 * @param chunk the records
+		 * @return the objects
+		 */
+		private List<T> parseChunk(String chunk) throws Exception {
+			CSVReader chunkCsvReader = new CSVReader(new StringReader(chunk));
+			List<T> objects = new ArrayList<T>(chunkSize);
+			String[] line;
+			while ((line = chunkCsvReader.readNext()) != null) {
+				objects.add(parseTrimmedLine(line));
+			}
+			return objects;
+		}
+
+		/**
+		 * Stops parsing, discarding any chunks which haven't been parsed
+		 */
+		public void shutdown() {
+			executor.shutdownNow();
+			pending.clear();
+			submitted = 0;
+			endOfInput = true;
+		}
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,119 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.source;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Splits CSV input into chunks of whole records, without parsing the records themselves. A newline only ends a record
+ * if it's outside of a quoted value, so values can contain newlines. Quotes and escapes are interpreted as they are by
+ * the default opencsv parser, i.e. a quote character toggles whether the value is quoted, and inside a quoted value a
+ * backslash escapes the following character.
+ */
+class CsvChunkReader {
+
+	private static final char QUOTE = '"';
+
+	private static final char ESCAPE = '\\';
+
+	private final Reader reader;
+
+	private final char[] buffer;
+
+	private int position = 0;
+
+	private int limit = 0;
+
+	private boolean inQuotes = false;
+
+	private boolean escaped = false;
+
+	// Number of records ended by the last scan of the buffer
+	private int pending;
+
+	/**
+	 * Creates a new chunk reader
+	 * @param reader the CSV input
+	 * @param bufferSize the size of the read buffer
+	 */
+	public CsvChunkReader(Reader reader, int bufferSize) {
+		this.reader = reader;
+		this.buffer = new char[bufferSize];
+	}
+
+	/**
+	 * Reads up to the given number of records
+	 * @param records the maximum number of records
+	 * @return the records including their line terminators, or null if there are no more records
+	 * @throws IOException if an error occurs
+	 */
+	public String read(int records) throws IOException {
+		StringBuilder chunk = new StringBuilder();
+		int count = 0;
+
+		while (true) {
+			if (position == limit) {
+				limit = reader.read(buffer);
+				position = 0;
+				if (limit < 0) {
+					limit = 0;
+					break;
+				}
+			}
+
+			int end = scan(records - count);
+			if (end >= 0) {
+				chunk.append(buffer, position, end - position);
+				position = end;
+				return chunk.toString();
+			}
+
+			count += pending;
+			chunk.append(buffer, position, limit - position);
+			position = limit;
+		}
+
+		return chunk.length() > 0 ? chunk.toString() : null;
+	}
+
+	/**
+	 * Scans the buffer from the current position for the end of the given number of records
+	 * @param records the number of records
+	 * @return the buffer position after the last record, or -1 if the buffer ends first
+	 */
+	private int scan(int records) {
+		pending = 0;
+		for (int i = position; i < limit; ++i) {
+			char c = buffer[i];
+
+			if (escaped) {
+				escaped = false;
+			}
+			else if (c == QUOTE) {
+				inQuotes = !inQuotes;
+			}
+			else if (inQuotes && c == ESCAPE) {
+				escaped = true;
+			}
+			else if (c == '\n' && !inQuotes) {
+				if (++pending == records) {
+					return i + 1;
+				}
+			}
+		}
+		return -1;
+	}
+}
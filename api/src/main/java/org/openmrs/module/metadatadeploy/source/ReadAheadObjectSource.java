@@ -0,0 +1,166 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.source;
+
+import org.openmrs.OpenmrsObject;
+import org.openmrs.api.APIException;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Object source which fetches objects from another source on a separate thread, so that objects can be parsed and
+ * constructed while previous objects are being saved. Up to a fixed number of objects are read ahead, after which the
+ * reading thread waits for objects to be consumed. Any exception thrown by the other source is re-thrown by
+ * {@link #fetchNext()}.
+ *
+ * Because objects are created on a different thread to the one which saves them, the other source should not access
+ * the database, e.g. to fetch referenced objects.
+ */
+public class ReadAheadObjectSource<T extends OpenmrsObject> implements ObjectSource<T> {
+
+	// Queue item which marks the end of the source
+	private static final Object END = new Object();
+
+	private final ObjectSource<T> source;
+
+	private final BlockingQueue<Object> queue;
+
+	private volatile boolean closed = false;
+
+	private Thread reader;
+
+	private boolean finished = false;
+
+	/**
+	 * Creates a new read-ahead source
+	 * @param source the source to read from
+	 * @param capacity the maximum number of objects to read ahead
+	 */
+	public ReadAheadObjectSource(ObjectSource<T> source, int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Capacity must be at least 1");
+		}
+
+		this.source = source;
+		this.queue = new ArrayBlockingQueue<Object>(capacity);
+	}
+
+	/**
+	 * Starts reading from the other source. This is called by the first call to {@link #fetchNext()} if not called
+	 * before.
+	 */
+	public synchronized void start() {
+		if (reader == null) {
+			reader = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					read();
+				}
+			}, "metadatadeploy-read-ahead-" + source.getClass().getSimpleName());
+			reader.setDaemon(true);
+			reader.start();
+		}
+	}
+
+	/**
+	 * @see ObjectSource#fetchNext()
+	 */
+	@Override
+	public T fetchNext() throws Exception {
+		if (finished) {
+			return null;
+		}
+
+		start();
+
+		Object item = queue.take();
+
+		if (item == END) {
+			finished = true;
+			return null;
+		}
+		else if (item instanceof Failure) {
+			finished = true;
+			throw new APIException("Unable to read from " + source.getClass().getSimpleName(), ((Failure) item).cause);
+		}
+
+		return (T) item;
+	}
+
+	/**
+	 * Stops reading from the other source. This should be called if the consumer stops fetching objects before the end
+	 * of the source.
+	 */
+	public void close() {
+		closed = true;
+		synchronized (this) {
+			if (reader != null) {
+				reader.interrupt();
+			}
+		}
+		queue.clear();
+	}
+
+	/**
+	 * Reads objects from the other source into the queue. Runs on the reading thread.
+	 */
+	protected void read() {
+		Object last;
+		try {
+			T next;
+			while (!closed && (next = source.fetchNext()) != null) {
+				put(next);
+			}
+			last = END;
+		}
+		catch (Throwable t) {
+			last = new Failure(t);
+		}
+
+		try {
+			put(last);
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Puts an item into the queue, waiting for space unless this source has been closed
+	 * @param item the item
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	private void put(Object item) throws InterruptedException {
+		while (!closed) {
+			if (queue.offer(item, 100, TimeUnit.MILLISECONDS)) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Queue item which holds an exception thrown by the other source
+	 */
+	private static class Failure {
+
+		private final Throwable cause;
+
+		public Failure(Throwable cause) {
+			this.cause = cause;
+		}
+	}
+}
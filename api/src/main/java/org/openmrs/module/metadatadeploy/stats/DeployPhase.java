@@ -0,0 +1,46 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.stats;
+
+/**
+ * Phases of installing objects which are timed by {@link DeployTimings}
+ */
+public enum DeployPhase {
+
+	/**
+	 * Fetching existing objects by identifier
+	 */
+	FETCH,
+
+	/**
+	 * Looking for existing objects which should be replaced when there's no exact match
+	 */
+	ALTERNATE_MATCH,
+
+	/**
+	 * Comparing incoming objects with existing objects and overwriting those which have changed
+	 */
+	OVERWRITE,
+
+	/**
+	 * Saving objects
+	 */
+	SAVE,
+
+	/**
+	 * Flushing the session after a bundle is installed
+	 */
+	FLUSH
+}
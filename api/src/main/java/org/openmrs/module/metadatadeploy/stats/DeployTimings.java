@@ -0,0 +1,288 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.stats;
+
+import org.openmrs.module.metadatadeploy.bundle.MetadataBundle;
+import org.openmrs.module.metadatadeploy.handler.ObjectDeployHandler;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records the wall time spent and the number of objects installed, per bundle class, per handler and per phase. Times
+ * are cumulative since the module started or was last reset. Handler and bundle object counts are the numbers of
+ * objects installed, i.e. that passed through the {@link DeployPhase#OVERWRITE} phase. This is registered as an MXBean
+ * under {@link #OBJECT_NAME}.
+ */
+public class DeployTimings implements DeployTimingsMXBean {
+
+	public static final String OBJECT_NAME = "org.openmrs.module.metadatadeploy:type=DeployTimings";
+
+	// Maximum number of bundles listed in a summary
+	private static final int SUMMARY_MAX_BUNDLES = 10;
+
+	private static final DeployTimings instance = new DeployTimings();
+
+	private final ConcurrentMap<String, Timer> bundles = new ConcurrentHashMap<String, Timer>();
+
+	private final ConcurrentMap<String, Timer> handlers = new ConcurrentHashMap<String, Timer>();
+
+	private final ConcurrentMap<String, Timer> phases = new ConcurrentHashMap<String, Timer>();
+
+	private final ThreadLocal<BundleTiming> currentBundle = new ThreadLocal<BundleTiming>();
+
+	/**
+	 * Gets the timings shared by the deploy service
+	 * @return the timings
+	 */
+	public static DeployTimings getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Begins timing a bundle install on the current thread. Must be followed by {@link #endBundle(MetadataBundle)}.
+	 */
+	public void beginBundle() {
+		currentBundle.set(new BundleTiming(currentBundle.get()));
+	}
+
+	/**
+	 * Ends timing a bundle install on the current thread
+	 * @param bundle the bundle
+	 */
+	public void endBundle(MetadataBundle bundle) {
+		BundleTiming timing = currentBundle.get();
+		if (timing == null) {
+			return;
+		}
+
+		if (timing.outer != null) {
+			currentBundle.set(timing.outer);
+		}
+		else {
+			currentBundle.remove();
+		}
+
+		timer(bundles, bundle.getClass().getName()).add(System.nanoTime() - timing.start, timing.objects);
+	}
+
+	/**
+	 * Records the time spent in a phase since the given start time
+	 * @param handler the handler (may be null)
+	 * @param phase the phase
+	 * @param start the start time from {@link System#nanoTime()}
+	 * @param objects the number of objects processed
+	 */
+	public void record(ObjectDeployHandler<?> handler, DeployPhase phase, long start, int objects) {
+		long nanos = System.nanoTime() - start;
+		int installed = phase == DeployPhase.OVERWRITE ? objects : 0;
+
+		timer(phases, phase.name()).add(nanos, objects);
+
+		if (handler != null) {
+			timer(handlers, handler.getClass().getSimpleName()).add(nanos, installed);
+		}
+
+		BundleTiming timing = currentBundle.get();
+		if (timing != null) {
+			timing.objects += installed;
+		}
+	}
+
+	/**
+	 * @see DeployTimingsMXBean#getBundles()
+	 */
+	@Override
+	public Map<String, TimingSnapshot> getBundles() {
+		return snapshot(bundles);
+	}
+
+	/**
+	 * @see DeployTimingsMXBean#getHandlers()
+	 */
+	@Override
+	public Map<String, TimingSnapshot> getHandlers() {
+		return snapshot(handlers);
+	}
+
+	/**
+	 * @see DeployTimingsMXBean#getPhases()
+	 */
+	@Override
+	public Map<String, TimingSnapshot> getPhases() {
+		return snapshot(phases);
+	}
+
+	/**
+	 * @see DeployTimingsMXBean#reset()
+	 */
+	@Override
+	public void reset() {
+		bundles.clear();
+		handlers.clear();
+		phases.clear();
+	}
+
+	/**
+	 * Takes a snapshot of all timings, which can later be used to summarize what happened since
+	 * @return the snapshot
+	 */
+	public Snapshot snapshot() {
+		return new Snapshot(getBundles(), getHandlers(), getPhases());
+	}
+
+	/**
+	 * Summarizes the timings recorded since the given snapshot, as a single line of the form
+	 * <code>phases={FETCH=12ms/100, ...} handlers={...} bundles={...}</code> where each value is the total time and
+	 * number of objects. Entries are ordered by time, slowest first.
+	 * @param earlier the earlier snapshot
+	 * @return the summary
+	 */
+	public String summarizeSince(Snapshot earlier) {
+		Snapshot now = snapshot();
+		StringBuilder sb = new StringBuilder();
+		appendSince(sb, "phases", now.phases, earlier.phases, Integer.MAX_VALUE);
+		sb.append(" ");
+		appendSince(sb, "handlers", now.handlers, earlier.handlers, Integer.MAX_VALUE);
+		sb.append(" ");
+		appendSince(sb, "bundles", now.bundles, earlier.bundles, SUMMARY_MAX_BUNDLES);
+		return sb.toString();
+	}
+
+	/**
+	 * Appends the changed entries of a timings map to a summary
+	 */
+	private static void appendSince(StringBuilder sb, String name, Map<String, TimingSnapshot> now, Map<String, TimingSnapshot> earlier, int maxEntries) {
+		List<Map.Entry<String, TimingSnapshot>> changed = new ArrayList<Map.Entry<String, TimingSnapshot>>();
+		for (Map.Entry<String, TimingSnapshot> entry : now.entrySet()) {
+			TimingSnapshot since = entry.getValue().since(earlier.get(entry.getKey()));
+			if (since.getCount() > 0) {
+				changed.add(new AbstractMap.SimpleImmutableEntry<String, TimingSnapshot>(entry.getKey(), since));
+			}
+		}
+
+		Collections.sort(changed, new Comparator<Map.Entry<String, TimingSnapshot>>() {
+			@Override
+			public int compare(Map.Entry<String, TimingSnapshot> e1, Map.Entry<String, TimingSnapshot> e2) {
+				long t1 = e1.getValue().getTotalMillis(), t2 = e2.getValue().getTotalMillis();
+				return t1 < t2 ? 1 : (t1 > t2 ? -1 : 0);
+			}
+		});
+
+		sb.append(name).append("={");
+		for (int e = 0; e < changed.size() && e < maxEntries; ++e) {
+			if (e > 0) {
+				sb.append(", ");
+			}
+			sb.append(changed.get(e).getKey()).append("=").append(changed.get(e).getValue());
+		}
+		if (changed.size() > maxEntries) {
+			sb.append(", +").append(changed.size() - maxEntries).append(" more");
+		}
+		sb.append("}");
+	}
+
+	/**
+	 * Snapshots each timer in the given map
+	 */
+	private static Map<String, TimingSnapshot> snapshot(Map<String, Timer> timers) {
+		Map<String, TimingSnapshot> snapshots = new TreeMap<String, TimingSnapshot>();
+		for (Map.Entry<String, Timer> entry : timers.entrySet()) {
+			snapshots.put(entry.getKey(), entry.getValue().snapshot());
+		}
+		return snapshots;
+	}
+
+	/**
+	 * Gets or creates the timer with the given key
+	 */
+	private static Timer timer(ConcurrentMap<String, Timer> timers, String key) {
+		Timer timer = timers.get(key);
+		if (timer == null) {
+			Timer created = new Timer();
+			timer = timers.putIfAbsent(key, created);
+			if (timer == null) {
+				timer = created;
+			}
+		}
+		return timer;
+	}
+
+	/**
+	 * Snapshot of all timings
+	 */
+	public static class Snapshot {
+
+		private final Map<String, TimingSnapshot> bundles;
+		private final Map<String, TimingSnapshot> handlers;
+		private final Map<String, TimingSnapshot> phases;
+
+		private Snapshot(Map<String, TimingSnapshot> bundles, Map<String, TimingSnapshot> handlers, Map<String, TimingSnapshot> phases) {
+			this.bundles = bundles;
+			this.handlers = handlers;
+			this.phases = phases;
+		}
+	}
+
+	/**
+	 * Accumulates the timing of one bundle, handler or phase
+	 */
+	private static class Timer {
+
+		private final AtomicLong count = new AtomicLong();
+		private final AtomicLong objects = new AtomicLong();
+		private final AtomicLong totalNanos = new AtomicLong();
+		private final AtomicLong maxNanos = new AtomicLong();
+
+		public void add(long nanos, long objectCount) {
+			count.incrementAndGet();
+			objects.addAndGet(objectCount);
+			totalNanos.addAndGet(nanos);
+
+			long max;
+			while (nanos > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, nanos)) {
+				// Retry until updated or no longer the maximum
+			}
+		}
+
+		public TimingSnapshot snapshot() {
+			return new TimingSnapshot(count.get(), objects.get(), TimeUnit.NANOSECONDS.toMillis(totalNanos.get()),
+					TimeUnit.NANOSECONDS.toMillis(maxNanos.get()));
+		}
+	}
+
+	/**
+	 * Timing of a bundle install in progress on one thread
+	 */
+	private static class BundleTiming {
+
+		private final BundleTiming outer;
+		private final long start = System.nanoTime();
+		private long objects = 0;
+
+		public BundleTiming(BundleTiming outer) {
+			this.outer = outer;
+		}
+	}
+}
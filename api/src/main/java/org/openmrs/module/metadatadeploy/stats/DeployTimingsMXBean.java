@@ -0,0 +1,46 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.stats;
+
+import java.util.Map;
+
+/**
+ * Management interface for deploy timings
+ */
+public interface DeployTimingsMXBean {
+
+	/**
+	 * Gets the time spent installing each bundle, by bundle class name
+	 * @return the timings
+	 */
+	Map<String, TimingSnapshot> getBundles();
+
+	/**
+	 * Gets the time spent in each handler, by handler class name
+	 * @return the timings
+	 */
+	Map<String, TimingSnapshot> getHandlers();
+
+	/**
+	 * Gets the time spent in each phase, by phase name
+	 * @return the timings
+	 */
+	Map<String, TimingSnapshot> getPhases();
+
+	/**
+	 * Resets all timings
+	 */
+	void reset();
+}
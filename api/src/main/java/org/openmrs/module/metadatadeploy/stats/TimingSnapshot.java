@@ -0,0 +1,98 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.stats;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Immutable snapshot of the time spent and objects processed by one bundle, handler or phase
+ */
+public class TimingSnapshot {
+
+	private final long count;
+
+	private final long objects;
+
+	private final long totalMillis;
+
+	private final long maxMillis;
+
+	/**
+	 * Creates a snapshot
+	 * @param count the number of timed operations
+	 * @param objects the number of objects processed
+	 * @param totalMillis the total wall time
+	 * @param maxMillis the wall time of the slowest operation
+	 */
+	@ConstructorProperties({ "count", "objects", "totalMillis", "maxMillis" })
+	public TimingSnapshot(long count, long objects, long totalMillis, long maxMillis) {
+		this.count = count;
+		this.objects = objects;
+		this.totalMillis = totalMillis;
+		this.maxMillis = maxMillis;
+	}
+
+	/**
+	 * Gets the number of timed operations
+	 * @return the count
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Gets the number of objects processed
+	 * @return the number of objects
+	 */
+	public long getObjects() {
+		return objects;
+	}
+
+	/**
+	 * Gets the total wall time
+	 * @return the time in milliseconds
+	 */
+	public long getTotalMillis() {
+		return totalMillis;
+	}
+
+	/**
+	 * Gets the wall time of the slowest operation
+	 * @return the time in milliseconds
+	 */
+	public long getMaxMillis() {
+		return maxMillis;
+	}
+
+	/**
+	 * Gets the difference between this and an earlier snapshot of the same thing. The maximum time is not subtracted.
+	 * @param earlier the earlier snapshot (may be null)
+	 * @return the difference
+	 */
+	public TimingSnapshot since(TimingSnapshot earlier) {
+		if (earlier == null) {
+			return this;
+		}
+		return new TimingSnapshot(count - earlier.count, objects - earlier.objects, totalMillis - earlier.totalMillis, maxMillis);
+	}
+
+	/**
+	 * @see Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return totalMillis + "ms/" + objects;
+	}
+}
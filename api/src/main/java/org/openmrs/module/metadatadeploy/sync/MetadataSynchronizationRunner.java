@@ -12,6 +12,7 @@
  * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
  */
 
+
 package org.openmrs.module.metadatadeploy.sync;
 
 import org.apache.commons.logging.Log;
@@ -19,15 +20,26 @@ import org.apache.commons.logging.LogFactory;
 import org.openmrs.OpenmrsMetadata;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.metadatadeploy.api.MetadataDeployService;
+import org.openmrs.module.metadatadeploy.handler.ObjectDeployHandler;
+import org.openmrs.module.metadatadeploy.handler.ObjectDeployHandlers;
+import org.openmrs.module.metadatadeploy.plan.InstallPlan;
 import org.openmrs.module.metadatadeploy.source.ObjectSource;
 
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 /**
- * Class which runs synchronizations of metadata objects
+ * Class which runs synchronizations of metadata objects. By default all existing objects are kept in the session for the
+ * duration of the synchronization. For large synchronizations a chunk size can be set, in which case the session is
+ * flushed and cleared after every chunk of objects, and existing objects are only tracked by their sync keys, ids and
+ * identifiers, being re-fetched when they are needed. New objects in a chunk are saved together at the end of the chunk,
+ * in bulk where their deploy handler supports it.
+ *
+ * Clearing the session detaches every object in it, so a chunked synchronization must run in its own session, e.g. not
+ * within a bundle which holds on to other objects.
  */
 public class MetadataSynchronizationRunner<T extends OpenmrsMetadata> {
 
@@ -46,6 +58,20 @@ public class MetadataSynchronizationRunner<T extends OpenmrsMetadata> {
 	// a set because object equality is based on UUIDs and those can change during a sync
 	protected Map<Integer, T> notSyncedObjects = new HashMap<Integer, T>();
 
+	// Used instead of keyCache and notSyncedObjects in chunked mode
+	protected Map<Object, ExistingObject<T>> keyRefs = new HashMap<Object, ExistingObject<T>>();
+
+	protected Map<Integer, ExistingObject<T>> notSyncedRefs = new HashMap<Integer, ExistingObject<T>>();
+
+	protected int chunkSize = 0;
+
+	protected int processedInChunk = 0;
+
+	// In chunked mode, created objects by sync key which are saved together at the end of the chunk
+	protected Map<Object, T> pendingCreated = new LinkedHashMap<Object, T>();
+
+	private ObjectDeployHandlers deployHandlers;
+
 	/**
 	 * Creates a new synchronization process
 	 * @param source the object source
@@ -56,6 +82,34 @@ public class MetadataSynchronizationRunner<T extends OpenmrsMetadata> {
 		this.sync = sync;
 	}
 
+	/**
+	 * Sets the result object which records the synchronization, e.g. a {@link SyncCounts} to avoid keeping references to
+	 * all affected objects
+	 * @param result the result
+	 */
+	public void setResult(SyncResult<T> result) {
+		this.result = result;
+	}
+
+	/**
+	 * Sets the number of objects to process before flushing and clearing the session. Zero, the default, means that the
+	 * session isn't cleared during the synchronization. Otherwise the synchronization must run in its own session, as any
+	 * other objects loaded in the session will be detached.
+	 * @param chunkSize the chunk size
+	 */
+	public void setChunkSize(int chunkSize) {
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Gets whether this synchronization is running in chunked mode
+	 * @return true if chunked
+	 */
+	public boolean isChunked() {
+		// Chunks are flushed, which must not happen while planning
+		return chunkSize > 0 && InstallPlan.current() == null;
+	}
+
 	/**
 	 * Performs the synchronization
 	 */
@@ -74,6 +128,7 @@ public class MetadataSynchronizationRunner<T extends OpenmrsMetadata> {
 					throw new RuntimeException("Incoming object '" + next.getName() + "' has no sync key");
 				} else {
 					synchronizeObject(deployService, syncKey, next);
+					objectProcessed();
 				}
 			}
 		} catch (Exception e) {
@@ -97,9 +152,14 @@ public class MetadataSynchronizationRunner<T extends OpenmrsMetadata> {
 			}
 			else {
 				// Check there isn't another object with this key
-				if (keyCache.containsKey(syncKey)) {
+				if (keyCache.containsKey(syncKey) || keyRefs.containsKey(syncKey)) {
 					log.warn("Ignoring object '" + obj.getName() + "' with duplicate sync key " + syncKey);
 				}
+				else if (isChunked()) {
+					ExistingObject<T> ref = new ExistingObject<T>(getDeployHandler(obj), obj);
+					keyRefs.put(syncKey, ref);
+					notSyncedRefs.put(ref.getId(), ref);
+				}
 				else {
 					keyCache.put(syncKey, obj);
 					notSyncedObjects.put(obj.getId(), obj);
@@ -107,7 +167,12 @@ public class MetadataSynchronizationRunner<T extends OpenmrsMetadata> {
 			}
 		}
 
-		log.info("Loaded " + keyCache.size() + " existing objects with sync keys");
+		log.info("Loaded " + (keyCache.size() + keyRefs.size()) + " existing objects with sync keys");
+
+		if (isChunked()) {
+			// Only the references are kept so the loaded objects can be released
+			clearSession();
+		}
 	}
 
 	/**
@@ -117,15 +182,33 @@ public class MetadataSynchronizationRunner<T extends OpenmrsMetadata> {
 	 */
 	protected void synchronizeObject(MetadataDeployService deployService, Object syncKey, T incoming) {
 		// Look in the cache for an existing object with this sync key
-		T existing = keyCache.get(syncKey);
+		ExistingObject<T> ref = null;
+		T existing;
+		if (isChunked()) {
+			if (pendingCreated.containsKey(syncKey)) {
+				// Repeated in this chunk, so save what has been created so far and treat it as existing
+				savePendingCreated(deployService);
+			}
+
+			ref = keyRefs.get(syncKey);
+			existing = ref != null ? ref.fetch() : null;
+		}
+		else {
+			existing = keyCache.get(syncKey);
+		}
 
 		if (existing == null) {
-			// Save incoming as new
-			deployService.saveObject(incoming);
-			keyCache.put(syncKey, incoming);
+			if (isChunked()) {
+				pendingCreated.put(syncKey, incoming);
+			}
+			else {
+				// Save incoming as new
+				deployService.saveObject(incoming);
+				keyCache.put(syncKey, incoming);
 
-			log.info("Created new object '" + incoming.getName() + "' with sync key " + syncKey);
-			result.getCreated().add(incoming);
+				log.info("Created new object '" + incoming.getName() + "' with sync key " + syncKey);
+				result.addCreated(incoming);
+			}
 		}
 		else {
 			// Only if incoming object differs
@@ -133,10 +216,41 @@ public class MetadataSynchronizationRunner<T extends OpenmrsMetadata> {
 				deployService.overwriteObject(incoming, existing);
 
 				log.info("Updated existing object '" + existing.getName() + "' with sync key " + syncKey);
-				result.getUpdated().add(existing);
+				result.addUpdated(existing);
+
+				if (ref != null) {
+					// Identifier may have been overwritten
+					ref.update(existing);
+				}
 			}
 
 			notSyncedObjects.remove(existing.getId());
+			notSyncedRefs.remove(existing.getId());
+		}
+	}
+
+	/**
+	 * Saves the created objects of the current chunk together
+	 * @param deployService the deploy service
+	 */
+	protected void savePendingCreated(MetadataDeployService deployService) {
+		if (pendingCreated.isEmpty()) {
+			return;
+		}
+
+		List<Object> syncKeys = new ArrayList<Object>(pendingCreated.keySet());
+		List<T> saved = deployService.saveObjects(new ArrayList<T>(pendingCreated.values()));
+		pendingCreated.clear();
+
+		for (int i = 0; i < saved.size(); ++i) {
+			Object syncKey = syncKeys.get(i);
+			T created = saved.get(i);
+
+			// Referenced by the saved instance, which is the one a handler's bulk save keeps in the session
+			keyRefs.put(syncKey, new ExistingObject<T>(getDeployHandler(created), created));
+
+			log.info("Created new object '" + created.getName() + "' with sync key " + syncKey);
+			result.addCreated(created);
 		}
 	}
 
@@ -144,14 +258,114 @@ public class MetadataSynchronizationRunner<T extends OpenmrsMetadata> {
 	 * Retires existing objects not found in the source
 	 */
 	protected void retireExistingNotInSource(MetadataDeployService deployService) {
+		savePendingCreated(deployService);
+
 		// Retire objects that weren't in the sync source
 		for (T notSynced : notSyncedObjects.values()) {
 			if (!notSynced.isRetired()) {
 				deployService.uninstallObject(notSynced, "Not found in sync source");
 
 				log.info("Retired existing object '" + notSynced.getName() + "'");
-				result.getRetired().add(notSynced);
+				result.addRetired(notSynced);
 			}
 		}
+
+		for (ExistingObject<T> ref : notSyncedRefs.values()) {
+			if (!ref.isRetired()) {
+				T notSynced = ref.fetch();
+
+				if (notSynced != null && !notSynced.isRetired()) {
+					deployService.uninstallObject(notSynced, "Not found in sync source");
+
+					log.info("Retired existing object '" + notSynced.getName() + "'");
+					result.addRetired(notSynced);
+					objectProcessed();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Called after each object has been processed. In chunked mode, this ends the chunk if it is full.
+	 */
+	protected void objectProcessed() {
+		if (isChunked() && ++processedInChunk >= chunkSize) {
+			clearSession();
+			processedInChunk = 0;
+		}
+	}
+
+	/**
+	 * Flushes pending changes and clears the session, through the deploy service so that any objects it has memoized or
+	 * preloaded for the current install are dropped too
+	 */
+	protected void clearSession() {
+		MetadataDeployService deployService = Context.getService(MetadataDeployService.class);
+		savePendingCreated(deployService);
+		deployService.clearSession();
+	}
+
+	/**
+	 * Gets the deploy handler for the given object
+	 * @param obj the object
+	 * @return the handler
+	 */
+	protected ObjectDeployHandler<T> getDeployHandler(T obj) {
+		if (deployHandlers == null) {
+			// assumes there is only one ObjectDeployHandlers component
+			deployHandlers = Context.getRegisteredComponents(ObjectDeployHandlers.class).get(0);
+		}
+
+		ObjectDeployHandler<T> handler = deployHandlers.getHandler((Class<T>) obj.getClass());
+		if (handler == null) {
+			throw new RuntimeException("No handler class found for " + obj.getClass().getName());
+		}
+		return handler;
+	}
+
+	/**
+	 * Reference to an existing object which doesn't hold the object itself, so that it can be evicted from the session
+	 * and re-fetched when needed
+	 */
+	protected static class ExistingObject<T extends OpenmrsMetadata> {
+
+		private final ObjectDeployHandler<T> handler;
+
+		private final Integer id;
+
+		private String identifier;
+
+		private boolean retired;
+
+		public ExistingObject(ObjectDeployHandler<T> handler, T obj) {
+			this.handler = handler;
+			this.id = obj.getId();
+			update(obj);
+		}
+
+		/**
+		 * Updates this reference after the object has been modified
+		 * @param obj the object
+		 */
+		public void update(T obj) {
+			this.identifier = handler.getIdentifier(obj);
+			this.retired = Boolean.TRUE.equals(obj.isRetired());
+		}
+
+		public Integer getId() {
+			return id;
+		}
+
+		public boolean isRetired() {
+			return retired;
+		}
+
+		/**
+		 * Fetches the object from the database
+		 * @return the object
+		 */
+		public T fetch() {
+			return handler.fetch(identifier);
+		}
 	}
-}
\ No newline at end of file
+}
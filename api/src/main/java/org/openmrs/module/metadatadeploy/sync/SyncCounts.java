@@ -0,0 +1,166 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.sync;
+
+import org.openmrs.OpenmrsMetadata;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Result of a synchronization which only records the number of objects that were created, updated and retired, and
+ * optionally a limited sample of their UUIDs. This doesn't keep references to the objects themselves so they can be
+ * released as soon as they are saved.
+ */
+public class SyncCounts<T extends OpenmrsMetadata> extends SyncResult<T> {
+
+	private final int sampleSize;
+
+	private int createdCount = 0;
+	private int updatedCount = 0;
+	private int retiredCount = 0;
+
+	private List<String> createdSample = new ArrayList<String>();
+	private List<String> updatedSample = new ArrayList<String>();
+	private List<String> retiredSample = new ArrayList<String>();
+
+	/**
+	 * Creates a result which records only counts
+	 */
+	public SyncCounts() {
+		this(0);
+	}
+
+	/**
+	 * Creates a result which records counts and the UUIDs of the first objects
+	 * @param sampleSize the maximum number of UUIDs to record for each of created, updated and retired
+	 */
+	public SyncCounts(int sampleSize) {
+		this.sampleSize = sampleSize;
+	}
+
+	/**
+	 * Not supported as objects aren't kept
+	 * @throws UnsupportedOperationException always
+	 */
+	@Override
+	public List<T> getCreated() {
+		throw new UnsupportedOperationException("Objects are not kept by " + getClass().getSimpleName() + ", use getCreatedCount()");
+	}
+
+	/**
+	 * Not supported as objects aren't kept
+	 * @throws UnsupportedOperationException always
+	 */
+	@Override
+	public List<T> getUpdated() {
+		throw new UnsupportedOperationException("Objects are not kept by " + getClass().getSimpleName() + ", use getUpdatedCount()");
+	}
+
+	/**
+	 * Not supported as objects aren't kept
+	 * @throws UnsupportedOperationException always
+	 */
+	@Override
+	public List<T> getRetired() {
+		throw new UnsupportedOperationException("Objects are not kept by " + getClass().getSimpleName() + ", use getRetiredCount()");
+	}
+
+	/**
+	 * @see SyncResult#addCreated(org.openmrs.OpenmrsMetadata)
+	 */
+	@Override
+	public void addCreated(T obj) {
+		++createdCount;
+		addToSample(createdSample, obj);
+	}
+
+	/**
+	 * @see SyncResult#addUpdated(org.openmrs.OpenmrsMetadata)
+	 */
+	@Override
+	public void addUpdated(T obj) {
+		++updatedCount;
+		addToSample(updatedSample, obj);
+	}
+
+	/**
+	 * @see SyncResult#addRetired(org.openmrs.OpenmrsMetadata)
+	 */
+	@Override
+	public void addRetired(T obj) {
+		++retiredCount;
+		addToSample(retiredSample, obj);
+	}
+
+	/**
+	 * @see SyncResult#getCreatedCount()
+	 */
+	@Override
+	public int getCreatedCount() {
+		return createdCount;
+	}
+
+	/**
+	 * @see SyncResult#getUpdatedCount()
+	 */
+	@Override
+	public int getUpdatedCount() {
+		return updatedCount;
+	}
+
+	/**
+	 * @see SyncResult#getRetiredCount()
+	 */
+	@Override
+	public int getRetiredCount() {
+		return retiredCount;
+	}
+
+	/**
+	 * Gets the UUIDs of the first created objects
+	 * @return the UUIDs
+	 */
+	public List<String> getCreatedSample() {
+		return createdSample;
+	}
+
+	/**
+	 * Gets the UUIDs of the first updated objects
+	 * @return the UUIDs
+	 */
+	public List<String> getUpdatedSample() {
+		return updatedSample;
+	}
+
+	/**
+	 * Gets the UUIDs of the first retired objects
+	 * @return the UUIDs
+	 */
+	public List<String> getRetiredSample() {
+		return retiredSample;
+	}
+
+	/**
+	 * Adds an object's UUID to the given sample if it isn't full
+	 * @param sample the sample
+	 * @param obj the object
+	 */
+	protected void addToSample(List<String> sample, T obj) {
+		if (sample.size() < sampleSize) {
+			sample.add(obj.getUuid());
+		}
+	}
+}
@@ -20,7 +20,9 @@ import java.util.ArrayList;
 import java.util.List;
 
 /**
- * Result of a synchronization describing the objects that were created, updated and retired
+ * Result of a synchronization describing the objects that were created, updated and retired. Callers which only need
+ * totals, e.g. for logging, should use the count getters, as {@link SyncCounts} doesn't keep the objects and throws an
+ * exception from the object getters.
  */
 public class SyncResult<T extends OpenmrsMetadata> {
 
@@ -51,4 +53,52 @@ public class SyncResult<T extends OpenmrsMetadata> {
 	public List<T> getRetired() {
 		return retired;
 	}
+
+	/**
+	 * Records that an object was created
+	 * @param obj the object
+	 */
+	public void addCreated(T obj) {
+		created.add(obj);
+	}
+
+	/**
+	 * Records that an object was updated
+	 * @param obj the object
+	 */
+	public void addUpdated(T obj) {
+		updated.add(obj);
+	}
+
+	/**
+	 * Records that an object was retired
+	 * @param obj the object
+	 */
+	public void addRetired(T obj) {
+		retired.add(obj);
+	}
+
+	/**
+	 * Gets the number of created objects
+	 * @return the number
+	 */
+	public int getCreatedCount() {
+		return created.size();
+	}
+
+	/**
+	 * Gets the number of updated objects
+	 * @return the number
+	 */
+	public int getUpdatedCount() {
+		return updated.size();
+	}
+
+	/**
+	 * Gets the number of retired objects
+	 * @return the number
+	 */
+	public int getRetiredCount() {
+		return retired.size();
+	}
 }
\ No newline at end of file
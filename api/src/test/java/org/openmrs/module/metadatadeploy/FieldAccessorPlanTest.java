@@ -0,0 +1,129 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.BaseOpenmrsObject;
+import org.openmrs.Location;
+import org.openmrs.LocationAttribute;
+import org.openmrs.module.metadatadeploy.FieldAccessorPlan.FieldAccessor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Tests for {@link FieldAccessorPlan}
+ */
+public class FieldAccessorPlanTest {
+
+	/**
+	 * @see FieldAccessorPlan#forClass(Class)
+	 */
+	@Test
+	public void forClass_shouldReturnCachedPlan() {
+		Assert.assertThat(FieldAccessorPlan.forClass(TestClass.class), sameInstance(FieldAccessorPlan.forClass(TestClass.class)));
+	}
+
+	/**
+	 * @see FieldAccessorPlan#getFields()
+	 */
+	@Test
+	public void getFields_shouldReturnNonStaticNonTransientFieldsWithSuperclassFieldsFirst() {
+		List<String> names = new ArrayList<String>();
+		for (FieldAccessor field : FieldAccessorPlan.forClass(TestClass.class).getFields()) {
+			names.add(field.getName());
+		}
+
+		// uuid is defined in BaseOpenmrsObject
+		Assert.assertThat(names, contains("uuid", "id", "name", "location", "children"));
+
+		FieldAccessorPlan plan = FieldAccessorPlan.forClass(TestClass.class);
+		Assert.assertThat(plan.getField("id", null).getKind(), is(FieldAccessorPlan.Kind.SIMPLE));
+		Assert.assertThat(plan.getField("location", null).getKind(), is(FieldAccessorPlan.Kind.REFERENCE));
+		Assert.assertThat(plan.getField("children", null).getKind(), is(FieldAccessorPlan.Kind.COLLECTION));
+
+		// Declared type of an attribute's owner is the erasure of a type variable, i.e. Customizable
+		Assert.assertThat(FieldAccessorPlan.forClass(LocationAttribute.class).getField("owner", null).getKind(), is(FieldAccessorPlan.Kind.REFERENCE));
+		Assert.assertThat(plan.getField("uuid", BaseOpenmrsObject.class).getDefinedIn(), is((Object) BaseOpenmrsObject.class));
+		Assert.assertThat(plan.getField("uuid", TestClass.class), nullValue());
+	}
+
+	/**
+	 * @see FieldAccessorPlan.FieldAccessor#read(Object)
+	 * @see FieldAccessorPlan.FieldAccessor#write(Object, Object)
+	 */
+	@Test
+	public void read_write_shouldAccessPrivateFields() {
+		TestClass obj = new TestClass();
+		FieldAccessor name = FieldAccessorPlan.forClass(TestClass.class).getField("name", null);
+
+		name.write(obj, "test");
+		Assert.assertThat(name.read(obj), is((Object) "test"));
+	}
+
+	/**
+	 * @see FieldAccessorPlan#getExclusionMask(java.util.Set)
+	 */
+	@Test
+	public void getExclusionMask_shouldMarkExcludedFields() {
+		FieldAccessorPlan plan = FieldAccessorPlan.forClass(TestClass.class);
+
+		Assert.assertThat(plan.getExclusionMask(null).isEmpty(), is(true));
+		Assert.assertThat(plan.getExclusionMask(Collections.<String>emptySet()).isEmpty(), is(true));
+
+		Set<String> excluded = new HashSet<String>(Arrays.asList("name", "children", "other"));
+		BitSet mask = plan.getExclusionMask(excluded);
+
+		Assert.assertThat(mask.cardinality(), is(2));
+		Assert.assertThat(mask.get(plan.getField("name", null).getIndex()), is(true));
+		Assert.assertThat(mask.get(plan.getField("children", null).getIndex()), is(true));
+
+		// Changing the caller's set afterwards shouldn't affect the cached mask
+		excluded.add("id");
+		Assert.assertThat(plan.getExclusionMask(new HashSet<String>(Arrays.asList("name", "children", "other"))), is(mask));
+	}
+
+	/**
+	 * Class for testing
+	 */
+	public static class TestClass extends BaseOpenmrsObject {
+
+		private static final String CONSTANT = "constant";
+
+		private Integer id;
+		private String name;
+		private transient String cached;
+		private Location location;
+		private List<TestClass> children;
+
+		@Override
+		public Integer getId() {
+			return id;
+		}
+
+		@Override
+		public void setId(Integer id) {
+			this.id = id;
+		}
+	}
+}
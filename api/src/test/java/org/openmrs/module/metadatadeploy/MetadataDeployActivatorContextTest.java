@@ -0,0 +1,48 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.GlobalProperty;
+import org.openmrs.api.context.Context;
+import org.openmrs.test.BaseModuleContextSensitiveTest;
+
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Tests for {@link MetadataDeployActivator} which require the application context
+ */
+public class MetadataDeployActivatorContextTest extends BaseModuleContextSensitiveTest {
+
+	/**
+	 * @see MetadataDeployActivator#started()
+	 */
+	@Test
+	public void started_shouldConfigureLookupCacheFromGlobalProperties() {
+		Context.getAdministrationService().saveGlobalProperty(new GlobalProperty(MetadataLookupCache.GP_MAX_SIZE, "50"));
+		Context.getAdministrationService().saveGlobalProperty(new GlobalProperty(MetadataLookupCache.GP_TTL_SECONDS, "invalid"));
+
+		try {
+			new MetadataDeployActivator().started();
+
+			Assert.assertThat(MetadataUtils.getLookupCache().getMaxSize(), is(50));
+			Assert.assertThat(MetadataUtils.getLookupCache().getTtlSeconds(), is(MetadataLookupCache.DEFAULT_TTL_SECONDS));
+		}
+		finally {
+			MetadataUtils.getLookupCache().configure(0, MetadataLookupCache.DEFAULT_TTL_SECONDS);
+		}
+	}
+}
@@ -0,0 +1,109 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.Concept;
+import org.openmrs.ConceptNumeric;
+import org.openmrs.Location;
+import org.openmrs.VisitType;
+
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Tests for {@link MetadataLookupCache}
+ */
+public class MetadataLookupCacheTest {
+
+	/**
+	 * @see MetadataLookupCache#get(Class, String)
+	 */
+	@Test
+	public void get_shouldReturnNullIfDisabled() {
+		MetadataLookupCache cache = new MetadataLookupCache();
+		cache.put(Location.class, "uuid-1", new Location());
+
+		Assert.assertThat(cache.isEnabled(), is(false));
+		Assert.assertThat(cache.get(Location.class, "uuid-1"), nullValue());
+		Assert.assertThat(cache.getMisses(), is(0l));
+	}
+
+	/**
+	 * @see MetadataLookupCache#get(Class, String)
+	 */
+	@Test
+	public void get_shouldReturnCachedObjectsAndCountHitsAndMisses() {
+		MetadataLookupCache cache = new MetadataLookupCache();
+		cache.configure(10, 60);
+
+		Location location = new Location();
+		cache.put(Location.class, "uuid-1", location);
+
+		Assert.assertThat(cache.get(Location.class, "uuid-1"), sameInstance(location));
+		Assert.assertThat(cache.get(Location.class, "uuid-2"), nullValue());
+		Assert.assertThat(cache.get(VisitType.class, "uuid-1"), nullValue());
+		Assert.assertThat(cache.getHits(), is(1l));
+		Assert.assertThat(cache.getMisses(), is(2l));
+	}
+
+	/**
+	 * @see MetadataLookupCache#put(Class, String, org.openmrs.OpenmrsObject)
+	 */
+	@Test
+	public void put_shouldEvictLeastRecentlyUsedObjects() {
+		MetadataLookupCache cache = new MetadataLookupCache();
+		cache.configure(2, 60);
+
+		cache.put(Location.class, "uuid-1", new Location());
+		cache.put(Location.class, "uuid-2", new Location());
+		cache.get(Location.class, "uuid-1");
+		cache.put(Location.class, "uuid-3", new Location());
+
+		Assert.assertThat(cache.getSize(), is(2));
+		Assert.assertThat(cache.get(Location.class, "uuid-1"), notNullValue());
+		Assert.assertThat(cache.get(Location.class, "uuid-2"), nullValue());
+	}
+
+	/**
+	 * @see MetadataLookupCache#get(Class, String)
+	 */
+	@Test
+	public void get_shouldNotReturnExpiredObjects() {
+		MetadataLookupCache cache = new MetadataLookupCache();
+		cache.configure(10, -1);
+
+		cache.put(Location.class, "uuid-1", new Location());
+
+		Assert.assertThat(cache.get(Location.class, "uuid-1"), nullValue());
+	}
+
+	/**
+	 * @see MetadataLookupCache#invalidate(Class)
+	 */
+	@Test
+	public void invalidate_shouldClearRelatedClasses() {
+		MetadataLookupCache cache = new MetadataLookupCache();
+		cache.configure(10, 60);
+
+		cache.put(Concept.class, "uuid-1", new Concept());
+		cache.put(Location.class, "uuid-2", new Location());
+
+		cache.invalidate(ConceptNumeric.class);
+
+		Assert.assertThat(cache.get(Concept.class, "uuid-1"), nullValue());
+		Assert.assertThat(cache.get(Location.class, "uuid-2"), notNullValue());
+	}
+}
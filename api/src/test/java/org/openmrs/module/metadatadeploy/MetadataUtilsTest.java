@@ -33,6 +33,7 @@ import org.openmrs.Role;
 import org.openmrs.VisitAttributeType;
 import org.openmrs.VisitType;
 import org.openmrs.api.context.Context;
+import org.openmrs.module.metadatadeploy.api.MetadataDeployService;
 import org.openmrs.test.BaseModuleContextSensitiveTest;
 
 import static org.hamcrest.Matchers.*;
@@ -83,6 +84,31 @@ public class MetadataUtilsTest extends BaseModuleContextSensitiveTest {
 		Assert.assertThat(MetadataUtils.possible(VisitType.class, NONEXISTENT_UUID), nullValue());
 	}
 
+	/**
+	 * @see MetadataUtils#possible(Class, String)
+	 */
+	@Test
+	public void possible_shouldUseLookupCacheIfEnabled() {
+		MetadataLookupCache cache = MetadataUtils.getLookupCache();
+		cache.configure(10, 60);
+
+		try {
+			VisitType fetched = MetadataUtils.possible(VisitType.class, "c0c579b0-8e59-401d-8a4a-976a0b183519");
+			long hits = cache.getHits(), misses = cache.getMisses();
+
+			Assert.assertThat(MetadataUtils.existing(VisitType.class, "c0c579b0-8e59-401d-8a4a-976a0b183519"), sameInstance(fetched));
+			Assert.assertThat(cache.getHits(), is(hits + 1));
+			Assert.assertThat(cache.getMisses(), is(misses));
+
+			// Saving via the deploy service should invalidate the cache
+			Context.getService(MetadataDeployService.class).saveObject(fetched);
+			Assert.assertThat(cache.getSize(), is(0));
+		}
+		finally {
+			cache.configure(0, MetadataLookupCache.DEFAULT_TTL_SECONDS);
+		}
+	}
+
 	/**
 	 * @see MetadataUtils#getConcept(String)
 	 */
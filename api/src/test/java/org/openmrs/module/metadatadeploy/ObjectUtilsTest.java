@@ -20,12 +20,16 @@ import org.openmrs.BaseOpenmrsObject;
 import org.openmrs.Form;
 import org.openmrs.GlobalProperty;
 import org.openmrs.Location;
+import org.openmrs.LocationAttribute;
 import org.openmrs.Privilege;
 import org.openmrs.Role;
+import org.openmrs.module.metadatadeploy.plan.FieldChange;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 
 import static org.hamcrest.Matchers.*;
@@ -84,6 +88,22 @@ public class ObjectUtilsTest {
 		Assert.assertThat(target.getCollectionValues().get(1).getOwner(), is(target));
 	}
 
+	/**
+	 * @see ObjectUtils#overwrite(org.openmrs.OpenmrsObject, org.openmrs.OpenmrsObject, java.util.Set)
+	 */
+	@Test
+	public void overwrite_shouldUpdateOwnersOfAttributes() {
+		Location target = new Location();
+		Location source = new Location();
+		LocationAttribute attribute = new LocationAttribute();
+		source.addAttribute(attribute);
+
+		ObjectUtils.overwrite(source, target, null);
+
+		Assert.assertThat(target.getAttributes(), contains(attribute));
+		Assert.assertThat(attribute.getOwner(), sameInstance(target));
+	}
+
 	/**
 	 * @see ObjectUtils#overwrite(org.openmrs.OpenmrsObject, org.openmrs.OpenmrsObject, java.util.Set)
 	 */
@@ -139,6 +159,69 @@ public class ObjectUtilsTest {
 		Assert.assertThat(target.getCollectionValues(), contains(owned2));
 	}
 
+	/**
+	 * @see ObjectUtils#fieldsEqual(org.openmrs.OpenmrsObject, org.openmrs.OpenmrsObject, java.util.Set)
+	 */
+	@Test
+	public void fieldsEqual_shouldReturnTrueIfOverwriteWouldNotChangeTarget() {
+		TestClass2 prop = new TestClass2();
+		TestClass2 owned1 = new TestClass2();
+
+		TestClass1 target = new TestClass1(null, "test", 123.0, prop);
+		TestClass1 source = new TestClass1(null, "test", 123.0, prop);
+		target.addCollectionValue(owned1);
+		source.addCollectionValue(owned1);
+
+		Assert.assertThat(ObjectUtils.fieldsEqual(source, target, Collections.singleton("uuid")), is(true));
+	}
+
+	/**
+	 * @see ObjectUtils#fieldsEqual(org.openmrs.OpenmrsObject, org.openmrs.OpenmrsObject, java.util.Set)
+	 */
+	@Test
+	public void fieldsEqual_shouldReturnFalseIfOverwriteWouldChangeTarget() {
+		TestClass1 target = new TestClass1(null, "abc", 123.0, null);
+		TestClass1 source = new TestClass1(null, "xyz", 123.0, null);
+
+		Assert.assertThat(ObjectUtils.fieldsEqual(source, target, Collections.singleton("uuid")), is(false));
+
+		// Changes to collection content
+		source = new TestClass1(null, "abc", 123.0, null);
+		source.addCollectionValue(new TestClass2());
+
+		Assert.assertThat(ObjectUtils.fieldsEqual(source, target, Collections.singleton("uuid")), is(false));
+	}
+
+	/**
+	 * @see ObjectUtils#fieldsEqual(org.openmrs.OpenmrsObject, org.openmrs.OpenmrsObject, java.util.Set)
+	 */
+	@Test
+	public void fieldsEqual_shouldIgnoreExcludedFields() {
+		TestClass1 target = new TestClass1(1, "abc", 123.0, null);
+		TestClass1 source = new TestClass1(2, "xyz", 123.0, null);
+
+		Assert.assertThat(ObjectUtils.fieldsEqual(source, target, new HashSet<String>(Arrays.asList("id", "stringValue", "uuid"))), is(true));
+	}
+
+	/**
+	 * @see ObjectUtils#changedFields(org.openmrs.OpenmrsObject, org.openmrs.OpenmrsObject, java.util.Set)
+	 */
+	@Test
+	public void changedFields_shouldReturnFieldsWhichOverwriteWouldChange() {
+		TestClass1 target = new TestClass1(1, "abc", 123.0, null);
+		TestClass1 source = new TestClass1(1, "xyz", 123.0, null);
+		source.addCollectionValue(new TestClass2());
+
+		List<FieldChange> changes = ObjectUtils.changedFields(source, target, Collections.singleton("uuid"));
+
+		Assert.assertThat(changes, hasSize(2));
+		Assert.assertThat(changes.get(0).getField(), is("stringValue"));
+		Assert.assertThat(changes.get(0).getOldValue(), is("abc"));
+		Assert.assertThat(changes.get(0).getNewValue(), is("xyz"));
+		Assert.assertThat(changes.get(1).getField(), is("collectionValues"));
+		Assert.assertThat(changes.get(1).getNewValue(), is("(1 items)"));
+	}
+
 	/**
 	 * @see org.openmrs.module.metadatadeploy.ObjectUtils#usesId(org.openmrs.OpenmrsObject)
 	 */
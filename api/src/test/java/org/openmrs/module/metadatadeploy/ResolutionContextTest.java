@@ -0,0 +1,109 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.Location;
+import org.openmrs.LocationTag;
+
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Tests for {@link ResolutionContext}
+ */
+public class ResolutionContextTest {
+
+	@After
+	public void endContexts() {
+		while (ResolutionContext.current() != null) {
+			ResolutionContext.end();
+		}
+	}
+
+	/**
+	 * @see ResolutionContext#begin()
+	 * @see ResolutionContext#end()
+	 */
+	@Test
+	public void begin_shouldReuseContextUntilOutermostEnd() {
+		Assert.assertThat(ResolutionContext.current(), nullValue());
+
+		ResolutionContext outer = ResolutionContext.begin();
+		ResolutionContext inner = ResolutionContext.begin();
+
+		Assert.assertThat(inner, sameInstance(outer));
+
+		ResolutionContext.end();
+		Assert.assertThat(ResolutionContext.current(), sameInstance(outer));
+
+		ResolutionContext.end();
+		Assert.assertThat(ResolutionContext.current(), nullValue());
+	}
+
+	/**
+	 * @see ResolutionContext#get(Class, String)
+	 */
+	@Test
+	public void get_shouldReturnMemoizedObjectsAndCountHitsAndMisses() {
+		ResolutionContext context = ResolutionContext.begin();
+
+		Location location = new Location();
+		context.put(Location.class, "uuid-1", location);
+		context.put(Location.class, "uuid-2", null);
+
+		Assert.assertThat(context.get(Location.class, "uuid-1"), sameInstance(location));
+		Assert.assertThat(context.get(Location.class, "uuid-2"), nullValue());
+		Assert.assertThat(context.get(LocationTag.class, "uuid-1"), nullValue());
+		Assert.assertThat(context.getHits(), is(1l));
+		Assert.assertThat(context.getMisses(), is(2l));
+	}
+
+	/**
+	 * @see ResolutionContext#invalidateCurrent(Class)
+	 */
+	@Test
+	public void invalidateCurrent_shouldOnlyInvalidateRelatedClasses() {
+		ResolutionContext context = ResolutionContext.begin();
+
+		Location location = new Location();
+		LocationTag tag = new LocationTag();
+		context.put(Location.class, "uuid-1", location);
+		context.put(LocationTag.class, "uuid-2", tag);
+
+		ResolutionContext.invalidateCurrent(Location.class);
+
+		Assert.assertThat(context.get(Location.class, "uuid-1"), nullValue());
+		Assert.assertThat(context.get(LocationTag.class, "uuid-2"), sameInstance(tag));
+	}
+
+	/**
+	 * @see ResolutionContext#clearCurrent()
+	 */
+	@Test
+	public void clearCurrent_shouldDropAllMemoizedObjects() {
+		ResolutionContext context = ResolutionContext.begin();
+
+		context.put(Location.class, "uuid-1", new Location());
+		context.put(LocationTag.class, "uuid-2", new LocationTag());
+
+		ResolutionContext.clearCurrent();
+
+		Assert.assertThat(context.get(Location.class, "uuid-1"), nullValue());
+		Assert.assertThat(context.get(LocationTag.class, "uuid-2"), nullValue());
+		Assert.assertThat(ResolutionContext.current(), sameInstance(context));
+	}
+}
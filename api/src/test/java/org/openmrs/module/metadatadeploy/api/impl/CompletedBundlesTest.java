@@ -0,0 +1,56 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.api.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.module.metadatadeploy.bundle.MetadataBundle;
+import org.openmrs.test.BaseModuleContextSensitiveTest;
+
+import java.util.Arrays;
+
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Tests for {@link CompletedBundles}
+ */
+public class CompletedBundlesTest extends BaseModuleContextSensitiveTest {
+
+	/**
+	 * @see CompletedBundles#load(String)
+	 */
+	@Test
+	public void load_shouldOnlyLoadBundlesCompletedForSameFingerprint() {
+		MetadataBundle bundle1 = new MetadataDeployServiceImplTest.TestBundle1();
+		MetadataBundle bundle3 = new MetadataDeployServiceImplTest.TestBundle3();
+
+		CompletedBundles completed = CompletedBundles.load("abc");
+		Assert.assertThat(completed.size(), is(0));
+
+		completed.addAll(Arrays.asList(bundle1));
+		completed.addAll(Arrays.asList(bundle3));
+
+		CompletedBundles reloaded = CompletedBundles.load("abc");
+		Assert.assertThat(reloaded.size(), is(2));
+		Assert.assertThat(reloaded.contains(bundle1), is(true));
+		Assert.assertThat(reloaded.contains(bundle3), is(true));
+
+		// Different bundles shouldn't resume from these
+		Assert.assertThat(CompletedBundles.load("def").size(), is(0));
+
+		completed.clear();
+		Assert.assertThat(CompletedBundles.load("abc").size(), is(0));
+	}
+}
@@ -0,0 +1,70 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.api.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.metadatadeploy.api.impl.ParallelBundleInstallerTest.FailingBundle;
+import org.openmrs.module.metadatadeploy.api.impl.ParallelBundleInstallerTest.SiblingBundle1;
+import org.openmrs.module.metadatadeploy.api.impl.ParallelBundleInstallerTest.SiblingBundle2;
+import org.openmrs.module.metadatadeploy.api.impl.ParallelBundleInstallerTest.SiblingBundle3;
+import org.openmrs.module.metadatadeploy.bundle.BundleGraph;
+import org.openmrs.module.metadatadeploy.bundle.BundleInstallProgress;
+import org.openmrs.module.metadatadeploy.bundle.MetadataBundle;
+import org.openmrs.test.BaseModuleContextSensitiveTest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Tests for {@link DeferredBundleInstaller}
+ */
+public class DeferredBundleInstallerTest extends BaseModuleContextSensitiveTest {
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	/**
+	 * @see DeferredBundleInstaller.DeferredInstall#run()
+	 */
+	@Test
+	public void run_shouldReportFailedAndAbandonedBundles() {
+		DeferredBundleInstaller installer = DeferredBundleInstaller.getInstance();
+		BundleInstallProgress progress = installer.getProgress();
+
+		BundleGraph graph = new BundleGraph(Arrays.<MetadataBundle>asList(new FailingBundle(), new SiblingBundle1(), new SiblingBundle2(), new SiblingBundle3()));
+		DeferredBundleInstaller.DeferredInstall install = installer.new DeferredInstall(graph, Collections.<MetadataBundle>emptySet(), transactionManager, Context.getUserContext());
+
+		int installedBefore = progress.getInstalled();
+		int failedBefore = progress.getFailed();
+		int pendingBefore = progress.getPending();
+		progress.bundlesScheduled(install.getBundleCount());
+
+		// Run on this thread rather than the background thread so that it can be checked once finished
+		install.run();
+
+		// Siblings which were queued behind the failing bundle are abandoned rather than left pending
+		Assert.assertThat(progress.getPending(), is(pendingBefore));
+		Assert.assertThat(progress.getInstalling(), hasSize(0));
+		Assert.assertThat(progress.getFailed() - failedBefore, greaterThanOrEqualTo(1));
+		Assert.assertThat(progress.getInstalled() - installedBefore + progress.getFailed() - failedBefore, is(4));
+		Assert.assertThat(progress.getLastFailure(), notNullValue());
+	}
+}
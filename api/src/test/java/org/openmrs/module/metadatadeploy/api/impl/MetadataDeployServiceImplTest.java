@@ -18,7 +18,9 @@ import org.apache.commons.lang3.StringUtils;
 import org.junit.Assert;
 import org.junit.Test;
 import org.openmrs.Concept;
+import org.openmrs.EncounterType;
 import org.openmrs.Location;
+import org.openmrs.OpenmrsObject;
 import org.openmrs.Patient;
 import org.openmrs.Privilege;
 import org.openmrs.Program;
@@ -27,26 +29,44 @@ import org.openmrs.VisitType;
 import org.openmrs.api.APIException;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.metadatadeploy.MetadataUtils;
+import org.openmrs.module.metadatadeploy.ObjectUtils;
+import org.openmrs.module.metadatadeploy.ResolutionContext;
 import org.openmrs.module.metadatadeploy.api.MetadataDeployService;
 import org.openmrs.module.metadatadeploy.bundle.AbstractMetadataBundle;
+import org.openmrs.module.metadatadeploy.bundle.BundlePhase;
 import org.openmrs.module.metadatadeploy.bundle.MetadataBundle;
+import org.openmrs.module.metadatadeploy.bundle.Phase;
 import org.openmrs.module.metadatadeploy.bundle.Requires;
+import org.openmrs.module.metadatadeploy.cluster.DeployEpoch;
+import org.openmrs.module.metadatadeploy.handler.ObjectDeployHandler;
+import org.openmrs.module.metadatadeploy.handler.ObjectDeployHandlers;
 import org.openmrs.module.metadatadeploy.handler.impl.ConceptDeployHandler;
 import org.openmrs.module.metadatadeploy.handler.impl.ProgramDeployHandler;
+import org.openmrs.module.metadatadeploy.plan.InstallPlan;
+import org.openmrs.module.metadatadeploy.plan.PlannedChange;
+import org.openmrs.module.metadatadeploy.source.ObjectSource;
+import org.openmrs.module.metadatasharing.ImportedPackage;
+import org.openmrs.module.metadatasharing.api.MetadataSharingService;
 import org.openmrs.test.BaseModuleContextSensitiveTest;
 import org.springframework.aop.framework.Advised;
 import org.springframework.aop.support.AopUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
 
 import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
 import static org.openmrs.module.metadatadeploy.bundle.CoreConstructors.encounterType;
 import static org.openmrs.module.metadatadeploy.bundle.CoreConstructors.form;
 import static org.openmrs.module.metadatadeploy.bundle.CoreConstructors.idSet;
@@ -74,6 +94,15 @@ public class MetadataDeployServiceImplTest extends BaseModuleContextSensitiveTes
 	@Autowired
 	private TestBundle6 testBundle6;
 
+	@Autowired
+	private TestBundle7 testBundle7;
+
+	@Autowired
+	private TestBundle8 testBundle8;
+
+	@Autowired
+	private TestBundle9 testBundle9;
+
 	/**
 	 * @see MetadataDeployServiceImpl#installBundles(java.util.Collection)
 	 */
@@ -111,6 +140,168 @@ public class MetadataDeployServiceImplTest extends BaseModuleContextSensitiveTes
 		deployService.installBundles(Arrays.<MetadataBundle>asList(testBundle6));
 	}
 
+	/**
+	 * @see MetadataDeployServiceImpl#seedBundles(java.util.Collection, int)
+	 */
+	@Test
+	public void seedBundles_shouldInstallBundlesLikeInstallBundles() {
+		deployService.seedBundles(Arrays.<MetadataBundle>asList(testBundle3, testBundle2, testBundle1), 2);
+
+		// Bundle 2 updates a privilege which bundle 1 created during the seed
+		Privilege privilege1 = MetadataUtils.existing(Privilege.class, "Test Privilege 1");
+		Assert.assertThat(privilege1.getDescription(), is("New description"));
+
+		Role role2 = MetadataUtils.existing(Role.class, "Test Role 2");
+		Assert.assertThat(role2.getInheritedRoles(), contains(MetadataUtils.existing(Role.class, "Test Role 1")));
+		Assert.assertThat(role2.getPrivileges(), containsInAnyOrder(privilege1, MetadataUtils.existing(Privilege.class, "Test Privilege 2")));
+
+		Assert.assertThat(Context.getFormService().getFormByUuid(uuid("form1-uuid")), notNullValue());
+		Assert.assertThat(Context.getFormService().getFormByUuid(uuid("form2-uuid")), notNullValue());
+
+		// Seeding again should update rather than duplicate existing objects
+		deployService.seedBundles(Arrays.<MetadataBundle>asList(testBundle3, testBundle2, testBundle1), 2);
+		Assert.assertThat(Context.getFormService().getFormByUuid(uuid("form1-uuid")), notNullValue());
+	}
+
+	/**
+	 * @see MetadataDeployServiceImpl#installBundlesWithPreload(java.util.Collection)
+	 */
+	@Test
+	public void installBundlesWithPreload_shouldInstallBundlesLikeInstallBundles() {
+		deployService.installBundlesWithPreload(Arrays.<MetadataBundle>asList(testBundle3, testBundle2, testBundle1));
+
+		// Bundle 2 updates a privilege which bundle 1 created after privileges were loaded
+		Privilege privilege1 = MetadataUtils.existing(Privilege.class, "Test Privilege 1");
+		Assert.assertThat(privilege1.getDescription(), is("New description"));
+
+		Role role2 = MetadataUtils.existing(Role.class, "Test Role 2");
+		Assert.assertThat(role2.getInheritedRoles(), contains(MetadataUtils.existing(Role.class, "Test Role 1")));
+		Assert.assertThat(role2.getPrivileges(), containsInAnyOrder(privilege1, MetadataUtils.existing(Privilege.class, "Test Privilege 2")));
+
+		Assert.assertThat(Context.getEncounterService().getEncounterTypeByUuid(uuid("enc-type-uuid")), notNullValue());
+	}
+
+	/**
+	 * @see MetadataDeployServiceImpl#installObject(org.openmrs.OpenmrsObject)
+	 */
+	@Test
+	public void installObject_shouldFindExistingObjectsAmongPreloadedObjects() {
+		PreloadedObjects.setCurrent(new PreloadedObjects());
+		try {
+			EncounterType created = deployService.installObject(encounterType("Preloaded", "Testing", uuid("preloaded-uuid")));
+
+			// Matched on name to the object saved since encounter types were loaded, which takes the incoming UUID
+			EncounterType replaced = deployService.installObject(encounterType("Preloaded", "Changed", uuid("replacement-uuid")));
+			Assert.assertThat(replaced, sameInstance(created));
+			Assert.assertThat(replaced.getDescription(), is("Changed"));
+
+			Assert.assertThat(deployService.fetchObject(EncounterType.class, uuid("replacement-uuid")), sameInstance(created));
+			Assert.assertThat(deployService.fetchObject(EncounterType.class, uuid("preloaded-uuid")), nullValue());
+		}
+		finally {
+			PreloadedObjects.setCurrent(null);
+		}
+	}
+
+	/**
+	 * @see MetadataDeployServiceImpl#installBundlesInGroups(java.util.Collection, int)
+	 */
+	@Test
+	public void installBundlesInGroups_shouldCommitEachGroupAndResumeFromFailedGroup() {
+		GroupBundle1 bundle1 = new GroupBundle1();
+		GroupBundle2 bundle2 = new GroupBundle2();
+		GroupBundle3 bundle3 = new GroupBundle3();
+		List<MetadataBundle> bundles = Arrays.<MetadataBundle>asList(bundle1, bundle2, bundle3);
+
+		bundle2.setFail(true);
+		try {
+			deployService.installBundlesInGroups(bundles, 1);
+			Assert.fail();
+		}
+		catch (RuntimeException ex) {
+			// expected
+		}
+
+		// First group was committed and recorded, so the rerun should resume from the second
+		CompletedBundles completed = CompletedBundles.load(DeployEpoch.calculateFingerprint(bundles));
+		Assert.assertThat(completed.contains(bundle1), is(true));
+		Assert.assertThat(completed.contains(bundle2), is(false));
+		Assert.assertThat(bundle3.getInstallCount(), is(0));
+
+		bundle2.setFail(false);
+		deployService.installBundlesInGroups(bundles, 1);
+
+		Assert.assertThat(bundle1.getInstallCount(), is(1));
+		Assert.assertThat(bundle2.getInstallCount(), is(2));
+		Assert.assertThat(bundle3.getInstallCount(), is(1));
+
+		// Once all bundles are installed, a rerun starts over
+		Assert.assertThat(CompletedBundles.load(DeployEpoch.calculateFingerprint(bundles)).size(), is(0));
+	}
+
+	/**
+	 * @see MetadataDeployServiceImpl#installCriticalBundles(java.util.Collection)
+	 */
+	@Test
+	public void installCriticalBundles_shouldInstallCriticalBundlesAndTheirRequirementsOnly() {
+		int scheduledBefore = deployService.getDeferredInstallProgress().getTotal();
+
+		deployService.installCriticalBundles(Arrays.<MetadataBundle>asList(testBundle9, testBundle8, testBundle7));
+
+		// Bundle 7 is deferred but required by bundle 8 which is critical
+		Assert.assertThat(Context.getEncounterService().getEncounterTypeByUuid(uuid("enc-type7-uuid")), notNullValue());
+		Assert.assertThat(Context.getEncounterService().getEncounterTypeByUuid(uuid("enc-type8-uuid")), notNullValue());
+		Assert.assertThat(Context.getEncounterService().getEncounterTypeByUuid(uuid("enc-type9-uuid")), nullValue());
+
+		// Bundle 9 is only scheduled once the transaction commits, which it doesn't in a test
+		Assert.assertThat(deployService.getDeferredInstallProgress().getTotal(), is(scheduledBefore));
+	}
+
+	/**
+	 * @see MetadataDeployServiceImpl#planBundles(java.util.Collection)
+	 */
+	@Test
+	public void planBundles_shouldReportChangesWithoutMakingThem() {
+		InstallPlan plan = deployService.planBundles(Arrays.<MetadataBundle>asList(testBundle2));
+
+		// Bundle 1 is required so is planned first, and bundle 2 updates objects which bundle 1 would create
+		Assert.assertThat(plan.getCount(PlannedChange.Action.CREATE), is(6));
+		Assert.assertThat(plan.getCount(PlannedChange.Action.UPDATE), is(2));
+
+		PlannedChange privilegeUpdate = plan.getChanges(PlannedChange.Action.UPDATE).get(0);
+		Assert.assertThat(privilegeUpdate.getIdentifier(), is("Test Privilege 1"));
+		Assert.assertThat(privilegeUpdate.getBundle(), is(TestBundle2.class.getName()));
+		Assert.assertThat(privilegeUpdate.getFieldChanges(), hasSize(1));
+		Assert.assertThat(privilegeUpdate.getFieldChanges().get(0).getField(), is("description"));
+		Assert.assertThat(privilegeUpdate.getFieldChanges().get(0).getNewValue(), is("New description"));
+
+		Assert.assertThat(MetadataUtils.possible(Privilege.class, "Test Privilege 1"), nullValue());
+		Assert.assertThat(MetadataUtils.possible(Role.class, "Test Role 2"), nullValue());
+		Assert.assertThat(Context.getFormService().getFormByUuid(uuid("form1-uuid")), nullValue());
+
+		// Planning again after installing should find nothing to change
+		deployService.installBundles(Arrays.<MetadataBundle>asList(testBundle2, testBundle1));
+		plan = deployService.planBundles(Arrays.<MetadataBundle>asList(testBundle1));
+
+		Assert.assertThat(plan.getCount(PlannedChange.Action.CREATE), is(0));
+		Assert.assertThat(plan.getChanges(PlannedChange.Action.UNCHANGED), hasSize(greaterThan(0)));
+	}
+
+	/**
+	 * @see MetadataDeployServiceImpl#planBundles(java.util.Collection)
+	 */
+	@Test
+	public void planBundles_shouldRollBackObjectsSavedDirectlyByBundles() {
+		deployService.planBundles(Arrays.<MetadataBundle>asList(new DirectSaveBundle()));
+
+		Assert.assertThat(Context.getEncounterService().getEncounterTypeByUuid(uuid("direct-enc-type-uuid")), nullValue());
+
+		// Check that the rolled back object isn't flushed later
+		Context.flushSession();
+		Context.clearSession();
+		Assert.assertThat(Context.getEncounterService().getEncounterTypeByUuid(uuid("direct-enc-type-uuid")), nullValue());
+	}
+
 	/**
 	 * @see MetadataDeployServiceImpl#installPackage(String, ClassLoader, String)
 	 */
@@ -134,6 +325,39 @@ public class MetadataDeployServiceImplTest extends BaseModuleContextSensitiveTes
 		Assert.assertThat(MetadataUtils.possible(VisitType.class, "3371a4d4-f66f-4454-a86d-92c7b3da990c"), notNullValue());
 	}
 
+	/**
+	 * @see MetadataDeployServiceImpl#installPackage(String, ClassLoader, String)
+	 */
+	@Test
+	public void installPackage_shouldSkipPackageWithSameContentAsLastImported() throws Exception {
+		final String TEST_PACKAGE_GROUP_UUID = "5c7fd8e7-e9a5-43a2-8ba5-c7694fc8db4a";
+		final String TEST_PACKAGE_FILENAME = "test-package-1.zip";
+		ClassLoader classLoader = getClass().getClassLoader();
+
+		Assert.assertThat(deployService.installPackage(TEST_PACKAGE_FILENAME, classLoader, TEST_PACKAGE_GROUP_UUID), is(true));
+
+		String checksum = Context.getAdministrationService().getGlobalProperty(PackageChecks.CHECKSUM_GP_PREFIX + TEST_PACKAGE_GROUP_UUID);
+		Assert.assertThat(checksum, notNullValue());
+
+		// Package would be re-imported because of its version, but its content hasn't changed
+		MetadataSharingService mdsService = Context.getService(MetadataSharingService.class);
+		ImportedPackage imported = mdsService.getImportedPackageByGroup(TEST_PACKAGE_GROUP_UUID);
+		imported.setVersion(0);
+		mdsService.saveImportedPackage(imported);
+
+		Assert.assertThat(deployService.installPackage(TEST_PACKAGE_FILENAME, classLoader, TEST_PACKAGE_GROUP_UUID), is(false));
+
+		// Same again with the state of all packages loaded at once
+		PackageChecks.setCurrent(PackageChecks.load());
+		try {
+			Assert.assertThat(PackageChecks.current().getChecksum(TEST_PACKAGE_GROUP_UUID), is(checksum));
+			Assert.assertThat(deployService.installPackage(TEST_PACKAGE_FILENAME, classLoader, TEST_PACKAGE_GROUP_UUID), is(false));
+		}
+		finally {
+			PackageChecks.setCurrent(null);
+		}
+	}
+
 	/**
 	 * @see MetadataDeployServiceImpl#installPackage(String, ClassLoader, String)
 	 */
@@ -177,6 +401,167 @@ public class MetadataDeployServiceImplTest extends BaseModuleContextSensitiveTes
 		deployService.installObject(location);
 	}
 
+	/**
+	 * @see MetadataDeployServiceImpl#installObject(org.openmrs.OpenmrsObject)
+	 */
+	@Test
+	public void installObject_shouldNotSaveUnchangedExistingObject() throws Exception {
+		MetadataDeployServiceImpl impl = getProxyTarget(deployService);
+
+		Location installed = deployService.installObject(location("Test", "Testing", "2D4A07D3-9D5B-4F56-8E0E-6B7B3B5F2C1D"));
+		long saved = impl.getObjectsSaved(), unchanged = impl.getObjectsUnchanged();
+
+		Assert.assertThat(deployService.installObject(location("Test", "Testing", "2D4A07D3-9D5B-4F56-8E0E-6B7B3B5F2C1D")), sameInstance(installed));
+		Assert.assertThat(impl.getObjectsSaved(), is(saved));
+		Assert.assertThat(impl.getObjectsUnchanged(), is(unchanged + 1));
+
+		Location updated = deployService.installObject(location("Test", "Changed", "2D4A07D3-9D5B-4F56-8E0E-6B7B3B5F2C1D"));
+		Assert.assertThat(updated.getDescription(), is("Changed"));
+		Assert.assertThat(impl.getObjectsSaved(), is(saved + 1));
+	}
+
+	/**
+	 * @see MetadataDeployServiceImpl#updateRequired(org.openmrs.module.metadatadeploy.handler.ObjectDeployHandler, org.openmrs.OpenmrsObject, org.openmrs.OpenmrsObject)
+	 */
+	@Test
+	public void updateRequired_shouldAssumeUpdateRequiredIfHandlerCantCompareObjects() throws Exception {
+		MetadataDeployServiceImpl impl = getProxyTarget(deployService);
+		Location location = location("Test", "Testing", "2D4A07D3-9D5B-4F56-8E0E-6B7B3B5F2C1D");
+
+		Assert.assertThat(impl.updateRequired(new NonComparingLocationHandler(), location, location), is(true));
+		Assert.assertThat(impl.updateRequired(impl.getHandler(Location.class), location, location), is(false));
+	}
+
+	/**
+	 * @see MetadataDeployServiceImpl#installFromSource(org.openmrs.module.metadatadeploy.source.ObjectSource)
+	 */
+	@Test
+	public void installFromSource_shouldInstallEachObjectBeforeFetchingTheNext() throws Exception {
+		ObjectSource<Location> source = new ObjectSource<Location>() {
+			private int count = 0;
+
+			@Override
+			public Location fetchNext() {
+				switch (count++) {
+					case 0:
+						return location("Test Parent", "Testing", "test-parent-location");
+					case 1:
+						// References the object installed from the previous row
+						Location child = location("Test Child", "Testing", "test-child-location");
+						child.setParentLocation(MetadataUtils.existing(Location.class, "test-parent-location"));
+						return child;
+					default:
+						return null;
+				}
+			}
+		};
+
+		List<Location> installed = deployService.installFromSource(source);
+
+		Assert.assertThat(installed.get(1).getParentLocation(), sameInstance(installed.get(0)));
+	}
+
+	/**
+	 * @see MetadataDeployServiceImpl#installFromSource(org.openmrs.module.metadatadeploy.source.ObjectSource, int, int)
+	 */
+	@Test
+	public void installFromSource_shouldInstallObjectsInBatchesInSourceOrder() throws Exception {
+		final List<Location> locations = new ArrayList<Location>();
+		for (int l = 0; l < 150; ++l) {
+			locations.add(location("Test #" + l, "Testing", "test-location-" + l));
+		}
+		// Same identifier as an earlier object, so should replace it
+		locations.add(location("Replaced", "Testing", "test-location-0"));
+
+		ObjectSource<Location> source = new ObjectSource<Location>() {
+			private Iterator<Location> iterator = locations.iterator();
+
+			@Override
+			public Location fetchNext() {
+				return iterator.hasNext() ? iterator.next() : null;
+			}
+		};
+
+		List<Location> installed = deployService.installFromSource(source, 0, 100);
+
+		Assert.assertThat(installed.size(), is(151));
+		Assert.assertThat(installed.get(1).getUuid(), is("test-location-1"));
+		Assert.assertThat(installed.get(150), sameInstance(installed.get(0)));
+		Assert.assertThat(installed.get(0).getName(), is("Replaced"));
+		Assert.assertThat(Context.getLocationService().getLocationByUuid("test-location-149").getName(), is("Test #149"));
+
+		// Check everything can be persisted
+		Context.flushSession();
+	}
+
+	/**
+	 * @see MetadataDeployServiceImpl#installFromSource(org.openmrs.module.metadatadeploy.source.ObjectSource, int, int)
+	 */
+	@Test
+	public void installFromSource_shouldMergeObjectsWhichAlternateMatchEarlierObjectsInTheSameBatch() throws Exception {
+		final List<EncounterType> encounterTypes = Arrays.asList(
+				encounterType("Test Encounter", "Testing", uuid("batch-enc-type1-uuid")),
+				encounterType("Other Encounter", "Testing", uuid("batch-enc-type2-uuid")),
+				encounterType("Test Encounter", "Changed", uuid("batch-enc-type3-uuid"))
+		);
+
+		ObjectSource<EncounterType> source = new ObjectSource<EncounterType>() {
+			private Iterator<EncounterType> iterator = encounterTypes.iterator();
+
+			@Override
+			public EncounterType fetchNext() {
+				return iterator.hasNext() ? iterator.next() : null;
+			}
+		};
+
+		List<EncounterType> installed = deployService.installFromSource(source, 0, 100);
+
+		// Third has a different UUID but the same name as the first, so is merged into it rather than created
+		Assert.assertThat(installed.get(2), sameInstance(installed.get(0)));
+		Assert.assertThat(installed.get(0).getUuid(), is(uuid("batch-enc-type3-uuid")));
+		Assert.assertThat(installed.get(0).getDescription(), is("Changed"));
+		Assert.assertThat(Context.getEncounterService().getEncounterTypeByUuid(uuid("batch-enc-type1-uuid")), nullValue());
+
+		// Check everything can be persisted
+		Context.flushSession();
+	}
+
+	/**
+	 * @see MetadataDeployServiceImpl#installObject(org.openmrs.OpenmrsObject)
+	 */
+	@Test
+	public void installObject_shouldInvalidateMemoizedObjectsOfChangedClass() throws Exception {
+		deployService.installObject(encounterType("Memoized", "Testing", uuid("memoized-uuid")));
+
+		ResolutionContext.begin();
+		try {
+			Assert.assertThat(MetadataUtils.possible(EncounterType.class, uuid("memoized-uuid")), notNullValue());
+
+			// Merged into the memoized object by name, which takes the incoming UUID
+			deployService.installObject(encounterType("Memoized", "Testing", uuid("replacement-uuid")));
+
+			Assert.assertThat(MetadataUtils.possible(EncounterType.class, uuid("memoized-uuid")), nullValue());
+		}
+		finally {
+			ResolutionContext.end();
+		}
+	}
+
+	/**
+	 * @see MetadataDeployServiceImpl#saveObjects(java.util.List)
+	 */
+	@Test
+	public void saveObjects_shouldSaveObjectsInOrder() throws Exception {
+		Location location = location("Test", "Testing", "0B2A0AA9-7D4B-4C35-9E0B-0A5C5D3E9F11");
+		Privilege privilege = privilege("Test Privilege", "Testing");
+
+		List<OpenmrsObject> saved = deployService.saveObjects(Arrays.<OpenmrsObject>asList(location, privilege));
+
+		Assert.assertThat(saved, contains((OpenmrsObject) location, privilege));
+		Assert.assertThat(location.getId(), notNullValue());
+		Assert.assertThat(Context.getUserService().getPrivilege("Test Privilege"), notNullValue());
+	}
+
 	/**
 	 * @see MetadataDeployServiceImpl#fetchObject(Class, String)
 	 */
@@ -254,6 +639,28 @@ public class MetadataDeployServiceImplTest extends BaseModuleContextSensitiveTes
 		impl.getHandler(Patient.class);
 	}
 
+	/**
+	 * @see MetadataDeployServiceImpl#getHandler(Class)
+	 */
+	@Test
+	public void getHandler_shouldCacheResolvedHandlers() throws Exception {
+		Class<? extends Concept> clazz = Context.getConceptService().getConcept(21).getAnswers().iterator().next().getAnswerConcept().getClass();
+		MetadataDeployServiceImpl impl = getProxyTarget(deployService);
+		ObjectDeployHandlers handlers = impl.getDeployHandlers();
+		handlers.clearCache();
+
+		ObjectDeployHandler handler = impl.getHandler(clazz);
+
+		Assert.assertThat(handlers.getCacheHits(), is(0l));
+		Assert.assertThat(handlers.getCacheMisses(), is(1l));
+
+		Assert.assertThat(impl.getHandler(clazz), sameInstance(handler));
+		Assert.assertThat(impl.getHandler(clazz), sameInstance(handler));
+
+		Assert.assertThat(handlers.getCacheHits(), is(2l));
+		Assert.assertThat(handlers.getCacheMisses(), is(1l));
+	}
+
 	@Component
 	public static class TestBundle1 extends AbstractMetadataBundle {
 		@Override
@@ -290,6 +697,52 @@ public class MetadataDeployServiceImplTest extends BaseModuleContextSensitiveTes
 		}
 	}
 
+	/**
+	 * Bundle which bypasses the deploy service, and so the install plan
+	 */
+	public static class DirectSaveBundle implements MetadataBundle {
+		@Override
+		public void install() {
+			Context.getEncounterService().saveEncounterType(encounterType("Direct Encounter", "Testing", uuid("direct-enc-type-uuid")));
+		}
+	}
+
+	/**
+	 * Handler which only implements the required methods of the handler interface
+	 */
+	public static class NonComparingLocationHandler implements ObjectDeployHandler<Location> {
+
+		@Override
+		public String getIdentifier(Location obj) {
+			return obj.getUuid();
+		}
+
+		@Override
+		public Location fetch(String identifier) {
+			return Context.getLocationService().getLocationByUuid(identifier);
+		}
+
+		@Override
+		public Location findAlternateMatch(Location obj) {
+			return null;
+		}
+
+		@Override
+		public Location save(Location obj) {
+			return Context.getLocationService().saveLocation(obj);
+		}
+
+		@Override
+		public void uninstall(Location obj, String reason) {
+			Context.getLocationService().retireLocation(obj, reason);
+		}
+
+		@Override
+		public void overwrite(Location incoming, Location existing) {
+			ObjectUtils.overwrite(incoming, existing, null);
+		}
+	}
+
 	/**
 	 * Has broken requirement because TestBundle5 isn't instantiated as a component
 	 */
@@ -315,6 +768,65 @@ public class MetadataDeployServiceImplTest extends BaseModuleContextSensitiveTes
 		}
 	}
 
+	@Component
+	@Phase(BundlePhase.DEFERRED)
+	public static class TestBundle7 extends AbstractMetadataBundle {
+		@Override
+		public void install() {
+			install(encounterType("Test Encounter 7", "Testing", uuid("enc-type7-uuid")));
+		}
+	}
+
+	@Component
+	@Requires({ TestBundle7.class })
+	public static class TestBundle8 extends AbstractMetadataBundle {
+		@Override
+		public void install() {
+			install(encounterType("Test Encounter 8", "Testing", uuid("enc-type8-uuid")));
+		}
+	}
+
+	@Component
+	@Phase(BundlePhase.DEFERRED)
+	public static class TestBundle9 extends AbstractMetadataBundle {
+		@Override
+		public void install() {
+			install(encounterType("Test Encounter 9", "Testing", uuid("enc-type9-uuid")));
+		}
+	}
+
+	/**
+	 * Counts its installs, and throws an exception if it has been set to fail
+	 */
+	public static abstract class GroupBundle extends AbstractMetadataBundle {
+
+		private int installCount = 0;
+
+		private boolean fail = false;
+
+		@Override
+		public void install() {
+			installCount++;
+			if (fail) {
+				throw new RuntimeException("Failing bundle");
+			}
+		}
+
+		public int getInstallCount() {
+			return installCount;
+		}
+
+		public void setFail(boolean fail) {
+			this.fail = fail;
+		}
+	}
+
+	public static class GroupBundle1 extends GroupBundle {}
+
+	public static class GroupBundle2 extends GroupBundle {}
+
+	public static class GroupBundle3 extends GroupBundle {}
+
 	/**
 	 * Converts a simple identifier to a valid UUID (at least by our standards)
 	 * @return the UUID
@@ -0,0 +1,94 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.api.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.api.APIException;
+import org.openmrs.module.metadatadeploy.bundle.BundleGraph;
+import org.openmrs.module.metadatadeploy.bundle.MetadataBundle;
+import org.openmrs.test.BaseModuleContextSensitiveTest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Tests for {@link ParallelBundleInstaller}
+ */
+public class ParallelBundleInstallerTest extends BaseModuleContextSensitiveTest {
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	/**
+	 * @see ParallelBundleInstaller#run()
+	 */
+	@Test
+	public void run_shouldSkipQueuedBundlesAndReportCommittedBundlesIfBundleFails() {
+		FailingBundle failing = new FailingBundle();
+		List<CountingBundle> siblings = Arrays.<CountingBundle>asList(new SiblingBundle1(), new SiblingBundle2(), new SiblingBundle3());
+
+		// With one thread, the siblings are queued behind the failing bundle
+		BundleGraph graph = new BundleGraph(Arrays.<MetadataBundle>asList(failing, siblings.get(0), siblings.get(1), siblings.get(2)));
+		ParallelBundleInstaller installer = new ParallelBundleInstaller(graph, transactionManager, 1);
+
+		try {
+			installer.run();
+			Assert.fail();
+		}
+		catch (APIException ex) {
+			Assert.assertThat(ex.getMessage(), startsWith("Unable to install bundle FailingBundle (committed bundles: "));
+			Assert.assertThat(ex.getCause().getMessage(), is("Failing bundle"));
+		}
+
+		// A sibling may have been started before the failure was handled, in which case it was committed
+		Assert.assertThat(installer.getDurations().containsKey(failing), is(false));
+		for (CountingBundle sibling : siblings) {
+			Assert.assertThat(installer.getDurations().containsKey(sibling), is(sibling.getInstallCount() == 1));
+		}
+	}
+
+	public static class FailingBundle implements MetadataBundle {
+		@Override
+		public void install() throws Exception {
+			throw new RuntimeException("Failing bundle");
+		}
+	}
+
+	public static abstract class CountingBundle implements MetadataBundle {
+
+		private AtomicInteger installCount = new AtomicInteger();
+
+		@Override
+		public void install() throws Exception {
+			installCount.incrementAndGet();
+		}
+
+		public int getInstallCount() {
+			return installCount.get();
+		}
+	}
+
+	public static class SiblingBundle1 extends CountingBundle {}
+
+	public static class SiblingBundle2 extends CountingBundle {}
+
+	public static class SiblingBundle3 extends CountingBundle {}
+}
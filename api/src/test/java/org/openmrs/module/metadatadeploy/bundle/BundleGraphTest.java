@@ -0,0 +1,127 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.bundle;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.api.APIException;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Tests for {@link BundleGraph}
+ */
+public class BundleGraphTest {
+
+	private TestBundle1 bundle1 = new TestBundle1();
+	private TestBundle2 bundle2 = new TestBundle2();
+	private TestBundle3 bundle3 = new TestBundle3();
+	private TestBundle4 bundle4 = new TestBundle4();
+
+	/**
+	 * @see BundleGraph#getInstallOrder()
+	 */
+	@Test
+	public void getInstallOrder_shouldOrderRequiredBundlesFirst() {
+		BundleGraph graph = new BundleGraph(Arrays.<MetadataBundle>asList(bundle4, bundle3, bundle2, bundle1));
+
+		Assert.assertThat(graph.getInstallOrder(), contains((MetadataBundle) bundle1, bundle3, bundle2, bundle4));
+	}
+
+	/**
+	 * @see BundleGraph#getRequired(MetadataBundle)
+	 * @see BundleGraph#getDependents(MetadataBundle)
+	 */
+	@Test
+	public void getRequiredAndDependents() {
+		BundleGraph graph = new BundleGraph(Arrays.<MetadataBundle>asList(bundle1, bundle2, bundle3, bundle4));
+
+		Assert.assertThat(graph.getRequired(bundle1), hasSize(0));
+		Assert.assertThat(graph.getRequired(bundle4), containsInAnyOrder((MetadataBundle) bundle2, bundle3));
+		Assert.assertThat(graph.getDependents(bundle1), containsInAnyOrder((MetadataBundle) bundle2, bundle3));
+		Assert.assertThat(graph.getDependents(bundle4), hasSize(0));
+	}
+
+	/**
+	 * @see BundleGraph#BundleGraph(java.util.Collection)
+	 */
+	@Test(expected = APIException.class)
+	public void shouldThrowAPIExceptionIfRequiredBundleIsMissing() {
+		new BundleGraph(Arrays.<MetadataBundle>asList(bundle2));
+	}
+
+	/**
+	 * @see BundleGraph#BundleGraph(java.util.Collection)
+	 */
+	@Test(expected = APIException.class)
+	public void shouldThrowAPIExceptionIfRequirementsContainCycle() {
+		new BundleGraph(Arrays.<MetadataBundle>asList(new CyclicBundle1(), new CyclicBundle2()));
+	}
+
+	/**
+	 * @see BundleGraph#getCriticalPathDuration(java.util.Map)
+	 */
+	@Test
+	public void getCriticalPathDuration_shouldReturnLongestChainOfDurations() {
+		BundleGraph graph = new BundleGraph(Arrays.<MetadataBundle>asList(bundle1, bundle2, bundle3, bundle4));
+
+		Map<MetadataBundle, Long> durations = new HashMap<MetadataBundle, Long>();
+		durations.put(bundle1, 10l);
+		durations.put(bundle2, 100l);
+		durations.put(bundle3, 20l);
+		durations.put(bundle4, 5l);
+
+		Assert.assertThat(graph.getCriticalPathDuration(durations), is(115l));
+	}
+
+	public static class TestBundle1 extends AbstractMetadataBundle {
+		@Override
+		public void install() { }
+	}
+
+	@Requires({ TestBundle1.class })
+	public static class TestBundle2 extends AbstractMetadataBundle {
+		@Override
+		public void install() { }
+	}
+
+	@Requires({ TestBundle1.class })
+	public static class TestBundle3 extends AbstractMetadataBundle {
+		@Override
+		public void install() { }
+	}
+
+	@Requires({ TestBundle3.class, TestBundle2.class })
+	public static class TestBundle4 extends AbstractMetadataBundle {
+		@Override
+		public void install() { }
+	}
+
+	@Requires({ CyclicBundle2.class })
+	public static class CyclicBundle1 extends AbstractMetadataBundle {
+		@Override
+		public void install() { }
+	}
+
+	@Requires({ CyclicBundle1.class })
+	public static class CyclicBundle2 extends AbstractMetadataBundle {
+		@Override
+		public void install() { }
+	}
+}
@@ -0,0 +1,62 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.bundle;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Tests for {@link BundleInstallProgress}
+ */
+public class BundleInstallProgressTest {
+
+	/**
+	 * @see BundleInstallProgress#isReady()
+	 */
+	@Test
+	public void isReady_shouldBeTrueOnceAllScheduledBundlesHaveFinished() {
+		BundleInstallProgress progress = new BundleInstallProgress();
+		Assert.assertThat(progress.isReady(), is(true));
+
+		TestBundle bundle1 = new TestBundle(), bundle2 = new TestBundle();
+		progress.bundlesScheduled(3);
+		progress.bundleStarted(bundle1);
+
+		Assert.assertThat(progress.isReady(), is(false));
+		Assert.assertThat(progress.getInstalling(), contains(TestBundle.class.getName()));
+
+		progress.bundleInstalled(bundle1);
+		progress.bundleStarted(bundle2);
+		progress.bundleFailed(bundle2, "Broken");
+
+		Assert.assertThat(progress.getInstalled(), is(1));
+		Assert.assertThat(progress.getFailed(), is(1));
+		Assert.assertThat(progress.getPending(), is(1));
+		Assert.assertThat(progress.getInstalling(), hasSize(0));
+		Assert.assertThat(progress.getLastFailure(), is(TestBundle.class.getName() + ": Broken"));
+
+		progress.bundlesAbandoned(1, "Not installed");
+
+		Assert.assertThat(progress.getFailed(), is(2));
+		Assert.assertThat(progress.isReady(), is(true));
+	}
+
+	public static class TestBundle extends AbstractMetadataBundle {
+		@Override
+		public void install() { }
+	}
+}
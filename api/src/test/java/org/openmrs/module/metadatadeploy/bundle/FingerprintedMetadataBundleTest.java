@@ -0,0 +1,124 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.bundle;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.Concept;
+import org.openmrs.ConceptName;
+import org.openmrs.EncounterType;
+import org.openmrs.api.ConceptService;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.metadatadeploy.MetadataUtils;
+import org.openmrs.module.metadatadeploy.builder.ConceptBuilder;
+import org.openmrs.test.BaseModuleContextSensitiveTest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+
+import static org.hamcrest.Matchers.*;
+import static org.openmrs.module.metadatadeploy.bundle.CoreConstructors.encounterType;
+
+/**
+ * Tests for {@link FingerprintedMetadataBundle}
+ */
+public class FingerprintedMetadataBundleTest extends BaseModuleContextSensitiveTest {
+
+	@Autowired
+	private TestFingerprintedBundle testBundle;
+
+	@Autowired
+	private TestCodedConceptBundle codedConceptBundle;
+
+	/**
+	 * @see FingerprintedMetadataBundle#install()
+	 */
+	@Test
+	public void install_shouldOnlyInstallContentIfChanged() throws Exception {
+		testBundle.setDescription("Testing");
+		testBundle.install();
+
+		EncounterType encounterType = MetadataUtils.existing(EncounterType.class, "d8bb3f4e-1f2b-4d55-8c1f-3e3b4e7c9a11");
+		Assert.assertThat(encounterType.getDescription(), is("Testing"));
+		Assert.assertThat(Context.getAdministrationService().getGlobalProperty("metadatadeploy.bundle.fingerprint." + TestFingerprintedBundle.class.getName()), notNullValue());
+
+		// Modify the installed object outside of the bundle
+		encounterType.setName("Modified");
+
+		// Unchanged content shouldn't be re-installed
+		testBundle.install();
+		Assert.assertThat(encounterType.getName(), is("Modified"));
+
+		// Changed content should be re-installed
+		testBundle.setDescription("Changed");
+		testBundle.install();
+		Assert.assertThat(encounterType.getName(), is("Test Encounter"));
+		Assert.assertThat(encounterType.getDescription(), is("Changed"));
+	}
+
+	/**
+	 * @see FingerprintedMetadataBundle#install()
+	 */
+	@Test
+	public void install_shouldNotReinstallUnchangedConceptWithAnswers() throws Exception {
+		// Each calculation constructs new answers and names with random UUIDs
+		String fingerprint = codedConceptBundle.calculateFingerprint();
+		Assert.assertThat(fingerprint, notNullValue());
+		Assert.assertThat(codedConceptBundle.calculateFingerprint(), is(fingerprint));
+
+		codedConceptBundle.install();
+
+		Concept concept = MetadataUtils.existing(Concept.class, "5c4bfd3e-2d5e-4a7c-9b7f-0e8d6a1f3c21");
+		Assert.assertThat(concept.getAnswers(), hasSize(2));
+
+		// Modify the installed object outside of the bundle
+		concept.setVersion("Modified");
+
+		codedConceptBundle.install();
+		Assert.assertThat(concept.getVersion(), is("Modified"));
+	}
+
+	@Component
+	public static class TestCodedConceptBundle extends FingerprintedMetadataBundle {
+
+		@Override
+		protected void installIfChanged() {
+			ConceptService conceptService = Context.getConceptService();
+
+			install(new ConceptBuilder("5c4bfd3e-2d5e-4a7c-9b7f-0e8d6a1f3c21")
+					.datatype(conceptService.getConceptDatatypeByName("Coded"))
+					.conceptClass(conceptService.getConceptClass(10))
+					.name(new ConceptName("Test coded concept", Locale.ENGLISH))
+					.answers(conceptService.getConcept(18), conceptService.getConcept(3))
+					.build());
+		}
+	}
+
+	@Component
+	public static class TestFingerprintedBundle extends FingerprintedMetadataBundle {
+
+		private String description;
+
+		public void setDescription(String description) {
+			this.description = description;
+		}
+
+		@Override
+		protected void installIfChanged() {
+			install(encounterType("Test Encounter", description, "d8bb3f4e-1f2b-4d55-8c1f-3e3b4e7c9a11"));
+		}
+	}
+}
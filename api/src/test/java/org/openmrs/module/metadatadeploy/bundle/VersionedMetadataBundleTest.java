@@ -0,0 +1,129 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.bundle;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.api.APIException;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.metadatadeploy.api.MetadataDeployService;
+import org.openmrs.test.BaseModuleContextSensitiveTest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Tests for {@link VersionedMetadataBundle}
+ */
+public class VersionedMetadataBundleTest extends BaseModuleContextSensitiveTest {
+
+	@Autowired
+	private MetadataDeployService deployService;
+
+	@Autowired
+	private TestVersionedBundle testBundle;
+
+	/**
+	 * @see VersionedMetadataBundle#install()
+	 */
+	@Test
+	public void install_shouldOnlyInstallNewVersions() throws Exception {
+		testBundle.setVersion(1);
+		testBundle.setNewVersionInstalls(0);
+		deployService.installBundles(Collections.<MetadataBundle>singletonList(testBundle));
+
+		Assert.assertThat(testBundle.getNewVersionInstalls(), is(1));
+		Assert.assertThat(getInstalledVersion(), is("1"));
+
+		// Same version shouldn't be re-installed
+		deployService.installBundles(Collections.<MetadataBundle>singletonList(testBundle));
+		Assert.assertThat(testBundle.getNewVersionInstalls(), is(1));
+
+		// Increased version should be installed, also when not installed with other bundles
+		testBundle.setVersion(2);
+		testBundle.install();
+		Assert.assertThat(testBundle.getNewVersionInstalls(), is(2));
+		Assert.assertThat(getInstalledVersion(), is("2"));
+	}
+
+	/**
+	 * @see VersionedMetadataBundle#install()
+	 */
+	@Test
+	public void install_shouldNotSaveVersionIfBundlesFailToInstall() throws Exception {
+		testBundle.setVersion(1);
+		testBundle.setNewVersionInstalls(0);
+
+		try {
+			deployService.installBundles(Arrays.<MetadataBundle>asList(testBundle, new FailingBundle()));
+			Assert.fail();
+		}
+		catch (APIException ex) {
+		}
+
+		Assert.assertThat(testBundle.getNewVersionInstalls(), is(1));
+		Assert.assertThat(getInstalledVersion(), nullValue());
+	}
+
+	private String getInstalledVersion() {
+		return Context.getAdministrationService().getGlobalProperty(BundleVersions.getPropertyName(TestVersionedBundle.class));
+	}
+
+	@Component
+	public static class TestVersionedBundle extends VersionedMetadataBundle {
+
+		private int version;
+
+		private int newVersionInstalls = 0;
+
+		public void setVersion(int version) {
+			this.version = version;
+		}
+
+		public void setNewVersionInstalls(int newVersionInstalls) {
+			this.newVersionInstalls = newVersionInstalls;
+		}
+
+		public int getNewVersionInstalls() {
+			return newVersionInstalls;
+		}
+
+		@Override
+		public int getVersion() {
+			return version;
+		}
+
+		@Override
+		protected void installEveryTime() {
+		}
+
+		@Override
+		protected void installNewVersion() {
+			newVersionInstalls++;
+		}
+	}
+
+	public static class FailingBundle extends AbstractMetadataBundle {
+
+		@Override
+		public void install() throws Exception {
+			throw new IllegalStateException("Failed");
+		}
+	}
+}
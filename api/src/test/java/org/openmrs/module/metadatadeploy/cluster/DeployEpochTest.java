@@ -0,0 +1,80 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.cluster;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.module.metadatadeploy.bundle.AbstractMetadataBundle;
+import org.openmrs.module.metadatadeploy.bundle.MetadataBundle;
+import org.openmrs.module.metadatadeploy.bundle.VersionedMetadataBundle;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Tests for {@link DeployEpoch}
+ */
+public class DeployEpochTest {
+
+	/**
+	 * @see DeployEpoch#parse(String)
+	 */
+	@Test
+	public void parse_shouldParseFormattedEpoch() {
+		DeployEpoch epoch = DeployEpoch.parse(new DeployEpoch(1, "abc123").next("def456").format());
+
+		Assert.assertThat(epoch.getNumber(), is(2));
+		Assert.assertThat(epoch.getFingerprint(), is("def456"));
+	}
+
+	/**
+	 * @see DeployEpoch#parse(String)
+	 */
+	@Test
+	public void parse_shouldReturnNullForEmptyOrInvalidValues() {
+		Assert.assertThat(DeployEpoch.parse(null), nullValue());
+		Assert.assertThat(DeployEpoch.parse(""), nullValue());
+		Assert.assertThat(DeployEpoch.parse("abc123"), nullValue());
+		Assert.assertThat(DeployEpoch.parse("x|abc123"), nullValue());
+	}
+
+	/**
+	 * @see DeployEpoch#coversContent(java.util.Collection)
+	 */
+	@Test
+	public void coversContent_shouldReturnFalseIfAnyBundleIsUnversioned() {
+		MetadataBundle versioned = new VersionedMetadataBundle() {
+			@Override
+			public int getVersion() {
+				return 1;
+			}
+
+			@Override
+			protected void installEveryTime() {}
+
+			@Override
+			protected void installNewVersion() {}
+		};
+		MetadataBundle unversioned = new AbstractMetadataBundle() {
+			@Override
+			public void install() {}
+		};
+
+		Assert.assertThat(DeployEpoch.coversContent(Collections.singletonList(versioned)), is(true));
+		Assert.assertThat(DeployEpoch.coversContent(Arrays.asList(versioned, unversioned)), is(false));
+	}
+}
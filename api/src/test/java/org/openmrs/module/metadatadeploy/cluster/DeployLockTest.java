@@ -0,0 +1,46 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.cluster;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Tests for {@link DeployLock}
+ */
+public class DeployLockTest {
+
+	/**
+	 * @see DeployLock#isExpired(String, long)
+	 */
+	@Test
+	public void isExpired_shouldCompareLeaseExpiryWithTime() {
+		String value = DeployLock.format(1000, "node1");
+
+		Assert.assertThat(DeployLock.isExpired(value, 999), is(false));
+		Assert.assertThat(DeployLock.isExpired(value, 1000), is(true));
+	}
+
+	/**
+	 * @see DeployLock#isExpired(String, long)
+	 */
+	@Test
+	public void isExpired_shouldTreatReleasedOrInvalidLocksAsExpired() {
+		Assert.assertThat(DeployLock.isExpired("", 0), is(true));
+		Assert.assertThat(DeployLock.isExpired("x|node1", 0), is(true));
+	}
+}
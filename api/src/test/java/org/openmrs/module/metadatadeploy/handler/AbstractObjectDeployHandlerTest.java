@@ -0,0 +1,119 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.handler;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.BaseOpenmrsObject;
+import org.openmrs.OpenmrsObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Tests for {@link AbstractObjectDeployHandler}
+ */
+public class AbstractObjectDeployHandlerTest {
+
+	private TestHandler handler = new TestHandler();
+
+	/**
+	 * @see AbstractObjectDeployHandler#mergeCollection(java.util.Collection, java.util.Collection, java.util.Set)
+	 */
+	@Test
+	public void mergeCollection_shouldMergeMatchedItemsRemoveUnmatchedItemsAndAddNewItems() {
+		TestItem existing1 = item("uuid-1", "existing");
+		TestItem existing2 = item("uuid-2", "existing");
+		List<TestItem> existing = new ArrayList<TestItem>(Arrays.asList(existing1, existing2));
+
+		TestItem incoming1 = item("uuid-1", "incoming");
+		TestItem incoming3 = item("uuid-3", "incoming");
+		List<TestItem> incoming = Arrays.asList(incoming3, incoming1);
+
+		handler.mergeCollection(existing, incoming, null);
+
+		Assert.assertThat(existing, contains(existing1, incoming3));
+		Assert.assertThat(existing1.getName(), is("incoming"));
+	}
+
+	/**
+	 * @see AbstractObjectDeployHandler#indexByUuid(java.util.Collection)
+	 */
+	@Test
+	public void indexByUuid_shouldIndexFirstItemForEachUuid() {
+		TestItem first = item("uuid-1", "first");
+		TestItem second = item("uuid-1", "second");
+		TestItem noUuid = item(null, "none");
+
+		Map<String, TestItem> index = handler.indexByUuid(Arrays.asList(first, second, noUuid));
+
+		Assert.assertThat(index.size(), is(1));
+		Assert.assertThat(index.get("uuid-1"), sameInstance(first));
+	}
+
+	private static TestItem item(String uuid, String name) {
+		TestItem item = new TestItem();
+		item.setUuid(uuid);
+		item.name = name;
+		return item;
+	}
+
+	/**
+	 * Collection item class for testing which isn't voidable or retireable
+	 */
+	public static class TestItem extends BaseOpenmrsObject {
+
+		private Integer id;
+		private String name;
+
+		@Override
+		public Integer getId() {
+			return id;
+		}
+
+		@Override
+		public void setId(Integer id) {
+			this.id = id;
+		}
+
+		public String getName() {
+			return name;
+		}
+	}
+
+	/**
+	 * Handler for testing
+	 */
+	private static class TestHandler extends AbstractObjectDeployHandler<OpenmrsObject> {
+
+		@Override
+		public OpenmrsObject fetch(String identifier) {
+			return null;
+		}
+
+		@Override
+		public OpenmrsObject save(OpenmrsObject obj) {
+			return obj;
+		}
+
+		@Override
+		public void uninstall(OpenmrsObject obj, String reason) {
+		}
+	}
+}
@@ -0,0 +1,74 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.handler;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.EncounterType;
+import org.openmrs.module.metadatadeploy.handler.impl.EncounterTypeDeployHandler;
+
+import java.util.Arrays;
+
+import static org.hamcrest.Matchers.*;
+import static org.openmrs.module.metadatadeploy.bundle.CoreConstructors.encounterType;
+
+/**
+ * Tests for {@link ExistingObjectIndex}
+ */
+public class ExistingObjectIndexTest {
+
+	/**
+	 * @see ExistingObjectIndex#getByName(String)
+	 */
+	@Test
+	public void getByName_shouldMatchNamesCaseInsensitively() {
+		EncounterType scheduled = encounterType("Scheduled", "Testing", "uuid-1");
+		EncounterType emergency = encounterType("Emergency", "Testing", "uuid-2");
+
+		ExistingObjectIndex<EncounterType> index = new ExistingObjectIndex<EncounterType>(new EncounterTypeDeployHandler(), Arrays.asList(scheduled, emergency));
+
+		Assert.assertThat(index.getByName("Scheduled"), sameInstance(scheduled));
+		Assert.assertThat(index.getByName("SCHEDULED"), sameInstance(scheduled));
+		Assert.assertThat(index.getByName("emergency"), sameInstance(emergency));
+		Assert.assertThat(index.getByName("Unknown"), nullValue());
+
+		// Re-indexing a renamed object should drop its old name
+		scheduled.setName("Unscheduled");
+		index.put(scheduled);
+
+		Assert.assertThat(index.getByName("scheduled"), nullValue());
+		Assert.assertThat(index.getByName("UNSCHEDULED"), sameInstance(scheduled));
+	}
+
+	/**
+	 * @see ExistingObjectIndex#getAllByName(String)
+	 */
+	@Test
+	public void getAllByName_shouldReturnAllObjectsWithNameIgnoringCase() {
+		EncounterType upper = encounterType("HIV", "Testing", "uuid-1");
+		EncounterType lower = encounterType("hiv", "Testing", "uuid-2");
+
+		ExistingObjectIndex<EncounterType> index = new ExistingObjectIndex<EncounterType>(new EncounterTypeDeployHandler(), Arrays.asList(upper, lower));
+
+		Assert.assertThat(index.getAllByName("Hiv"), contains(upper, lower));
+		Assert.assertThat(index.getByName("hiv"), sameInstance(upper));
+		Assert.assertThat(index.getAllByName("Unknown"), hasSize(0));
+
+		index.remove(upper);
+
+		Assert.assertThat(index.getAllByName("HIV"), contains(lower));
+		Assert.assertThat(index.getByName("HIV"), sameInstance(lower));
+	}
+}
@@ -38,10 +38,12 @@ import org.springframework.beans.factory.annotation.Autowired;
 
 import java.util.Arrays;
 import java.util.Locale;
+import java.util.Map;
 
 import static org.hamcrest.Matchers.allOf;
 import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.hasProperty;
+import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.nullValue;
 import static org.hamcrest.collection.IsEmptyCollection.empty;
@@ -59,8 +61,26 @@ public class ConceptDeployHandlerTest extends BaseModuleContextSensitiveTest {
     @Autowired
     private ConceptService conceptService;
 
+    @Autowired
+    private ConceptDeployHandler handler;
+
     private static final String UUID = "f35c9fde-cdc3-11e4-9dcf-b36e1005e77b";
 
+    /**
+     * @see ConceptDeployHandler#fetchAll(java.util.Collection)
+     */
+    @Test
+    public void fetchAll_shouldFetchExistingConceptsByUuid() {
+        Concept weight = conceptService.getConcept(5089);
+        Concept cough = conceptService.getConcept(3);
+
+        Map<String, Concept> fetched = handler.fetchAll(Arrays.asList(weight.getUuid(), cough.getUuid(), "non-existent"));
+
+        assertThat(fetched.size(), is(2));
+        assertThat(fetched.get(weight.getUuid()), instanceOf(ConceptNumeric.class));
+        assertThat(fetched.get(cough.getUuid()).getId(), is(3));
+    }
+
     @Test
     public void testCreate() {
         Concept initial = new ConceptBuilder(UUID)
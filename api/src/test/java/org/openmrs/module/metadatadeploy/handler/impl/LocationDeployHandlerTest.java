@@ -22,7 +22,10 @@ import org.openmrs.module.metadatadeploy.api.MetadataDeployService;
 import org.openmrs.test.BaseModuleContextSensitiveTest;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.nullValue;
@@ -37,6 +40,26 @@ public class LocationDeployHandlerTest extends BaseModuleContextSensitiveTest {
 	@Autowired
 	private MetadataDeployService deployService;
 
+	@Autowired
+	private LocationDeployHandler handler;
+
+	/**
+	 * @see LocationDeployHandler#fetchAll(java.util.Collection)
+	 */
+	@Test
+	public void fetchAll_shouldFetchExistingLocationsByUuid() {
+		List<String> uuids = new ArrayList<String>();
+		uuids.add("9356400c-a5a2-4532-8f2b-2361b3446eb8"); // Xanadu
+		for (int u = 0; u < 10; ++u) {
+			uuids.add("non-existent-" + u);
+		}
+
+		Map<String, Location> fetched = handler.fetchAll(uuids);
+
+		Assert.assertThat(fetched.size(), is(1));
+		Assert.assertThat(fetched.get("9356400c-a5a2-4532-8f2b-2361b3446eb8"), is(Context.getLocationService().getLocation("Xanadu")));
+	}
+
 	@Test
 	public void integration() {
 
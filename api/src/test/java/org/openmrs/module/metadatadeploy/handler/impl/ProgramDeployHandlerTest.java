@@ -21,13 +21,16 @@ import org.openmrs.ProgramWorkflow;
 import org.openmrs.ProgramWorkflowState;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.metadatadeploy.api.MetadataDeployService;
+import org.openmrs.module.metadatadeploy.handler.ExistingObjectIndex;
 import org.openmrs.test.BaseModuleContextSensitiveTest;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import java.util.Arrays;
 import java.util.Collections;
 
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
 import static org.junit.Assert.assertThat;
 import static org.openmrs.module.metadatadeploy.bundle.CoreConstructors.program;
 import static org.openmrs.module.metadatadeploy.bundle.CoreConstructors.programWorkflow;
@@ -186,4 +189,27 @@ public class ProgramDeployHandlerTest extends BaseModuleContextSensitiveTest {
 		// Check everything can be persisted
 		Context.flushSession();
 	}
-}
\ No newline at end of file
+
+	/**
+	 * @see ProgramDeployHandler#findAlternateMatch(Program, ExistingObjectIndex)
+	 */
+	@Test
+	public void findAlternateMatch_shouldFindExactNameAmongPreloadedProgramsDifferingOnlyInCase() {
+		Program upper = newProgram("HIV", "upper-uuid");
+		Program lower = newProgram("hiv", "lower-uuid");
+
+		ProgramDeployHandler handler = new ProgramDeployHandler();
+		ExistingObjectIndex<Program> index = new ExistingObjectIndex<Program>(handler, Arrays.asList(upper, lower));
+
+		assertThat(handler.findAlternateMatch(newProgram("hiv", "incoming-uuid"), index), sameInstance(lower));
+		assertThat(handler.findAlternateMatch(newProgram("HIV", "incoming-uuid"), index), sameInstance(upper));
+		assertThat(handler.findAlternateMatch(newProgram("Hiv", "incoming-uuid"), index), nullValue());
+	}
+
+	private static Program newProgram(String name, String uuid) {
+		Program program = new Program();
+		program.setName(name);
+		program.setUuid(uuid);
+		return program;
+	}
+}
@@ -0,0 +1,137 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.snapshot;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.Concept;
+import org.openmrs.ConceptName;
+import org.openmrs.Location;
+import org.openmrs.OpenmrsObject;
+import org.openmrs.Privilege;
+import org.openmrs.Role;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.metadatadeploy.MetadataUtils;
+import org.openmrs.module.metadatadeploy.api.MetadataDeployService;
+import org.openmrs.module.metadatadeploy.bundle.AbstractMetadataBundle;
+import org.openmrs.module.metadatadeploy.bundle.MetadataBundle;
+import org.openmrs.test.BaseModuleContextSensitiveTest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.Matchers.*;
+import static org.openmrs.module.metadatadeploy.bundle.CoreConstructors.idSet;
+import static org.openmrs.module.metadatadeploy.bundle.CoreConstructors.location;
+import static org.openmrs.module.metadatadeploy.bundle.CoreConstructors.privilege;
+import static org.openmrs.module.metadatadeploy.bundle.CoreConstructors.role;
+
+/**
+ * Tests for {@link SnapshotObjectSource} and {@link MetadataSnapshotWriter}
+ */
+public class SnapshotObjectSourceTest extends BaseModuleContextSensitiveTest {
+
+	@Autowired
+	private MetadataDeployService deployService;
+
+	@Autowired
+	private TestSnapshotBundle testSnapshotBundle;
+
+	@Test
+	public void fetchNext_shouldReadObjectsWrittenBySnapshotWriter() throws Exception {
+		Concept concept = Context.getConceptService().getConcept(5089);
+		Location location = Context.getLocationService().getLocation(1);
+
+		File file = createSnapshotFile();
+		MetadataSnapshotWriter writer = new MetadataSnapshotWriter(file);
+		writer.write(concept);
+		writer.write(location);
+		writer.close();
+
+		SnapshotObjectSource<OpenmrsObject> source = new SnapshotObjectSource<OpenmrsObject>(file);
+		Assert.assertThat(source.getObjectCount(), is(2));
+
+		Concept readConcept = (Concept) source.fetchNext();
+		Assert.assertThat(readConcept, not(sameInstance(concept)));
+		Assert.assertThat(readConcept.getUuid(), is(concept.getUuid()));
+		Assert.assertThat(readConcept.getId(), nullValue());
+		Assert.assertThat(readConcept.getDatatype().getUuid(), is(concept.getDatatype().getUuid()));
+		Assert.assertThat(readConcept.getConceptClass().getUuid(), is(concept.getConceptClass().getUuid()));
+		Assert.assertThat(readConcept.getNames(), hasSize(concept.getNames().size()));
+
+		for (ConceptName name : readConcept.getNames()) {
+			Assert.assertThat(name.getConcept(), sameInstance(readConcept));
+			Assert.assertThat(name.getId(), nullValue());
+		}
+		Assert.assertThat(readConcept.getName().getName(), is(concept.getName().getName()));
+
+		Location readLocation = (Location) source.fetchNext();
+		Assert.assertThat(readLocation.getUuid(), is(location.getUuid()));
+		Assert.assertThat(readLocation.getName(), is(location.getName()));
+
+		Assert.assertThat(source.fetchNext(), nullValue());
+	}
+
+	@Test
+	public void captureBundles_shouldWriteInstalledObjectsWhichCanBeReinstalled() throws Exception {
+		File file = createSnapshotFile();
+		MetadataSnapshotWriter writer = new MetadataSnapshotWriter(file);
+		writer.captureBundles(Collections.<MetadataBundle>singletonList(testSnapshotBundle));
+		writer.close();
+
+		Assert.assertThat(writer.getObjectCount(), is(4));
+
+		Location child = MetadataUtils.existing(Location.class, "2e8a6e9a-8b8c-4a9b-9d6f-4f6d8cb0a002");
+		child.setDescription("Changed");
+		child.setParentLocation(null);
+		Context.getLocationService().saveLocation(child);
+
+		List<OpenmrsObject> installed = deployService.installFromSource(new SnapshotObjectSource<OpenmrsObject>(file));
+		Assert.assertThat(installed, hasSize(4));
+
+		Location parent = MetadataUtils.existing(Location.class, "2e8a6e9a-8b8c-4a9b-9d6f-4f6d8cb0a001");
+		child = MetadataUtils.existing(Location.class, "2e8a6e9a-8b8c-4a9b-9d6f-4f6d8cb0a002");
+		Assert.assertThat(child.getDescription(), is("Testing"));
+		Assert.assertThat(child.getParentLocation(), is(parent));
+
+		Role role = MetadataUtils.existing(Role.class, "Snapshot Role");
+		Assert.assertThat(role.getPrivileges(), contains(MetadataUtils.existing(Privilege.class, "Snapshot Privilege")));
+	}
+
+	/**
+	 * Creates a temporary file for a snapshot
+	 */
+	protected File createSnapshotFile() throws IOException {
+		File file = File.createTempFile("metadata", ".snapshot");
+		file.deleteOnExit();
+		return file;
+	}
+
+	@Component
+	public static class TestSnapshotBundle extends AbstractMetadataBundle {
+		@Override
+		public void install() {
+			install(privilege("Snapshot Privilege", "Testing", "2e8a6e9a-8b8c-4a9b-9d6f-4f6d8cb0a003"));
+			install(role("Snapshot Role", "Testing", null, idSet("Snapshot Privilege"), "2e8a6e9a-8b8c-4a9b-9d6f-4f6d8cb0a004"));
+
+			install(location("Snapshot Parent", "Testing", "2e8a6e9a-8b8c-4a9b-9d6f-4f6d8cb0a001"));
+			install(location("Snapshot Child", "Testing", "2e8a6e9a-8b8c-4a9b-9d6f-4f6d8cb0a002", "2e8a6e9a-8b8c-4a9b-9d6f-4f6d8cb0a001", null));
+		}
+	}
+}
@@ -18,7 +18,16 @@ import org.junit.Assert;
 import org.junit.Test;
 import org.openmrs.Location;
 
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
 
 import static org.hamcrest.Matchers.*;
 
@@ -46,13 +55,149 @@ public class AbstractCsvResourceSourceTest {
 		Assert.assertThat(csvSource.fetchNext(), nullValue());
 	}
 
+	@Test
+	public void shouldReadFromFile() throws Exception {
+		File file = File.createTempFile("test-location-source", ".csv");
+		file.deleteOnExit();
+		write(new FileOutputStream(file));
+
+		assertFileContents(new TestCsvSource(file));
+	}
+
+	@Test
+	public void shouldReadFromGzippedFile() throws Exception {
+		File file = File.createTempFile("test-location-source", ".csv.gz");
+		file.deleteOnExit();
+		write(new GZIPOutputStream(new FileOutputStream(file)));
+
+		assertFileContents(new TestCsvSource(file));
+	}
+
+	@Test
+	public void shouldParseInParallelPreservingOrder() throws Exception {
+		File file = writeLargeFile(1000);
+
+		for (int chunkSize = 1; chunkSize <= 1000; chunkSize *= 10) {
+			TestCsvSource csvSource = new TestCsvSource(file);
+			csvSource.setParallelism(4);
+			csvSource.setChunkSize(chunkSize);
+
+			for (int r = 0; r < 1000; ++r) {
+				Location location = csvSource.fetchNext();
+				Assert.assertThat(location.getName(), is("Location #" + r));
+				Assert.assertThat(location.getDescription(), is("Line 1\nLine 2"));
+			}
+			Assert.assertThat(csvSource.fetchNext(), nullValue());
+			Assert.assertThat(csvSource.fetchNext(), nullValue());
+		}
+	}
+
+	@Test
+	public void shouldParseInParallelWithoutPreservingOrder() throws Exception {
+		File file = writeLargeFile(1000);
+
+		TestCsvSource csvSource = new TestCsvSource(file);
+		csvSource.setParallelism(4);
+		csvSource.setChunkSize(7);
+		csvSource.setPreserveOrder(false);
+
+		Set<String> names = new HashSet<String>();
+		Location location;
+		while ((location = csvSource.fetchNext()) != null) {
+			names.add(location.getName());
+		}
+
+		Assert.assertThat(names, hasSize(1000));
+		Assert.assertThat(names, hasItems("Location #0", "Location #999"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void shouldRethrowExceptionFromParallelParsing() throws Exception {
+		File file = writeLargeFile(10);
+
+		TestCsvSource csvSource = new TestCsvSource(file) {
+			@Override
+			protected Location parseLine(String[] line) {
+				throw new IllegalArgumentException("Invalid line");
+			}
+		};
+		csvSource.setParallelism(2);
+		csvSource.fetchNext();
+	}
+
+	@Test(expected = FileNotFoundException.class)
+	public void shouldThrowExceptionIfResourceDoesNotExist() throws Exception {
+		new TestCsvSource("missing-location-source.csv");
+	}
+
+	@Test
+	public void trimToNull() {
+		String value = "Testing";
+		Assert.assertThat(AbstractCsvResourceSource.trimToNull(value), sameInstance(value));
+		Assert.assertThat(AbstractCsvResourceSource.trimToNull(" Testing\t"), is("Testing"));
+		Assert.assertThat(AbstractCsvResourceSource.trimToNull(" \t "), nullValue());
+		Assert.assertThat(AbstractCsvResourceSource.trimToNull(""), nullValue());
+	}
+
+	/**
+	 * Writes a CSV file of locations whose descriptions contain quoted newlines
+	 */
+	protected File writeLargeFile(int rows) throws IOException {
+		File file = File.createTempFile("test-location-source", ".csv");
+		file.deleteOnExit();
+
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		try {
+			writer.write("Name,Description,UUID\n");
+			for (int r = 0; r < rows; ++r) {
+				writer.write("Location #" + r + ",\"Line 1\nLine 2\",uuid-" + r + "\n");
+			}
+		}
+		finally {
+			writer.close();
+		}
+		return file;
+	}
+
+	/**
+	 * Writes a UTF-8 CSV file with a byte order mark and a non-ASCII name
+	 */
+	protected void write(OutputStream out) throws IOException {
+		try {
+			out.write("\uFEFFName,Description,UUID\n\"H\u00F4pital #1\",Testing,uuid-1\n".getBytes("UTF-8"));
+		}
+		finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Asserts the contents of a source which reads the file written by {@link #write(OutputStream)}
+	 */
+	protected void assertFileContents(AbstractCsvResourceSource<Location> csvSource) throws Exception {
+		Location location1 = csvSource.fetchNext();
+		Assert.assertThat(location1.getName(), is("H\u00F4pital #1"));
+		Assert.assertThat(location1.getDescription(), is("Testing"));
+		Assert.assertThat(location1.getUuid(), is("uuid-1"));
+
+		Assert.assertThat(csvSource.fetchNext(), nullValue());
+	}
+
 	/**
 	 * Implementation for testing
 	 */
 	protected class TestCsvSource extends AbstractCsvResourceSource<Location> {
 
 		public TestCsvSource() throws IOException {
-			super("test-location-source.csv", true);
+			this("test-location-source.csv");
+		}
+
+		public TestCsvSource(String csvFile) throws IOException {
+			super(csvFile, true);
+		}
+
+		public TestCsvSource(File csvFile) throws IOException {
+			super(csvFile, true);
 		}
 
 		@Override
@@ -0,0 +1,59 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.source;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.StringReader;
+
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Tests for {@link CsvChunkReader}
+ */
+public class CsvChunkReaderTest {
+
+	private static final String INPUT = "a,b\n\"c\nd\",e\n\"f\\\"\ng\",h\ni,\"\"\"j\nk\"\"\"\nl,m";
+
+	/**
+	 * @see CsvChunkReader#read(int)
+	 */
+	@Test
+	public void read_shouldSplitOnRecordsRespectingQuotedNewlines() throws Exception {
+		CsvChunkReader reader = new CsvChunkReader(new StringReader(INPUT), 1024);
+
+		Assert.assertThat(reader.read(2), is("a,b\n\"c\nd\",e\n"));
+		Assert.assertThat(reader.read(1), is("\"f\\\"\ng\",h\n"));
+		Assert.assertThat(reader.read(2), is("i,\"\"\"j\nk\"\"\"\nl,m"));
+		Assert.assertThat(reader.read(2), nullValue());
+	}
+
+	/**
+	 * @see CsvChunkReader#read(int)
+	 */
+	@Test
+	public void read_shouldSplitOnRecordsAcrossBufferBoundaries() throws Exception {
+		for (int bufferSize = 1; bufferSize < INPUT.length() + 2; ++bufferSize) {
+			CsvChunkReader reader = new CsvChunkReader(new StringReader(INPUT), bufferSize);
+
+			Assert.assertThat(reader.read(1), is("a,b\n"));
+			Assert.assertThat(reader.read(2), is("\"c\nd\",e\n\"f\\\"\ng\",h\n"));
+			Assert.assertThat(reader.read(1), is("i,\"\"\"j\nk\"\"\"\n"));
+			Assert.assertThat(reader.read(1), is("l,m"));
+			Assert.assertThat(reader.read(1), nullValue());
+		}
+	}
+}
@@ -0,0 +1,117 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.source;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.Location;
+import org.openmrs.api.APIException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Tests for {@link ReadAheadObjectSource}
+ */
+public class ReadAheadObjectSourceTest {
+
+	/**
+	 * @see ReadAheadObjectSource#fetchNext()
+	 */
+	@Test
+	public void fetchNext_shouldReturnObjectsInSourceOrder() throws Exception {
+		ReadAheadObjectSource<Location> source = new ReadAheadObjectSource<Location>(new TestSource(100, -1), 5);
+
+		List<String> names = new ArrayList<String>();
+		Location next;
+		while ((next = source.fetchNext()) != null) {
+			names.add(next.getName());
+		}
+
+		Assert.assertThat(names, hasSize(100));
+		Assert.assertThat(names.get(0), is("Location #0"));
+		Assert.assertThat(names.get(99), is("Location #99"));
+		Assert.assertThat(source.fetchNext(), nullValue());
+	}
+
+	/**
+	 * @see ReadAheadObjectSource#fetchNext()
+	 */
+	@Test
+	public void fetchNext_shouldRethrowSourceException() throws Exception {
+		ReadAheadObjectSource<Location> source = new ReadAheadObjectSource<Location>(new TestSource(10, 3), 5);
+
+		for (int l = 0; l < 3; ++l) {
+			Assert.assertThat(source.fetchNext().getName(), is("Location #" + l));
+		}
+
+		try {
+			source.fetchNext();
+			Assert.fail("Expected exception");
+		}
+		catch (APIException ex) {
+			Assert.assertThat(ex.getCause().getMessage(), is("Can't parse line 3"));
+		}
+	}
+
+	/**
+	 * @see ReadAheadObjectSource#close()
+	 */
+	@Test
+	public void close_shouldStopReadingAhead() throws Exception {
+		TestSource testSource = new TestSource(1000, -1);
+		ReadAheadObjectSource<Location> source = new ReadAheadObjectSource<Location>(testSource, 2);
+
+		source.fetchNext();
+		source.close();
+		Thread.sleep(300);
+
+		// Read at most the fetched object, 2 queued objects and 1 waiting to be queued
+		Assert.assertThat(testSource.fetched, lessThanOrEqualTo(4));
+	}
+
+	/**
+	 * Source for testing which can fail at a given position
+	 */
+	private static class TestSource implements ObjectSource<Location> {
+
+		private final int size;
+
+		private final int failAt;
+
+		private volatile int fetched = 0;
+
+		public TestSource(int size, int failAt) {
+			this.size = size;
+			this.failAt = failAt;
+		}
+
+		@Override
+		public Location fetchNext() throws Exception {
+			if (fetched == failAt) {
+				throw new IllegalArgumentException("Can't parse line " + fetched);
+			}
+			if (fetched >= size) {
+				return null;
+			}
+
+			Location location = new Location();
+			location.setName("Location #" + fetched++);
+			return location;
+		}
+	}
+}
@@ -0,0 +1,115 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.stats;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.module.metadatadeploy.bundle.AbstractMetadataBundle;
+import org.openmrs.module.metadatadeploy.handler.impl.LocationDeployHandler;
+
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Tests for {@link DeployTimings}
+ */
+public class DeployTimingsTest {
+
+	/**
+	 * @see DeployTimings#record(org.openmrs.module.metadatadeploy.handler.ObjectDeployHandler, DeployPhase, long, int)
+	 */
+	@Test
+	public void record_shouldRecordByPhaseHandlerAndBundle() {
+		DeployTimings timings = new DeployTimings();
+		LocationDeployHandler handler = new LocationDeployHandler();
+		TestBundle bundle = new TestBundle();
+
+		timings.beginBundle();
+		timings.record(handler, DeployPhase.FETCH, System.nanoTime(), 3);
+		timings.record(handler, DeployPhase.OVERWRITE, System.nanoTime(), 3);
+		timings.record(handler, DeployPhase.SAVE, System.nanoTime(), 2);
+		timings.endBundle(bundle);
+		timings.record(null, DeployPhase.FLUSH, System.nanoTime(), 0);
+
+		Assert.assertThat(timings.getPhases().keySet(), containsInAnyOrder("FETCH", "OVERWRITE", "SAVE", "FLUSH"));
+		Assert.assertThat(timings.getPhases().get("FETCH").getObjects(), is(3l));
+		Assert.assertThat(timings.getPhases().get("SAVE").getObjects(), is(2l));
+
+		// Handler and bundle objects are those installed, not the sum of all phases
+		TimingSnapshot handlerTiming = timings.getHandlers().get("LocationDeployHandler");
+		Assert.assertThat(handlerTiming.getCount(), is(3l));
+		Assert.assertThat(handlerTiming.getObjects(), is(3l));
+
+		TimingSnapshot bundleTiming = timings.getBundles().get(TestBundle.class.getName());
+		Assert.assertThat(bundleTiming.getCount(), is(1l));
+		Assert.assertThat(bundleTiming.getObjects(), is(3l));
+	}
+
+	/**
+	 * @see DeployTimings#endBundle(org.openmrs.module.metadatadeploy.bundle.MetadataBundle)
+	 */
+	@Test
+	public void endBundle_shouldAttributeObjectsToInnermostBundle() {
+		DeployTimings timings = new DeployTimings();
+		LocationDeployHandler handler = new LocationDeployHandler();
+
+		timings.beginBundle();
+		timings.record(handler, DeployPhase.OVERWRITE, System.nanoTime(), 1);
+		timings.beginBundle();
+		timings.record(handler, DeployPhase.OVERWRITE, System.nanoTime(), 2);
+		timings.endBundle(new OtherBundle());
+		timings.endBundle(new TestBundle());
+
+		Assert.assertThat(timings.getBundles().get(OtherBundle.class.getName()).getObjects(), is(2l));
+		Assert.assertThat(timings.getBundles().get(TestBundle.class.getName()).getObjects(), is(1l));
+	}
+
+	/**
+	 * @see DeployTimings#summarizeSince(DeployTimings.Snapshot)
+	 */
+	@Test
+	public void summarizeSince_shouldOnlyIncludeChangedTimings() {
+		DeployTimings timings = new DeployTimings();
+		LocationDeployHandler handler = new LocationDeployHandler();
+
+		timings.record(handler, DeployPhase.FETCH, System.nanoTime(), 1);
+		DeployTimings.Snapshot before = timings.snapshot();
+		timings.record(handler, DeployPhase.SAVE, System.nanoTime(), 4);
+
+		String summary = timings.summarizeSince(before);
+
+		Assert.assertThat(summary, startsWith("phases={SAVE="));
+		Assert.assertThat(summary, containsString("handlers={LocationDeployHandler="));
+		Assert.assertThat(summary, endsWith("bundles={}"));
+		Assert.assertThat(summary, not(containsString("FETCH")));
+	}
+
+	/**
+	 * Bundle for testing
+	 */
+	public static class TestBundle extends AbstractMetadataBundle {
+		@Override
+		public void install() {
+		}
+	}
+
+	/**
+	 * Another bundle for testing
+	 */
+	public static class OtherBundle extends AbstractMetadataBundle {
+		@Override
+		public void install() {
+		}
+	}
+}
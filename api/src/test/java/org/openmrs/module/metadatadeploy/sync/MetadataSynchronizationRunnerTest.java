@@ -18,12 +18,16 @@ import org.junit.Assert;
 import org.junit.Test;
 import org.openmrs.Location;
 import org.openmrs.api.LocationService;
+import org.openmrs.module.metadatadeploy.ResolutionContext;
 import org.openmrs.module.metadatadeploy.source.AbstractCsvResourceSource;
+import org.openmrs.module.metadatadeploy.source.ObjectSource;
 import org.openmrs.test.BaseModuleContextSensitiveTest;
 import org.openmrs.util.OpenmrsUtil;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 
 import static org.hamcrest.Matchers.*;
@@ -61,6 +65,104 @@ public class MetadataSynchronizationRunnerTest extends BaseModuleContextSensitiv
 		Assert.assertThat(location2.getName(), is("Location #2"));
 	}
 
+	/**
+	 * @see MetadataSynchronizationRunner#setChunkSize(int)
+	 */
+	@Test
+	public void run_shouldSynchronizeInChunks() throws Exception {
+		MetadataSynchronizationRunner<Location> runner1 = new MetadataSynchronizationRunner<Location>(new TestCsvSource(), new TestUuidSynchronization());
+		runner1.setChunkSize(2);
+		SyncResult<Location> result1 = runner1.run();
+
+		Assert.assertThat(result1.getCreated(), hasSize(3));
+		Assert.assertThat(result1.getUpdated(), hasSize(0));
+		Assert.assertThat(result1.getRetired(), hasSize(2));
+
+		Location location2 = locationService.getLocationByUuid("C271874A-DACE-480A-8D55-840A96ADA70F");
+		location2.setName("Wrong name");
+		locationService.saveLocation(location2);
+
+		MetadataSynchronizationRunner<Location> runner2 = new MetadataSynchronizationRunner<Location>(new TestCsvSource(), new TestUuidSynchronization());
+		runner2.setChunkSize(2);
+		SyncResult<Location> result2 = runner2.run();
+
+		Assert.assertThat(result2.getCreated(), hasSize(0));
+		Assert.assertThat(result2.getUpdated(), hasSize(1));
+		Assert.assertThat(result2.getRetired(), hasSize(0));
+
+		// Session was cleared so original instance is detached, so fetch again
+		Assert.assertThat(locationService.getLocationByUuid("C271874A-DACE-480A-8D55-840A96ADA70F").getName(), is("Location #2"));
+	}
+
+	/**
+	 * @see MetadataSynchronizationRunner#setChunkSize(int)
+	 */
+	@Test
+	public void run_shouldCreateObjectRepeatedWithinChunkOnce() throws Exception {
+		final Iterator<Location> incoming = Arrays.asList(
+				createLocation("Repeated", "DF2DE8A5-E1A9-4F5E-A7E8-4E5A1A43C2C9"),
+				createLocation("Repeated again", "DF2DE8A5-E1A9-4F5E-A7E8-4E5A1A43C2C9")
+		).iterator();
+
+		ObjectSource<Location> source = new ObjectSource<Location>() {
+			@Override
+			public Location fetchNext() {
+				return incoming.hasNext() ? incoming.next() : null;
+			}
+		};
+
+		MetadataSynchronizationRunner<Location> runner = new MetadataSynchronizationRunner<Location>(source, new TestUuidSynchronization());
+		runner.setChunkSize(10);
+		SyncResult<Location> result = runner.run();
+
+		Assert.assertThat(result.getCreated(), hasSize(1));
+		Assert.assertThat(result.getUpdated(), hasSize(1));
+		Assert.assertThat(locationService.getLocationByUuid("DF2DE8A5-E1A9-4F5E-A7E8-4E5A1A43C2C9").getName(), is("Repeated again"));
+	}
+
+	/**
+	 * @see MetadataSynchronizationRunner#setChunkSize(int)
+	 */
+	@Test
+	public void run_shouldDropMemoizedObjectsWhenSessionIsCleared() throws Exception {
+		ResolutionContext context = ResolutionContext.begin();
+		try {
+			Location existing = locationService.getAllLocations().get(0);
+			context.put(Location.class, existing.getUuid(), existing);
+
+			MetadataSynchronizationRunner<Location> runner = new MetadataSynchronizationRunner<Location>(new TestCsvSource(), new TestUuidSynchronization());
+			runner.setChunkSize(2);
+			runner.run();
+
+			Assert.assertThat(context.get(Location.class, existing.getUuid()), nullValue());
+		}
+		finally {
+			ResolutionContext.end();
+		}
+	}
+
+	/**
+	 * @see MetadataSynchronizationRunner#setResult(SyncResult)
+	 */
+	@Test
+	public void run_shouldRecordInGivenResult() throws Exception {
+		MetadataSynchronizationRunner<Location> runner = new MetadataSynchronizationRunner<Location>(new TestCsvSource(), new TestUuidSynchronization());
+		SyncCounts<Location> counts = new SyncCounts<Location>(1);
+		runner.setResult(counts);
+
+		Assert.assertThat(runner.run(), sameInstance((SyncResult<Location>) counts));
+		Assert.assertThat(counts.getCreatedCount(), is(3));
+		Assert.assertThat(counts.getCreatedSample(), hasSize(1));
+		Assert.assertThat(counts.getRetiredCount(), is(2));
+	}
+
+	protected static Location createLocation(String name, String uuid) {
+		Location location = new Location();
+		location.setName(name);
+		location.setUuid(uuid);
+		return location;
+	}
+
 	/**
 	 * Location source for testing
 	 */
@@ -0,0 +1,54 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.sync;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.Location;
+
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Tests for {@link SyncCounts}
+ */
+public class SyncCountsTest {
+
+	/**
+	 * @see SyncCounts#addCreated(org.openmrs.OpenmrsMetadata)
+	 */
+	@Test
+	public void addCreated_shouldCountObjectsAndSampleUuids() {
+		SyncCounts<Location> result = new SyncCounts<Location>(2);
+
+		for (int i = 0; i < 3; ++i) {
+			Location location = new Location();
+			location.setUuid("uuid-" + i);
+			result.addCreated(location);
+		}
+
+		Assert.assertThat(result.getCreatedCount(), is(3));
+		Assert.assertThat(result.getCreatedSample(), contains("uuid-0", "uuid-1"));
+		Assert.assertThat(result.getUpdatedCount(), is(0));
+		Assert.assertThat(result.getUpdatedSample(), hasSize(0));
+	}
+
+	/**
+	 * @see SyncCounts#getCreated()
+	 */
+	@Test(expected = UnsupportedOperationException.class)
+	public void getCreated_shouldThrowException() {
+		new SyncCounts<Location>().getCreated();
+	}
+}
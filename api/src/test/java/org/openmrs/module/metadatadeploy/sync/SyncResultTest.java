@@ -33,4 +33,20 @@ public class SyncResultTest {
 		Assert.assertThat(result.getUpdated(), hasSize(0));
 		Assert.assertThat(result.getRetired(), hasSize(0));
 	}
-}
\ No newline at end of file
+
+	/**
+	 * @see SyncResult#addCreated(org.openmrs.OpenmrsMetadata)
+	 */
+	@Test
+	public void add_shouldRecordObjectsAndCounts() {
+		SyncResult<Location> result = new SyncResult<Location>();
+		Location location = new Location();
+		result.addCreated(location);
+		result.addRetired(location);
+
+		Assert.assertThat(result.getCreated(), contains(location));
+		Assert.assertThat(result.getCreatedCount(), is(1));
+		Assert.assertThat(result.getUpdatedCount(), is(0));
+		Assert.assertThat(result.getRetiredCount(), is(1));
+	}
+}
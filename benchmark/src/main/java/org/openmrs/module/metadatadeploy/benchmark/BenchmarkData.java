@@ -0,0 +1,151 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.benchmark;
+
+import org.openmrs.Concept;
+import org.openmrs.ConceptDescription;
+import org.openmrs.ConceptMap;
+import org.openmrs.ConceptMapType;
+import org.openmrs.ConceptName;
+import org.openmrs.ConceptReferenceTerm;
+import org.openmrs.ConceptSource;
+import org.openmrs.Location;
+import org.openmrs.LocationTag;
+import org.openmrs.Program;
+import org.openmrs.ProgramWorkflow;
+import org.openmrs.ProgramWorkflowState;
+
+import java.util.Locale;
+
+/**
+ * Builds object graphs for benchmarks. UUIDs are derived from the given prefix and the position of each object, so that
+ * two graphs built with the same prefix have matching objects.
+ */
+public class BenchmarkData {
+
+	private static final Locale[] LOCALES = { Locale.ENGLISH, Locale.FRENCH, new Locale("es"), new Locale("sw") };
+
+	/**
+	 * Builds a concept with the given numbers of names and mappings
+	 * @param prefix the UUID prefix
+	 * @param names the number of names
+	 * @param mappings the number of mappings
+	 * @return the concept
+	 */
+	public static Concept concept(String prefix, int names, int mappings) {
+		return concept(prefix, 0, names, mappings);
+	}
+
+	/**
+	 * Builds a concept with the given numbers of names and mappings, numbered from the given position
+	 * @param prefix the UUID prefix
+	 * @param first the position of the first name and mapping
+	 * @param names the number of names
+	 * @param mappings the number of mappings
+	 * @return the concept
+	 */
+	public static Concept concept(String prefix, int first, int names, int mappings) {
+		Concept concept = new Concept();
+		concept.setUuid(prefix + "-concept");
+
+		for (int n = first; n < first + names; ++n) {
+			ConceptName name = new ConceptName("Name #" + n, LOCALES[n % LOCALES.length]);
+			name.setUuid(prefix + "-name-" + n);
+			concept.addName(name);
+		}
+
+		ConceptDescription description = new ConceptDescription("Description", Locale.ENGLISH);
+		description.setUuid(prefix + "-description");
+		concept.addDescription(description);
+
+		ConceptSource source = new ConceptSource();
+		source.setUuid("benchmark-source");
+		source.setName("Benchmark");
+		ConceptMapType sameAs = new ConceptMapType();
+		sameAs.setUuid("benchmark-same-as");
+		sameAs.setName("SAME-AS");
+
+		for (int m = first; m < first + mappings; ++m) {
+			ConceptReferenceTerm term = new ConceptReferenceTerm(source, "code-" + m, null);
+			term.setUuid(prefix + "-term-" + m);
+			ConceptMap map = new ConceptMap(term, sameAs);
+			map.setUuid(prefix + "-map-" + m);
+			concept.addConceptMapping(map);
+		}
+
+		return concept;
+	}
+
+	/**
+	 * Builds a program with the given numbers of workflows and states per workflow
+	 * @param prefix the UUID prefix
+	 * @param workflows the number of workflows
+	 * @param states the number of states in each workflow
+	 * @return the program
+	 */
+	public static Program program(String prefix, int workflows, int states) {
+		Program program = new Program();
+		program.setUuid(prefix + "-program");
+		program.setName("Program");
+		program.setConcept(concept(prefix + "-program", 1, 0));
+
+		for (int w = 0; w < workflows; ++w) {
+			ProgramWorkflow workflow = new ProgramWorkflow();
+			workflow.setUuid(prefix + "-workflow-" + w);
+			workflow.setConcept(concept(prefix + "-workflow-" + w, 1, 0));
+
+			for (int s = 0; s < states; ++s) {
+				ProgramWorkflowState state = new ProgramWorkflowState();
+				state.setUuid(prefix + "-state-" + w + "-" + s);
+				state.setConcept(concept(prefix + "-state-" + w + "-" + s, 1, 0));
+				state.setInitial(s == 0);
+				state.setTerminal(s == states - 1);
+				workflow.addState(state);
+			}
+
+			program.addWorkflow(workflow);
+		}
+
+		return program;
+	}
+
+	/**
+	 * Builds a location with the given numbers of child locations and tags
+	 * @param prefix the UUID prefix
+	 * @param children the number of child locations
+	 * @param tags the number of tags
+	 * @return the location
+	 */
+	public static Location location(String prefix, int children, int tags) {
+		Location location = new Location();
+		location.setUuid(prefix + "-location");
+		location.setName("Location");
+
+		for (int t = 0; t < tags; ++t) {
+			LocationTag tag = new LocationTag("Tag #" + t, null);
+			tag.setUuid(prefix + "-tag-" + t);
+			location.addTag(tag);
+		}
+
+		for (int c = 0; c < children; ++c) {
+			Location child = new Location();
+			child.setUuid(prefix + "-child-" + c);
+			child.setName("Child #" + c);
+			location.addChildLocation(child);
+		}
+
+		return location;
+	}
+}
@@ -0,0 +1,72 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openmrs.Concept;
+import org.openmrs.module.metadatadeploy.handler.impl.ConceptDeployHandler;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link ConceptDeployHandler#overwrite(Concept, Concept)} with large name and mapping sets. Half of the
+ * incoming names and mappings match existing ones by UUID, so the merge updates, removes and adds items. The existing
+ * concept is rebuilt before each invocation as the merge modifies it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConceptDeployHandlerBenchmark {
+
+	@Param({ "100", "1000" })
+	public int size;
+
+	private ConceptDeployHandler handler = new ConceptDeployHandler();
+
+	private Concept incoming;
+
+	private Concept existing;
+
+	@Setup(Level.Trial)
+	public void buildIncoming() {
+		incoming = BenchmarkData.concept("concept", size, size);
+	}
+
+	@Setup(Level.Invocation)
+	public void buildExisting() {
+		// Existing items match the second half of the incoming items
+		existing = BenchmarkData.concept("concept", size / 2, size, size);
+	}
+
+	@Benchmark
+	public Concept overwrite() {
+		handler.overwrite(incoming, existing);
+		return existing;
+	}
+}
@@ -0,0 +1,63 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openmrs.Location;
+import org.openmrs.module.metadatadeploy.source.AbstractCsvResourceSource;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks parsing throughput of {@link AbstractCsvResourceSource}, measured in rows per second, sequentially and
+ * with parallel parsing
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CsvSourceBenchmark {
+
+	private static final int ROWS = 1000;
+
+	@Param({ "1", "4" })
+	public int parallelism;
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public void parse(Blackhole blackhole) throws Exception {
+		LocationCsvSource source = new LocationCsvSource();
+		source.setParallelism(parallelism);
+		source.setChunkSize(100);
+
+		Location location;
+		while ((location = source.fetchNext()) != null) {
+			blackhole.consume(location);
+		}
+	}
+}
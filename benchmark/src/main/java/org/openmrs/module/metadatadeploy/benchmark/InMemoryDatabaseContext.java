@@ -0,0 +1,65 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.benchmark;
+
+import org.openmrs.test.BaseModuleContextSensitiveTest;
+import org.springframework.test.context.TestContextManager;
+
+import java.lang.reflect.Method;
+
+/**
+ * Provides an OpenMRS context backed by the same in-memory H2 database as the module tests. This drives the Spring
+ * test framework the same way that JUnit would, so that each operation runs in its own transaction which is rolled
+ * back afterwards, leaving the standard test data unchanged.
+ */
+public class InMemoryDatabaseContext extends BaseModuleContextSensitiveTest {
+
+	private TestContextManager manager;
+
+	private Method operation;
+
+	/**
+	 * Loads the application context and the standard test data
+	 * @throws Exception if an error occurs
+	 */
+	public void start() throws Exception {
+		manager = new TestContextManager(InMemoryDatabaseContext.class);
+		manager.prepareTestInstance(this);
+		operation = InMemoryDatabaseContext.class.getMethod("operation");
+	}
+
+	/**
+	 * Begins a transaction, loading the standard test data if necessary, and authenticates
+	 * @throws Exception if an error occurs
+	 */
+	public void beginOperation() throws Exception {
+		manager.beforeTestMethod(this, operation);
+		baseSetupWithStandardDataAndAuthentication();
+	}
+
+	/**
+	 * Rolls back the transaction
+	 * @throws Exception if an error occurs
+	 */
+	public void endOperation() throws Exception {
+		manager.afterTestMethod(this, operation, null);
+	}
+
+	/**
+	 * Stands in for the test method which the test framework expects
+	 */
+	public void operation() {
+	}
+}
@@ -0,0 +1,41 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.benchmark;
+
+import org.openmrs.Location;
+import org.openmrs.module.metadatadeploy.source.AbstractCsvResourceSource;
+
+import java.io.IOException;
+
+/**
+ * Location source for benchmarks, which reads 1000 locations from benchmark-locations.csv
+ */
+public class LocationCsvSource extends AbstractCsvResourceSource<Location> {
+
+	public static final String RESOURCE = "benchmark-locations.csv";
+
+	public LocationCsvSource() throws IOException {
+		super(RESOURCE, true);
+	}
+
+	@Override
+	protected Location parseLine(String[] line) {
+		Location location = new Location();
+		location.setName(line[0]);
+		location.setDescription(line[1]);
+		location.setUuid(line[2]);
+		return location;
+	}
+}
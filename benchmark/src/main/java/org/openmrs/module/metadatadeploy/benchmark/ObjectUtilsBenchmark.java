@@ -0,0 +1,95 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openmrs.Concept;
+import org.openmrs.Location;
+import org.openmrs.Program;
+import org.openmrs.module.metadatadeploy.ObjectUtils;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link ObjectUtils#overwrite(org.openmrs.OpenmrsObject, org.openmrs.OpenmrsObject, java.util.Set)} on
+ * concept, program and location graphs. Targets are rebuilt before each invocation as overwriting shares collection
+ * items between the source and target.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ObjectUtilsBenchmark {
+
+	private static final Set<String> NO_EXCLUDES = Collections.emptySet();
+
+	@Param({ "10", "100" })
+	public int size;
+
+	private Concept sourceConcept;
+	private Program sourceProgram;
+	private Location sourceLocation;
+
+	private Concept targetConcept;
+	private Program targetProgram;
+	private Location targetLocation;
+
+	@Setup(Level.Trial)
+	public void buildSources() {
+		sourceConcept = BenchmarkData.concept("source", size, size);
+		sourceProgram = BenchmarkData.program("source", size / 10 + 1, 10);
+		sourceLocation = BenchmarkData.location("source", size, size / 10 + 1);
+	}
+
+	@Setup(Level.Invocation)
+	public void buildTargets() {
+		targetConcept = BenchmarkData.concept("target", size, size);
+		targetProgram = BenchmarkData.program("target", size / 10 + 1, 10);
+		targetLocation = BenchmarkData.location("target", size, size / 10 + 1);
+	}
+
+	@Benchmark
+	public Concept overwriteConcept() {
+		ObjectUtils.overwrite(sourceConcept, targetConcept, NO_EXCLUDES);
+		return targetConcept;
+	}
+
+	@Benchmark
+	public Program overwriteProgram() {
+		ObjectUtils.overwrite(sourceProgram, targetProgram, NO_EXCLUDES);
+		return targetProgram;
+	}
+
+	@Benchmark
+	public Location overwriteLocation() {
+		ObjectUtils.overwrite(sourceLocation, targetLocation, NO_EXCLUDES);
+		return targetLocation;
+	}
+}
@@ -0,0 +1,103 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.metadatadeploy.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openmrs.Location;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.metadatadeploy.sync.MetadataSynchronizationRunner;
+import org.openmrs.module.metadatadeploy.sync.ObjectSynchronization;
+import org.openmrs.module.metadatadeploy.sync.SyncCounts;
+import org.openmrs.module.metadatadeploy.sync.SyncResult;
+import org.openmrs.util.OpenmrsUtil;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link MetadataSynchronizationRunner} synchronizing 1000 locations into the in-memory H2 database. Each
+ * invocation runs in a transaction which is rolled back afterwards, so every synchronization creates all locations.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(1)
+public class SynchronizationBenchmark {
+
+	@Param({ "0", "100" })
+	public int chunkSize;
+
+	private InMemoryDatabaseContext context;
+
+	@Setup(Level.Trial)
+	public void startContext() throws Exception {
+		context = new InMemoryDatabaseContext();
+		context.start();
+	}
+
+	@Setup(Level.Invocation)
+	public void beginTransaction() throws Exception {
+		context.beginOperation();
+	}
+
+	@TearDown(Level.Invocation)
+	public void rollbackTransaction() throws Exception {
+		context.endOperation();
+	}
+
+	@Benchmark
+	public SyncResult<Location> synchronize() throws Exception {
+		MetadataSynchronizationRunner<Location> runner = new MetadataSynchronizationRunner<Location>(new LocationCsvSource(), new LocationSynchronization());
+		runner.setChunkSize(chunkSize);
+		runner.setResult(new SyncCounts<Location>());
+		return runner.run();
+	}
+
+	/**
+	 * Synchronizes locations by UUID
+	 */
+	public static class LocationSynchronization implements ObjectSynchronization<Location> {
+
+		@Override
+		public List<Location> fetchAllExisting() {
+			return Context.getLocationService().getAllLocations(true);
+		}
+
+		@Override
+		public Object getObjectSyncKey(Location obj) {
+			return obj.getUuid();
+		}
+
+		@Override
+		public boolean updateRequired(Location incoming, Location existing) {
+			return !(OpenmrsUtil.nullSafeEquals(incoming.getName(), existing.getName())
+					&& OpenmrsUtil.nullSafeEquals(incoming.getDescription(), existing.getDescription()));
+		}
+	}
+}